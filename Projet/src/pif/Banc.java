@@ -0,0 +1,510 @@
+package pif;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+/**
+ * Banc de mesure des performances de compression sur le {@link CorpusSynthetique}.
+ * Pour chaque classe d'images, chaque {@link CodeurEntropique} et chaque organisation des canaux, le banc mesure le débit d'encodage et de décodage
+ * (en mégaoctets de pixels RVB par seconde, sur la meilleure itération) ainsi que le nombre de bits par pixel du fichier produit.
+ * Les encodages et décodages se font en mémoire, afin de ne mesurer que le calcul.
+ * Le mode <code>effort</code> compare les niveaux d'{@link Effort} et vérifie leurs objectifs.
+ * Le mode <code>fichiers</code> mesure la chaîne complète {@link ImagePIF#sauvegarder(String, OptionsEncodage)} puis {@link ImagePIF#charger(String)}
+ * sur disque, et produit un tableau CSV ou JSON destiné à être comparé d'une version du code à l'autre.
+ * Le mode <code>serveur</code> soumet le {@link ServeurConversion} à une charge en boucle locale et mesure ses latences et son débit de requêtes.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class Banc {
+
+    // Taille par défaut des images du corpus
+    private static final int TAILLE_DEFAUT = 512;
+
+    // Nombre d'itérations de chauffe (non mesurées) puis mesurées
+    private static final int CHAUFFE = 2;
+    private static final int ITERATIONS = 5;
+
+    // Nombre d'itérations par défaut du mode fichiers, dont le résultat est une médiane
+    private static final int ITERATIONS_FICHIERS = 20;
+
+    // Résultat de la mesure d'un couple (image, options d'encodage)
+    private static final class Mesure {
+        // Nombre de bits par pixel du fichier produit
+        double bitsParPixel;
+        // Meilleures durées d'encodage et de décodage, en nanosecondes
+        long dureeEncodage = Long.MAX_VALUE;
+        long dureeDecodage = Long.MAX_VALUE;
+    }
+
+    private Banc() {
+    }
+
+    /**
+     * Exécute le banc sur tout le corpus.
+     * @param args Arguments optionnels : <code>[taille]</code> pour la taille (côté) des images générées,
+     * <code>effort [taille]</code> pour comparer les niveaux d'effort,
+     * <code>fichiers [options]</code> pour la mesure de bout en bout (voir {@link #executerFichiers(String[], PrintStream)}),
+     * ou <code>serveur [options]</code> pour le test de charge du service HTTP (voir {@link #executerServeur(String[], PrintStream)}).
+     * @param sortie Le flux sur lequel écrire les résultats.
+     * @throws IOException Si un encodage ou un décodage échoue, ou si un niveau d'effort manque ses objectifs.
+     */
+    public static void executer(String[] args, PrintStream sortie) throws IOException {
+        if (args.length > 0 && args[0].equals("effort")) {
+            executerEfforts(Arrays.copyOfRange(args, 1, args.length), sortie);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("fichiers")) {
+            executerFichiers(Arrays.copyOfRange(args, 1, args.length), sortie);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serveur")) {
+            executerServeur(Arrays.copyOfRange(args, 1, args.length), sortie);
+            return;
+        }
+        int taille = args.length > 0 ? Integer.parseInt(args[0]) : TAILLE_DEFAUT;
+        sortie.printf("%-10s %-8s %-10s %12s %12s %12s%n", "classe", "codeur", "canaux", "bits/pixel", "enc Mo/s", "dec Mo/s");
+        for (String classe : CorpusSynthetique.CLASSES) {
+            ImagePIF image = CorpusSynthetique.generer(classe, taille, taille, 42);
+            for (CodeurEntropique codeur : CodeurEntropique.tous()) {
+                for (boolean separes : new boolean[] { false, true }) {
+                    Mesure m = mesurer(classe, image, new OptionsEncodage().setCodeur(codeur).setCanauxSepares(separes))[0];
+                    sortie.printf("%-10s %-8s %-10s %12.3f %12.1f %12.1f%n", classe, codeur.getNom(),
+                            separes ? "separes" : "entrelaces", m.bitsParPixel,
+                            debit(image, m.dureeEncodage), debit(image, m.dureeDecodage));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare les niveaux d'effort sur tout le corpus, pour chaque codeur, puis vérifie les objectifs documentés dans {@link Effort} :
+     * le débit d'encodage cumulé sur le corpus et, pour chaque classe, le surcoût en bits par pixel par rapport au niveau par défaut.
+     * @param args Argument optionnel : args[0] pour la taille (côté) des images générées.
+     * @param sortie Le flux sur lequel écrire les résultats.
+     * @throws IOException Si un encodage ou un décodage échoue, ou si un objectif n'est pas atteint.
+     */
+    private static void executerEfforts(String[] args, PrintStream sortie) throws IOException {
+        int taille = args.length > 0 ? Integer.parseInt(args[0]) : TAILLE_DEFAUT;
+        Effort[] efforts = Effort.values();
+        List<String> echecs = new ArrayList<>();
+
+        sortie.printf("%-10s %-8s %-8s %12s %12s %12s%n", "classe", "codeur", "effort", "bits/pixel", "enc Mo/s", "dec Mo/s");
+        for (CodeurEntropique codeur : CodeurEntropique.tous()) {
+            long[] durees = new long[efforts.length];
+            for (String classe : CorpusSynthetique.CLASSES) {
+                ImagePIF image = CorpusSynthetique.generer(classe, taille, taille, 42);
+                OptionsEncodage[] options = new OptionsEncodage[efforts.length];
+                for (Effort e : efforts) {
+                    options[e.ordinal()] = new OptionsEncodage().setCodeur(codeur).setEffort(e);
+                }
+                Mesure[] mesures = mesurer(classe, image, options);
+                for (Effort e : efforts) {
+                    Mesure m = mesures[e.ordinal()];
+                    durees[e.ordinal()] += m.dureeEncodage;
+                    sortie.printf("%-10s %-8s %-8s %12.3f %12.1f %12.1f%n", classe, codeur.getNom(), e.getNom(),
+                            m.bitsParPixel, debit(image, m.dureeEncodage), debit(image, m.dureeDecodage));
+                }
+
+                double reference = mesures[Effort.DEFAUT.ordinal()].bitsParPixel;
+                for (Effort e : efforts) {
+                    double surcout = mesures[e.ordinal()].bitsParPixel - reference;
+                    if (surcout > e.getSurcoutMax() + 1e-9) {
+                        echecs.add(String.format("%s/%s/%s : %+.3f bits/pixel (max %+.3f)",
+                                classe, codeur.getNom(), e.getNom(), surcout, e.getSurcoutMax()));
+                    }
+                }
+            }
+
+            for (Effort e : efforts) {
+                double rapport = (double) durees[Effort.DEFAUT.ordinal()] / durees[e.ordinal()];
+                sortie.printf("%-8s %-8s debit d'encodage relatif : %.2f (objectif >= %.2f)%n",
+                        codeur.getNom(), e.getNom(), rapport, e.getDebitMin());
+                if (rapport < e.getDebitMin()) {
+                    echecs.add(String.format("%s/%s : débit relatif %.2f (min %.2f)", codeur.getNom(), e.getNom(), rapport, e.getDebitMin()));
+                }
+            }
+        }
+
+        if (!echecs.isEmpty()) {
+            throw new IOException("Objectifs non atteints : " + String.join(" ; ", echecs));
+        }
+        sortie.println("Tous les objectifs sont atteints.");
+    }
+
+    /**
+     * Mesure de bout en bout, classe par classe : chaque itération enregistre l'image dans un fichier temporaire
+     * avec {@link ImagePIF#sauvegarder(String, OptionsEncodage)}, puis le relit avec {@link ImagePIF#charger(String)}.
+     * Les débits retenus sont les médianes des itérations mesurées, plus stables que les meilleures durées pour comparer deux versions.
+     * Le pic de tas est le maximum de l'occupation totale du tas relevée pendant les itérations de chaque classe ({@link SondeTas}),
+     * ramasse-miettes compris. Une dernière ligne <code>corpus</code> cumule toutes les classes, comme une seule image formée de leur empilement.
+     * @param args Options : <code>--format=csv|json</code> (csv par défaut), <code>--taille=N</code>, <code>--iterations=N</code>,
+     * <code>--chauffe=N</code>, <code>--effort=</code> et <code>--codeur=</code>.
+     * @param sortie Le flux sur lequel écrire le tableau.
+     * @throws IOException Si un encodage, un décodage ou l'accès au fichier temporaire échoue.
+     */
+    private static void executerFichiers(String[] args, PrintStream sortie) throws IOException {
+        String format = "csv";
+        int taille = TAILLE_DEFAUT;
+        int iterations = ITERATIONS_FICHIERS;
+        int chauffe = CHAUFFE;
+        OptionsEncodage options = new OptionsEncodage();
+        for (String arg : args) {
+            if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+                if (!format.equals("csv") && !format.equals("json")) {
+                    throw new IllegalArgumentException("Format inconnu : " + format);
+                }
+            } else if (arg.startsWith("--taille=")) {
+                taille = Integer.parseInt(arg.substring("--taille=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Math.max(1, Integer.parseInt(arg.substring("--iterations=".length())));
+            } else if (arg.startsWith("--chauffe=")) {
+                chauffe = Math.max(0, Integer.parseInt(arg.substring("--chauffe=".length())));
+            } else if (arg.startsWith("--effort=")) {
+                options.setEffort(Effort.parNom(arg.substring("--effort=".length())));
+            } else if (arg.startsWith("--codeur=")) {
+                options.setCodeur(CodeurEntropique.parNom(arg.substring("--codeur=".length())));
+            } else {
+                throw new IllegalArgumentException("Option inconnue : " + arg);
+            }
+        }
+
+        String[] colonnes = { "classe", "largeur", "hauteur", "octets", "bits_par_pixel", "encodage_mo_s", "decodage_mo_s", "tas_max_mo" };
+        List<Object[]> lignes = new ArrayList<>();
+        Path fichier = Files.createTempFile("banc", ".pif");
+        try {
+            String chemin = fichier.toString();
+            long pixelsTotal = 0;
+            long octetsTotal = 0;
+            double encodageTotal = 0;
+            double decodageTotal = 0;
+            long tasMax = 0;
+            for (String classe : CorpusSynthetique.CLASSES) {
+                ImagePIF image = CorpusSynthetique.generer(classe, taille, taille, 42);
+                long[] encodages = new long[iterations];
+                long[] decodages = new long[iterations];
+                System.gc();
+                long tas;
+                try (SondeTas sonde = new SondeTas()) {
+                    for (int i = 0; i < chauffe + iterations; i++) {
+                        long debut = System.nanoTime();
+                        image.sauvegarder(chemin, options);
+                        long milieu = System.nanoTime();
+                        ImagePIF decodee = ImagePIF.charger(chemin);
+                        long fin = System.nanoTime();
+                        sonde.relever();
+                        if (i >= chauffe) {
+                            encodages[i - chauffe] = milieu - debut;
+                            decodages[i - chauffe] = fin - milieu;
+                        }
+                        if (!memesPixels(image.getPixels(), decodee.getPixels())) {
+                            throw new IOException("Décodage incorrect pour " + classe);
+                        }
+                    }
+                    tas = sonde.getPic();
+                }
+                long octets = new File(chemin).length();
+                long pixels = image.getPixels().length;
+                double encodage = median(encodages);
+                double decodage = median(decodages);
+                lignes.add(new Object[] { classe, image.getLargeur(), image.getHauteur(), octets, octets * 8.0 / pixels,
+                        debit(image, (long) encodage), debit(image, (long) decodage), tas / 1e6 });
+                pixelsTotal += pixels;
+                octetsTotal += octets;
+                encodageTotal += encodage;
+                decodageTotal += decodage;
+                tasMax = Math.max(tasMax, tas);
+            }
+            lignes.add(new Object[] { "corpus", taille, taille * CorpusSynthetique.CLASSES.length, octetsTotal, octetsTotal * 8.0 / pixelsTotal,
+                    3.0 * pixelsTotal / 1e6 / (encodageTotal / 1e9), 3.0 * pixelsTotal / 1e6 / (decodageTotal / 1e9), tasMax / 1e6 });
+        } finally {
+            Files.deleteIfExists(fichier);
+        }
+
+        if (format.equals("csv")) {
+            sortie.println(String.join(",", colonnes));
+            for (Object[] ligne : lignes) {
+                StringBuilder sb = new StringBuilder();
+                for (int k = 0; k < ligne.length; k++) {
+                    if (k > 0) sb.append(',');
+                    sb.append(formater(ligne[k]));
+                }
+                sortie.println(sb);
+            }
+        } else {
+            sortie.println("[");
+            for (int n = 0; n < lignes.size(); n++) {
+                Object[] ligne = lignes.get(n);
+                StringBuilder sb = new StringBuilder("  {");
+                for (int k = 0; k < ligne.length; k++) {
+                    if (k > 0) sb.append(", ");
+                    sb.append('"').append(colonnes[k]).append("\": ");
+                    sb.append(ligne[k] instanceof String ? "\"" + ligne[k] + "\"" : formater(ligne[k]));
+                }
+                sortie.println(sb.append(n + 1 < lignes.size() ? "}," : "}"));
+            }
+            sortie.println("]");
+        }
+    }
+
+    /**
+     * Test de charge du {@link ServeurConversion}, démarré sur la boucle locale avec un port libre.
+     * Pour chaque point d'accès (<code>/pif</code> avec des images PNG, <code>/png</code> et <code>/entete</code> avec des fichiers PIF),
+     * plusieurs clients envoient leurs requêtes en parallèle, chacun attendant la réponse avant la suivante, en parcourant les classes du corpus.
+     * Une première série de requêtes n'est pas mesurée. Le banc affiche les latences médiane et au 99e centile, et le nombre de requêtes par seconde.
+     * @param args Options : <code>--clients=N</code> (4 par défaut), <code>--requetes=N</code> par client (50 par défaut),
+     * <code>--taille=N</code> (côté des images, 256 par défaut) et <code>--concurrence=N</code> (conversions simultanées du serveur).
+     * @param sortie Le flux sur lequel écrire les résultats.
+     * @throws IOException Si le serveur ne démarre pas ou si une requête échoue.
+     */
+    private static void executerServeur(String[] args, PrintStream sortie) throws IOException {
+        int clients = 4;
+        int requetes = 50;
+        int taille = 256;
+        int concurrence = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("--clients=")) {
+                clients = Math.max(1, Integer.parseInt(arg.substring("--clients=".length())));
+            } else if (arg.startsWith("--requetes=")) {
+                requetes = Math.max(1, Integer.parseInt(arg.substring("--requetes=".length())));
+            } else if (arg.startsWith("--taille=")) {
+                taille = Integer.parseInt(arg.substring("--taille=".length()));
+            } else if (arg.startsWith("--concurrence=")) {
+                concurrence = Integer.parseInt(arg.substring("--concurrence=".length()));
+            } else {
+                throw new IllegalArgumentException("Option inconnue : " + arg);
+            }
+        }
+
+        // Corps des requêtes : chaque image du corpus en PNG et en PIF
+        byte[][] png = new byte[CorpusSynthetique.CLASSES.length][];
+        byte[][] pif = new byte[CorpusSynthetique.CLASSES.length][];
+        for (int k = 0; k < png.length; k++) {
+            ImagePIF image = CorpusSynthetique.generer(CorpusSynthetique.CLASSES[k], taille, taille, 42);
+            ByteArrayOutputStream tampon = new ByteArrayOutputStream();
+            ImageIO.write(image.versBufferedImage(), "png", tampon);
+            png[k] = tampon.toByteArray();
+            pif[k] = image.versOctets();
+        }
+
+        ServeurConversion serveur = new ServeurConversion(new InetSocketAddress("127.0.0.1", 0), concurrence, ServeurConversion.TAILLE_MAX_DEFAUT);
+        serveur.demarrer();
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String base = "http://127.0.0.1:" + serveur.getPort();
+            sortie.printf("%d clients x %d requêtes, images %dx%d, %d conversions simultanées (%s)%n", clients, requetes, taille, taille,
+                    concurrence, serveur.isThreadsVirtuels() ? "threads virtuels" : "groupe fixe de threads");
+            sortie.printf("%-10s %10s %10s %10s %10s%n", "point", "requetes", "p50 ms", "p99 ms", "req/s");
+            String[] points = { "/pif", "/png", "/entete" };
+            byte[][][] corps = { png, pif, pif };
+            for (int p = 0; p < points.length; p++) {
+                URI uri = URI.create(base + points[p]);
+                charger(client, uri, corps[p], clients, Math.max(1, requetes / 5));
+                long debut = System.nanoTime();
+                long[] latences = charger(client, uri, corps[p], clients, requetes);
+                double duree = (System.nanoTime() - debut) / 1e9;
+                Arrays.sort(latences);
+                sortie.printf("%-10s %10d %10.2f %10.2f %10.1f%n", points[p], latences.length,
+                        centile(latences, 0.50) / 1e6, centile(latences, 0.99) / 1e6, latences.length / duree);
+            }
+        } finally {
+            serveur.arreter();
+        }
+    }
+
+    /**
+     * Envoie des requêtes depuis plusieurs clients en parallèle et vérifie que chacune réussit.
+     * @param client Le client HTTP partagé.
+     * @param uri Le point d'accès.
+     * @param corps Les corps de requête, parcourus à tour de rôle.
+     * @param clients Le nombre de clients.
+     * @param requetes Le nombre de requêtes par client.
+     * @return La latence de chaque requête, en nanosecondes.
+     * @throws IOException Si une requête échoue ou reçoit une réponse d'erreur.
+     */
+    private static long[] charger(HttpClient client, URI uri, byte[][] corps, int clients, int requetes) throws IOException {
+        long[] latences = new long[clients * requetes];
+        AtomicReference<Exception> erreur = new AtomicReference<>();
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            int premier = c;
+            threads[c] = new Thread(() -> {
+                try {
+                    for (int r = 0; r < requetes; r++) {
+                        HttpRequest requete = HttpRequest.newBuilder(uri)
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(corps[(premier + r) % corps.length])).build();
+                        long debut = System.nanoTime();
+                        HttpResponse<byte[]> reponse = client.send(requete, HttpResponse.BodyHandlers.ofByteArray());
+                        latences[premier * requetes + r] = System.nanoTime() - debut;
+                        if (reponse.statusCode() != 200) {
+                            throw new IOException(uri.getPath() + " : réponse " + reponse.statusCode() + " " + new String(reponse.body(), "UTF-8"));
+                        }
+                    }
+                } catch (Exception e) {
+                    erreur.compareAndSet(null, e);
+                }
+            });
+            threads[c].start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Banc interrompu", e);
+            }
+        }
+        if (erreur.get() != null) {
+            throw new IOException("Requête en échec : " + erreur.get().getMessage(), erreur.get());
+        }
+        return latences;
+    }
+
+    // Valeur d'une série triée au centile donné (méthode du rang le plus proche)
+    private static long centile(long[] triees, double centile) {
+        int rang = (int) Math.ceil(centile * triees.length) - 1;
+        return triees[Math.max(0, Math.min(triees.length - 1, rang))];
+    }
+
+    // Formate une valeur du tableau : les réels avec trois décimales et un point, quelle que soit la langue du système
+    private static String formater(Object valeur) {
+        return valeur instanceof Double ? String.format(Locale.ROOT, "%.3f", (Double) valeur) : String.valueOf(valeur);
+    }
+
+    // Médiane d'une série de durées
+    private static double median(long[] durees) {
+        long[] triees = durees.clone();
+        Arrays.sort(triees);
+        int m = triees.length / 2;
+        return triees.length % 2 == 1 ? triees[m] : (triees[m - 1] + triees[m]) / 2.0;
+    }
+
+    /**
+     * Relevé de l'occupation totale du tas pendant une mesure : un thread l'échantillonne toutes les millisecondes,
+     * et le banc la relève en plus aux instants les plus chargés (l'image décodée encore vivante).
+     * Le pic retenu est le plus grand de ces relevés. Il peut manquer un sommet plus bref que l'échantillonnage, mais
+     * contrairement à la somme des pics de chaque zone du tas, il n'additionne pas des maxima atteints à des instants différents.
+     */
+    private static final class SondeTas implements AutoCloseable {
+
+        // Intervalle d'échantillonnage, en millisecondes
+        private static final long INTERVALLE = 1;
+
+        private final MemoryMXBean memoire = ManagementFactory.getMemoryMXBean();
+
+        // Plus grande occupation relevée, en octets
+        private final AtomicLong pic = new AtomicLong();
+
+        // Thread d'échantillonnage
+        private final Thread echantillonneur;
+
+        SondeTas() {
+            relever();
+            echantillonneur = new Thread(() -> {
+                try {
+                    while (true) {
+                        relever();
+                        Thread.sleep(INTERVALLE);
+                    }
+                } catch (InterruptedException e) {
+                    // Fin de la mesure
+                }
+            }, "banc-tas");
+            echantillonneur.setDaemon(true);
+            echantillonneur.start();
+        }
+
+        // Relève l'occupation courante du tas
+        void relever() {
+            pic.accumulateAndGet(memoire.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        // @return La plus grande occupation du tas relevée, en octets
+        long getPic() {
+            relever();
+            return pic.get();
+        }
+
+        @Override
+        public void close() {
+            echantillonneur.interrupt();
+        }
+    }
+
+    /**
+     * Mesure une image sous plusieurs options d'encodage et vérifie que le décodage restitue l'image à l'identique.
+     * Les options sont mesurées à tour de rôle à chaque itération, afin que l'état de la JVM (compilation, ramasse-miettes)
+     * ne favorise pas l'une d'elles.
+     * @param classe Le nom de la classe de l'image.
+     * @param image L'image à compresser.
+     * @param options Les options d'encodage mesurées.
+     * @return Pour chaque option, la taille obtenue et les meilleures durées d'encodage et de décodage.
+     * @throws IOException Si un encodage ou un décodage échoue.
+     */
+    private static Mesure[] mesurer(String classe, ImagePIF image, OptionsEncodage... options) throws IOException {
+        Mesure[] mesures = new Mesure[options.length];
+        for (int k = 0; k < options.length; k++) {
+            mesures[k] = new Mesure();
+        }
+
+        for (int i = 0; i < CHAUFFE + ITERATIONS; i++) {
+            for (int k = 0; k < options.length; k++) {
+                ByteArrayOutputStream tampon = new ByteArrayOutputStream();
+                long debut = System.nanoTime();
+                image.ecrire(tampon, options[k]);
+                long milieu = System.nanoTime();
+                byte[] compresse = tampon.toByteArray();
+                ImagePIF decodee = ImagePIF.lire(new ByteArrayInputStream(compresse));
+                long fin = System.nanoTime();
+                if (i >= CHAUFFE) {
+                    mesures[k].dureeEncodage = Math.min(mesures[k].dureeEncodage, milieu - debut);
+                    mesures[k].dureeDecodage = Math.min(mesures[k].dureeDecodage, fin - milieu);
+                }
+
+                if (!memesPixels(image.getPixels(), decodee.getPixels())) {
+                    throw new IOException("Décodage incorrect pour " + classe + " / " + options[k].getCodeur().getNom()
+                            + " / " + options[k].getEffort().getNom());
+                }
+                mesures[k].bitsParPixel = compresse.length * 8.0 / image.getPixels().length;
+            }
+        }
+        return mesures;
+    }
+
+    // Débit en mégaoctets de pixels RVB par seconde pour une durée donnée
+    private static double debit(ImagePIF image, long duree) {
+        return 3.0 * image.getPixels().length / 1e6 / (duree / 1e9);
+    }
+
+    // Compare deux tableaux de pixels en ignorant la composante alpha
+    private static boolean memesPixels(int[] a, int[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (((a[i] ^ b[i]) & 0xFFFFFF) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package pif;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Tableaux de travail d'une conversion, conservés d'une image à l'autre par un même appelant (un atelier de {@link ServeurConversion})
+ * au lieu d'être alloués pour chaque image : pixels d'une image source, pixels d'une image décodée hors du tas, plans des canaux transformés.
+ * Chaque tableau grandit à la demande jusqu'à la taille de la plus grande image rencontrée ; il peut donc être plus long que l'image en cours,
+ * dont les pixels en occupent le début. Au-delà d'un nombre de pixels fixé à la construction, rien n'est fourni ni conservé :
+ * l'image est traitée avec ses propres tableaux, rendus après la conversion.
+ * Les tables de fréquences des codeurs (256 entrées par canal) restent allouées par image : leur taille ne dépend pas de l'image.
+ * Un brouillon ne sert qu'à une conversion à la fois.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class Brouillon {
+
+    // Nombre maximal de pixels des tableaux conservés
+    private final int pixelsMax;
+
+    // Pixels d'une image source
+    private int[] pixels = new int[0];
+
+    // Pixels d'une image décodée, hors du tas, ou null avant la première
+    private IntBuffer horsTas;
+
+    // Plans des trois canaux transformés
+    private final int[][] plans = { new int[0], new int[0], new int[0] };
+
+    /**
+     * Crée un brouillon vide.
+     * @param pixelsMax Le nombre maximal de pixels d'une image servie par le brouillon.
+     */
+    Brouillon(int pixelsMax) {
+        this.pixelsMax = pixelsMax;
+    }
+
+    /**
+     * Fournit un tableau pour les pixels d'une image source.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     * @return Un tableau d'au moins <code>largeur * hauteur</code> pixels, ou null si l'image dépasse le nombre maximal de pixels.
+     */
+    int[] pixels(int largeur, int hauteur) {
+        if (!admis(largeur, hauteur)) {
+            return null;
+        }
+        if (pixels.length < largeur * hauteur) {
+            pixels = new int[largeur * hauteur];
+        }
+        return pixels;
+    }
+
+    /**
+     * Fournit une mémoire hors du tas pour les pixels d'une image décodée.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     * @return Un tampon indépendant (position 0) d'au moins <code>largeur * hauteur</code> pixels,
+     * ou null si l'image dépasse le nombre maximal de pixels.
+     */
+    IntBuffer horsTas(int largeur, int hauteur) {
+        if (!admis(largeur, hauteur)) {
+            return null;
+        }
+        if (horsTas == null || horsTas.capacity() < largeur * hauteur) {
+            horsTas = ByteBuffer.allocateDirect(4 * largeur * hauteur).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return horsTas.duplicate();
+    }
+
+    /**
+     * Fournit les plans des trois canaux transformés d'une image.
+     * @param nbPixels Le nombre de pixels de l'image.
+     * @return Trois tableaux d'au moins <code>nbPixels</code> éléments, ou null si l'image dépasse le nombre maximal de pixels.
+     */
+    int[][] plans(int nbPixels) {
+        if (nbPixels > pixelsMax) {
+            return null;
+        }
+        for (int c = 0; c < 3; c++) {
+            if (plans[c].length < nbPixels) {
+                plans[c] = new int[nbPixels];
+            }
+        }
+        return plans;
+    }
+
+    // @return Vrai si une image de ces dimensions est servie par le brouillon
+    private boolean admis(int largeur, int hauteur) {
+        return largeur >= 0 && hauteur >= 0 && (long) largeur * hauteur <= pixelsMax;
+    }
+}
@@ -0,0 +1,146 @@
+package pif;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Cache persistant des miniatures d'images PIF sur le disque local.
+ * Chaque miniature est enregistrée au format PNG sous un nom dérivé du chemin absolu du fichier, de sa taille et de sa date de modification :
+ * un fichier modifié produit donc une nouvelle clé et son ancienne miniature n'est plus jamais relue.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public class CacheMiniatures {
+
+    // Répertoire dans lequel sont stockées les miniatures
+    private final Path dossier;
+
+    // Plus grande dimension des miniatures générées
+    private final int tailleMax;
+
+    /**
+     * Construit un cache de miniatures.
+     * @param dossier Le répertoire de stockage (créé au besoin).
+     * @param tailleMax La plus grande dimension des miniatures, en pixels.
+     */
+    public CacheMiniatures(Path dossier, int tailleMax) {
+        this.dossier = dossier;
+        this.tailleMax = tailleMax;
+    }
+
+    /**
+     * Retourne le répertoire de cache par défaut : <code>$XDG_CACHE_HOME/pif/miniatures</code>
+     * ou, à défaut, <code>~/.cache/pif/miniatures</code>.
+     * @return Le chemin du répertoire de cache.
+     */
+    public static Path dossierParDefaut() {
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        Path base = (xdg != null && !xdg.isEmpty())
+                ? Paths.get(xdg)
+                : Paths.get(System.getProperty("user.home"), ".cache");
+        return base.resolve("pif").resolve("miniatures");
+    }
+
+    // @return La plus grande dimension des miniatures
+    public int getTailleMax() {
+        return tailleMax;
+    }
+
+    /**
+     * Retourne la miniature d'un fichier PIF, en la lisant depuis le cache si elle y est déjà,
+     * ou en la générant puis en l'enregistrant sinon.
+     * @param fichier Le fichier .pif concerné.
+     * @return La miniature de l'image.
+     * @throws IOException Si le fichier PIF est illisible.
+     */
+    public BufferedImage obtenir(Path fichier) throws IOException {
+        BasicFileAttributes attributs = Files.readAttributes(fichier, BasicFileAttributes.class);
+        Path entree = dossier.resolve(cle(fichier, attributs) + ".png");
+
+        BufferedImage miniature = lireEntree(entree);
+        if (miniature != null) {
+            return miniature;
+        }
+
+        miniature = ImagePIF.chargerMiniature(fichier.toString(), tailleMax);
+        try {
+            ecrireEntree(entree, miniature);
+        } catch (IOException e) {
+            // Un cache non inscriptible ne doit pas empêcher l'affichage
+            System.err.println("Miniature non mise en cache : " + e.getMessage());
+        }
+        return miniature;
+    }
+
+    /**
+     * Lit une entrée du cache.
+     * @param entree Le fichier PNG de l'entrée.
+     * @return La miniature, ou <code>null</code> si l'entrée est absente ou corrompue.
+     */
+    private BufferedImage lireEntree(Path entree) {
+        if (!Files.isRegularFile(entree)) {
+            return null;
+        }
+        try {
+            return ImageIO.read(entree.toFile());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Écrit une entrée du cache dans un fichier temporaire puis le renomme,
+     * afin qu'un lecteur concurrent ne voie jamais une miniature partiellement écrite.
+     * @param entree Le fichier PNG de destination.
+     * @param miniature La miniature à enregistrer.
+     * @throws IOException Si l'écriture échoue.
+     */
+    private void ecrireEntree(Path entree, BufferedImage miniature) throws IOException {
+        Files.createDirectories(dossier);
+        Path temporaire = Files.createTempFile(dossier, "mini", ".tmp");
+        try {
+            ImageIO.write(miniature, "png", temporaire.toFile());
+            try {
+                Files.move(temporaire, entree, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaire, entree, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    /**
+     * Calcule la clé d'un fichier à partir de son chemin absolu, de sa taille, de sa date de modification et de la taille des miniatures.
+     * @param fichier Le fichier concerné.
+     * @param attributs Les attributs du fichier.
+     * @return La clé sous forme hexadécimale.
+     */
+    private String cle(Path fichier, BasicFileAttributes attributs) {
+        String identite = fichier.toAbsolutePath().normalize() + "\n"
+                + attributs.size() + "\n"
+                + attributs.lastModifiedTime().toMillis() + "\n"
+                + tailleMax;
+        try {
+            byte[] empreinte = MessageDigest.getInstance("SHA-256").digest(identite.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte o : empreinte) {
+                sb.append(String.format("%02x", o));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 fait partie des algorithmes obligatoires de toute JVM
+            throw new IllegalStateException(e);
+        }
+    }
+}
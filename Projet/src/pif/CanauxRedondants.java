@@ -0,0 +1,114 @@
+package pif;
+
+import java.nio.IntBuffer;
+
+/**
+ * Canaux d'une image qu'il est inutile de coder : un canal identique à un canal précédent (les trois canaux d'une image en niveaux de gris)
+ * ou de valeur constante. Coder trois fois la même composante triple le temps d'encodage et de décodage, et un canal constant
+ * coûte encore un bit par pixel, le code de Huffman d'un symbole unique étant d'un bit.
+ * Ces canaux sont décrits dans l'en-tête ({@link EnTetePIF#DOUBLONS}, {@link EnTetePIF#CONSTANTES}) et restitués par le décodeur
+ * sans lire de flux de bits.
+ * La détection parcourt l'image une fois et s'arrête dès qu'aucune redondance n'est plus possible : sur une image en couleurs,
+ * elle ne dépasse en général pas la première ligne.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class CanauxRedondants {
+
+    // Hypothèses suivies pendant le parcours : canal constant, puis paires de canaux égaux
+    private static final int CONSTANT_R = 0x01;
+    private static final int CONSTANT_V = 0x02;
+    private static final int CONSTANT_B = 0x04;
+    private static final int R_EGAL_V = 0x08;
+    private static final int R_EGAL_B = 0x10;
+    private static final int V_EGAL_B = 0x20;
+
+    // Canal source de chaque canal (lui-même s'il est codé ou constant)
+    private final int[] doublons;
+
+    // Valeur de chaque canal constant, ou -1
+    private final int[] constantes;
+
+    private CanauxRedondants(int[] doublons, int[] constantes) {
+        this.doublons = doublons;
+        this.constantes = constantes;
+    }
+
+    // @return Le canal source de chaque canal (lui-même s'il est codé ou constant)
+    int[] getDoublons() {
+        return doublons;
+    }
+
+    // @return La valeur de chaque canal constant, ou -1
+    int[] getConstantes() {
+        return constantes;
+    }
+
+    // @return Le nombre de canaux qui restent à coder
+    int nombreCanauxCodes() {
+        int n = 0;
+        for (int c = 0; c < 3; c++) {
+            if (doublons[c] == c && constantes[c] < 0) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Cherche les canaux redondants d'une image (la composante alpha est ignorée).
+     * Un canal constant est décrit par sa valeur plutôt que comme le doublon d'un autre canal constant.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return Les canaux redondants, ou <code>null</code> si chaque canal doit être codé ou si l'image n'a aucun pixel.
+     */
+    static CanauxRedondants detecter(IntBuffer pixels, int l, int h) {
+        if (l == 0 || h == 0) {
+            return null;
+        }
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int premier = pixels.get(0);
+        int hypotheses = CONSTANT_R | CONSTANT_V | CONSTANT_B | R_EGAL_V | R_EGAL_B | V_EGAL_B;
+        LignesPixels lignes = new LignesPixels(pixels, l);
+        int[] source = lignes.tableau();
+        for (int y = 0; y < h && hypotheses != 0; y++) {
+            for (int x = 0, j = lignes.ligne(y); x < l; x++, j++) {
+                int c = source[j];
+                int ecart = c ^ premier;
+                int r = (c >> 16) & 0xFF;
+                int v = (c >> 8) & 0xFF;
+                int b = c & 0xFF;
+                if ((ecart & 0xFF0000) != 0) hypotheses &= ~CONSTANT_R;
+                if ((ecart & 0x00FF00) != 0) hypotheses &= ~CONSTANT_V;
+                if ((ecart & 0x0000FF) != 0) hypotheses &= ~CONSTANT_B;
+                if (r != v) hypotheses &= ~R_EGAL_V;
+                if (r != b) hypotheses &= ~R_EGAL_B;
+                if (v != b) hypotheses &= ~V_EGAL_B;
+            }
+        }
+        Instrumentation.fin(Instrumentation.Phase.HISTOGRAMME, debut, 0, (long) l * h);
+
+        int[] constantes = { -1, -1, -1 };
+        int[] composantes = { (premier >> 16) & 0xFF, (premier >> 8) & 0xFF, premier & 0xFF };
+        for (int c = 0; c < 3; c++) {
+            if ((hypotheses & (CONSTANT_R << c)) != 0) {
+                constantes[c] = composantes[c];
+            }
+        }
+        int[] doublons = CodeurEntropique.partitionIdentite(3);
+        if (constantes[0] < 0 && constantes[1] < 0 && (hypotheses & R_EGAL_V) != 0) {
+            doublons[1] = 0;
+        }
+        if (constantes[2] < 0) {
+            if (constantes[0] < 0 && (hypotheses & R_EGAL_B) != 0) {
+                doublons[2] = 0;
+            } else if (constantes[1] < 0 && doublons[1] == 1 && (hypotheses & V_EGAL_B) != 0) {
+                doublons[2] = 1;
+            }
+        }
+        boolean redondance = false;
+        for (int c = 0; c < 3; c++) {
+            redondance |= constantes[c] >= 0 || doublons[c] != c;
+        }
+        return redondance ? new CanauxRedondants(doublons, constantes) : null;
+    }
+}
@@ -0,0 +1,425 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import pif.CodecHuffman.InfoCode;
+
+/**
+ * Codage de l'image par un arbre quaternaire de blocs, pour les images faites de grandes zones d'une seule couleur
+ * (documents numérisés, tuiles de cartes, schémas) : le codeur de Huffman y code chaque pixel, à au moins un bit par composante.
+ * L'image est découpée en bandes de blocs racines de {@link #LOG_RACINE} (64 x 64 pixels), rognés aux bords ; chaque bloc est partagé
+ * récursivement en quatre quadrants (haut-gauche, haut-droit, bas-gauche, bas-droit) jusqu'aux feuilles de 4 x 4 pixels.
+ * <p>
+ * Un bit précède chaque bloc : 1 si le bloc est d'une seule couleur, décrite alors par les résidus de son premier pixel,
+ * 0 sinon, suivi de ses quadrants ou, pour une feuille, des résidus de tous ses pixels, ligne après ligne.
+ * Les résidus sont ceux de la transformation de l'en-tête (prédicteur MED et décorrélation) : l'ordre des blocs garantit que
+ * les voisins gauche, haut et haut-gauche d'un pixel sont connus lorsqu'il est décodé, qu'ils viennent d'une feuille ou d'un bloc uniforme.
+ * Les trois composantes ont chacune leur table de Huffman ({@link TableCompacte}) en tête du flux.
+ * <p>
+ * Au décodage, un bloc uniforme est rempli par {@link Arrays#fill}, ligne par ligne, sans lire d'autre symbole que ceux de son premier pixel :
+ * le temps de décodage suit la complexité de l'image plutôt que son nombre de pixels. Le décodeur ne garde qu'une bande en mémoire.
+ * Le codage est sans perte : il n'est pas proposé avec le mode quasi sans perte.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class CodageBlocs {
+
+    // Logarithme en base 2 de la taille des feuilles, qui ne sont plus partagées (4 x 4 pixels)
+    static final int LOG_FEUILLE = 2;
+
+    // Logarithme en base 2 de la taille des blocs racines choisie par l'encodeur, inscrit dans l'en-tête (64 x 64 pixels)
+    static final int LOG_RACINE = 6;
+
+    // Transformation des composantes des feuilles et des couleurs des blocs uniformes
+    static final Transformation TRANSFORMATION = new Transformation(Transformation.MED, true);
+
+    // Nombre de tables : une par composante
+    private static final int NB_TABLES = 3;
+
+    // Dimensions de l'image
+    private final int largeur;
+    private final int hauteur;
+
+    // Couleur RVB de chaque bloc uniforme, ou -1, pour chaque niveau de l'arbre (0 : les feuilles), ligne de blocs après ligne de blocs
+    private final int[][] couleurs;
+
+    // Résidus de chaque composante, pour l'image entière
+    private int[][] residus;
+
+    // Longueurs des codes de chaque table, et taille du flux de bits qui suit les tables
+    private int[][] tables;
+    private long bitsFlux;
+
+    private CodageBlocs(int largeur, int hauteur, int[][] couleurs) {
+        this.largeur = largeur;
+        this.hauteur = hauteur;
+        this.couleurs = couleurs;
+    }
+
+    /**
+     * Cherche les blocs uniformes d'une image, calcule les résidus et les tables de Huffman du codage.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite (dans le tas ou non).
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return Le codage, prêt à être estimé ou écrit, ou <code>null</code> si aucune feuille n'est uniforme
+     * (le codage ne ferait qu'ajouter un bit par bloc) ou si l'image n'a aucun pixel.
+     */
+    static CodageBlocs analyser(IntBuffer pixels, int l, int h) {
+        if (l == 0 || h == 0) {
+            return null;
+        }
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int niveaux = LOG_RACINE - LOG_FEUILLE + 1;
+        int[][] couleurs = new int[niveaux][];
+        couleurs[0] = feuilles(pixels, l, h);
+        boolean uniforme = false;
+        for (int couleur : couleurs[0]) {
+            uniforme |= couleur >= 0;
+        }
+        if (!uniforme) {
+            Instrumentation.fin(Instrumentation.Phase.HISTOGRAMME, debut, 0, (long) l * h);
+            return null;
+        }
+
+        // Un bloc est uniforme si ses quadrants présents le sont, de la même couleur
+        for (int n = 1; n < niveaux; n++) {
+            int colonnes = colonnes(l, n);
+            int rangees = colonnes(h, n);
+            int colonnesFilles = colonnes(l, n - 1);
+            int rangeesFilles = colonnes(h, n - 1);
+            int[] filles = couleurs[n - 1];
+            int[] blocs = new int[colonnes * rangees];
+            for (int by = 0; by < rangees; by++) {
+                for (int bx = 0; bx < colonnes; bx++) {
+                    int couleur = filles[2 * by * colonnesFilles + 2 * bx];
+                    for (int q = 1; q < 4 && couleur >= 0; q++) {
+                        int fx = 2 * bx + (q & 1);
+                        int fy = 2 * by + (q >> 1);
+                        if (fx < colonnesFilles && fy < rangeesFilles && filles[fy * colonnesFilles + fx] != couleur) {
+                            couleur = -1;
+                        }
+                    }
+                    blocs[by * colonnes + bx] = couleur;
+                }
+            }
+            couleurs[n] = blocs;
+        }
+        Instrumentation.fin(Instrumentation.Phase.HISTOGRAMME, debut, 0, (long) l * h);
+
+        CodageBlocs codage = new CodageBlocs(l, h, couleurs);
+        codage.residus = TRANSFORMATION.appliquer(pixels, l, h);
+        codage.construireTables();
+        return codage;
+    }
+
+    // @return La couleur RVB de chaque feuille uniforme, ou -1, en une passe ligne par ligne sur l'image
+    private static int[] feuilles(IntBuffer pixels, int l, int h) {
+        int colonnes = colonnes(l, 0);
+        int[] feuilles = new int[colonnes * colonnes(h, 0)];
+        int masque = (1 << LOG_FEUILLE) - 1;
+        LignesPixels lignes = new LignesPixels(pixels, l);
+        int[] source = lignes.tableau();
+        for (int y = 0; y < h; y++) {
+            int base = (y >> LOG_FEUILLE) * colonnes;
+            for (int x = 0, j = lignes.ligne(y); x < l; x++, j++) {
+                int couleur = source[j] & 0xFFFFFF;
+                int i = base + (x >> LOG_FEUILLE);
+                if ((y & masque) == 0 && (x & masque) == 0) {
+                    // Premier pixel de la feuille
+                    feuilles[i] = couleur;
+                } else if (feuilles[i] != couleur) {
+                    feuilles[i] = -1;
+                }
+            }
+        }
+        return feuilles;
+    }
+
+    // @return Le nombre de blocs du niveau n sur une dimension de l'image
+    private static int colonnes(int dimension, int n) {
+        int log = LOG_FEUILLE + n;
+        return (dimension + (1 << log) - 1) >> log;
+    }
+
+    // Calcule les fréquences des symboles, les longueurs des codes et la taille du flux
+    private void construireTables() {
+        int[][] frequences = new int[NB_TABLES][256];
+        long noeuds = 0;
+        int niveau = couleurs.length - 1;
+        for (int by = 0; by < colonnes(hauteur, niveau); by++) {
+            for (int bx = 0; bx < colonnes(largeur, niveau); bx++) {
+                noeuds += compter(niveau, bx, by, frequences);
+            }
+        }
+        tables = new int[NB_TABLES][];
+        bitsFlux = noeuds;
+        for (int t = 0; t < NB_TABLES; t++) {
+            tables[t] = CodeurHuffman.longueurs(frequences[t]);
+            for (int s = 0; s < 256; s++) bitsFlux += (long) frequences[t][s] * tables[t][s];
+        }
+    }
+
+    // Compte les symboles d'un bloc et de ses descendants ; renvoie le nombre de blocs, un bit chacun
+    private int compter(int niveau, int bx, int by, int[][] frequences) {
+        int log = LOG_FEUILLE + niveau;
+        int x0 = bx << log;
+        int y0 = by << log;
+        if (couleurs[niveau][by * colonnes(largeur, niveau) + bx] >= 0) {
+            compterPixel(y0 * largeur + x0, frequences);
+            return 1;
+        }
+        int noeuds = 1;
+        if (niveau > 0) {
+            for (int q = 0; q < 4; q++) {
+                int fx = 2 * bx + (q & 1);
+                int fy = 2 * by + (q >> 1);
+                if ((fx << (log - 1)) < largeur && (fy << (log - 1)) < hauteur) {
+                    noeuds += compter(niveau - 1, fx, fy, frequences);
+                }
+            }
+            return noeuds;
+        }
+        int x1 = Math.min(x0 + (1 << log), largeur);
+        int y1 = Math.min(y0 + (1 << log), hauteur);
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                compterPixel(y * largeur + x, frequences);
+            }
+        }
+        return noeuds;
+    }
+
+    // Compte les résidus des trois composantes d'un pixel
+    private void compterPixel(int i, int[][] frequences) {
+        for (int k = 0; k < NB_TABLES; k++) {
+            frequences[k][residus[k][i]]++;
+        }
+    }
+
+    /**
+     * Calcule la taille exacte du codage, tables comprises.
+     * @return Le nombre de bits, avant le complément à l'octet du flux.
+     */
+    long estimerBits() {
+        return 8L * TableCompacte.taille(tables) + bitsFlux;
+    }
+
+    /**
+     * Écrit les tables puis le flux de bits des blocs, bande après bande.
+     * @param sortie Le flux de destination, positionné juste après l'en-tête.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    void ecrire(OutputStream sortie) throws IOException {
+        TableCompacte.ecrire(tables, sortie);
+        InfoCode[][] codes = new InfoCode[NB_TABLES][256];
+        for (int t = 0; t < NB_TABLES; t++) {
+            for (InfoCode info : CodecHuffman.genererCodesCanoniques(tables[t]).values()) {
+                codes[t][info.valeur] = info;
+            }
+        }
+
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        FluxSortieBits fsb = new FluxSortieBits(sortie);
+        int niveau = couleurs.length - 1;
+        for (int by = 0; by < colonnes(hauteur, niveau); by++) {
+            for (int bx = 0; bx < colonnes(largeur, niveau); bx++) {
+                ecrire(niveau, bx, by, fsb, codes);
+            }
+        }
+        fsb.vider();
+        Instrumentation.fin(Instrumentation.Phase.ENCODAGE_FLUX, debut, fsb.getOctetsEcrits(), (long) largeur * hauteur);
+    }
+
+    // Écrit un bloc : son bit d'uniformité, puis son premier pixel, ses quadrants ou tous ses pixels
+    private void ecrire(int niveau, int bx, int by, FluxSortieBits fsb, InfoCode[][] codes) throws IOException {
+        int log = LOG_FEUILLE + niveau;
+        int x0 = bx << log;
+        int y0 = by << log;
+        if (couleurs[niveau][by * colonnes(largeur, niveau) + bx] >= 0) {
+            fsb.ecrireBit(1);
+            ecrirePixel(y0 * largeur + x0, fsb, codes);
+            return;
+        }
+        fsb.ecrireBit(0);
+        if (niveau > 0) {
+            for (int q = 0; q < 4; q++) {
+                int fx = 2 * bx + (q & 1);
+                int fy = 2 * by + (q >> 1);
+                if ((fx << (log - 1)) < largeur && (fy << (log - 1)) < hauteur) {
+                    ecrire(niveau - 1, fx, fy, fsb, codes);
+                }
+            }
+            return;
+        }
+        int x1 = Math.min(x0 + (1 << log), largeur);
+        int y1 = Math.min(y0 + (1 << log), hauteur);
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                ecrirePixel(y * largeur + x, fsb, codes);
+            }
+        }
+    }
+
+    // Écrit les codes des résidus des trois composantes d'un pixel
+    private void ecrirePixel(int i, FluxSortieBits fsb, InfoCode[][] codes) throws IOException {
+        for (int k = 0; k < NB_TABLES; k++) {
+            CodageLZ.ecrireCode(fsb, codes[k][residus[k][i]]);
+        }
+    }
+
+    /**
+     * Ouvre le décodage d'un flux de blocs.
+     * @param entete L'en-tête de l'image, qui donne la transformation et la taille des blocs racines.
+     * @param entree Le flux positionné juste après l'en-tête.
+     * @return Le décodeur, positionné sur la première bande.
+     * @throws IOException Si les tables sont illisibles.
+     */
+    static Decodeur ouvrirDecodeur(EnTetePIF entete, InputStream entree) throws IOException {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int[][] tables = TableCompacte.lire(entree, NB_TABLES);
+        NoeudHuffman[] racines = new NoeudHuffman[NB_TABLES];
+        for (int t = 0; t < NB_TABLES; t++) {
+            racines[t] = CodecHuffman.reconstruireArbreCanonique(tables[t]);
+        }
+        Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, 0);
+        return new Decodeur(entete, entree, racines);
+    }
+
+    /**
+     * Restitue les pixels d'un flux de blocs, une bande de la hauteur des blocs racines à la fois.
+     * Les composantes reconstruites de la bande sont gardées ligne par ligne, précédées de la dernière ligne de la bande précédente,
+     * pour prédire les pixels des feuilles.
+     */
+    static final class Decodeur {
+        // Flux de bits
+        private final FluxEntreeBits feb;
+
+        // Racines des arbres de Huffman des trois composantes
+        private final NoeudHuffman[] racines;
+
+        // Transformation à annuler
+        private final Transformation transformation;
+
+        // Dimensions de l'image, et logarithme de la taille des blocs racines
+        private final int largeur;
+        private final int hauteur;
+        private final int logRacine;
+
+        // Composantes reconstruites de chaque canal : la ligne 0 est la dernière de la bande précédente, puis viennent celles de la bande
+        private final int[][][] composantes;
+
+        // Première ligne de la prochaine bande, dans l'image
+        private int y;
+
+        private Decodeur(EnTetePIF entete, InputStream entree, NoeudHuffman[] racines) {
+            this.feb = new FluxEntreeBits(entree);
+            this.racines = racines;
+            this.transformation = entete.getTransformation();
+            this.largeur = entete.getLargeur();
+            this.hauteur = entete.getHauteur();
+            this.logRacine = entete.getBlocs();
+            this.composantes = new int[NB_TABLES][(1 << logRacine) + 1][largeur];
+        }
+
+        // @return La hauteur des bandes (celle des blocs racines), la dernière pouvant être plus courte
+        int getHauteurBande() {
+            return 1 << logRacine;
+        }
+
+        /**
+         * Décode la bande suivante.
+         * @param sortie Le tableau recevant les pixels ARGB de la bande, ligne après ligne.
+         * @param decalage L'indice du premier pixel de la bande dans <code>sortie</code>.
+         * @return Le nombre de lignes décodées : la hauteur des bandes, moins pour la dernière.
+         * @throws IOException Si le flux est corrompu ou tronqué, ou si toutes les bandes ont été lues.
+         */
+        int decoderBande(int[] sortie, int decalage) throws IOException {
+            if (y >= hauteur) {
+                throw new EOFException("Toutes les bandes ont été lues");
+            }
+            int n = Math.min(1 << logRacine, hauteur - y);
+            for (int x = 0; x < largeur; x += 1 << logRacine) {
+                decoderBloc(logRacine, x, 0, n, sortie, decalage);
+            }
+            // La dernière ligne de la bande sert de ligne précédente à la suivante
+            for (int[][] canal : composantes) {
+                int[] echange = canal[0];
+                canal[0] = canal[n];
+                canal[n] = echange;
+            }
+            y += n;
+            return n;
+        }
+
+        // Décode le bloc de côté 2^log dont le coin est en colonne x et en ligne yb de la bande (de n lignes)
+        private void decoderBloc(int log, int x, int yb, int n, int[] sortie, int decalage) throws IOException {
+            int x1 = Math.min(x + (1 << log), largeur);
+            int y1 = Math.min(yb + (1 << log), n);
+            if (lireBit() == 1) {
+                // Bloc uniforme : son premier pixel est décodé, puis recopié sur chaque ligne du bloc
+                decoderPixel(x, yb, sortie, decalage);
+                int couleur = sortie[decalage + yb * largeur + x];
+                for (int yy = yb; yy < y1; yy++) {
+                    int debut = decalage + yy * largeur;
+                    Arrays.fill(sortie, debut + x, debut + x1, couleur);
+                    for (int[][] canal : composantes) {
+                        Arrays.fill(canal[yy + 1], x, x1, canal[yb + 1][x]);
+                    }
+                }
+                return;
+            }
+            if (log > LOG_FEUILLE) {
+                int moitie = 1 << (log - 1);
+                for (int q = 0; q < 4; q++) {
+                    int fx = x + (q & 1) * moitie;
+                    int fy = yb + (q >> 1) * moitie;
+                    if (fx < largeur && fy < n) {
+                        decoderBloc(log - 1, fx, fy, n, sortie, decalage);
+                    }
+                }
+                return;
+            }
+            for (int yy = yb; yy < y1; yy++) {
+                for (int xx = x; xx < x1; xx++) {
+                    decoderPixel(xx, yy, sortie, decalage);
+                }
+            }
+        }
+
+        // Décode les trois composantes d'un pixel de la bande, prédites à partir de leurs voisins déjà connus
+        private void decoderPixel(int x, int yb, int[] sortie, int decalage) throws IOException {
+            for (int k = 0; k < NB_TABLES; k++) {
+                int[] ligne = composantes[k][yb + 1];
+                ligne[x] = (lireSymbole(racines[k]) + transformation.predire(ligne, composantes[k][yb], x, y + yb)) & 0xFF;
+            }
+            sortie[decalage + yb * largeur + x] = transformation.assembler(composantes[0][yb + 1][x], composantes[1][yb + 1][x],
+                    composantes[2][yb + 1][x]);
+        }
+
+        // Décode un symbole en parcourant l'arbre selon les bits lus
+        private int lireSymbole(NoeudHuffman racine) throws IOException {
+            NoeudHuffman courant = racine;
+            while (!courant.estFeuille()) {
+                courant = (lireBit() == 0) ? courant.gauche : courant.droit;
+                if (courant == null) {
+                    throw new IOException("Code de Huffman invalide");
+                }
+            }
+            if (courant.valeur < 0) {
+                throw new IOException("Symbole absent de la table");
+            }
+            return courant.valeur;
+        }
+
+        // Lit un bit, en signalant la fin de flux
+        private int lireBit() throws IOException {
+            int bit = feb.lireBit();
+            if (bit < 0) throw new EOFException("Fin de flux inattendue");
+            return bit;
+        }
+    }
+}
@@ -0,0 +1,607 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import pif.CodecHuffman.InfoCode;
+
+/**
+ * Codage des pixels par correspondances, à la manière de LZ77, en amont des codes de Huffman.
+ * Le codeur de Huffman code chaque symbole isolément : une icône répétée, un motif de texture ou une zone de texte identique
+ * à une autre coûte autant de bits que la première fois. Ici, les pixels (RVB, alpha ignoré) sont découpés en jetons :
+ * une suite de littéraux, puis une copie de <code>longueur</code> pixels situés <code>distance</code> pixels plus tôt,
+ * dans une fenêtre de {@link #FENETRE} pixels (la ligne du dessus est ainsi à une distance égale à la largeur).
+ * <p>
+ * Les correspondances sont cherchées par des chaînes de hachage sur trois pixels consécutifs, avec une profondeur et une longueur
+ * jugée suffisante bornées selon l'{@link Effort} : l'effort rapide n'explore que quelques candidats et n'indexe pas l'intérieur
+ * des copies, l'effort maximal explore davantage et diffère un choix lorsque le pixel suivant offre une copie plus longue.
+ * <p>
+ * Le flux commence par six tables de Huffman ({@link TableCompacte}) : longueur des suites de littéraux, composantes des littéraux
+ * (rouge, vert, bleu), longueur et distance des copies. Les littéraux sont codés par leur écart au pixel précédent,
+ * celui du vert étant retranché du rouge et du bleu. Les longueurs et distances sont codées par classe ({@link #classe(int)})
+ * suivie de bits complémentaires. Au décodage, une copie est un {@link System#arraycopy} dans un anneau d'historique.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class CodageLZ {
+
+    // Logarithme en base 2 de la taille de la fenêtre, inscrit dans l'en-tête
+    static final int LOG_FENETRE = 18;
+
+    // Nombre de pixels en arrière où une copie peut puiser
+    static final int FENETRE = 1 << LOG_FENETRE;
+
+    // Plus courte copie codée (en dessous, des littéraux coûtent moins cher)
+    static final int LONGUEUR_MIN = 3;
+
+    // Tables du flux, dans leur ordre d'écriture
+    private static final int SUITES = 0;
+    private static final int ROUGE = 1;
+    private static final int VERT = 2;
+    private static final int BLEU = 3;
+    private static final int LONGUEURS = 4;
+    private static final int DISTANCES = 5;
+    private static final int NB_TABLES = 6;
+
+    // Nombre de bits du hachage de trois pixels
+    private static final int BITS_HACHAGE = 16;
+
+    // Composantes RVB de chaque pixel
+    private final int[] pixels;
+
+    // Jetons : nombre de littéraux, puis longueur et distance de la copie (0 pour le dernier jeton, sans copie)
+    private int[] suites = new int[1024];
+    private int[] longueurs = new int[1024];
+    private int[] distances = new int[1024];
+    private int nbJetons;
+
+    // Longueurs des codes de chaque table, et taille du flux de bits qui suit les tables
+    private int[][] tables;
+    private long bitsFlux;
+
+    private CodageLZ(int[] pixels) {
+        this.pixels = pixels;
+    }
+
+    /**
+     * Découpe une image en littéraux et copies, et calcule les tables de Huffman des jetons.
+     * La recherche a besoin d'un accès libre à toute la fenêtre : les composantes sont copiées dans un tableau du tas,
+     * moins encombrant que les trois canaux que matérialise le codage sans correspondances.
+     * @param source Les pixels de l'image, de la position 0 à la limite (dans le tas ou non).
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @param effort Le niveau d'effort, qui borne la recherche.
+     * @return Le découpage, prêt à être estimé ou écrit.
+     */
+    static CodageLZ analyser(IntBuffer source, int l, int h, Effort effort) {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int[] pixels = new int[l * h];
+        LignesPixels lignes = new LignesPixels(source, l);
+        int[] tableau = lignes.tableau();
+        for (int y = 0, i = 0; y < h; y++) {
+            for (int x = 0, j = lignes.ligne(y); x < l; x++, j++, i++) {
+                pixels[i] = tableau[j] & 0xFFFFFF;
+            }
+        }
+        CodageLZ codage = new CodageLZ(pixels);
+        new Recherche(pixels, effort).decouper(codage);
+        Instrumentation.fin(Instrumentation.Phase.TRANSFORMATION, debut, 0, pixels.length);
+
+        debut = Instrumentation.debut();
+        codage.construireTables();
+        Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, pixels.length);
+        return codage;
+    }
+
+    // Ajoute un jeton au découpage
+    private void ajouter(int suite, int longueur, int distance) {
+        if (nbJetons == suites.length) {
+            suites = Arrays.copyOf(suites, 2 * nbJetons);
+            longueurs = Arrays.copyOf(longueurs, 2 * nbJetons);
+            distances = Arrays.copyOf(distances, 2 * nbJetons);
+        }
+        suites[nbJetons] = suite;
+        longueurs[nbJetons] = longueur;
+        distances[nbJetons] = distance;
+        nbJetons++;
+    }
+
+    // Calcule les fréquences des symboles, les longueurs des codes et la taille du flux
+    private void construireTables() {
+        int[][] frequences = new int[NB_TABLES][256];
+        long complements = 0;
+        int n = pixels.length;
+        int pos = 0;
+        for (int k = 0; k < nbJetons; k++) {
+            complements += compter(frequences[SUITES], suites[k]);
+            for (int fin = pos + suites[k]; pos < fin; pos++) {
+                int litteral = litteral(pos);
+                frequences[ROUGE][litteral >>> 16]++;
+                frequences[VERT][(litteral >>> 8) & 0xFF]++;
+                frequences[BLEU][litteral & 0xFF]++;
+            }
+            if (pos < n) {
+                complements += compter(frequences[LONGUEURS], longueurs[k] - LONGUEUR_MIN);
+                complements += compter(frequences[DISTANCES], distances[k] - 1);
+                pos += longueurs[k];
+            }
+        }
+        tables = new int[NB_TABLES][];
+        bitsFlux = complements;
+        for (int t = 0; t < NB_TABLES; t++) {
+            tables[t] = CodeurHuffman.longueurs(frequences[t]);
+            for (int s = 0; s < 256; s++) bitsFlux += (long) frequences[t][s] * tables[t][s];
+        }
+    }
+
+    // Compte la classe d'une valeur et renvoie le nombre de ses bits complémentaires
+    private static int compter(int[] frequences, int valeur) {
+        int c = classe(valeur);
+        frequences[c]++;
+        return bitsSupplementaires(c);
+    }
+
+    // Symboles d'un littéral (rouge, vert, bleu sur un octet chacun) : écart au pixel précédent, vert retranché du rouge et du bleu
+    private int litteral(int pos) {
+        int p = pixels[pos];
+        int q = (pos > 0) ? pixels[pos - 1] : 0;
+        int dv = ((p >>> 8) & 0xFF) - ((q >>> 8) & 0xFF);
+        int dr = ((p >>> 16) & 0xFF) - ((q >>> 16) & 0xFF) - dv;
+        int db = (p & 0xFF) - (q & 0xFF) - dv;
+        return ((dr & 0xFF) << 16) | ((dv & 0xFF) << 8) | (db & 0xFF);
+    }
+
+    /**
+     * Calcule la taille exacte du codage, tables comprises.
+     * @return Le nombre de bits, avant le complément à l'octet du flux.
+     */
+    long estimerBits() {
+        return 8L * TableCompacte.taille(tables) + bitsFlux;
+    }
+
+    /**
+     * Écrit les tables puis le flux de bits des jetons.
+     * @param sortie Le flux de destination, positionné juste après l'en-tête.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    void ecrire(OutputStream sortie) throws IOException {
+        TableCompacte.ecrire(tables, sortie);
+        InfoCode[][] codes = new InfoCode[NB_TABLES][256];
+        for (int t = 0; t < NB_TABLES; t++) {
+            for (InfoCode info : CodecHuffman.genererCodesCanoniques(tables[t]).values()) {
+                codes[t][info.valeur] = info;
+            }
+        }
+
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        FluxSortieBits fsb = new FluxSortieBits(sortie);
+        int n = pixels.length;
+        int pos = 0;
+        for (int k = 0; k < nbJetons; k++) {
+            ecrireValeur(fsb, codes[SUITES], suites[k]);
+            for (int fin = pos + suites[k]; pos < fin; pos++) {
+                int litteral = litteral(pos);
+                ecrireCode(fsb, codes[ROUGE][litteral >>> 16]);
+                ecrireCode(fsb, codes[VERT][(litteral >>> 8) & 0xFF]);
+                ecrireCode(fsb, codes[BLEU][litteral & 0xFF]);
+            }
+            if (pos < n) {
+                ecrireValeur(fsb, codes[LONGUEURS], longueurs[k] - LONGUEUR_MIN);
+                ecrireValeur(fsb, codes[DISTANCES], distances[k] - 1);
+                pos += longueurs[k];
+            }
+        }
+        fsb.vider();
+        Instrumentation.fin(Instrumentation.Phase.ENCODAGE_FLUX, debut, fsb.getOctetsEcrits(), n);
+    }
+
+    // Écrit une valeur : le code de sa classe, puis ses bits complémentaires
+    private static void ecrireValeur(FluxSortieBits fsb, InfoCode[] codes, int valeur) throws IOException {
+        int c = classe(valeur);
+        ecrireCode(fsb, codes[c]);
+        int bits = bitsSupplementaires(c);
+        if (bits > 0) {
+            fsb.ecrireBits(valeur - base(c), bits);
+        }
+    }
+
+    // Écrit un code canonique
+    static void ecrireCode(FluxSortieBits fsb, InfoCode info) throws IOException {
+        if (info.longueur < 32) {
+            fsb.ecrireBits(info.codeEntier, info.longueur);
+        } else {
+            fsb.ecrireChaineBinaire(info.codeChaine);
+        }
+    }
+
+    /**
+     * Classe d'une valeur positive : les valeurs 0 à 15 sont leur propre classe ; au-delà, une classe réunit les valeurs
+     * de même bit de poids fort et de mêmes deux bits suivants, les bits restants étant écrits tels quels.
+     * @param valeur La valeur, positive ou nulle.
+     * @return La classe, de 0 à 123.
+     */
+    static int classe(int valeur) {
+        if (valeur < 16) {
+            return valeur;
+        }
+        int k = 31 - Integer.numberOfLeadingZeros(valeur);
+        return 16 + ((k - 4) << 2) + ((valeur >>> (k - 2)) & 3);
+    }
+
+    // Nombre de bits complémentaires des valeurs d'une classe
+    static int bitsSupplementaires(int classe) {
+        return (classe < 16) ? 0 : ((classe - 16) >> 2) + 2;
+    }
+
+    // Plus petite valeur d'une classe
+    static int base(int classe) {
+        if (classe < 16) {
+            return classe;
+        }
+        int k = ((classe - 16) >> 2) + 4;
+        return (1 << k) | ((classe & 3) << (k - 2));
+    }
+
+    /**
+     * Recherche des correspondances par chaînes de hachage : pour chaque pixel indexé, la tête de sa chaîne (par hachage
+     * des trois pixels qui commencent en lui) et le pixel précédent de même hachage, dans un tableau circulaire de la taille de la fenêtre.
+     */
+    private static final class Recherche {
+        // Pixels RVB de l'image
+        private final int[] pixels;
+
+        // Dernier pixel indexé pour chaque hachage, ou -1
+        private final int[] tetes = new int[1 << BITS_HACHAGE];
+
+        // Pixel précédent de même hachage, indexé modulo la taille du tableau
+        private final int[] precedents;
+
+        // Nombre maximal de candidats examinés par recherche
+        private final int profondeur;
+
+        // Longueur au-delà de laquelle une copie est retenue sans chercher mieux
+        private final int suffisante;
+
+        // Vrai pour indexer chaque pixel des copies, faux pour n'indexer que leur début
+        private final boolean indexerCopies;
+
+        // Vrai pour différer une copie lorsque le pixel suivant en offre une plus longue
+        private final boolean paresseuse;
+
+        // Résultat de la dernière recherche
+        private int longueur;
+        private int distance;
+
+        Recherche(int[] pixels, Effort effort) {
+            this.pixels = pixels;
+            Arrays.fill(tetes, -1);
+            // Une petite image n'a pas besoin d'une fenêtre entière
+            this.precedents = new int[Math.min(FENETRE, Integer.highestOneBit(Math.max(1, pixels.length - 1)) << 1)];
+            switch (effort) {
+                case RAPIDE:
+                    profondeur = 4;
+                    suffisante = 32;
+                    indexerCopies = false;
+                    paresseuse = false;
+                    break;
+                case MAX:
+                    profondeur = 128;
+                    suffisante = 4096;
+                    indexerCopies = true;
+                    paresseuse = true;
+                    break;
+                default:
+                    profondeur = 32;
+                    suffisante = 256;
+                    indexerCopies = true;
+                    paresseuse = false;
+            }
+        }
+
+        // Découpe l'image en jetons, ajoutés au codage
+        void decouper(CodageLZ codage) {
+            int n = pixels.length;
+            int debut = 0;
+            int i = 0;
+            while (i < n) {
+                chercher(i);
+                if (longueur < LONGUEUR_MIN) {
+                    indexer(i);
+                    i++;
+                    continue;
+                }
+                boolean indexe = false;
+                if (paresseuse) {
+                    // Tant que le pixel suivant offre une copie plus longue, le pixel courant devient un littéral
+                    while (i + 1 < n) {
+                        indexer(i);
+                        indexe = true;
+                        int l = longueur;
+                        int d = distance;
+                        chercher(i + 1);
+                        if (longueur <= l) {
+                            longueur = l;
+                            distance = d;
+                            break;
+                        }
+                        i++;
+                        indexe = false;
+                    }
+                }
+                codage.ajouter(i - debut, longueur, distance);
+                int fin = i + longueur;
+                if (!indexe) {
+                    indexer(i);
+                }
+                if (indexerCopies) {
+                    for (int j = i + 1; j < fin; j++) {
+                        indexer(j);
+                    }
+                }
+                i = fin;
+                debut = i;
+            }
+            if (debut < n) {
+                codage.ajouter(n - debut, 0, 0);
+            }
+        }
+
+        // Hachage des trois pixels commençant en i
+        private int hachage(int i) {
+            int h = pixels[i] * 0x9E3779B1 + pixels[i + 1] * 0x85EBCA6B + pixels[i + 2] * 0xC2B2AE35;
+            return (h ^ (h >>> 15)) >>> (32 - BITS_HACHAGE);
+        }
+
+        // Insère un pixel en tête de sa chaîne
+        private void indexer(int i) {
+            if (i + LONGUEUR_MIN > pixels.length) {
+                return;
+            }
+            int h = hachage(i);
+            precedents[i & (precedents.length - 1)] = tetes[h];
+            tetes[h] = i;
+        }
+
+        // Cherche la plus longue copie pour le pixel i parmi les candidats de sa chaîne
+        private void chercher(int i) {
+            longueur = 0;
+            distance = 0;
+            int n = pixels.length;
+            if (i + LONGUEUR_MIN > n) {
+                return;
+            }
+            int max = n - i;
+            int limite = i - FENETRE;
+            int candidat = tetes[hachage(i)];
+            for (int essais = profondeur; candidat >= 0 && candidat >= limite && essais > 0; essais--) {
+                // Le pixel qui allongerait la meilleure copie est comparé d'abord : la plupart des candidats s'arrêtent là
+                if (pixels[candidat + longueur] == pixels[i + longueur] && pixels[candidat] == pixels[i]) {
+                    int l = 1;
+                    while (l < max && pixels[candidat + l] == pixels[i + l]) {
+                        l++;
+                    }
+                    if (l > longueur) {
+                        longueur = l;
+                        distance = i - candidat;
+                        if (l >= suffisante || l == max) {
+                            break;
+                        }
+                    }
+                }
+                candidat = precedents[candidat & (precedents.length - 1)];
+            }
+        }
+    }
+
+    /**
+     * Ouvre le décodage des pixels d'un flux de correspondances.
+     * @param entete L'en-tête de l'image, qui donne la taille de la fenêtre.
+     * @param entree Le flux positionné juste après l'en-tête.
+     * @return Le décodeur, positionné sur le premier pixel.
+     * @throws IOException Si les tables sont illisibles.
+     */
+    static Decodeur ouvrirDecodeur(EnTetePIF entete, InputStream entree) throws IOException {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int[][] tables = TableCompacte.lire(entree, NB_TABLES);
+        NoeudHuffman[] racines = new NoeudHuffman[NB_TABLES];
+        for (int t = 0; t < NB_TABLES; t++) {
+            racines[t] = CodecHuffman.reconstruireArbreCanonique(tables[t]);
+        }
+        Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, 0);
+        return new Decodeur(entree, racines, (long) entete.getLargeur() * entete.getHauteur(), 1 << entete.getCorrespondances());
+    }
+
+    /**
+     * Restitue les pixels d'un flux de correspondances, par tranches de longueur quelconque (une ligne à la fois pour {@link DecodeurLignes}).
+     * Chaque pixel produit est rangé dans un anneau d'au moins deux fenêtres, où les copies puisent par {@link System#arraycopy} :
+     * une copie qui chevauche sa source (distance inférieure à la longueur) est faite par blocs dont la taille double,
+     * le motif déjà recopié servant de source au bloc suivant.
+     */
+    static final class Decodeur {
+        // Flux de bits
+        private final FluxEntreeBits feb;
+
+        // Racines des arbres de Huffman des six tables
+        private final NoeudHuffman[] racines;
+
+        // Nombre total de pixels de l'image
+        private final long total;
+
+        // Distance maximale d'une copie
+        private final int fenetre;
+
+        // Pixels ARGB déjà produits, indexés modulo la taille de l'anneau
+        private final int[] anneau;
+        private final int masque;
+
+        // Indice du prochain pixel à produire
+        private long position;
+
+        // Littéraux restant à lire dans le jeton en cours
+        private int litteraux;
+
+        // Vrai si la copie du jeton en cours n'a pas encore été lue
+        private boolean copieAttendue;
+
+        // Pixels restant à copier, et distance de la copie en cours
+        private int copie;
+        private int distance;
+
+        private Decodeur(InputStream entree, NoeudHuffman[] racines, long total, int fenetre) {
+            this.feb = new FluxEntreeBits(entree);
+            this.racines = racines;
+            this.total = total;
+            this.fenetre = fenetre;
+            // Deux fenêtres évitent qu'une copie n'écrase sa source ; l'image entière suffit si elle est plus petite
+            long taille = Math.min(2L * fenetre, Math.max(1L, Long.highestOneBit(Math.max(1L, total - 1)) << 1));
+            this.anneau = new int[(int) taille];
+            this.masque = anneau.length - 1;
+        }
+
+        /**
+         * Décode les pixels suivants.
+         * @param sortie Le tableau recevant les pixels ARGB.
+         * @param decalage L'indice du premier pixel dans <code>sortie</code>.
+         * @param n Le nombre de pixels à décoder.
+         * @throws IOException Si le flux est corrompu ou tronqué.
+         */
+        void decoder(int[] sortie, int decalage, int n) throws IOException {
+            if (position + n > total) {
+                throw new EOFException("Tous les pixels ont été lus");
+            }
+            long fin = position + n;
+            while (position < fin) {
+                long depart = position;
+                if (litteraux > 0) {
+                    int k = (int) Math.min(litteraux, fin - position);
+                    lireLitteraux(k);
+                    litteraux -= k;
+                } else if (copie > 0) {
+                    int k = (int) Math.min(copie, fin - position);
+                    copier(k);
+                    copie -= k;
+                } else if (copieAttendue) {
+                    copieAttendue = false;
+                    if (position < total) {
+                        lireCopie();
+                    }
+                    continue;
+                } else {
+                    litteraux = lireValeur(racines[SUITES]);
+                    if (litteraux > total - position) {
+                        throw new IOException("Suite de littéraux invalide : " + litteraux);
+                    }
+                    copieAttendue = true;
+                    continue;
+                }
+                // Les pixels produits sont recopiés de l'anneau vers la sortie
+                int produits = (int) (position - depart);
+                int dans = decalage + (int) (depart - (fin - n));
+                int i = (int) (depart & masque);
+                while (produits > 0) {
+                    int k = Math.min(produits, anneau.length - i);
+                    System.arraycopy(anneau, i, sortie, dans, k);
+                    dans += k;
+                    produits -= k;
+                    i = 0;
+                }
+            }
+        }
+
+        // Lit la longueur et la distance d'une copie
+        private void lireCopie() throws IOException {
+            int longueur = lireValeur(racines[LONGUEURS]) + LONGUEUR_MIN;
+            int d = lireValeur(racines[DISTANCES]) + 1;
+            if (longueur > total - position) {
+                throw new IOException("Longueur de copie invalide : " + longueur);
+            }
+            if (d < 1 || d > fenetre || d > position) {
+                throw new IOException("Distance de copie invalide : " + d);
+            }
+            copie = longueur;
+            distance = d;
+        }
+
+        // Décode k littéraux
+        private void lireLitteraux(int k) throws IOException {
+            int precedent = (position > 0) ? anneau[(int) ((position - 1) & masque)] : 0;
+            for (int j = 0; j < k; j++) {
+                int sr = lireSymbole(racines[ROUGE]);
+                int dv = lireSymbole(racines[VERT]);
+                int sb = lireSymbole(racines[BLEU]);
+                int r = ((precedent >>> 16) + sr + dv) & 0xFF;
+                int v = ((precedent >>> 8) + dv) & 0xFF;
+                int b = (precedent + sb + dv) & 0xFF;
+                precedent = 0xFF000000 | (r << 16) | (v << 8) | b;
+                anneau[(int) (position & masque)] = precedent;
+                position++;
+            }
+        }
+
+        // Recopie k pixels de la copie en cours
+        private void copier(int k) {
+            // Le motif se répète avec la période de la distance : une fois recopié, il sert de source deux fois plus longue
+            int d = distance;
+            while (k > 0) {
+                int m = Math.min(k, d);
+                copierAnneau(position - d, position, m);
+                position += m;
+                k -= m;
+                if (2L * d <= fenetre) {
+                    d *= 2;
+                }
+            }
+        }
+
+        // Copie m pixels de l'anneau, en découpant aux bords de celui-ci
+        private void copierAnneau(long source, long destination, int m) {
+            while (m > 0) {
+                int s = (int) (source & masque);
+                int t = (int) (destination & masque);
+                int k = Math.min(m, Math.min(anneau.length - s, anneau.length - t));
+                System.arraycopy(anneau, s, anneau, t, k);
+                source += k;
+                destination += k;
+                m -= k;
+            }
+        }
+
+        // Lit une valeur : sa classe, puis ses bits complémentaires
+        private int lireValeur(NoeudHuffman racine) throws IOException {
+            int c = lireSymbole(racine);
+            if (c > classe(Integer.MAX_VALUE)) {
+                throw new IOException("Classe invalide : " + c);
+            }
+            int valeur = base(c);
+            for (int b = bitsSupplementaires(c) - 1; b >= 0; b--) {
+                valeur |= lireBit() << b;
+            }
+            return valeur;
+        }
+
+        // Décode un symbole en parcourant l'arbre selon les bits lus
+        private int lireSymbole(NoeudHuffman racine) throws IOException {
+            NoeudHuffman courant = racine;
+            while (!courant.estFeuille()) {
+                courant = (lireBit() == 0) ? courant.gauche : courant.droit;
+                if (courant == null) {
+                    throw new IOException("Code de Huffman invalide");
+                }
+            }
+            if (courant.valeur < 0) {
+                throw new IOException("Symbole absent de la table");
+            }
+            return courant.valeur;
+        }
+
+        // Lit un bit, en signalant la fin de flux
+        private int lireBit() throws IOException {
+            int bit = feb.lireBit();
+            if (bit < 0) throw new EOFException("Fin de flux inattendue");
+            return bit;
+        }
+    }
+}
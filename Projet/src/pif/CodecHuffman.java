@@ -70,6 +70,22 @@ public class CodecHuffman
         	return frequences;
     	}
     	/**
+    	* Calcule la fréquence d'apparition de chaque valeur d'octet sur les <code>nb</code> premières cases d'un tableau.
+    	*
+    	* @param donnees Tableau contenant les symboles (0-255).
+    	* @param nb Nombre de cases à prendre en compte.
+     	* @return Un tableau de 256 entiers où l'indice correspond à la valeur du symbole.
+     	*/
+    	public static int[] calculerFrequences(int[] donnees, int nb)
+    	{
+        	int[] frequences = new int[256];
+        	for (int i = 0; i < nb; i++)
+        	{
+        		frequences[donnees[i] & 0xFF]++;
+        	}
+        	return frequences;
+    	}
+    	/**
      	* Construit l'arbre de Huffman à l'aide d'une file de priorité.
      	*
      	* @param frequences Tableau des fréquences de chaque symbole.
@@ -77,6 +93,7 @@ public class CodecHuffman
      	*/
     	public static NoeudHuffman construireArbre(int[] frequences)
     	{
+        	Instrumentation.Mesure debut = Instrumentation.debut();
         	PriorityQueue<NoeudHuffman> filePriorite = new PriorityQueue<>();
         	for (int i = 0; i < frequences.length; i++)
         	{
@@ -96,7 +113,9 @@ public class CodecHuffman
             		NoeudHuffman parent = new NoeudHuffman(gauche, droit);
             		filePriorite.add(parent);
         	}
-        	return filePriorite.poll();
+        	NoeudHuffman racine = filePriorite.poll();
+        	Instrumentation.fin(Instrumentation.Phase.ARBRE, debut, 0, racine.frequence);
+        	return racine;
     	}
     	/**
     	* Génère les codes de Huffman initiaux par un parcours récursif de l'arbre.
@@ -0,0 +1,163 @@
+package pif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface commune aux algorithmes de codage entropique utilisés pour compresser les canaux d'une image PIF.
+ * Un codeur reçoit plusieurs canaux de symboles (0-255) de même longueur et les code de manière entrelacée :
+ * le symbole 0 de chaque canal, puis le symbole 1 de chaque canal, etc. Il écrit lui-même ses tables en tête de son flux.
+ * Les canaux sont répartis en groupes (une partition) : les canaux d'un même groupe partagent une seule table, calculée sur leurs fréquences cumulées.
+ * L'identifiant du codeur est enregistré dans l'en-tête du fichier afin que le décodeur sache lequel utiliser.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public interface CodeurEntropique {
+
+    // Codage de Huffman canonique (format historique)
+    CodeurEntropique HUFFMAN = new CodeurHuffman();
+
+    // Codage rANS statique à états entrelacés
+    CodeurEntropique RANS = new CodeurRANS();
+
+    /**
+     * Décodeur séquentiel renvoyé par {@link CodeurEntropique#ouvrirDecodeur}.
+     * Les symboles sont restitués dans l'ordre d'encodage, par paquets de taille quelconque.
+     */
+    interface Decodeur {
+        /**
+         * Décode les <code>n</code> prochains symboles de chaque canal.
+         * @param destination Un tableau par canal, rempli de l'indice 0 à <code>n - 1</code>.
+         * @param n Le nombre de symboles à décoder par canal.
+         * @throws IOException Si le flux est tronqué ou corrompu.
+         */
+        void decoder(int[][] destination, int n) throws IOException;
+    }
+
+    // @return L'identifiant du codeur, tel qu'écrit dans l'en-tête du fichier
+    int getIdentifiant();
+
+    // @return Le nom lisible du codeur
+    String getNom();
+
+    /**
+     * Encode des canaux de symboles entrelacés, précédés d'une table par groupe de canaux.
+     * Le flux de sortie n'est ni fermé ni vidé par le codeur au-delà de ses propres tampons.
+     * @param canaux Un tableau de symboles (0-255) par canal.
+     * @param nbSymboles Le nombre de symboles à coder dans chaque canal.
+     * @param groupes Pour chaque canal, l'indice (à partir de 0) du groupe dont il partage la table.
+     * @param sortie Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    void encoder(int[][] canaux, int nbSymboles, int[] groupes, OutputStream sortie) throws IOException;
+
+    /**
+     * Encode des canaux de symboles entrelacés, chacun avec sa propre table.
+     * @param canaux Un tableau de symboles (0-255) par canal.
+     * @param nbSymboles Le nombre de symboles à coder dans chaque canal.
+     * @param sortie Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    default void encoder(int[][] canaux, int nbSymboles, OutputStream sortie) throws IOException {
+        encoder(canaux, nbSymboles, partitionIdentite(canaux.length), sortie);
+    }
+
+    /**
+     * Lit les tables du codeur et prépare le décodage des symboles qui les suivent.
+     * @param entree Le flux positionné au début des données du codeur.
+     * @param groupes Pour chaque canal entrelacé, l'indice du groupe dont il partage la table.
+     * @return Un décodeur séquentiel.
+     * @throws IOException Si les tables sont illisibles.
+     */
+    Decodeur ouvrirDecodeur(InputStream entree, int[] groupes) throws IOException;
+
+    /**
+     * Prépare le décodage de canaux ayant chacun leur propre table.
+     * @param entree Le flux positionné au début des données du codeur.
+     * @param nbCanaux Le nombre de canaux entrelacés.
+     * @return Un décodeur séquentiel.
+     * @throws IOException Si les tables sont illisibles.
+     */
+    default Decodeur ouvrirDecodeur(InputStream entree, int nbCanaux) throws IOException {
+        return ouvrirDecodeur(entree, partitionIdentite(nbCanaux));
+    }
+
+    /**
+     * Estime sans encoder la taille, en bits, d'une table et des symboles qu'elle code.
+     * @param frequences Les fréquences des 256 symboles codés par la table.
+     * @return Le nombre de bits de la table et des données.
+     */
+    long estimerBits(int[] frequences);
+
+    /**
+     * Retourne la partition où chaque canal forme son propre groupe.
+     * @param nbCanaux Le nombre de canaux.
+     * @return Le tableau <code>{0, 1, ..., nbCanaux - 1}</code>.
+     */
+    static int[] partitionIdentite(int nbCanaux) {
+        int[] groupes = new int[nbCanaux];
+        for (int c = 0; c < nbCanaux; c++) {
+            groupes[c] = c;
+        }
+        return groupes;
+    }
+
+    /**
+     * Compte les groupes d'une partition.
+     * @param groupes Pour chaque canal, l'indice de son groupe.
+     * @return Le nombre de groupes (indice maximal + 1).
+     */
+    static int nombreGroupes(int[] groupes) {
+        int max = -1;
+        for (int g : groupes) {
+            max = Math.max(max, g);
+        }
+        return max + 1;
+    }
+
+    /**
+     * Retrouve un codeur à partir de l'identifiant lu dans un en-tête.
+     * @param identifiant L'identifiant du codeur.
+     * @return Le codeur correspondant.
+     * @throws IOException Si l'identifiant est inconnu.
+     */
+    static CodeurEntropique parIdentifiant(int identifiant) throws IOException {
+        for (CodeurEntropique c : tous()) {
+            if (c.getIdentifiant() == identifiant) {
+                return c;
+            }
+        }
+        throw new IOException("Codeur entropique inconnu : " + identifiant);
+    }
+
+    /**
+     * Retrouve le codeur décrit par un en-tête, y compris le codage de ses tables.
+     * @param entete L'en-tête lu.
+     * @return Le codeur correspondant.
+     * @throws IOException Si l'identifiant est inconnu.
+     */
+    static CodeurEntropique pourEntete(EnTetePIF entete) throws IOException {
+        return entete.isTablesCompactes() ? CodeurHuffman.TABLES_COMPACTES : parIdentifiant(entete.getCodeur());
+    }
+
+    /**
+     * Retrouve un codeur à partir de son nom (insensible à la casse).
+     * @param nom Le nom du codeur.
+     * @return Le codeur correspondant.
+     * @throws IllegalArgumentException Si le nom est inconnu.
+     */
+    static CodeurEntropique parNom(String nom) {
+        for (CodeurEntropique c : tous()) {
+            if (c.getNom().equalsIgnoreCase(nom)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Codeur entropique inconnu : " + nom);
+    }
+
+    // @return Tous les codeurs disponibles
+    static CodeurEntropique[] tous() {
+        return new CodeurEntropique[] { HUFFMAN, RANS };
+    }
+}
@@ -0,0 +1,286 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import pif.CodecHuffman.InfoCode;
+
+/**
+ * Codeur entropique par codage de Huffman canonique, s'appuyant sur {@link CodecHuffman}.
+ * Le flux produit est celui du format PIF historique : une table de 256 longueurs de codes par canal (ou par groupe de canaux),
+ * suivie d'un unique flux de bits où les codes des canaux se succèdent pixel après pixel.
+ * Les tables peuvent aussi être codées de façon compacte par {@link TableCompacte} (instance {@link #TABLES_COMPACTES}).
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public class CodeurHuffman implements CodeurEntropique {
+
+    // Identifiant du codeur dans l'en-tête
+    public static final int IDENTIFIANT = 0;
+
+    // Codeur de Huffman dont les tables sont codées de façon compacte
+    static final CodeurHuffman TABLES_COMPACTES = new CodeurHuffman(true);
+
+    // Vrai si les tables sont codées par TableCompacte plutôt que sur 256 octets
+    private final boolean tablesCompactes;
+
+    /**
+     * Construit le codeur de Huffman du format historique, dont les tables occupent 256 octets chacune.
+     */
+    public CodeurHuffman() {
+        this(false);
+    }
+
+    private CodeurHuffman(boolean tablesCompactes) {
+        this.tablesCompactes = tablesCompactes;
+    }
+
+    @Override
+    public int getIdentifiant() {
+        return IDENTIFIANT;
+    }
+
+    @Override
+    public String getNom() {
+        return "huffman";
+    }
+
+    @Override
+    public void encoder(int[][] canaux, int nbSymboles, int[] groupes, OutputStream sortie) throws IOException {
+        int nbCanaux = canaux.length;
+        int nbGroupes = CodeurEntropique.nombreGroupes(groupes);
+        InfoCode[][] codesGroupes = new InfoCode[nbGroupes][256];
+        int[][] tables = new int[nbGroupes][];
+
+        // Calcul des longueurs canoniques et stockage de la table de chaque groupe
+        for (int g = 0; g < nbGroupes; g++) {
+            Instrumentation.Mesure debut = Instrumentation.debut();
+            int[] frequences = new int[256];
+            for (int c = 0; c < nbCanaux; c++) {
+                if (groupes[c] == g) {
+                    int[] f = CodecHuffman.calculerFrequences(canaux[c], nbSymboles);
+                    for (int s = 0; s < 256; s++) frequences[s] += f[s];
+                }
+            }
+            Instrumentation.fin(Instrumentation.Phase.HISTOGRAMME, debut, 0, nbSymboles);
+
+            NoeudHuffman racine = CodecHuffman.construireArbre(frequences);
+            debut = Instrumentation.debut();
+            int[] longueurs = CodecHuffman.genererLongueursCanoniques(CodecHuffman.genererCodesInitiaux(racine));
+            for (InfoCode info : CodecHuffman.genererCodesCanoniques(longueurs).values()) {
+                codesGroupes[g][info.valeur] = info;
+            }
+            tables[g] = longueurs;
+            Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, nbSymboles);
+        }
+        if (tablesCompactes) {
+            TableCompacte.ecrire(tables, sortie);
+        } else {
+            for (int[] longueurs : tables) ecrireTable(sortie, longueurs);
+        }
+        InfoCode[][] codes = new InfoCode[nbCanaux][];
+        for (int c = 0; c < nbCanaux; c++) {
+            codes[c] = codesGroupes[groupes[c]];
+        }
+        ecrireFlux(canaux, nbSymboles, codes, sortie);
+    }
+
+    /**
+     * Écrit le flux de bits des canaux entrelacés, pixel après pixel, à partir de codes déjà construits.
+     * @param canaux Les symboles (0-255) de chaque canal.
+     * @param nbSymboles Le nombre de symboles de chaque canal.
+     * @param codes Les codes canoniques de chaque canal, indexés par symbole.
+     * @param sortie Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    static void ecrireFlux(int[][] canaux, int nbSymboles, InfoCode[][] codes, OutputStream sortie) throws IOException {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        EncodeurFlux encodeur = new EncodeurFlux(codes, sortie);
+        encodeur.encoder(canaux, nbSymboles);
+        encodeur.terminer();
+        Instrumentation.fin(Instrumentation.Phase.ENCODAGE_FLUX, debut, encodeur.getOctetsEcrits(), nbSymboles);
+    }
+
+    /**
+     * Écrit les tables de groupes de canaux dont les fréquences sont connues d'avance (par une première passe sur l'image),
+     * et prépare l'écriture du flux de bits par tranches successives, sans garder tous les symboles en mémoire ({@link ConversionBandes}).
+     * Pour les mêmes symboles, le flux produit est celui de {@link #encoder(int[][], int, int[], OutputStream)}.
+     * @param frequences Les fréquences cumulées des canaux de chaque groupe.
+     * @param groupes Le groupe de chaque canal.
+     * @param sortie Le flux de destination.
+     * @return L'encodeur du flux de bits.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    EncodeurFlux ouvrirEncodeur(int[][] frequences, int[] groupes, OutputStream sortie) throws IOException {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int[][] tables = new int[frequences.length][];
+        InfoCode[][] codesGroupes = new InfoCode[frequences.length][256];
+        for (int g = 0; g < frequences.length; g++) {
+            tables[g] = longueurs(frequences[g]);
+            for (InfoCode info : CodecHuffman.genererCodesCanoniques(tables[g]).values()) {
+                codesGroupes[g][info.valeur] = info;
+            }
+        }
+        Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, 0);
+        if (tablesCompactes) {
+            TableCompacte.ecrire(tables, sortie);
+        } else {
+            for (int[] longueurs : tables) ecrireTable(sortie, longueurs);
+        }
+        InfoCode[][] codes = new InfoCode[groupes.length][];
+        for (int c = 0; c < groupes.length; c++) {
+            codes[c] = codesGroupes[groupes[c]];
+        }
+        return new EncodeurFlux(codes, sortie);
+    }
+
+    /**
+     * Écrit le flux de bits des canaux entrelacés par tranches successives, à partir de codes déjà construits.
+     */
+    static final class EncodeurFlux {
+        // Flux de bits
+        private final FluxSortieBits fsb;
+
+        // Codes canoniques de chaque canal, indexés par symbole
+        private final InfoCode[][] codes;
+
+        EncodeurFlux(InfoCode[][] codes, OutputStream sortie) {
+            this.fsb = new FluxSortieBits(sortie);
+            this.codes = codes;
+        }
+
+        /**
+         * Écrit les codes d'une tranche de symboles, pixel après pixel.
+         * @param canaux Les symboles (0-255) de chaque canal.
+         * @param n Le nombre de symboles de chaque canal.
+         * @throws IOException En cas d'erreur d'E/S.
+         */
+        void encoder(int[][] canaux, int n) throws IOException {
+            int nbCanaux = canaux.length;
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < nbCanaux; c++) {
+                    InfoCode info = codes[c][canaux[c][i]];
+                    if (info.longueur < 32) {
+                        fsb.ecrireBits(info.codeEntier, info.longueur);
+                    } else {
+                        fsb.ecrireChaineBinaire(info.codeChaine);
+                    }
+                }
+            }
+        }
+
+        // @return Le nombre d'octets écrits jusqu'ici
+        long getOctetsEcrits() {
+            return fsb.getOctetsEcrits();
+        }
+
+        /**
+         * Complète le dernier octet et vide le flux de bits.
+         * @throws IOException En cas d'erreur d'E/S.
+         */
+        void terminer() throws IOException {
+            fsb.vider();
+        }
+    }
+
+    @Override
+    public Decodeur ouvrirDecodeur(InputStream entree, int[] groupes) throws IOException {
+        int nbCanaux = groupes.length;
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int nbGroupes = CodeurEntropique.nombreGroupes(groupes);
+        int[][] tables;
+        if (tablesCompactes) {
+            tables = TableCompacte.lire(entree, nbGroupes);
+        } else {
+            tables = new int[nbGroupes][];
+            for (int g = 0; g < nbGroupes; g++) tables[g] = lireTable(entree);
+        }
+        NoeudHuffman[] racinesGroupes = new NoeudHuffman[nbGroupes];
+        for (int g = 0; g < nbGroupes; g++) {
+            racinesGroupes[g] = CodecHuffman.reconstruireArbreCanonique(tables[g]);
+        }
+        Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, 0);
+        NoeudHuffman[] racines = new NoeudHuffman[nbCanaux];
+        for (int c = 0; c < nbCanaux; c++) {
+            racines[c] = racinesGroupes[groupes[c]];
+        }
+        return decodeurFlux(entree, racines);
+    }
+
+    /**
+     * Prépare la lecture du flux de bits des canaux entrelacés à partir d'arbres déjà construits.
+     * @param entree Le flux positionné au début du flux de bits.
+     * @param racines La racine de l'arbre de Huffman de chaque canal.
+     * @return Un décodeur restituant les symboles des canaux.
+     */
+    static Decodeur decodeurFlux(InputStream entree, NoeudHuffman[] racines) {
+        int nbCanaux = racines.length;
+        FluxEntreeBits feb = new FluxEntreeBits(entree);
+
+        return (destination, n) -> {
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < nbCanaux; c++) {
+                    destination[c][i] = lireValeur(feb, racines[c]);
+                }
+            }
+        };
+    }
+
+    @Override
+    public long estimerBits(int[] frequences) {
+        int[] longueurs = longueurs(frequences);
+        long bits = 8L * (tablesCompactes ? TableCompacte.taille(new int[][] { longueurs }) : 256);
+        for (int s = 0; s < 256; s++) {
+            bits += (long) frequences[s] * longueurs[s];
+        }
+        return bits;
+    }
+
+    /**
+     * Calcule les longueurs des codes de Huffman canoniques pour des fréquences données.
+     * @param frequences Les fréquences des 256 symboles.
+     * @return Un tableau de 256 longueurs (0 pour un symbole absent).
+     */
+    static int[] longueurs(int[] frequences) {
+        return CodecHuffman.genererLongueursCanoniques(CodecHuffman.genererCodesInitiaux(CodecHuffman.construireArbre(frequences)));
+    }
+
+    /**
+     * Décode un symbole unique en parcourant l'arbre de Huffman selon les bits lus.
+     * @param feb Le flux d'entrée bit à bit.
+     * @param racine La racine de l'arbre de Huffman pour le canal concerné.
+     * @return La valeur décodée (0-255).
+     * @throws IOException Si la fin du fichier est atteinte prématurément.
+     */
+    private static int lireValeur(FluxEntreeBits feb, NoeudHuffman racine) throws IOException {
+        NoeudHuffman courant = racine;
+        while (!courant.estFeuille()) {
+            int bit = feb.lireBit();
+            if (bit == -1) throw new EOFException("Fin de flux inattendue");
+            courant = (bit == 0) ? courant.gauche : courant.droit;
+        }
+        return courant.valeur;
+    }
+
+    // Écrit les 256 octets d'une table de longueurs de codes
+    private static void ecrireTable(OutputStream os, int[] longueurs) throws IOException {
+        for (int l : longueurs) os.write(l);
+    }
+
+    // Lit les 256 octets d'une table de longueurs de codes, d'un seul tenant
+    private static int[] lireTable(InputStream is) throws IOException {
+        byte[] octets = new byte[256];
+        int lus = 0;
+        while (lus < octets.length) {
+            int r = is.read(octets, lus, octets.length - lus);
+            if (r < 0) throw new EOFException();
+            lus += r;
+        }
+        int[] longueurs = new int[256];
+        for (int i = 0; i < 256; i++) {
+            longueurs[i] = octets[i] & 0xFF;
+        }
+        return longueurs;
+    }
+}
@@ -0,0 +1,366 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Codeur entropique rANS (range Asymmetric Numeral Systems) statique à états entrelacés.
+ * Contrairement au codage de Huffman, qui arrondit chaque symbole à un nombre entier de bits, rANS code au plus près de l'entropie,
+ * ce qui profite surtout aux canaux très déséquilibrés. Les symboles successifs sont répartis à tour de rôle entre {@link #NB_ETATS}
+ * états indépendants partageant un même flux d'octets : les calculs de deux symboles voisins ne dépendent pas l'un de l'autre,
+ * ce qui permet au processeur de les exécuter en parallèle.
+ * <p>
+ * Format : pour chaque groupe de canaux, une table de fréquences normalisées (bitmap de présence de 32 octets, puis 2 octets par symbole présent),
+ * suivie de la longueur du flux d'octets (4 octets), puis du flux lui-même qui commence par l'état initial de chaque décodeur.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public class CodeurRANS implements CodeurEntropique {
+
+    // Identifiant du codeur dans l'en-tête
+    public static final int IDENTIFIANT = 1;
+
+    // Nombre d'états entrelacés
+    public static final int NB_ETATS = 4;
+
+    // Précision des fréquences : leur somme vaut 2^BITS_ECHELLE
+    private static final int BITS_ECHELLE = 14;
+    private static final int ECHELLE = 1 << BITS_ECHELLE;
+    private static final int MASQUE = ECHELLE - 1;
+
+    // Borne basse de l'intervalle de normalisation des états : un état reste dans [RANS_L, RANS_L << 8)
+    private static final long RANS_L = 1L << 23;
+
+    @Override
+    public int getIdentifiant() {
+        return IDENTIFIANT;
+    }
+
+    @Override
+    public String getNom() {
+        return "rans";
+    }
+
+    @Override
+    public void encoder(int[][] canaux, int nbSymboles, int[] groupes, OutputStream sortie) throws IOException {
+        int nbCanaux = canaux.length;
+        int nbGroupes = CodeurEntropique.nombreGroupes(groupes);
+        int[][] frequencesGroupes = new int[nbGroupes][];
+        int[][] cumulsGroupes = new int[nbGroupes][];
+
+        for (int g = 0; g < nbGroupes; g++) {
+            Instrumentation.Mesure debut = Instrumentation.debut();
+            int[] brutes = new int[256];
+            for (int c = 0; c < nbCanaux; c++) {
+                if (groupes[c] == g) {
+                    int[] f = CodecHuffman.calculerFrequences(canaux[c], nbSymboles);
+                    for (int s = 0; s < 256; s++) brutes[s] += f[s];
+                }
+            }
+            Instrumentation.fin(Instrumentation.Phase.HISTOGRAMME, debut, 0, nbSymboles);
+
+            debut = Instrumentation.debut();
+            frequencesGroupes[g] = normaliser(brutes);
+            cumulsGroupes[g] = cumuler(frequencesGroupes[g]);
+            ecrireTable(sortie, frequencesGroupes[g]);
+            Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, nbSymboles);
+        }
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int[][] frequences = new int[nbCanaux][];
+        int[][] cumuls = new int[nbCanaux][];
+        for (int c = 0; c < nbCanaux; c++) {
+            frequences[c] = frequencesGroupes[groupes[c]];
+            cumuls[c] = cumulsGroupes[groupes[c]];
+        }
+
+        // Le codage rANS se fait à rebours : le flux est rempli depuis la fin pour que le décodeur le lise dans l'ordre
+        long total = (long) nbSymboles * nbCanaux;
+        TamponInverse tampon = new TamponInverse((int) Math.max(64, Math.min(total / 2, 1 << 30)));
+        long[] etats = new long[NB_ETATS];
+        Arrays.fill(etats, RANS_L);
+
+        // Seuil de renormalisation de chaque symbole : ((RANS_L >> BITS_ECHELLE) << 8) * fréquence
+        long[][] seuils = new long[nbCanaux][256];
+        for (int c = 0; c < nbCanaux; c++) {
+            for (int s = 0; s < 256; s++) {
+                seuils[c][s] = ((RANS_L >> BITS_ECHELLE) << 8) * frequences[c][s];
+            }
+        }
+
+        // Parcours de la fin vers le début : le symbole d'indice global j utilise l'état j % NB_ETATS
+        int k = (int) ((total - 1) & (NB_ETATS - 1));
+        for (int i = nbSymboles - 1; i >= 0; i--) {
+            for (int c = nbCanaux - 1; c >= 0; c--) {
+                int s = canaux[c][i];
+                int f = frequences[c][s];
+                long x = etats[k];
+
+                // Renormalisation : on émet des octets tant que l'état coderait hors de l'intervalle
+                long xMax = seuils[c][s];
+                while (x >= xMax) {
+                    tampon.ajouter((int) (x & 0xFF));
+                    x >>>= 8;
+                }
+                int xi = (int) x;
+                etats[k] = ((long) (xi / f) << BITS_ECHELLE) + (xi % f) + cumuls[c][s];
+                k = (k - 1) & (NB_ETATS - 1);
+            }
+        }
+
+        // États finaux, lus en premier par le décodeur
+        for (int e = NB_ETATS - 1; e >= 0; e--) {
+            long x = etats[e];
+            for (int o = 0; o < 4; o++) {
+                tampon.ajouter((int) (x & 0xFF));
+                x >>>= 8;
+            }
+        }
+
+        ecrireEntier(sortie, tampon.taille());
+        sortie.write(tampon.octets, tampon.debut, tampon.taille());
+        Instrumentation.fin(Instrumentation.Phase.ENCODAGE_FLUX, debut, 4 + tampon.taille(), nbSymboles);
+    }
+
+    @Override
+    public Decodeur ouvrirDecodeur(InputStream entree, int[] groupes) throws IOException {
+        int nbCanaux = groupes.length;
+        int nbGroupes = CodeurEntropique.nombreGroupes(groupes);
+        byte[][] symbolesGroupes = new byte[nbGroupes][];
+        int[][] transitionsGroupes = new int[nbGroupes][];
+
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        for (int g = 0; g < nbGroupes; g++) {
+            int[] frequences = lireTable(entree);
+            int[] cumuls = cumuler(frequences);
+
+            // Tables indexées par la position dans [0, ECHELLE) : le symbole, et sa fréquence accolée à l'écart au début de son intervalle
+            symbolesGroupes[g] = new byte[ECHELLE];
+            transitionsGroupes[g] = new int[ECHELLE];
+            for (int s = 0; s < 256; s++) {
+                for (int p = cumuls[s]; p < cumuls[s + 1]; p++) {
+                    symbolesGroupes[g][p] = (byte) s;
+                    transitionsGroupes[g][p] = (frequences[s] << BITS_ECHELLE) | (p - cumuls[s]);
+                }
+            }
+        }
+        byte[][] symboles = new byte[nbCanaux][];
+        int[][] transitions = new int[nbCanaux][];
+        for (int c = 0; c < nbCanaux; c++) {
+            symboles[c] = symbolesGroupes[groupes[c]];
+            transitions[c] = transitionsGroupes[groupes[c]];
+        }
+        Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, 0);
+
+        int longueur = lireEntier(entree);
+        LecteurOctets lecteur = new LecteurOctets(entree, longueur);
+        long[] etats = new long[NB_ETATS];
+        for (int k = 0; k < NB_ETATS; k++) {
+            long x = 0;
+            for (int o = 0; o < 4; o++) {
+                x = (x << 8) | lecteur.lire();
+            }
+            etats[k] = x;
+        }
+
+        return new Decodeur() {
+            // Indice global du prochain symbole, qui détermine l'état utilisé
+            private int k = 0;
+
+            @Override
+            public void decoder(int[][] destination, int n) throws IOException {
+                for (int i = 0; i < n; i++) {
+                    for (int c = 0; c < nbCanaux; c++) {
+                        long x = etats[k];
+                        int position = (int) (x & MASQUE);
+                        int t = transitions[c][position];
+                        x = (t >>> BITS_ECHELLE) * (x >>> BITS_ECHELLE) + (t & MASQUE);
+                        while (x < RANS_L) {
+                            x = (x << 8) | lecteur.lire();
+                        }
+                        etats[k] = x;
+                        k = (k + 1) & (NB_ETATS - 1);
+                        destination[c][i] = symboles[c][position] & 0xFF;
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public long estimerBits(int[] frequences) {
+        int[] normees = normaliser(frequences);
+        double bits = 32 * 8;
+        for (int s = 0; s < 256; s++) {
+            if (frequences[s] > 0) {
+                bits += 16 + frequences[s] * (BITS_ECHELLE - Math.log(normees[s]) / Math.log(2));
+            }
+        }
+        return (long) Math.ceil(bits);
+    }
+
+    /**
+     * Ramène des fréquences brutes à une somme exacte de {@link #ECHELLE}, en conservant au moins 1 pour tout symbole présent.
+     * @param brutes Les fréquences observées.
+     * @return Les fréquences normalisées (toutes nulles si aucun symbole n'est présent).
+     */
+    static int[] normaliser(int[] brutes) {
+        long total = 0;
+        for (int f : brutes) total += f;
+        int[] normees = new int[256];
+        if (total == 0) {
+            return normees;
+        }
+
+        int somme = 0;
+        for (int s = 0; s < 256; s++) {
+            if (brutes[s] > 0) {
+                normees[s] = (int) Math.max(1, (long) brutes[s] * ECHELLE / total);
+                somme += normees[s];
+            }
+        }
+
+        // Correction de l'arrondi : on ajuste en priorité les symboles les plus fréquents, dont la précision relative souffre le moins
+        Integer[] ordre = new Integer[256];
+        for (int s = 0; s < 256; s++) ordre[s] = s;
+        Arrays.sort(ordre, (a, b) -> Integer.compare(normees[b], normees[a]));
+        int i = 0;
+        while (somme != ECHELLE) {
+            int s = ordre[i % 256];
+            if (somme < ECHELLE && normees[s] > 0) {
+                normees[s]++;
+                somme++;
+            } else if (somme > ECHELLE && normees[s] > 1) {
+                normees[s]--;
+                somme--;
+            } else {
+                i++;
+            }
+        }
+        return normees;
+    }
+
+    // Calcule les fréquences cumulées (début de l'intervalle de chaque symbole)
+    private static int[] cumuler(int[] frequences) {
+        int[] cumuls = new int[257];
+        for (int s = 0; s < 256; s++) {
+            cumuls[s + 1] = cumuls[s] + frequences[s];
+        }
+        return cumuls;
+    }
+
+    // Écrit une table de fréquences : bitmap de présence puis fréquence - 1 sur 16 bits pour chaque symbole présent
+    private static void ecrireTable(OutputStream os, int[] frequences) throws IOException {
+        for (int o = 0; o < 32; o++) {
+            int masque = 0;
+            for (int b = 0; b < 8; b++) {
+                if (frequences[o * 8 + b] > 0) masque |= 0x80 >> b;
+            }
+            os.write(masque);
+        }
+        for (int f : frequences) {
+            if (f > 0) {
+                os.write(((f - 1) >> 8) & 0xFF);
+                os.write((f - 1) & 0xFF);
+            }
+        }
+    }
+
+    // Lit une table de fréquences écrite par ecrireTable
+    private static int[] lireTable(InputStream is) throws IOException {
+        byte[] bitmap = lireOctets(is, 32);
+        int[] frequences = new int[256];
+        int somme = 0;
+        for (int s = 0; s < 256; s++) {
+            if ((bitmap[s >> 3] & (0x80 >> (s & 7))) != 0) {
+                byte[] f = lireOctets(is, 2);
+                frequences[s] = (((f[0] & 0xFF) << 8) | (f[1] & 0xFF)) + 1;
+                somme += frequences[s];
+            }
+        }
+        if (somme != 0 && somme != ECHELLE) {
+            throw new IOException("Table rANS invalide");
+        }
+        return frequences;
+    }
+
+    // Lit exactement n octets
+    private static byte[] lireOctets(InputStream is, int n) throws IOException {
+        byte[] octets = new byte[n];
+        int lus = 0;
+        while (lus < n) {
+            int r = is.read(octets, lus, n - lus);
+            if (r < 0) throw new EOFException();
+            lus += r;
+        }
+        return octets;
+    }
+
+    // Écrit un entier sur 32 bits
+    private static void ecrireEntier(OutputStream os, int val) throws IOException {
+        os.write(new byte[] { (byte) (val >> 24), (byte) (val >> 16), (byte) (val >> 8), (byte) val });
+    }
+
+    // Lit un entier sur 32 bits
+    private static int lireEntier(InputStream is) throws IOException {
+        byte[] o = lireOctets(is, 4);
+        return ((o[0] & 0xFF) << 24) | ((o[1] & 0xFF) << 16) | ((o[2] & 0xFF) << 8) | (o[3] & 0xFF);
+    }
+
+    /**
+     * Tampon d'octets rempli de la fin vers le début, qui double de taille lorsqu'il est plein.
+     */
+    private static final class TamponInverse {
+        private byte[] octets;
+        private int debut;
+
+        TamponInverse(int capacite) {
+            octets = new byte[capacite];
+            debut = capacite;
+        }
+
+        void ajouter(int octet) {
+            if (debut == 0) {
+                byte[] agrandi = new byte[octets.length * 2];
+                System.arraycopy(octets, 0, agrandi, octets.length, octets.length);
+                debut = octets.length;
+                octets = agrandi;
+            }
+            octets[--debut] = (byte) octet;
+        }
+
+        int taille() {
+            return octets.length - debut;
+        }
+    }
+
+    /**
+     * Lecture par blocs d'un nombre connu d'octets, pour éviter un appel à {@link InputStream#read()} par octet.
+     */
+    private static final class LecteurOctets {
+        private final InputStream entree;
+        private final byte[] bloc = new byte[1 << 16];
+        private int restants;
+        private int position;
+        private int disponibles;
+
+        LecteurOctets(InputStream entree, int longueur) {
+            this.entree = entree;
+            this.restants = longueur;
+        }
+
+        int lire() throws IOException {
+            if (position == disponibles) {
+                if (restants == 0) throw new EOFException("Fin de flux rANS inattendue");
+                int r = entree.read(bloc, 0, Math.min(bloc.length, restants));
+                if (r < 0) throw new EOFException("Fin de flux rANS inattendue");
+                restants -= r;
+                disponibles = r;
+                position = 0;
+            }
+            return bloc[position++] & 0xFF;
+        }
+    }
+}
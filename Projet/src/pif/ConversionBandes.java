@@ -0,0 +1,253 @@
+package pif;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Convertit en PIF une image source de grande taille (PNG, JPEG...) sans jamais la charger entière : l'{@link ImageReader} de son format
+ * en livre des bandes horizontales ({@link ImageReadParam#setSourceRegion}). Une première passe compte, bande après bande, les fréquences
+ * des résidus de chaque transformation candidate ; l'en-tête et les tables choisis, une seconde passe relit les bandes et code leurs lignes.
+ * La mémoire utilisée est celle d'une bande (source décodée et pixels ARGB), quelle que soit la hauteur de l'image :
+ * une image d'un milliard de pixels se convertit dans un tas de 2 Go.
+ * <p>
+ * Les transformations et les partitions des canaux sont choisies comme par {@link ImagePIF#sauvegarder(OutputStream, OptionsEncodage)},
+ * et le fichier est identique à celui-ci lorsque l'image n'a ni palette, ni correspondances, ni canaux redondants, ni blocs uniformes :
+ * ces analyses portent sur l'image entière et ne sont pas faites ici. Le codage en une passe ({@link OptionsEncodage#getPeriodeAdaptative()})
+ * ne lit les bandes qu'une fois, par un {@link EncodeurLignes}.
+ * <p>
+ * Les lecteurs des formats séquentiels (PNG, JPEG) décodent à nouveau les lignes qui précèdent chaque bande sans les garder :
+ * des bandes plus hautes réduisent ce travail au prix de la mémoire.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class ConversionBandes {
+
+    // Nombre de pixels visé par bande par défaut (32 Mo de pixels ARGB)
+    public static final int PIXELS_BANDE = 1 << 23;
+
+    // Lecteur de l'image source, et paramètres de lecture réutilisés d'une bande à l'autre
+    private final ImageReader lecteur;
+    private final ImageReadParam parametres;
+
+    // Dimensions de l'image source
+    private final int largeur;
+    private final int hauteur;
+
+    // Hauteur des bandes
+    private final int hauteurBande;
+
+    // Pixels ARGB de la bande en cours, ligne après ligne
+    private final int[] pixels;
+
+    // Dernière bande lue, réutilisée comme destination de la suivante lorsqu'elle a la même hauteur
+    private BufferedImage bande;
+
+    private ConversionBandes(ImageReader lecteur, int hauteurBande) throws IOException {
+        this.lecteur = lecteur;
+        this.parametres = lecteur.getDefaultReadParam();
+        this.largeur = lecteur.getWidth(0);
+        this.hauteur = lecteur.getHeight(0);
+        if ((long) largeur * hauteur > Integer.MAX_VALUE) {
+            throw new IOException("Image trop grande : " + largeur + " x " + hauteur);
+        }
+        this.hauteurBande = Math.max(1, Math.min(hauteurBande, hauteur));
+        this.pixels = new int[largeur * this.hauteurBande];
+    }
+
+    /**
+     * Convertit un fichier image en fichier PIF, par bandes d'environ {@link #PIXELS_BANDE} pixels.
+     * @param entree Le chemin de l'image source, dans un format lisible par <code>javax.imageio</code>.
+     * @param sortie Le chemin du fichier .pif.
+     * @param options Les options d'encodage.
+     * @return L'en-tête du fichier écrit.
+     * @throws IOException Si l'image est illisible, son format non supporté, ou en cas d'erreur d'E/S.
+     * @throws IllegalArgumentException Si les options demandent un autre codeur que Huffman, un dictionnaire ou des canaux séparés.
+     */
+    public static EnTetePIF convertir(String entree, String sortie, OptionsEncodage options) throws IOException {
+        try (ImageInputStream source = ImageIO.createImageInputStream(new File(entree));
+                OutputStream os = new BufferedOutputStream(new FileOutputStream(sortie), 1 << 16)) {
+            if (source == null) {
+                throw new IOException("Fichier illisible : " + entree);
+            }
+            return convertir(source, os, options, 0);
+        }
+    }
+
+    /**
+     * Convertit une image source en PIF, par bandes.
+     * @param source Le flux de l'image source, dans un format lisible par <code>javax.imageio</code> ; il n'est pas fermé.
+     * @param sortie Le flux de destination ; il n'est pas fermé.
+     * @param options Les options d'encodage.
+     * @param hauteurBande La hauteur des bandes, ou 0 pour des bandes d'environ {@link #PIXELS_BANDE} pixels.
+     * @return L'en-tête du fichier écrit.
+     * @throws IOException Si le format de l'image n'est pas supporté, ou en cas d'erreur d'E/S.
+     * @throws IllegalArgumentException Si les options demandent un autre codeur que Huffman, un dictionnaire ou des canaux séparés.
+     */
+    public static EnTetePIF convertir(ImageInputStream source, OutputStream sortie, OptionsEncodage options, int hauteurBande)
+            throws IOException {
+        if (options.getCodeur().getIdentifiant() != CodeurHuffman.IDENTIFIANT || options.getDictionnaire() != null
+                || options.isCanauxSepares()) {
+            // rANS code ses symboles à rebours, et les canaux séparés se suivent : seul un flux entrelacé s'écrit au fil des bandes
+            throw new IllegalArgumentException("La conversion par bandes n'admet que le codeur de Huffman, sans dictionnaire ni canaux séparés");
+        }
+        if (hauteurBande < 0) {
+            throw new IllegalArgumentException("Hauteur de bande invalide : " + hauteurBande);
+        }
+        Iterator<ImageReader> lecteurs = ImageIO.getImageReaders(source);
+        if (!lecteurs.hasNext()) {
+            throw new IOException("format non supporté");
+        }
+        ImageReader lecteur = lecteurs.next();
+        try {
+            lecteur.setInput(source, false, true);
+            int l = lecteur.getWidth(0);
+            int n = (hauteurBande > 0) ? hauteurBande : Math.max(1, PIXELS_BANDE / Math.max(1, l));
+            return new ConversionBandes(lecteur, n).convertir(sortie, options);
+        } finally {
+            lecteur.dispose();
+        }
+    }
+
+    // Lit l'image en deux passes (une seule pour le codage en une passe) et écrit le fichier PIF
+    private EnTetePIF convertir(OutputStream sortie, OptionsEncodage options) throws IOException {
+        if (options.getPeriodeAdaptative() > 0) {
+            EncodeurLignes encodeur = new EncodeurLignes(sortie, null, largeur, hauteur, options, false);
+            for (int y = 0; y < hauteur; y += hauteurBande) {
+                int n = lireBande(y);
+                encodeur.ecrireLignes(pixels, 0, n);
+            }
+            encodeur.close();
+            return encodeur.getEntete();
+        }
+
+        // Sans l'image entière, ni palette, ni correspondances, ni canaux redondants, ni blocs ne sont cherchés :
+        // seules les fréquences des résidus des transformations candidates sont nécessaires au choix de l'en-tête
+        // (hors de l'effort maximal, la transformation est fixée par les options)
+        Map<Integer, int[][]> histogrammes = new HashMap<>();
+        Transformation[] candidates;
+        if (options.getEffort() == Effort.MAX) {
+            candidates = Transformation.toutes();
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = candidates[i].avecPerte(options.getPerte());
+            }
+        } else {
+            EnTetePIF entete = PlanEncodage.choisirEntete(null, largeur, hauteur, options, histogrammes, null, null, null, null);
+            candidates = new Transformation[] { entete.getTransformation() };
+        }
+        int[][][] frequences = histogrammes(candidates);
+        reduire(frequences);
+        for (int i = 0; i < candidates.length; i++) {
+            histogrammes.put(candidates[i].getCle(), frequences[i]);
+        }
+        EnTetePIF entete = PlanEncodage.choisirEntete(null, largeur, hauteur, options, histogrammes, null, null, null, null);
+
+        entete.ecrire(sortie);
+        encoder(entete, histogrammes.get(entete.getTransformation().getCle()), (CodeurHuffman) PlanEncodage.codeur(options), sortie);
+        return entete;
+    }
+
+    // Première passe : compte les fréquences des résidus de chaque transformation, bande après bande
+    private int[][][] histogrammes(Transformation[] candidates) throws IOException {
+        int[][][] frequences = new int[candidates.length][3][256];
+        int[][][] precedente = new int[candidates.length][3][largeur];
+        int[][][] courante = new int[candidates.length][3][largeur];
+        int[][] residus = new int[3][largeur];
+        for (int y = 0; y < hauteur; y += hauteurBande) {
+            int n = lireBande(y);
+            Instrumentation.Mesure debut = Instrumentation.debut();
+            for (int i = 0; i < candidates.length; i++) {
+                for (int k = 0; k < n; k++) {
+                    candidates[i].appliquerLigne(pixels, k * largeur, largeur, y + k, precedente[i], courante[i], residus);
+                    for (int c = 0; c < 3; c++) {
+                        int[] f = frequences[i][c];
+                        for (int x = 0; x < largeur; x++) f[residus[c][x]]++;
+                    }
+                    int[][] echange = precedente[i];
+                    precedente[i] = courante[i];
+                    courante[i] = echange;
+                }
+            }
+            Instrumentation.fin(Instrumentation.Phase.HISTOGRAMME, debut, 0, (long) n * largeur * candidates.length);
+        }
+        return frequences;
+    }
+
+    // Divise les fréquences lorsque leur cumul sur les trois canaux, que font les tables partagées, dépasserait la capacité d'un int ;
+    // un symbole présent garde une fréquence non nulle, et donc un code
+    private void reduire(int[][][] frequences) {
+        long diviseur = 3L * largeur * hauteur / Integer.MAX_VALUE + 1;
+        if (diviseur == 1) {
+            return;
+        }
+        for (int[][] canaux : frequences) {
+            for (int[] f : canaux) {
+                for (int s = 0; s < 256; s++) {
+                    if (f[s] > 0) f[s] = (int) Math.max(1, f[s] / diviseur);
+                }
+            }
+        }
+    }
+
+    // Seconde passe : écrit les tables de l'en-tête retenu, puis relit les bandes et code leurs lignes
+    private void encoder(EnTetePIF entete, int[][] frequences, CodeurHuffman codeur, OutputStream sortie) throws IOException {
+        int[] groupes = entete.getGroupesCodes();
+        int[][] cumuls = new int[CodeurEntropique.nombreGroupes(groupes)][256];
+        for (int c = 0; c < 3; c++) {
+            for (int s = 0; s < 256; s++) cumuls[groupes[c]][s] += frequences[c][s];
+        }
+        CodeurHuffman.EncodeurFlux encodeur = codeur.ouvrirEncodeur(cumuls, groupes, sortie);
+
+        Transformation transformation = entete.getTransformation();
+        int[][] precedente = new int[3][largeur];
+        int[][] courante = new int[3][largeur];
+        int[][] residus = new int[3][largeur];
+        // Les durées sont cumulées ligne par ligne, et transmises une fois l'image codée
+        boolean mesures = Instrumentation.actif();
+        long dureeTransformation = 0;
+        long dureeEncodage = 0;
+        for (int y = 0; y < hauteur; y += hauteurBande) {
+            int n = lireBande(y);
+            for (int k = 0; k < n; k++) {
+                long t0 = mesures ? System.nanoTime() : 0;
+                transformation.appliquerLigne(pixels, k * largeur, largeur, y + k, precedente, courante, residus);
+                long t1 = mesures ? System.nanoTime() : 0;
+                encodeur.encoder(residus, largeur);
+                if (mesures) {
+                    dureeTransformation += t1 - t0;
+                    dureeEncodage += System.nanoTime() - t1;
+                }
+                int[][] echange = precedente;
+                precedente = courante;
+                courante = echange;
+            }
+        }
+        encodeur.terminer();
+        if (mesures) {
+            long nbPixels = (long) largeur * hauteur;
+            Instrumentation.enregistrer(Instrumentation.Phase.TRANSFORMATION, dureeTransformation, 0, nbPixels);
+            Instrumentation.enregistrer(Instrumentation.Phase.ENCODAGE_FLUX, dureeEncodage, encodeur.getOctetsEcrits(), nbPixels);
+        }
+    }
+
+    // Lit la bande commençant à la ligne y dans le tableau des pixels ; renvoie son nombre de lignes
+    private int lireBande(int y) throws IOException {
+        int n = Math.min(hauteurBande, hauteur - y);
+        parametres.setSourceRegion(new Rectangle(0, y, largeur, n));
+        parametres.setDestination(bande != null && bande.getHeight() == n ? bande : null);
+        bande = lecteur.read(0, parametres);
+        bande.getRGB(0, 0, largeur, n, pixels, 0, largeur);
+        return n;
+    }
+}
@@ -0,0 +1,197 @@
+package pif;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Générateur déterministe d'images de test, utilisé comme corpus commun pour les mesures de performance.
+ * Chaque classe d'images reproduit un type de contenu rencontré en pratique ; pour une même classe, une même taille et une même graine,
+ * les pixels produits sont identiques d'une exécution à l'autre, ce qui permet de comparer des résultats obtenus sur des versions différentes du code.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class CorpusSynthetique {
+
+    // Noms des classes d'images disponibles
+    public static final String[] CLASSES = { "photo", "degrade", "capture", "texte", "aplat", "palette" };
+
+    private CorpusSynthetique() {
+    }
+
+    /**
+     * Génère une image d'une classe donnée.
+     * @param classe Le nom de la classe (voir {@link #CLASSES}).
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     * @param graine La graine du générateur pseudo-aléatoire.
+     * @return L'image générée.
+     * @throws IllegalArgumentException Si la classe est inconnue.
+     */
+    public static ImagePIF generer(String classe, int largeur, int hauteur, long graine) {
+        Random alea = new Random(graine ^ classe.hashCode());
+        int[] pixels = new int[largeur * hauteur];
+        switch (classe) {
+            case "photo":
+                photo(pixels, largeur, hauteur, alea);
+                break;
+            case "degrade":
+                degrade(pixels, largeur, hauteur);
+                break;
+            case "capture":
+                capture(pixels, largeur, hauteur, alea);
+                break;
+            case "texte":
+                texte(pixels, largeur, hauteur, alea);
+                break;
+            case "aplat":
+                Arrays.fill(pixels, 0xFF000000 | alea.nextInt(0x1000000));
+                break;
+            case "palette":
+                palette(pixels, largeur, hauteur, alea);
+                break;
+            default:
+                throw new IllegalArgumentException("Classe d'images inconnue : " + classe);
+        }
+        return new ImagePIF(largeur, hauteur, pixels);
+    }
+
+    // Champ de bruit lissé sur plusieurs échelles, plus un grain fin : proche d'une photographie naturelle
+    private static void photo(int[] pixels, int l, int h, Random alea) {
+        int[][] canaux = new int[3][];
+        for (int c = 0; c < 3; c++) {
+            double[] champ = new double[l * h];
+            double amplitude = 96;
+            for (int pas = 128; pas >= 4; pas /= 2) {
+                ajouterBruitLisse(champ, l, h, pas, amplitude, alea);
+                amplitude /= 2;
+            }
+            canaux[c] = new int[l * h];
+            for (int i = 0; i < champ.length; i++) {
+                canaux[c][i] = borner((int) (128 + champ[i] + alea.nextGaussian() * 3));
+            }
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | (canaux[0][i] << 16) | (canaux[1][i] << 8) | canaux[2][i];
+        }
+    }
+
+    // Ajoute à un champ un bruit aléatoire défini sur une grille de pas donné et interpolé bilinéairement
+    private static void ajouterBruitLisse(double[] champ, int l, int h, int pas, double amplitude, Random alea) {
+        int gl = l / pas + 2;
+        int gh = h / pas + 2;
+        double[] grille = new double[gl * gh];
+        for (int i = 0; i < grille.length; i++) {
+            grille[i] = (alea.nextDouble() * 2 - 1) * amplitude;
+        }
+        for (int y = 0; y < h; y++) {
+            int gy = y / pas;
+            double fy = (y % pas) / (double) pas;
+            for (int x = 0; x < l; x++) {
+                int gx = x / pas;
+                double fx = (x % pas) / (double) pas;
+                double haut = grille[gy * gl + gx] * (1 - fx) + grille[gy * gl + gx + 1] * fx;
+                double bas = grille[(gy + 1) * gl + gx] * (1 - fx) + grille[(gy + 1) * gl + gx + 1] * fx;
+                champ[y * l + x] += haut * (1 - fy) + bas * fy;
+            }
+        }
+    }
+
+    // Dégradés linéaires indépendants sur les trois canaux
+    private static void degrade(int[] pixels, int l, int h) {
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < l; x++) {
+                int r = x * 255 / Math.max(1, l - 1);
+                int v = y * 255 / Math.max(1, h - 1);
+                int b = (x + y) * 255 / Math.max(1, l + h - 2);
+                pixels[y * l + x] = 0xFF000000 | (r << 16) | (v << 8) | b;
+            }
+        }
+    }
+
+    // Interface graphique : fond uni, fenêtres avec barre de titre, boutons et lignes de texte
+    private static void capture(int[] pixels, int l, int h, Random alea) {
+        remplir(pixels, l, 0, 0, l, h, 0xFFE8E8E8);
+        int nbFenetres = 3 + alea.nextInt(4);
+        for (int f = 0; f < nbFenetres; f++) {
+            int fl = l / 4 + alea.nextInt(l / 2 + 1);
+            int fh = h / 4 + alea.nextInt(h / 2 + 1);
+            int fx = alea.nextInt(Math.max(1, l - fl));
+            int fy = alea.nextInt(Math.max(1, h - fh));
+            remplir(pixels, l, fx, fy, fl, fh, 0xFFFFFFFF);
+            remplir(pixels, l, fx, fy, fl, 22, 0xFF3366AA);
+            for (int ly = fy + 32; ly < fy + fh - 30; ly += 16) {
+                lignesDeMots(pixels, l, fx + 10, ly, fl - 20, 0xFF202020, alea);
+            }
+            remplir(pixels, l, fx + fl - 90, fy + fh - 28, 80, 20, 0xFFCCCCCC);
+        }
+    }
+
+    // Page de texte noir sur fond blanc
+    private static void texte(int[] pixels, int l, int h, Random alea) {
+        remplir(pixels, l, 0, 0, l, h, 0xFFFFFFFF);
+        for (int y = 8; y < h - 12; y += 14) {
+            lignesDeMots(pixels, l, 8, y, l - 16, 0xFF000000, alea);
+        }
+    }
+
+    // Pixel art à 16 couleurs : aplats par blocs avec un tramage régulier
+    private static void palette(int[] pixels, int l, int h, Random alea) {
+        int[] couleurs = new int[16];
+        for (int i = 0; i < couleurs.length; i++) {
+            couleurs[i] = 0xFF000000 | alea.nextInt(0x1000000);
+        }
+        int bloc = 8;
+        int bl = (l + bloc - 1) / bloc;
+        int[] blocs = new int[bl * ((h + bloc - 1) / bloc)];
+        for (int i = 0; i < blocs.length; i++) {
+            blocs[i] = alea.nextInt(4) == 0 ? alea.nextInt(16) : (i > 0 ? blocs[i - 1] : 0);
+        }
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < l; x++) {
+                int indice = blocs[(y / bloc) * bl + x / bloc];
+                if (((x ^ y) & 1) == 0 && indice % 3 == 0) {
+                    indice = (indice + 1) % 16;
+                }
+                pixels[y * l + x] = couleurs[indice];
+            }
+        }
+    }
+
+    // Dessine une ligne de « mots » : des glyphes rectangulaires de hauteur fixe séparés par des espaces
+    private static void lignesDeMots(int[] pixels, int l, int x0, int y0, int largeurMax, int couleur, Random alea) {
+        int x = x0;
+        int fin = x0 + largeurMax;
+        while (x < fin - 8) {
+            int lettres = 2 + alea.nextInt(7);
+            for (int i = 0; i < lettres && x < fin - 6; i++) {
+                int glyphe = alea.nextInt(1 << 12);
+                for (int gy = 0; gy < 4; gy++) {
+                    for (int gx = 0; gx < 3; gx++) {
+                        if ((glyphe >> (gy * 3 + gx) & 1) != 0) {
+                            remplir(pixels, l, x + gx * 2, y0 + gy * 2, 2, 2, couleur);
+                        }
+                    }
+                }
+                x += 7;
+            }
+            x += 6;
+        }
+    }
+
+    // Remplit un rectangle, découpé aux bords de l'image
+    private static void remplir(int[] pixels, int l, int x, int y, int rl, int rh, int couleur) {
+        int h = pixels.length / Math.max(1, l);
+        int x1 = Math.min(l, x + rl);
+        int y1 = Math.min(h, y + rh);
+        for (int j = Math.max(0, y); j < y1; j++) {
+            for (int i = Math.max(0, x); i < x1; i++) {
+                pixels[j * l + i] = couleur;
+            }
+        }
+    }
+
+    // Ramène une composante dans [0, 255]
+    private static int borner(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+}
@@ -0,0 +1,404 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Restitue les pixels d'une image PIF ligne après ligne, en annulant la {@link Transformation} des composantes à la volée.
+ * Seules la ligne en cours et la ligne précédente de chaque canal sont conservées en mémoire : un transcodage, une somme de contrôle
+ * ou un sous-échantillonnage peuvent ainsi traiter une image sans jamais matérialiser son tableau de pixels.
+ * Les lignes sont lues dans l'ordre, soit une à une ({@link #lireLigne()}), soit par un récepteur ({@link #lireLignes(int, Recepteur)}) ;
+ * l'appelant peut s'arrêter à tout moment, les lignes restantes ne sont alors jamais décodées.
+ * Une lecture partielle (région, sous-échantillonnage) n'assemble que les pixels demandés : les lignes écartées sont passées
+ * par {@link #sauterLigne()} et seules certaines colonnes des autres sont restituées ({@link #lireLigne(int[], int, int, int, int)}).
+ * Pour un fichier à canaux séparés, les flux compressés des canaux sont gardés en mémoire (leur taille compressée, et non celle de l'image) ;
+ * pour un fichier codé par blocs ({@link CodageBlocs}), c'est une bande de la hauteur des blocs racines qui est décodée à la fois.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class DecodeurLignes implements AutoCloseable {
+
+    /**
+     * Reçoit les lignes décodées par {@link DecodeurLignes#lireLignes(int, Recepteur)}.
+     */
+    @FunctionalInterface
+    public interface Recepteur {
+        /**
+         * Traite une ligne décodée.
+         * @param y L'indice de la ligne.
+         * @param ligne Les pixels ARGB de la ligne ; le tableau est réutilisé pour la ligne suivante.
+         * @throws IOException Pour interrompre le décodage en cas d'erreur d'E/S du récepteur.
+         */
+        void recevoir(int y, int[] ligne) throws IOException;
+    }
+
+    // En-tête de l'image
+    private final EnTetePIF entete;
+
+    // Flux à fermer avec le décodeur, ou null s'il appartient à l'appelant
+    private final InputStream fluxPossede;
+
+    // Décodeur entropique restituant les résidus des trois canaux (null pour une image sans pixel)
+    private final CodeurEntropique.Decodeur decodeur;
+
+    // Décodeur restituant directement les pixels d'une image codée par correspondances, ou null
+    private final CodageLZ.Decodeur correspondances;
+
+    // Décodeur restituant les pixels d'une image codée par blocs, une bande à la fois, ou null
+    private final CodageBlocs.Decodeur blocs;
+
+    // Pixels de la bande en cours d'une image codée par blocs (null sinon), avec l'indice de la prochaine ligne à restituer et le nombre de lignes
+    private final int[] bande;
+    private int ligneBande;
+    private int lignesBande;
+
+    // Transformation à annuler
+    private final Transformation transformation;
+
+    // Couleur de chacun des 256 indices pour une image à palette, ou null
+    private final int[] couleurs;
+
+    // Largeur de l'image
+    private final int largeur;
+
+    // Pour chaque canal, l'indice de sa ligne parmi celles des canaux codés, ou -1 pour un canal constant
+    private final int[] origines;
+
+    // Ligne de chaque canal constant, remplie une fois pour toutes (null pour les autres canaux)
+    private final int[][] lignesConstantes;
+
+    // Résidus de la ligne en cours, puis lignes reconstruites courante et précédente de chaque canal codé
+    private final int[][] residus;
+    private int[][] courante;
+    private int[][] precedente;
+
+    // Ligne de pixels réutilisée par lireLigne()
+    private final int[] ligne;
+
+    // Indice de la prochaine ligne à décoder
+    private int y;
+
+    // Flux comptant les octets consommés, ou null si l'{@link Instrumentation} était inactive à l'ouverture
+    private final FluxCompte compte;
+
+    // Durées cumulées du décodage du flux et de l'assemblage des pixels, en nanosecondes, tant que les mesures n'ont pas été transmises
+    private long dureeDecodage;
+    private long dureeAssemblage;
+    private boolean mesuresTransmises;
+
+    /**
+     * Prépare le décodage ligne par ligne d'un flux dont l'en-tête vient d'être lu.
+     * @param entete L'en-tête de l'image.
+     * @param is Le flux positionné juste après l'en-tête.
+     * @throws IOException Si les tables sont illisibles.
+     */
+    DecodeurLignes(EnTetePIF entete, InputStream is) throws IOException {
+        this(entete, is, null);
+    }
+
+    private DecodeurLignes(EnTetePIF entete, InputStream is, InputStream fluxPossede) throws IOException {
+        this.entete = entete;
+        this.fluxPossede = fluxPossede;
+        this.transformation = entete.getTransformation();
+        this.couleurs = (entete.getPalette() != null) ? Palette.tableDecodage(entete.getPalette()) : null;
+        this.largeur = entete.getLargeur();
+        // Les octets des tables sont comptés avec ceux du flux, mais leur lecture est mesurée par la phase des codes canoniques
+        this.compte = Instrumentation.actif() ? new FluxCompte(is) : null;
+        boolean nonVide = largeur > 0 && entete.getHauteur() > 0;
+        InputStream source = compte != null ? compte : is;
+        this.correspondances = (nonVide && entete.isCorrespondances()) ? CodageLZ.ouvrirDecodeur(entete, source) : null;
+        this.blocs = (nonVide && entete.isBlocs()) ? CodageBlocs.ouvrirDecodeur(entete, source) : null;
+        this.bande = (blocs != null) ? new int[blocs.getHauteurBande() * largeur] : null;
+        this.decodeur = (nonVide && !entete.isCorrespondances() && !entete.isBlocs()) ? ImagePIF.ouvrirDecodeurCanaux(entete, source) : null;
+        int[] codes = entete.getCanauxCodes();
+        this.origines = new int[3];
+        this.lignesConstantes = new int[3][];
+        for (int c = 0; c < 3; c++) {
+            int constante = entete.getConstantes()[c];
+            if (constante >= 0) {
+                origines[c] = -1;
+                lignesConstantes[c] = new int[largeur];
+                Arrays.fill(lignesConstantes[c], constante);
+            } else {
+                // Un doublon lit la ligne de sa source
+                origines[c] = Arrays.binarySearch(codes, entete.getDoublons()[c]);
+            }
+        }
+        this.residus = new int[codes.length][largeur];
+        this.courante = new int[codes.length][largeur];
+        this.precedente = new int[codes.length][largeur];
+        this.ligne = new int[largeur];
+    }
+
+    /**
+     * Ouvre un fichier PIF pour le décoder ligne par ligne. Le fichier est fermé par {@link #close()}.
+     * @param chemin Le chemin du fichier .pif.
+     * @return Le décodeur, positionné sur la première ligne.
+     * @throws IOException Si le fichier est illisible ou son en-tête corrompu.
+     */
+    public static DecodeurLignes ouvrir(String chemin) throws IOException {
+        InputStream is = ImagePIF.tamponner(new FileInputStream(chemin));
+        try {
+            return new DecodeurLignes(EnTetePIF.lire(is), is, is);
+        } catch (IOException | RuntimeException e) {
+            is.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Prépare le décodage ligne par ligne d'un flux, qui n'est pas fermé par {@link #close()}.
+     * Un flux non tamponné est précédé d'un tampon interne : il peut alors être lu au-delà de la fin de l'image.
+     * @param is Le flux positionné au début de l'en-tête.
+     * @return Le décodeur, positionné sur la première ligne.
+     * @throws IOException Si l'en-tête est corrompu.
+     */
+    public static DecodeurLignes ouvrir(InputStream is) throws IOException {
+        InputStream tampon = ImagePIF.tamponner(is);
+        return new DecodeurLignes(EnTetePIF.lire(tampon), tampon, null);
+    }
+
+    // @return L'en-tête de l'image
+    public EnTetePIF getEntete() {
+        return entete;
+    }
+
+    // @return La largeur de l'image
+    public int getLargeur() {
+        return largeur;
+    }
+
+    // @return La hauteur de l'image
+    public int getHauteur() {
+        return entete.getHauteur();
+    }
+
+    // @return L'indice de la prochaine ligne à décoder
+    public int getLigneSuivante() {
+        return y;
+    }
+
+    // @return Vrai s'il reste au moins une ligne à décoder
+    public boolean resteDesLignes() {
+        return y < entete.getHauteur();
+    }
+
+    /**
+     * Décode la ligne suivante dans un tableau interne réutilisé d'un appel à l'autre.
+     * @return Les pixels ARGB de la ligne, ou <code>null</code> si toutes les lignes ont été lues.
+     * @throws IOException Si le flux est corrompu ou tronqué.
+     */
+    public int[] lireLigne() throws IOException {
+        if (!resteDesLignes()) {
+            return null;
+        }
+        lireLigne(ligne, 0);
+        return ligne;
+    }
+
+    /**
+     * Décode les lignes suivantes et les transmet une à une à un récepteur, dans un même tableau réutilisé.
+     * @param nbLignes Le nombre maximal de lignes à décoder : les lignes au-delà ne sont pas décodées.
+     * @param recepteur Le récepteur des lignes.
+     * @return Le nombre de lignes effectivement décodées.
+     * @throws IOException Si le flux est corrompu ou tronqué, ou si le récepteur échoue.
+     */
+    public int lireLignes(int nbLignes, Recepteur recepteur) throws IOException {
+        int lues = 0;
+        while (lues < nbLignes && resteDesLignes()) {
+            int indice = y;
+            lireLigne(ligne, 0);
+            recepteur.recevoir(indice, ligne);
+            lues++;
+        }
+        return lues;
+    }
+
+    /**
+     * Décode la ligne suivante.
+     * @param sortie Le tableau recevant les pixels ARGB de la ligne.
+     * @param decalage L'indice du premier pixel de la ligne dans <code>sortie</code>.
+     * @throws IOException Si le flux est corrompu ou tronqué, ou si toutes les lignes ont été lues.
+     */
+    public void lireLigne(int[] sortie, int decalage) throws IOException {
+        decoderLigne(sortie, decalage, 0, 1, largeur);
+    }
+
+    /**
+     * Décode la ligne suivante en n'assemblant que certaines de ses colonnes, régulièrement espacées
+     * (région et sous-échantillonnage d'une lecture partielle) : les pixels des autres colonnes ne sont jamais calculés.
+     * @param sortie Le tableau recevant les pixels ARGB des colonnes retenues, côte à côte.
+     * @param decalage L'indice du premier pixel retenu dans <code>sortie</code>.
+     * @param debutX La première colonne retenue.
+     * @param pas L'écart entre deux colonnes retenues (1 ou plus).
+     * @param nombre Le nombre de colonnes retenues.
+     * @throws IOException Si le flux est corrompu ou tronqué, ou si toutes les lignes ont été lues.
+     * @throws IllegalArgumentException Si les colonnes retenues sortent de l'image.
+     */
+    public void lireLigne(int[] sortie, int decalage, int debutX, int pas, int nombre) throws IOException {
+        if (debutX < 0 || pas < 1 || nombre < 0 || (nombre > 0 && debutX + (long) (nombre - 1) * pas >= largeur)) {
+            throw new IllegalArgumentException("Colonnes hors de l'image : " + debutX + ", pas " + pas + ", " + nombre + " colonnes");
+        }
+        decoderLigne(sortie, decalage, debutX, pas, nombre);
+    }
+
+    /**
+     * Passe la ligne suivante : son flux est décodé et ses composantes reconstruites, la ligne suivante en dépendant,
+     * mais aucun pixel n'est assemblé.
+     * @throws IOException Si le flux est corrompu ou tronqué, ou si toutes les lignes ont été lues.
+     */
+    public void sauterLigne() throws IOException {
+        decoderLigne(ligne, 0, 0, 1, 0);
+    }
+
+    // Décode la ligne suivante et assemble les pixels des colonnes debutX, debutX + pas... (nombre colonnes)
+    private void decoderLigne(int[] sortie, int decalage, int debutX, int pas, int nombre) throws IOException {
+        if (!resteDesLignes()) {
+            throw new EOFException("Toutes les lignes ont été lues");
+        }
+        if (decodeur == null && correspondances == null && blocs == null) {
+            y++;
+            return;
+        }
+        long t0 = (compte != null) ? System.nanoTime() : 0;
+        boolean complete = debutX == 0 && pas == 1 && nombre == largeur;
+        if (correspondances != null) {
+            // Le décodeur restitue la ligne entière, dont les colonnes retenues sont ensuite copiées
+            correspondances.decoder(complete ? sortie : ligne, complete ? decalage : 0, largeur);
+        } else if (blocs != null) {
+            // Une bande entière est décodée lorsque la précédente est épuisée, les blocs n'étant complets qu'en fin de bande
+            if (ligneBande == lignesBande) {
+                lignesBande = blocs.decoderBande(bande, 0);
+                ligneBande = 0;
+            }
+        } else {
+            decodeur.decoder(residus, largeur);
+        }
+        long t1 = (compte != null) ? System.nanoTime() : 0;
+        if (blocs != null) {
+            // Les pixels de la bande sont déjà assemblés
+            int debut = ligneBande * largeur;
+            if (complete) {
+                System.arraycopy(bande, debut, sortie, decalage, largeur);
+            } else {
+                for (int i = 0, x = debutX; i < nombre; i++, x += pas) {
+                    sortie[decalage + i] = bande[debut + x];
+                }
+            }
+            ligneBande++;
+            y++;
+        } else if (correspondances != null) {
+            // Les pixels sont restitués tels quels, sans composante à reconstruire
+            if (!complete) {
+                for (int i = 0, x = debutX; i < nombre; i++, x += pas) {
+                    sortie[decalage + i] = ligne[x];
+                }
+            }
+            y++;
+        } else if (couleurs != null) {
+            // Image à palette : une lecture de table par pixel
+            int[] indices = residus[0];
+            for (int i = 0, x = debutX; i < nombre; i++, x += pas) {
+                sortie[decalage + i] = couleurs[indices[x]];
+            }
+            y++;
+        } else {
+            int[][] lignes = residus;
+            if (transformation.getPredicteur() != Transformation.AUCUN || transformation.getPerte() > 0) {
+                transformation.reconstruireLignes(residus, precedente, courante, largeur, y);
+                lignes = courante;
+                int[][] echange = precedente;
+                precedente = courante;
+                courante = echange;
+            }
+            y++;
+
+            int[] r = ligneCanal(lignes, 0);
+            int[] v = ligneCanal(lignes, 1);
+            int[] b = ligneCanal(lignes, 2);
+            for (int i = 0, x = debutX; i < nombre; i++, x += pas) {
+                sortie[decalage + i] = transformation.assembler(r[x], v[x], b[x]);
+            }
+        }
+
+        if (compte != null) {
+            dureeDecodage += t1 - t0;
+            dureeAssemblage += System.nanoTime() - t1;
+            if (!resteDesLignes()) {
+                transmettreMesures();
+            }
+        }
+    }
+
+    // Ligne reconstruite d'un canal : celle du canal codé dont il est issu, ou sa ligne constante
+    private int[] ligneCanal(int[][] lignes, int c) {
+        return (origines[c] >= 0) ? lignes[origines[c]] : lignesConstantes[c];
+    }
+
+    // Transmet à l'Instrumentation les mesures cumulées sur les lignes décodées
+    private void transmettreMesures() {
+        if (mesuresTransmises) {
+            return;
+        }
+        mesuresTransmises = true;
+        long pixels = (long) y * largeur;
+        Instrumentation.enregistrer(Instrumentation.Phase.DECODAGE_FLUX, dureeDecodage, compte.lus, pixels);
+        Instrumentation.enregistrer(Instrumentation.Phase.ASSEMBLAGE_PIXELS, dureeAssemblage, 0, pixels);
+    }
+
+    /**
+     * Libère le décodeur ; le fichier ouvert par {@link #ouvrir(String)} est fermé, sans décoder les lignes restantes.
+     * @throws IOException En cas d'erreur à la fermeture du fichier.
+     */
+    @Override
+    public void close() throws IOException {
+        if (compte != null) {
+            transmettreMesures();
+        }
+        if (fluxPossede != null) {
+            fluxPossede.close();
+        }
+    }
+
+    /**
+     * Flux comptant les octets lus, intercalé entre le décodeur et la source uniquement lorsque les mesures sont actives.
+     */
+    private static final class FluxCompte extends FilterInputStream {
+        // Nombre d'octets lus
+        private long lus;
+
+        FluxCompte(InputStream source) {
+            super(source);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int octet = in.read();
+            if (octet >= 0) lus++;
+            return octet;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) lus += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long sautes = in.skip(n);
+            lus += sautes;
+            return sautes;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package pif;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import pif.CodecHuffman.InfoCode;
+
+/**
+ * Jeu de tables de Huffman entraîné sur un corpus d'images et partagé entre les fichiers qui le désignent par son identifiant.
+ * Pour de petites images (icônes), les 768 octets de tables d'un fichier PIF pèsent plus que les pixels eux-mêmes :
+ * avec un dictionnaire, l'en-tête ne porte plus que l'identifiant, l'encodeur n'a aucun arbre à construire
+ * et le décodeur réutilise les arbres préparés une fois pour toutes à l'enregistrement du dictionnaire.
+ * <p>
+ * Chaque canal a sa table ; tous les symboles y ont un code, y compris ceux absents du corpus d'entraînement.
+ * Le dictionnaire fixe aussi la {@link Transformation} appliquée aux images, celle sur laquelle il a été entraîné.
+ * L'identifiant est la somme CRC-32 du contenu : deux dictionnaires différents sont distingués avec une forte probabilité, mais pas à coup sûr.
+ * Le registre refuse donc un second dictionnaire de même identifiant et de contenu différent, qui rendrait ambigus les fichiers le désignant.
+ * <p>
+ * Format d'un fichier <code>.pifd</code> : la signature <code>PIFD</code>, la version (1 octet), l'identifiant (32 bits),
+ * le code de la transformation (1 octet), puis les 256 longueurs de codes de chacun des trois canaux (1 octet chacune).
+ * <p>
+ * Pour décoder, un dictionnaire doit avoir été {@link #enregistrer(DictionnaireHuffman) enregistré}, ce que fait tout encodage qui l'utilise,
+ * ou se trouver dans le dossier désigné par la propriété système <code>pif.dictionnaires</code>, sous le nom
+ * <code>identifiant.pifd</code> (identifiant en hexadécimal sur 8 chiffres).
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class DictionnaireHuffman {
+
+    // Signature des fichiers de dictionnaire
+    private static final byte[] SIGNATURE = { 'P', 'I', 'F', 'D' };
+
+    // Version du format des fichiers de dictionnaire
+    private static final int VERSION = 1;
+
+    // Extension des fichiers de dictionnaire
+    public static final String EXTENSION = ".pifd";
+
+    // Dictionnaires enregistrés, indexés par identifiant
+    private static final Map<Integer, DictionnaireHuffman> ENREGISTRES = new ConcurrentHashMap<>();
+
+    // Identifiant du dictionnaire
+    private final int identifiant;
+
+    // Transformation sur laquelle le dictionnaire a été entraîné
+    private final Transformation transformation;
+
+    // Longueurs des codes de chaque canal
+    private final int[][] longueurs;
+
+    // Codes canoniques de chaque canal, indexés par symbole, préparés pour l'encodeur
+    private final InfoCode[][] codes = new InfoCode[3][256];
+
+    // Arbres de décodage de chaque canal, préparés pour le décodeur
+    private final NoeudHuffman[] racines = new NoeudHuffman[3];
+
+    private DictionnaireHuffman(Transformation transformation, int[][] longueurs) {
+        this.transformation = transformation;
+        this.longueurs = longueurs;
+        this.identifiant = calculerIdentifiant(transformation, longueurs);
+        for (int c = 0; c < 3; c++) {
+            for (InfoCode info : CodecHuffman.genererCodesCanoniques(longueurs[c]).values()) {
+                codes[c][info.valeur] = info;
+            }
+            racines[c] = CodecHuffman.reconstruireArbreCanonique(longueurs[c]);
+        }
+    }
+
+    /**
+     * Entraîne un dictionnaire sur un corpus d'images, avec la transformation qui code le corpus en le moins de bits.
+     * @param images Les images du corpus.
+     * @return Le dictionnaire entraîné.
+     */
+    public static DictionnaireHuffman entrainer(Iterable<ImagePIF> images) {
+        DictionnaireHuffman meilleur = null;
+        long meilleurCout = Long.MAX_VALUE;
+        for (Transformation t : Transformation.toutes()) {
+            DictionnaireHuffman dictionnaire = entrainer(t, images);
+            long cout = 0;
+            for (ImagePIF image : images) {
+                cout += dictionnaire.bits(t.histogrammes(image.vue(), image.getLargeur(), image.getHauteur()));
+            }
+            if (cout < meilleurCout) {
+                meilleurCout = cout;
+                meilleur = dictionnaire;
+            }
+        }
+        return meilleur;
+    }
+
+    /**
+     * Entraîne un dictionnaire sur un corpus d'images.
+     * Les fréquences des résidus de chaque canal sont cumulées sur tout le corpus, puis augmentées de 1
+     * pour que les symboles jamais rencontrés restent codables.
+     * @param transformation La transformation appliquée aux images avant le codage.
+     * @param images Les images du corpus.
+     * @return Le dictionnaire entraîné.
+     */
+    public static DictionnaireHuffman entrainer(Transformation transformation, Iterable<ImagePIF> images) {
+        long[][] cumuls = new long[3][256];
+        for (ImagePIF image : images) {
+            int[][] frequences = transformation.histogrammes(image.vue(), image.getLargeur(), image.getHauteur());
+            for (int c = 0; c < 3; c++) {
+                for (int s = 0; s < 256; s++) cumuls[c][s] += frequences[c][s];
+            }
+        }
+
+        int[][] longueurs = new int[3][];
+        for (int c = 0; c < 3; c++) {
+            // Réduction proportionnelle si le corpus dépasse la capacité d'un int, en gardant chaque symbole présent
+            long max = 0;
+            for (long f : cumuls[c]) max = Math.max(max, f);
+            long diviseur = Math.max(1, max / (Integer.MAX_VALUE / 512));
+            int[] frequences = new int[256];
+            for (int s = 0; s < 256; s++) {
+                frequences[s] = (int) (cumuls[c][s] / diviseur) + 1;
+            }
+            longueurs[c] = CodeurHuffman.longueurs(frequences);
+        }
+        return new DictionnaireHuffman(transformation, longueurs);
+    }
+
+    // @return L'identifiant du dictionnaire
+    public int getIdentifiant() {
+        return identifiant;
+    }
+
+    // @return La transformation sur laquelle le dictionnaire a été entraîné
+    public Transformation getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * Retourne la longueur du code d'un symbole.
+     * @param canal Le canal (0 : rouge, 1 : vert, 2 : bleu).
+     * @param symbole Le symbole (0-255).
+     * @return La longueur du code, en bits.
+     */
+    public int getLongueur(int canal, int symbole) {
+        return longueurs[canal][symbole];
+    }
+
+    /**
+     * Calcule la taille du flux de bits d'une image codée avec ce dictionnaire.
+     * @param frequences Les fréquences des résidus de chaque canal, pour la transformation du dictionnaire.
+     * @return La taille du flux, en bits.
+     */
+    public long bits(int[][] frequences) {
+        long bits = 0;
+        for (int c = 0; c < 3; c++) {
+            for (int s = 0; s < 256; s++) bits += (long) frequences[c][s] * longueurs[c][s];
+        }
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%08x", identifiant);
+    }
+
+    /**
+     * Encode les canaux entrelacés d'une image avec les tables du dictionnaire, sans écrire de table.
+     * @param canaux Les symboles (0-255) des trois canaux.
+     * @param nbSymboles Le nombre de symboles de chaque canal.
+     * @param sortie Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    void encoder(int[][] canaux, int nbSymboles, OutputStream sortie) throws IOException {
+        CodeurHuffman.ecrireFlux(canaux, nbSymboles, codes, sortie);
+    }
+
+    /**
+     * Prépare le décodage des canaux entrelacés d'une image avec les arbres du dictionnaire.
+     * @param entree Le flux positionné au début du flux de bits.
+     * @return Un décodeur restituant les symboles des trois canaux.
+     */
+    CodeurEntropique.Decodeur ouvrirDecodeur(InputStream entree) {
+        return CodeurHuffman.decodeurFlux(entree, racines);
+    }
+
+    /**
+     * Rend le dictionnaire disponible pour le décodage des fichiers qui le désignent.
+     * Enregistrer de nouveau un dictionnaire de même contenu est sans effet.
+     * @param dictionnaire Le dictionnaire.
+     * @throws IllegalArgumentException Si un dictionnaire de contenu différent est déjà enregistré sous le même identifiant.
+     */
+    public static void enregistrer(DictionnaireHuffman dictionnaire) {
+        DictionnaireHuffman existant = ENREGISTRES.putIfAbsent(dictionnaire.identifiant, dictionnaire);
+        if (existant != null && existant != dictionnaire && !existant.memeContenu(dictionnaire)) {
+            throw new IllegalArgumentException(String.format(
+                    "Un autre dictionnaire est déjà enregistré sous l'identifiant %08x", dictionnaire.identifiant));
+        }
+    }
+
+    // @return Vrai si les deux dictionnaires ont la même transformation et les mêmes tables
+    private boolean memeContenu(DictionnaireHuffman autre) {
+        return transformation.getCode() == autre.transformation.getCode() && Arrays.deepEquals(longueurs, autre.longueurs);
+    }
+
+    /**
+     * Retrouve un dictionnaire parmi ceux enregistrés, ou à défaut dans le dossier désigné par la propriété <code>pif.dictionnaires</code>.
+     * Un dictionnaire chargé depuis ce dossier est enregistré, pour n'être lu qu'une fois.
+     * @param identifiant L'identifiant du dictionnaire.
+     * @return Le dictionnaire.
+     * @throws IOException Si le dictionnaire est introuvable ou corrompu.
+     */
+    public static DictionnaireHuffman trouver(int identifiant) throws IOException {
+        DictionnaireHuffman dictionnaire = ENREGISTRES.get(identifiant);
+        if (dictionnaire != null) {
+            return dictionnaire;
+        }
+        String dossier = System.getProperty("pif.dictionnaires");
+        File fichier = (dossier != null) ? new File(dossier, String.format("%08x", identifiant) + EXTENSION) : null;
+        if (fichier == null || !fichier.isFile()) {
+            throw new IOException(String.format("Dictionnaire inconnu : %08x", identifiant));
+        }
+        dictionnaire = charger(fichier.getPath());
+        if (dictionnaire.identifiant != identifiant) {
+            throw new IOException("Le fichier " + fichier + " contient le dictionnaire " + dictionnaire);
+        }
+        try {
+            enregistrer(dictionnaire);
+        } catch (IllegalArgumentException e) {
+            // Un dictionnaire homonyme a été enregistré pendant la lecture du fichier
+            throw new IOException("Le fichier " + fichier + " entre en collision avec un dictionnaire enregistré", e);
+        }
+        return ENREGISTRES.get(identifiant);
+    }
+
+    /**
+     * Enregistre le dictionnaire dans un fichier.
+     * @param chemin Le chemin du fichier .pifd.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    public void sauvegarder(String chemin) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(chemin))) {
+            ecrire(os);
+        }
+    }
+
+    /**
+     * Écrit le dictionnaire dans un flux, sans le fermer.
+     * @param os Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    public void ecrire(OutputStream os) throws IOException {
+        DataOutputStream sortie = new DataOutputStream(os);
+        sortie.write(SIGNATURE);
+        sortie.write(VERSION);
+        sortie.writeInt(identifiant);
+        sortie.write(transformation.getCode());
+        for (int[] table : longueurs) {
+            for (int l : table) sortie.write(l);
+        }
+        sortie.flush();
+    }
+
+    /**
+     * Charge un dictionnaire depuis un fichier.
+     * @param chemin Le chemin du fichier .pifd.
+     * @return Le dictionnaire.
+     * @throws IOException Si le fichier est illisible ou corrompu.
+     */
+    public static DictionnaireHuffman charger(String chemin) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(chemin))) {
+            return lire(is);
+        }
+    }
+
+    /**
+     * Lit un dictionnaire depuis un flux, sans le fermer.
+     * @param is Le flux positionné au début du dictionnaire.
+     * @return Le dictionnaire.
+     * @throws IOException Si le flux est tronqué ou corrompu.
+     */
+    public static DictionnaireHuffman lire(InputStream is) throws IOException {
+        DataInputStream entree = new DataInputStream(is);
+        byte[] signature = new byte[SIGNATURE.length];
+        entree.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("Ce n'est pas un dictionnaire PIF");
+        }
+        int version = entree.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Version de dictionnaire non supportée : " + version);
+        }
+        int identifiant = entree.readInt();
+        Transformation transformation = Transformation.depuisCode(entree.readUnsignedByte());
+        int[][] longueurs = new int[3][256];
+        for (int[] table : longueurs) {
+            for (int s = 0; s < 256; s++) {
+                table[s] = entree.readUnsignedByte();
+                if (table[s] == 0) throw new IOException("Dictionnaire incomplet : symbole sans code");
+            }
+        }
+        if (calculerIdentifiant(transformation, longueurs) != identifiant) {
+            throw new IOException("Dictionnaire corrompu");
+        }
+        return new DictionnaireHuffman(transformation, longueurs);
+    }
+
+    // Calcule l'identifiant d'un dictionnaire : CRC-32 de sa transformation et de ses tables
+    private static int calculerIdentifiant(Transformation transformation, int[][] longueurs) {
+        CRC32 crc = new CRC32();
+        crc.update(transformation.getCode());
+        for (int[] table : longueurs) {
+            for (int l : table) crc.update(l);
+        }
+        return (int) crc.getValue();
+    }
+}
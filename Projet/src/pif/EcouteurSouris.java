@@ -2,10 +2,11 @@ package pif;
 
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.*;
 
 /**
- * La classe <code>EcouteurSouris</code> gère les interactions à la souris pour permettre le déplacement (panoramique) de l'image affichée.
+ * La classe <code>EcouteurSouris</code> gère les interactions à la souris pour permettre le déplacement (panoramique) et le zoom de l'image affichée.
  * Elle calcule la différence de position entre deux mouvements successifs pour mettre à jour l'affichage en temps réel.
  * @author Dimitri SOLAR, Valentin LOISON
  * @version 1.0
@@ -24,6 +25,12 @@ public class EcouteurSouris extends MouseAdapter
     	* le vecteur de déplacement. 
     	*/
     	private Point dernierPointSouris;
+
+    	/**
+    	* Rotation de la molette pas encore convertie en pas de zoom : les molettes à défilement fin
+    	* (pavés tactiles) envoient des fractions de cran.
+    	*/
+    	private double rotationCumulee;
     	/**
      	* Construit un écouteur de souris associé à un panneau d'image.
      	* @param panneau Le {@link PanneauImage} qui sera manipulé par la souris.
@@ -66,4 +73,20 @@ public class EcouteurSouris extends MouseAdapter
 	        // Mise à jour du point de référence pour le prochain mouvement
 	        dernierPointSouris = e.getPoint();
     	}
+    	/**
+    	* Capturée lorsque l'utilisateur tourne la molette.
+    	* Chaque cran vers l'avant agrandit l'image d'un pas, chaque cran vers l'arrière la réduit, autour du pointeur.
+    	* @param e L'événement de molette contenant la rotation et la position du pointeur.
+    	*/
+    	@Override
+    	public void mouseWheelMoved(MouseWheelEvent e) 
+	{
+        	rotationCumulee += e.getPreciseWheelRotation();
+        	int crans = (int) rotationCumulee;
+        	if (crans != 0) 
+		{
+			rotationCumulee -= crans;
+			panneau.zoomer(-crans, e.getX(), e.getY());
+        	}
+    	}
 }
@@ -0,0 +1,226 @@
+package pif;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Écrivain <code>javax.imageio</code> des fichiers PIF, déclaré par {@link FournisseurEcrivainPIF} :
+ * <code>ImageIO.write(image, "pif", fichier)</code> produit un fichier PIF.
+ * Les réglages de compression de l'{@link ImageWriteParam} choisissent les {@link OptionsEncodage} :
+ * le type de compression est le nom du {@link CodeurEntropique} (<code>huffman</code> ou <code>rans</code>),
+ * la qualité de compression, de 0 à 1, celle de {@link OptionsEncodage#setQualite(int)} (1 : sans perte),
+ * et les paramètres propres à PIF ({@link Parametres}) l'{@link Effort}. La région source et le sous-échantillonnage sont respectés.
+ * La composante alpha est ignorée, comme dans le reste du format.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class EcrivainPIF extends ImageWriter {
+
+    /**
+     * Construit un écrivain sans destination.
+     * @param fournisseur Le fournisseur qui crée cet écrivain, ou null.
+     */
+    public EcrivainPIF(ImageWriterSpi fournisseur) {
+        super(fournisseur);
+    }
+
+    @Override
+    public ImageWriteParam getDefaultWriteParam() {
+        return new Parametres(getLocale());
+    }
+
+    @Override
+    public IIOMetadata getDefaultStreamMetadata(ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata getDefaultImageMetadata(ImageTypeSpecifier imageType, ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata convertStreamMetadata(IIOMetadata inData, ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata convertImageMetadata(IIOMetadata inData, ImageTypeSpecifier imageType, ImageWriteParam param) {
+        return null;
+    }
+
+    /**
+     * Encode une image dans le flux de destination.
+     * @param streamMetadata Ignoré : le format n'a pas de métadonnées.
+     * @param image L'image à écrire ; ses métadonnées et miniatures sont ignorées.
+     * @param param Les paramètres d'écriture, ou null pour les options par défaut (format version 1).
+     * @throws IOException En cas d'erreur d'E/S.
+     * @throws IllegalArgumentException Si la région source, après sous-échantillonnage, est vide.
+     */
+    @Override
+    public void write(IIOMetadata streamMetadata, IIOImage image, ImageWriteParam param) throws IOException {
+        if (getOutput() == null) {
+            throw new IllegalStateException("Aucune destination n'a été choisie");
+        }
+        if (image.hasRaster()) {
+            throw new UnsupportedOperationException("Écriture d'un Raster non prise en charge");
+        }
+        ImagePIF pif = pixels(image.getRenderedImage(), param);
+        processImageStarted(0);
+        pif.sauvegarder(new FluxSortie((ImageOutputStream) getOutput()), options(param));
+        processImageProgress(100f);
+        processImageComplete();
+    }
+
+    /**
+     * Traduit les paramètres d'écriture en options d'encodage.
+     * @param param Les paramètres d'écriture, ou null.
+     * @return Les options d'encodage ; sans compression explicite, celles par défaut à l'effort choisi.
+     */
+    static OptionsEncodage options(ImageWriteParam param) {
+        OptionsEncodage options = new OptionsEncodage();
+        if (param instanceof Parametres) {
+            options.setEffort(((Parametres) param).getEffort());
+        }
+        if (param != null && param.canWriteCompressed() && param.getCompressionMode() == ImageWriteParam.MODE_EXPLICIT) {
+            if (param.getCompressionType() != null) {
+                options.setCodeur(CodeurEntropique.parNom(param.getCompressionType()));
+            }
+            options.setQualite(Math.round(param.getCompressionQuality() * 100));
+        }
+        return options;
+    }
+
+    // @return Les pixels de la région source retenue par les paramètres, sous-échantillonnée
+    private static ImagePIF pixels(RenderedImage rendu, ImageWriteParam param) {
+        BufferedImage image = versBufferedImage(rendu);
+        Rectangle region = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        int pasX = 1;
+        int pasY = 1;
+        if (param != null) {
+            if (param.getSourceRegion() != null) {
+                region = region.intersection(param.getSourceRegion());
+            }
+            pasX = param.getSourceXSubsampling();
+            pasY = param.getSourceYSubsampling();
+            region.x += param.getSubsamplingXOffset();
+            region.y += param.getSubsamplingYOffset();
+            region.width -= param.getSubsamplingXOffset();
+            region.height -= param.getSubsamplingYOffset();
+        }
+        if (region.width <= 0 || region.height <= 0) {
+            throw new IllegalArgumentException("Région source vide");
+        }
+        int l = (region.width + pasX - 1) / pasX;
+        int h = (region.height + pasY - 1) / pasY;
+
+        int[] pixels = new int[l * h];
+        int[] ligne = new int[region.width];
+        for (int j = 0; j < h; j++) {
+            image.getRGB(region.x, region.y + j * pasY, region.width, 1, ligne, 0, region.width);
+            if (pasX == 1) {
+                System.arraycopy(ligne, 0, pixels, j * l, l);
+            } else {
+                for (int i = 0; i < l; i++) {
+                    pixels[j * l + i] = ligne[i * pasX];
+                }
+            }
+        }
+        return new ImagePIF(l, h, pixels);
+    }
+
+    // @return L'image elle-même si c'est une BufferedImage, sinon une copie de ses pixels
+    private static BufferedImage versBufferedImage(RenderedImage rendu) {
+        if (rendu instanceof BufferedImage) {
+            return (BufferedImage) rendu;
+        }
+        ColorModel modele = rendu.getColorModel();
+        WritableRaster raster = modele.createCompatibleWritableRaster(rendu.getWidth(), rendu.getHeight());
+        rendu.copyData(raster.createWritableTranslatedChild(rendu.getMinX(), rendu.getMinY()));
+        return new BufferedImage(modele, raster, modele.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Paramètres d'écriture PIF : la compression est réglable (codeur et qualité), et l'{@link Effort} s'y ajoute.
+     */
+    public static final class Parametres extends ImageWriteParam {
+        // Effort d'encodage
+        private Effort effort = Effort.DEFAUT;
+
+        /**
+         * Construit des paramètres à l'effort par défaut, la compression suivant les options par défaut.
+         * @param locale La langue des descriptions, ou null.
+         */
+        public Parametres(Locale locale) {
+            super(locale);
+            this.canWriteCompressed = true;
+            CodeurEntropique[] codeurs = CodeurEntropique.tous();
+            this.compressionTypes = new String[codeurs.length];
+            for (int i = 0; i < codeurs.length; i++) {
+                compressionTypes[i] = codeurs[i].getNom();
+            }
+            this.compressionType = CodeurEntropique.HUFFMAN.getNom();
+            this.compressionQuality = 1f;
+        }
+
+        // @return L'effort d'encodage
+        public Effort getEffort() {
+            return effort;
+        }
+
+        /**
+         * Choisit l'effort d'encodage.
+         * @param effort Le niveau d'effort.
+         */
+        public void setEffort(Effort effort) {
+            if (effort == null) {
+                throw new IllegalArgumentException("Effort absent");
+            }
+            this.effort = effort;
+        }
+
+        @Override
+        public boolean isCompressionLossless() {
+            return getCompressionQuality() >= 1f;
+        }
+    }
+
+    /**
+     * Flux de sortie écrivant dans un flux <code>javax.imageio</code>.
+     */
+    private static final class FluxSortie extends OutputStream {
+        private final ImageOutputStream destination;
+
+        FluxSortie(ImageOutputStream destination) {
+            this.destination = destination;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            destination.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int debut, int n) throws IOException {
+            destination.write(b, debut, n);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            destination.flush();
+        }
+    }
+}
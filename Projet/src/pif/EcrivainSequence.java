@@ -0,0 +1,337 @@
+package pif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Écrit une {@link SequencePIF} image par image.
+ * Une image clé est émise pour la première image, puis toutes les <code>intervalleCles</code> images et chaque fois que plus des trois quarts
+ * des blocs changent (changement de plan) ; les autres images ne sont codées que par leurs blocs modifiés.
+ * À l'effort maximal, une image est aussi codée en image clé lorsque celle-ci est plus petite que la différence.
+ * Les images clés suivent les options d'encodage ; les différences utilisent le même codeur entropique. Une séquence est toujours sans perte.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class EcrivainSequence implements AutoCloseable {
+
+    // Intervalle par défaut entre deux images clés
+    public static final int INTERVALLE_CLES_DEFAUT = 60;
+
+    // Délai maximal d'une image, en millisecondes (champ de 16 bits)
+    public static final int DELAI_MAX = 0xFFFF;
+
+    // Flux de destination, comptant les octets écrits
+    private final FluxCompte flux;
+
+    // Même flux, pour l'écriture des entiers
+    private final DataOutputStream sortie;
+
+    // Canal à fermer avec l'écrivain, ou null si le flux appartient à l'appelant
+    private final FileChannel canalPossede;
+
+    // Dimensions des images
+    private final int largeur;
+    private final int hauteur;
+
+    // Options d'encodage des images clés
+    private final OptionsEncodage options;
+
+    // Codeur des différences
+    private final CodeurEntropique codeur;
+
+    // Nombre maximal d'images entre deux images clés
+    private final int intervalleCles;
+
+    // Pixels de l'image précédente, ou null avant la première image
+    private int[] precedente;
+
+    // Nombre d'images écrites depuis la dernière image clé
+    private int depuisCle;
+
+    // Position, type et délai des images écrites
+    private long[] positions = new long[64];
+    private int[] types = new int[64];
+    private int[] delais = new int[64];
+    private int nombre;
+    private int nombreCles;
+
+    // Vrai une fois l'index écrit
+    private boolean ferme;
+
+    /**
+     * Commence une séquence dans un flux, qui n'est pas fermé par {@link #close()}.
+     * @param os Le flux de destination.
+     * @param largeur La largeur des images.
+     * @param hauteur La hauteur des images.
+     * @param options Les options d'encodage des images clés (sans perte).
+     * @param intervalleCles Le nombre maximal d'images entre deux images clés (1 pour n'écrire que des images clés).
+     * @throws IOException En cas d'erreur d'E/S.
+     * @throws IllegalArgumentException Si les options demandent une perte ou si l'intervalle n'est pas positif.
+     */
+    public EcrivainSequence(OutputStream os, int largeur, int hauteur, OptionsEncodage options, int intervalleCles) throws IOException {
+        this(os, null, largeur, hauteur, options, intervalleCles);
+    }
+
+    private EcrivainSequence(OutputStream os, FileChannel canalPossede, int largeur, int hauteur,
+            OptionsEncodage options, int intervalleCles) throws IOException {
+        if (options.getPerte() > 0) {
+            throw new IllegalArgumentException("Une séquence est toujours sans perte");
+        }
+        if (intervalleCles < 1) {
+            throw new IllegalArgumentException("Intervalle entre images clés invalide : " + intervalleCles);
+        }
+        if (largeur < 0 || hauteur < 0) {
+            throw new IllegalArgumentException("Dimensions invalides : " + largeur + " x " + hauteur);
+        }
+        this.flux = new FluxCompte(os);
+        this.sortie = new DataOutputStream(flux);
+        this.canalPossede = canalPossede;
+        this.largeur = largeur;
+        this.hauteur = hauteur;
+        this.options = options;
+        this.codeur = SequencePIF.codeurDifferences(options.getCodeur().getIdentifiant());
+        this.intervalleCles = intervalleCles;
+
+        sortie.write(SequencePIF.SIGNATURE);
+        sortie.write(SequencePIF.VERSION);
+        sortie.writeInt(largeur);
+        sortie.writeInt(hauteur);
+        sortie.write(SequencePIF.COTE_BLOC);
+    }
+
+    /**
+     * Crée un fichier de séquence. L'encodage et l'écriture sur disque se recouvrent ({@link FluxSortiePipeline}).
+     * @param chemin Le chemin du fichier .pifs.
+     * @param largeur La largeur des images.
+     * @param hauteur La hauteur des images.
+     * @param options Les options d'encodage des images clés (sans perte).
+     * @param intervalleCles Le nombre maximal d'images entre deux images clés.
+     * @return L'écrivain, à fermer pour écrire l'index.
+     * @throws IOException Si le fichier ne peut être créé.
+     */
+    public static EcrivainSequence creer(String chemin, int largeur, int hauteur, OptionsEncodage options, int intervalleCles) throws IOException {
+        FileChannel canal = FileChannel.open(Paths.get(chemin),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            return new EcrivainSequence(new FluxSortiePipeline(canal), canal, largeur, hauteur, options, intervalleCles);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    // @return Le nombre d'images écrites
+    public int getNombreImages() {
+        return nombre;
+    }
+
+    // @return Le nombre d'images clés écrites
+    public int getNombreImagesCles() {
+        return nombreCles;
+    }
+
+    // @return Le nombre d'octets écrits jusqu'ici
+    public long getTaille() {
+        return flux.ecrits;
+    }
+
+    /**
+     * Ajoute une image à la séquence.
+     * @param image L'image, aux dimensions de la séquence.
+     * @param delai Le délai d'affichage de l'image, en millisecondes (au plus {@link #DELAI_MAX}).
+     * @throws IOException En cas d'erreur d'E/S.
+     * @throws IllegalArgumentException Si les dimensions de l'image ou le délai ne conviennent pas.
+     */
+    public void ajouter(ImagePIF image, int delai) throws IOException {
+        if (image.getLargeur() != largeur || image.getHauteur() != hauteur) {
+            throw new IllegalArgumentException("Image de " + image.getLargeur() + " x " + image.getHauteur()
+                    + " dans une séquence de " + largeur + " x " + hauteur);
+        }
+        if (delai < 0 || delai > DELAI_MAX) {
+            throw new IllegalArgumentException("Délai invalide : " + delai);
+        }
+        if (ferme) {
+            throw new IllegalStateException("Séquence fermée");
+        }
+        int[] pixels = new int[largeur * hauteur];
+        image.vue().get(0, pixels);
+
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        boolean cle = precedente == null || depuisCle + 1 >= intervalleCles || !ecrireDifference(pixels, contenu);
+        if (!cle && options.getEffort() == Effort.MAX) {
+            // Effort maximal : l'image clé est retenue lorsqu'elle est plus petite que la différence (grands mouvements, image que la prédiction spatiale décrit mieux)
+            ByteArrayOutputStream complete = new ByteArrayOutputStream();
+            image.ecrire(complete, options);
+            if (complete.size() <= contenu.size()) {
+                contenu = complete;
+                cle = true;
+            }
+        } else if (cle) {
+            contenu.reset();
+            image.ecrire(contenu, options);
+        }
+        if (cle) {
+            depuisCle = 0;
+            nombreCles++;
+        } else {
+            depuisCle++;
+        }
+        precedente = pixels;
+
+        int type = cle ? SequencePIF.CLE : SequencePIF.DIFFERENCE;
+        retenir(flux.ecrits, type, delai);
+        sortie.write(type);
+        sortie.writeShort(delai);
+        sortie.writeInt(contenu.size());
+        contenu.writeTo(sortie);
+    }
+
+    /**
+     * Code une image par ses blocs modifiés depuis l'image précédente.
+     * @param pixels Les pixels de l'image.
+     * @param contenu Le flux recevant la différence.
+     * @return Faux, sans rien écrire, si trop de blocs ont changé : une image clé est alors préférable.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    private boolean ecrireDifference(int[] pixels, ByteArrayOutputStream contenu) throws IOException {
+        int cote = SequencePIF.COTE_BLOC;
+        int blocsX = (largeur + cote - 1) / cote;
+        int blocsY = (hauteur + cote - 1) / cote;
+        byte[] carte = new byte[(blocsX * blocsY + 7) / 8];
+        int modifies = 0;
+        int nbPixels = 0;
+        for (int bloc = 0; bloc < blocsX * blocsY; bloc++) {
+            int x0 = (bloc % blocsX) * cote;
+            int y0 = (bloc / blocsX) * cote;
+            int n = Math.min(cote, largeur - x0);
+            int y1 = Math.min(y0 + cote, hauteur);
+            if (blocModifie(pixels, x0, y0, n, y1)) {
+                carte[bloc >> 3] |= 0x80 >>> (bloc & 7);
+                modifies++;
+                nbPixels += n * (y1 - y0);
+            }
+        }
+        if (modifies * 4 > blocsX * blocsY * 3) {
+            return false;
+        }
+
+        // Écarts des composantes des blocs modifiés, dans l'ordre des blocs puis des lignes de chaque bloc
+        int[][] canaux = new int[3][nbPixels];
+        int i = 0;
+        for (int bloc = 0; bloc < blocsX * blocsY; bloc++) {
+            if ((carte[bloc >> 3] & (0x80 >>> (bloc & 7))) == 0) {
+                continue;
+            }
+            int x0 = (bloc % blocsX) * cote;
+            int y0 = (bloc / blocsX) * cote;
+            int n = Math.min(cote, largeur - x0);
+            for (int y = y0; y < Math.min(y0 + cote, hauteur); y++) {
+                for (int j = y * largeur + x0, fin = j + n; j < fin; j++, i++) {
+                    int p = pixels[j];
+                    int q = precedente[j];
+                    int dv = ((p >> 8) - (q >> 8)) & 0xFF;
+                    canaux[0][i] = ((p >> 16) - (q >> 16) - dv) & 0xFF;
+                    canaux[1][i] = dv;
+                    canaux[2][i] = (p - q - dv) & 0xFF;
+                }
+            }
+        }
+
+        DataOutputStream donnees = new DataOutputStream(contenu);
+        donnees.writeInt(modifies);
+        donnees.write(carte);
+        donnees.write(codeur.getIdentifiant());
+        if (modifies > 0) {
+            codeur.encoder(canaux, nbPixels, donnees);
+        }
+        donnees.flush();
+        return true;
+    }
+
+    // Vrai si une composante RVB d'un pixel du bloc diffère de l'image précédente
+    private boolean blocModifie(int[] pixels, int x0, int y0, int n, int y1) {
+        for (int y = y0; y < y1; y++) {
+            for (int j = y * largeur + x0, fin = j + n; j < fin; j++) {
+                if (((pixels[j] ^ precedente[j]) & 0xFFFFFF) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Ajoute une image à l'index
+    private void retenir(long position, int type, int delai) {
+        if (nombre == positions.length) {
+            positions = Arrays.copyOf(positions, nombre * 2);
+            types = Arrays.copyOf(types, nombre * 2);
+            delais = Arrays.copyOf(delais, nombre * 2);
+        }
+        positions[nombre] = position;
+        types[nombre] = type;
+        delais[nombre] = delai;
+        nombre++;
+    }
+
+    /**
+     * Écrit l'index des images, qui termine la séquence. Le fichier ouvert par {@link #creer} est fermé.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    @Override
+    public void close() throws IOException {
+        if (ferme) {
+            return;
+        }
+        ferme = true;
+        try {
+            long debutIndex = flux.ecrits;
+            sortie.write(SequencePIF.FIN);
+            sortie.writeInt(nombre);
+            for (int k = 0; k < nombre; k++) {
+                sortie.writeLong(positions[k]);
+                sortie.write(types[k]);
+                sortie.writeShort(delais[k]);
+            }
+            sortie.writeLong(debutIndex);
+            sortie.flush();
+            if (canalPossede != null) {
+                flux.close();
+            }
+        } finally {
+            if (canalPossede != null) {
+                canalPossede.close();
+            }
+        }
+    }
+
+    /**
+     * Flux comptant les octets écrits, pour inscrire dans l'index la position de chaque image.
+     */
+    private static final class FluxCompte extends FilterOutputStream {
+        // Nombre d'octets écrits
+        private long ecrits;
+
+        FluxCompte(OutputStream destination) {
+            super(destination);
+        }
+
+        @Override
+        public void write(int octet) throws IOException {
+            out.write(octet);
+            ecrits++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            ecrits += len;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package pif;
+
+/**
+ * Niveau d'effort de compression, arbitrant entre la vitesse d'encodage et la taille des fichiers.
+ * Chaque niveau s'engage sur des objectifs exprimés par rapport à {@link #DEFAUT}, pour le même codeur,
+ * que <code>java pif.Main bench effort</code> vérifie sur le {@link CorpusSynthetique} : le débit d'encodage sur l'ensemble du corpus,
+ * la taille des fichiers sur chaque classe d'images.
+ * <li><b>{@link #RAPIDE} :</b> une seule table partagée par les trois canaux et aucune transformation : pas d'analyse de l'image
+ * au-delà d'un histogramme. Débit d'encodage au moins égal à celui de {@link #DEFAUT} (à 10 % près, marge de bruit de mesure),
+ * au plus 5 bits par pixel de plus (mélanger trois distributions dans une table coûte au plus 3 x log2(3), soit environ 4,75 bits par pixel).
+ * Avec Huffman, la table est codée de façon compacte ({@link TableCompacte}) ; une image d'au plus 256 couleurs est codée par sa {@link Palette}.
+ * À ce niveau comme à {@link #MAX}, les canaux en double (niveaux de gris) ou constants ne sont pas codés ({@link CanauxRedondants}).</li>
+ * <li><b>{@link #DEFAUT} :</b> une table par canal, sans transformation ; c'est le comportement historique,
+ * qui produit le format version 1 avec Huffman.</li>
+ * <li><b>{@link #MAX} :</b> essaie toutes les {@link Transformation}s et toutes les répartitions des canaux entre les tables,
+ * en estimant la taille de chaque combinaison à partir des fréquences, puis encode la meilleure, codage par {@link Palette} et par correspondances ({@link CodageLZ}) compris ; avec Huffman, les tables sont codées de façon compacte.
+ * Fichier jamais plus gros qu'avec {@link #DEFAUT}, débit d'encodage au moins égal au vingtième de celui de {@link #DEFAUT}.</li>
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public enum Effort {
+
+    RAPIDE("rapide", 0.9, 5.0),
+    DEFAUT("defaut", 1.0, 0.0),
+    MAX("max", 0.05, 0.0);
+
+    // Nom lisible, utilisé en ligne de commande
+    private final String nom;
+
+    // Débit d'encodage minimal visé, rapporté à celui du niveau par défaut
+    private final double debitMin;
+
+    // Surcoût maximal visé, en bits par pixel, par rapport au niveau par défaut
+    private final double surcoutMax;
+
+    Effort(String nom, double debitMin, double surcoutMax) {
+        this.nom = nom;
+        this.debitMin = debitMin;
+        this.surcoutMax = surcoutMax;
+    }
+
+    // @return Le nom lisible du niveau
+    public String getNom() {
+        return nom;
+    }
+
+    // @return Le débit d'encodage minimal visé, rapporté à celui du niveau par défaut
+    public double getDebitMin() {
+        return debitMin;
+    }
+
+    // @return Le surcoût maximal visé, en bits par pixel, par rapport au niveau par défaut
+    public double getSurcoutMax() {
+        return surcoutMax;
+    }
+
+    /**
+     * Retrouve un niveau d'effort à partir de son nom (insensible à la casse).
+     * @param nom Le nom du niveau.
+     * @return Le niveau correspondant.
+     * @throws IllegalArgumentException Si le nom est inconnu.
+     */
+    public static Effort parNom(String nom) {
+        for (Effort e : values()) {
+            if (e.nom.equalsIgnoreCase(nom)) {
+                return e;
+            }
+        }
+        throw new IllegalArgumentException("Niveau d'effort inconnu : " + nom);
+    }
+}
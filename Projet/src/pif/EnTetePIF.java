@@ -0,0 +1,766 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * En-tête d'un fichier PIF.
+ * Plusieurs versions coexistent :
+ * <li><b>Version 1 (historique) :</b> largeur et hauteur sur 16 bits, les données Huffman suivent directement.</li>
+ * <li><b>Version 2 :</b> un marqueur de dimensions nulles (0 x 0, qui n'a pas de sens en version 1), la signature <code>PIF</code>,
+ * le numéro de version, la largeur et la hauteur sur 32 bits, puis l'identifiant du {@link CodeurEntropique}.</li>
+ * <li><b>Version 3 :</b> la version 2 suivie d'un octet de drapeaux ; avec {@link #CANAUX_SEPARES}, la longueur en octets
+ * du flux de chaque canal (3 x 32 bits) termine l'en-tête.</li>
+ * <li><b>Version 4 :</b> ajoute les drapeaux {@link #TRANSFORMATION} (un octet : le code de la {@link Transformation})
+ * et {@link #PARTITION} (un octet : le groupe de tables de chaque canal, sur 2 bits, le rouge dans les bits de poids faible).
+ * Les champs facultatifs suivent les drapeaux dans l'ordre de ceux-ci.</li>
+ * <li><b>Version 5 :</b> ajoute le drapeau {@link #DICTIONNAIRE} (32 bits : l'identifiant d'un {@link DictionnaireHuffman}),
+ * qui remplace les tables de Huffman du fichier par celles du dictionnaire.</li>
+ * <li><b>Version 6 :</b> ajoute le drapeau {@link #TABLES_COMPACTES}, sans champ : les tables de Huffman suivant l'en-tête
+ * sont codées par {@link TableCompacte} au lieu de 256 octets chacune.</li>
+ * <li><b>Version 7 :</b> ajoute le drapeau {@link #QUANTIFICATION} (un octet : la perte maximale N de la {@link Transformation},
+ * de 1 à {@link Transformation#PERTE_MAX}) pour les images quasi sans perte.</li>
+ * <li><b>Version 8 :</b> ajoute le drapeau {@link #PALETTE} (un octet : le nombre de couleurs moins un, puis chaque couleur en RVB sur 3 octets) :
+ * les données sont alors un unique canal d'indices dans cette palette.</li>
+ * <li><b>Version 9 :</b> ajoute le drapeau {@link #CORRESPONDANCES} (un octet : le logarithme en base 2 de la fenêtre) :
+ * les données sont alors les jetons de {@link CodageLZ}, littéraux et copies, avec leurs propres tables compactes.</li>
+ * <li><b>Version 10 :</b> un second octet de drapeaux (bits 8 à 15) suit le premier. Il ajoute les drapeaux {@link #DOUBLONS}
+ * (un octet : le canal source de chaque canal, sur 2 bits, le rouge dans les bits de poids faible) et {@link #CONSTANTES}
+ * (un octet : le masque des canaux constants, puis la valeur de chacun) : ces canaux ne sont pas codés (voir {@link CanauxRedondants}).</li>
+ * <li><b>Version 11 :</b> ajoute le drapeau {@link #ADAPTATIF} (16 bits : la période, en lignes, des mises à jour des tables) :
+ * le fichier ne contient aucune table, le codage de Huffman se construit au fil des lignes (voir {@link HuffmanAdaptatif}).</li>
+ * <li><b>Version 12 :</b> ajoute le drapeau {@link #BLOCS} (un octet : le logarithme en base 2 de la taille des blocs racines) :
+ * les données sont alors un arbre quaternaire de blocs, les blocs uniformes étant décrits par leur seule couleur (voir {@link CodageBlocs}).</li>
+ * Les fichiers version 1 restent produits tant qu'aucune option des versions suivantes n'est utilisée, afin de rester lisibles par les anciens visualisateurs.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class EnTetePIF {
+
+    // Numéro du format historique (sans signature)
+    public static final int VERSION_HISTORIQUE = 1;
+
+    // Numéro du format courant
+    public static final int VERSION_COURANTE = 12;
+
+    // Première version dont les drapeaux occupent deux octets
+    private static final int VERSION_DRAPEAUX_ETENDUS = 10;
+
+    // Drapeau : les canaux R, V et B sont codés dans trois flux indépendants
+    public static final int CANAUX_SEPARES = 0x01;
+
+    // Drapeau : les composantes sont transformées avant le codage
+    public static final int TRANSFORMATION = 0x02;
+
+    // Drapeau : certains canaux partagent une même table
+    public static final int PARTITION = 0x04;
+
+    // Drapeau : les tables de Huffman sont celles d'un dictionnaire partagé, désigné par son identifiant
+    public static final int DICTIONNAIRE = 0x08;
+
+    // Drapeau : les tables de Huffman sont codées de façon compacte
+    public static final int TABLES_COMPACTES = 0x10;
+
+    // Drapeau : les écarts à la prédiction sont quantifiés, avec une perte maximale donnée
+    public static final int QUANTIFICATION = 0x20;
+
+    // Drapeau : les pixels sont codés par leur indice dans une palette d'au plus 256 couleurs
+    public static final int PALETTE = 0x40;
+
+    // Drapeau : les pixels sont codés par des littéraux et des copies de pixels précédents, dans une fenêtre donnée
+    public static final int CORRESPONDANCES = 0x80;
+
+    // Drapeau : certains canaux sont identiques à un canal précédent, qui seul est codé
+    public static final int DOUBLONS = 0x100;
+
+    // Drapeau : certains canaux sont constants, et seule leur valeur est inscrite
+    public static final int CONSTANTES = 0x200;
+
+    // Drapeau : les tables de Huffman ne sont pas dans le fichier, mais reconstruites périodiquement à partir des symboles déjà codés
+    public static final int ADAPTATIF = 0x400;
+
+    // Drapeau : l'image est découpée récursivement en blocs, les blocs d'une seule couleur n'étant pas codés pixel par pixel
+    public static final int BLOCS = 0x800;
+
+    // Ensemble des drapeaux compris par ce lecteur
+    private static final int DRAPEAUX_CONNUS = CANAUX_SEPARES | TRANSFORMATION | PARTITION | DICTIONNAIRE | TABLES_COMPACTES | QUANTIFICATION | PALETTE
+            | CORRESPONDANCES | DOUBLONS | CONSTANTES | ADAPTATIF | BLOCS;
+
+    // Bornes du logarithme de la fenêtre des correspondances (le décodeur garde deux fenêtres en mémoire)
+    private static final int LOG_FENETRE_MIN = 8;
+    private static final int LOG_FENETRE_MAX = 24;
+
+    // Bornes du logarithme de la taille des blocs racines (le décodeur garde une bande de cette hauteur en mémoire)
+    private static final int LOG_RACINE_MIN = CodageBlocs.LOG_FEUILLE;
+    private static final int LOG_RACINE_MAX = 8;
+
+    // Signature suivant le marqueur des en-têtes versionnés
+    private static final byte[] SIGNATURE = { 'P', 'I', 'F' };
+
+    // Version lue dans le fichier, ou 0 pour un en-tête construit en mémoire
+    private int versionLue;
+
+    // Largeur de l'image en pixels
+    private final int largeur;
+
+    // Hauteur de l'image en pixels
+    private final int hauteur;
+
+    // Identifiant du codeur entropique
+    private int codeur = CodeurHuffman.IDENTIFIANT;
+
+    // Longueur en octets du flux de chaque canal (canaux séparés uniquement)
+    private int[] longueursCanaux;
+
+    // Transformation appliquée aux composantes
+    private Transformation transformation = Transformation.IDENTITE;
+
+    // Groupe de tables de chaque canal
+    private int[] groupes = CodeurEntropique.partitionIdentite(3);
+
+    // Identifiant du dictionnaire de tables, ou null si les tables figurent dans le fichier
+    private Integer dictionnaire;
+
+    // Vrai si les tables de Huffman sont codées de façon compacte
+    private boolean tablesCompactes;
+
+    // Couleurs ARGB de la palette, ou null si les pixels sont codés par leurs composantes
+    private int[] palette;
+
+    // Logarithme en base 2 de la fenêtre des copies, ou 0 si les pixels ne sont pas codés par correspondances
+    private int correspondances;
+
+    // Canal source de chaque canal (lui-même s'il est codé ou constant)
+    private int[] doublons = CodeurEntropique.partitionIdentite(3);
+
+    // Valeur de chaque canal constant, ou -1
+    private int[] constantes = { -1, -1, -1 };
+
+    // Période, en lignes, des mises à jour des tables adaptatives, ou 0 si les tables sont dans le fichier
+    private int adaptatif;
+
+    // Logarithme en base 2 de la taille des blocs racines, ou 0 si l'image n'est pas découpée en blocs
+    private int blocs;
+
+    /**
+     * Construit l'en-tête d'une image sans option : Huffman canonique, canaux entrelacés et non transformés.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     */
+    public EnTetePIF(int largeur, int hauteur) {
+        this.largeur = largeur;
+        this.hauteur = hauteur;
+    }
+
+    /**
+     * Retourne la version du format : celle lue dans le fichier, ou pour un en-tête à écrire,
+     * la version historique si elle suffit à décrire l'image et la version courante sinon.
+     * @return La version du format.
+     */
+    public int getVersion() {
+        if (versionLue != 0) {
+            return versionLue;
+        }
+        boolean historique = codeur == CodeurHuffman.IDENTIFIANT && getDrapeaux() == 0
+                && largeur > 0 && hauteur > 0 && largeur <= 0xFFFF && hauteur <= 0xFFFF;
+        return historique ? VERSION_HISTORIQUE : VERSION_COURANTE;
+    }
+
+    // @return La largeur de l'image
+    public int getLargeur() {
+        return largeur;
+    }
+
+    // @return La hauteur de l'image
+    public int getHauteur() {
+        return hauteur;
+    }
+
+    // @return L'identifiant du codeur entropique
+    public int getCodeur() {
+        return codeur;
+    }
+
+    /**
+     * Choisit le codeur entropique.
+     * @param codeur L'identifiant du codeur.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setCodeur(int codeur) {
+        this.codeur = codeur;
+        return this;
+    }
+
+    // @return Les drapeaux décrivant l'organisation des données
+    public int getDrapeaux() {
+        int drapeaux = 0;
+        if (longueursCanaux != null) drapeaux |= CANAUX_SEPARES;
+        if (!transformation.estIdentite()) drapeaux |= TRANSFORMATION;
+        if (!Arrays.equals(groupes, CodeurEntropique.partitionIdentite(3))) drapeaux |= PARTITION;
+        if (dictionnaire != null) drapeaux |= DICTIONNAIRE;
+        if (tablesCompactes) drapeaux |= TABLES_COMPACTES;
+        if (transformation.getPerte() > 0) drapeaux |= QUANTIFICATION;
+        if (palette != null) drapeaux |= PALETTE;
+        if (correspondances != 0) drapeaux |= CORRESPONDANCES;
+        if (!Arrays.equals(doublons, CodeurEntropique.partitionIdentite(3))) drapeaux |= DOUBLONS;
+        if (constantes[0] >= 0 || constantes[1] >= 0 || constantes[2] >= 0) drapeaux |= CONSTANTES;
+        if (adaptatif != 0) drapeaux |= ADAPTATIF;
+        if (blocs != 0) drapeaux |= BLOCS;
+        return drapeaux;
+    }
+
+    // @return Vrai si les canaux sont codés dans des flux indépendants
+    public boolean isCanauxSepares() {
+        return longueursCanaux != null;
+    }
+
+    // @return La longueur en octets du flux de chaque canal, ou null si les canaux sont entrelacés
+    public int[] getLongueursCanaux() {
+        return longueursCanaux;
+    }
+
+    /**
+     * Déclare des canaux séparés en donnant la longueur de leurs flux.
+     * @param longueursCanaux La longueur du flux de chaque canal, ou <code>null</code> si les canaux sont entrelacés.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setLongueursCanaux(int[] longueursCanaux) {
+        this.longueursCanaux = longueursCanaux;
+        return this;
+    }
+
+    // @return La transformation appliquée aux composantes
+    public Transformation getTransformation() {
+        return transformation;
+    }
+
+    /**
+     * Choisit la transformation appliquée aux composantes.
+     * @param transformation La transformation.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setTransformation(Transformation transformation) {
+        this.transformation = transformation;
+        return this;
+    }
+
+    // @return Le groupe de tables de chaque canal
+    public int[] getGroupes() {
+        return groupes;
+    }
+
+    /**
+     * Choisit la répartition des canaux entre les tables du codeur.
+     * @param groupes Pour chaque canal, l'indice du groupe dont il partage la table.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setGroupes(int[] groupes) {
+        this.groupes = groupes;
+        return this;
+    }
+
+    // @return L'identifiant du dictionnaire de tables, ou null si les tables figurent dans le fichier
+    public Integer getDictionnaire() {
+        return dictionnaire;
+    }
+
+    /**
+     * Désigne le dictionnaire dont les tables remplacent celles du fichier.
+     * @param dictionnaire L'identifiant du dictionnaire, ou <code>null</code> si les tables figurent dans le fichier.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setDictionnaire(Integer dictionnaire) {
+        this.dictionnaire = dictionnaire;
+        return this;
+    }
+
+    // @return Vrai si les tables de Huffman sont codées de façon compacte
+    public boolean isTablesCompactes() {
+        return tablesCompactes;
+    }
+
+    /**
+     * Choisit le codage des tables de Huffman.
+     * @param tablesCompactes Vrai pour le codage compact de {@link TableCompacte}, faux pour 256 octets par table.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setTablesCompactes(boolean tablesCompactes) {
+        this.tablesCompactes = tablesCompactes;
+        return this;
+    }
+
+    // @return Les couleurs ARGB de la palette, ou null si les pixels sont codés par leurs composantes
+    public int[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * Choisit le codage des pixels par leur indice dans une palette.
+     * @param palette Les couleurs de la palette (de 1 à 256), ou <code>null</code> pour coder les composantes.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setPalette(int[] palette) {
+        this.palette = palette;
+        return this;
+    }
+
+    // @return Vrai si les pixels sont codés par correspondances
+    public boolean isCorrespondances() {
+        return correspondances != 0;
+    }
+
+    // @return Le logarithme en base 2 de la fenêtre des copies, ou 0 sans correspondances
+    public int getCorrespondances() {
+        return correspondances;
+    }
+
+    /**
+     * Choisit le codage des pixels par correspondances ({@link CodageLZ}).
+     * @param logFenetre Le logarithme en base 2 de la fenêtre des copies, ou 0 pour coder les composantes.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setCorrespondances(int logFenetre) {
+        this.correspondances = logFenetre;
+        return this;
+    }
+
+    // @return Vrai si les tables de Huffman sont adaptatives
+    public boolean isAdaptatif() {
+        return adaptatif != 0;
+    }
+
+    // @return La période, en lignes, des mises à jour des tables adaptatives, ou 0 si les tables sont dans le fichier
+    public int getAdaptatif() {
+        return adaptatif;
+    }
+
+    /**
+     * Choisit le codage de Huffman adaptatif en une passe ({@link HuffmanAdaptatif}).
+     * @param periode La période, en lignes, des mises à jour des tables (de 1 à {@link HuffmanAdaptatif#PERIODE_MAX}),
+     * ou 0 pour écrire les tables dans le fichier.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setAdaptatif(int periode) {
+        this.adaptatif = periode;
+        return this;
+    }
+
+    // @return Vrai si l'image est découpée en blocs
+    public boolean isBlocs() {
+        return blocs != 0;
+    }
+
+    // @return Le logarithme en base 2 de la taille des blocs racines, ou 0 sans découpage en blocs
+    public int getBlocs() {
+        return blocs;
+    }
+
+    /**
+     * Choisit le découpage de l'image en arbre quaternaire de blocs ({@link CodageBlocs}).
+     * @param logRacine Le logarithme en base 2 de la taille des blocs racines, ou 0 pour coder tous les pixels.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setBlocs(int logRacine) {
+        this.blocs = logRacine;
+        return this;
+    }
+
+    // @return Le canal source de chaque canal (lui-même s'il est codé ou constant)
+    public int[] getDoublons() {
+        return doublons;
+    }
+
+    /**
+     * Déclare les canaux identiques à un canal précédent, qui ne sont pas codés.
+     * @param doublons Pour chaque canal, l'indice du canal codé dont il est la copie, ou son propre indice.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setDoublons(int[] doublons) {
+        this.doublons = doublons;
+        return this;
+    }
+
+    // @return La valeur de chaque canal constant, ou -1
+    public int[] getConstantes() {
+        return constantes;
+    }
+
+    /**
+     * Déclare les canaux constants, qui ne sont pas codés.
+     * @param constantes Pour chaque canal, sa valeur s'il est constant, ou -1.
+     * @return Cet en-tête, pour chaîner les appels.
+     */
+    public EnTetePIF setConstantes(int[] constantes) {
+        this.constantes = constantes;
+        return this;
+    }
+
+    /**
+     * Retourne les canaux dont les données figurent dans le fichier : tous, sauf les doublons et les canaux constants.
+     * @return Les indices des canaux codés, dans l'ordre.
+     */
+    public int[] getCanauxCodes() {
+        int[] codes = new int[3];
+        int n = 0;
+        for (int c = 0; c < 3; c++) {
+            if (doublons[c] == c && constantes[c] < 0) {
+                codes[n++] = c;
+            }
+        }
+        return Arrays.copyOf(codes, n);
+    }
+
+    /**
+     * Retourne le groupe de tables de chaque canal codé : la partition des canaux, ou en présence de canaux non codés, une table par canal codé.
+     * @return Un groupe par canal de {@link #getCanauxCodes()}.
+     */
+    public int[] getGroupesCodes() {
+        int n = getCanauxCodes().length;
+        return (n == 3) ? groupes : CodeurEntropique.partitionIdentite(n);
+    }
+
+    /**
+     * Retourne le nombre de pixels décrit par l'en-tête, en vérifiant qu'il tient dans un tableau Java.
+     * @return Le nombre de pixels.
+     * @throws IOException Si l'image est trop grande pour être chargée en mémoire.
+     */
+    public int nombrePixels() throws IOException {
+        long n = (long) largeur * hauteur;
+        if (n > Integer.MAX_VALUE - 8) {
+            throw new IOException("Image trop grande : " + largeur + " x " + hauteur);
+        }
+        return (int) n;
+    }
+
+    /**
+     * Calcule la taille en octets de l'en-tête tel qu'il sera écrit.
+     * @return Le nombre d'octets.
+     */
+    public int taille() {
+        if (getVersion() == VERSION_HISTORIQUE) {
+            return 4;
+        }
+        int drapeaux = getDrapeaux();
+        int taille = 4 + SIGNATURE.length + 1 + 8 + 1 + 1;
+        if (getVersion() >= VERSION_DRAPEAUX_ETENDUS) taille += 1;
+        if ((drapeaux & CANAUX_SEPARES) != 0) taille += 12;
+        if ((drapeaux & TRANSFORMATION) != 0) taille += 1;
+        if ((drapeaux & PARTITION) != 0) taille += 1;
+        if ((drapeaux & DICTIONNAIRE) != 0) taille += 4;
+        if ((drapeaux & QUANTIFICATION) != 0) taille += 1;
+        if ((drapeaux & PALETTE) != 0) taille += 1 + 3 * palette.length;
+        if ((drapeaux & CORRESPONDANCES) != 0) taille += 1;
+        if ((drapeaux & DOUBLONS) != 0) taille += 1;
+        if ((drapeaux & CONSTANTES) != 0) {
+            taille += 1;
+            for (int valeur : constantes) {
+                if (valeur >= 0) taille += 1;
+            }
+        }
+        if ((drapeaux & ADAPTATIF) != 0) taille += 2;
+        if ((drapeaux & BLOCS) != 0) taille += 1;
+        return taille;
+    }
+
+    /**
+     * Écrit l'en-tête dans un flux.
+     * @param os Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    public void ecrire(OutputStream os) throws IOException {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        ecrireChamps(os);
+        Instrumentation.fin(Instrumentation.Phase.ENTETE, debut, taille(), (long) largeur * hauteur);
+    }
+
+    // Écrit les champs de l'en-tête selon sa version
+    private void ecrireChamps(OutputStream os) throws IOException {
+        if (getVersion() == VERSION_HISTORIQUE) {
+            ecrireShort(os, largeur);
+            ecrireShort(os, hauteur);
+            return;
+        }
+        int drapeaux = getDrapeaux();
+        ecrireShort(os, 0);
+        ecrireShort(os, 0);
+        os.write(SIGNATURE);
+        os.write(VERSION_COURANTE);
+        ecrireEntier(os, largeur);
+        ecrireEntier(os, hauteur);
+        os.write(codeur);
+        os.write(drapeaux & 0xFF);
+        os.write(drapeaux >> 8);
+        if ((drapeaux & CANAUX_SEPARES) != 0) {
+            for (int longueur : longueursCanaux) {
+                ecrireEntier(os, longueur);
+            }
+        }
+        if ((drapeaux & TRANSFORMATION) != 0) {
+            os.write(transformation.getCode());
+        }
+        if ((drapeaux & PARTITION) != 0) {
+            os.write(groupes[0] | (groupes[1] << 2) | (groupes[2] << 4));
+        }
+        if ((drapeaux & DICTIONNAIRE) != 0) {
+            ecrireEntier(os, dictionnaire);
+        }
+        if ((drapeaux & QUANTIFICATION) != 0) {
+            os.write(transformation.getPerte());
+        }
+        if ((drapeaux & PALETTE) != 0) {
+            byte[] octets = new byte[1 + 3 * palette.length];
+            octets[0] = (byte) (palette.length - 1);
+            for (int k = 0; k < palette.length; k++) {
+                octets[1 + 3 * k] = (byte) (palette[k] >> 16);
+                octets[2 + 3 * k] = (byte) (palette[k] >> 8);
+                octets[3 + 3 * k] = (byte) palette[k];
+            }
+            os.write(octets);
+        }
+        if ((drapeaux & CORRESPONDANCES) != 0) {
+            os.write(correspondances);
+        }
+        if ((drapeaux & DOUBLONS) != 0) {
+            os.write(doublons[0] | (doublons[1] << 2) | (doublons[2] << 4));
+        }
+        if ((drapeaux & CONSTANTES) != 0) {
+            int masque = 0;
+            for (int c = 0; c < 3; c++) {
+                if (constantes[c] >= 0) masque |= 1 << c;
+            }
+            os.write(masque);
+            for (int c = 0; c < 3; c++) {
+                if (constantes[c] >= 0) os.write(constantes[c]);
+            }
+        }
+        if ((drapeaux & ADAPTATIF) != 0) {
+            ecrireShort(os, adaptatif);
+        }
+        if ((drapeaux & BLOCS) != 0) {
+            os.write(blocs);
+        }
+    }
+
+    /**
+     * Lit un en-tête depuis un flux, quelle que soit sa version.
+     * @param is Le flux positionné au début du fichier.
+     * @return L'en-tête lu.
+     * @throws IOException Si l'en-tête est tronqué ou d'une version non supportée.
+     */
+    public static EnTetePIF lire(InputStream is) throws IOException {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        EnTetePIF entete = lireChamps(is);
+        Instrumentation.fin(Instrumentation.Phase.ENTETE, debut, entete.taille(), (long) entete.largeur * entete.hauteur);
+        return entete;
+    }
+
+    // Lit les champs d'un en-tête, quelle que soit sa version
+    private static EnTetePIF lireChamps(InputStream is) throws IOException {
+        int l = lireShort(is);
+        int h = lireShort(is);
+        if (l != 0 || h != 0) {
+            EnTetePIF entete = new EnTetePIF(l, h);
+            entete.versionLue = VERSION_HISTORIQUE;
+            return entete;
+        }
+
+        for (byte attendu : SIGNATURE) {
+            if (is.read() != attendu) {
+                // Fichier historique d'une image vide : rien d'autre à lire
+                EnTetePIF entete = new EnTetePIF(0, 0);
+                entete.versionLue = VERSION_HISTORIQUE;
+                return entete;
+            }
+        }
+        int version = lireOctet(is);
+        if (version < 2 || version > VERSION_COURANTE) {
+            throw new IOException("Version de PIF non supportée : " + version);
+        }
+        int largeur = lireEntier(is);
+        int hauteur = lireEntier(is);
+        if (largeur < 0 || hauteur < 0) {
+            throw new IOException("Dimensions invalides");
+        }
+        EnTetePIF entete = new EnTetePIF(largeur, hauteur).setCodeur(lireOctet(is));
+        entete.versionLue = version;
+
+        int drapeaux = (version >= 3) ? lireOctet(is) : 0;
+        if (version >= VERSION_DRAPEAUX_ETENDUS) {
+            drapeaux |= lireOctet(is) << 8;
+        }
+        if ((drapeaux & ~DRAPEAUX_CONNUS) != 0) {
+            throw new IOException("Drapeaux inconnus : " + drapeaux);
+        }
+        if ((drapeaux & CANAUX_SEPARES) != 0) {
+            int[] longueursCanaux = new int[3];
+            for (int c = 0; c < 3; c++) {
+                longueursCanaux[c] = lireEntier(is);
+                if (longueursCanaux[c] < 0) throw new IOException("Longueur de canal invalide");
+            }
+            entete.setLongueursCanaux(longueursCanaux);
+        }
+        if ((drapeaux & TRANSFORMATION) != 0) {
+            entete.setTransformation(Transformation.depuisCode(lireOctet(is)));
+        }
+        if ((drapeaux & PARTITION) != 0) {
+            int code = lireOctet(is);
+            int[] groupes = { code & 3, (code >> 2) & 3, (code >> 4) & 3 };
+            // Les groupes sont numérotés dans l'ordre de leur première apparition, sans trou
+            int max = -1;
+            for (int g : groupes) {
+                if (g > max + 1) throw new IOException("Partition invalide : " + code);
+                max = Math.max(max, g);
+            }
+            entete.setGroupes(groupes);
+        }
+        if ((drapeaux & DICTIONNAIRE) != 0) {
+            // Les tables d'un dictionnaire sont celles de Huffman, une par canal, pour un flux entrelacé
+            if (entete.codeur != CodeurHuffman.IDENTIFIANT || (drapeaux & (CANAUX_SEPARES | PARTITION)) != 0) {
+                throw new IOException("Dictionnaire incompatible avec l'organisation des données");
+            }
+            entete.setDictionnaire(lireEntier(is));
+        }
+        if ((drapeaux & TABLES_COMPACTES) != 0) {
+            if (entete.codeur != CodeurHuffman.IDENTIFIANT || (drapeaux & DICTIONNAIRE) != 0) {
+                throw new IOException("Tables compactes sans table de Huffman");
+            }
+            entete.setTablesCompactes(true);
+        }
+        if ((drapeaux & QUANTIFICATION) != 0) {
+            int perte = lireOctet(is);
+            if (perte < 1 || perte > Transformation.PERTE_MAX) {
+                throw new IOException("Perte invalide : " + perte);
+            }
+            Transformation transformation = entete.getTransformation().avecPerte(perte);
+            // Avec perte, la décorrélation lie les trois canaux de chaque pixel
+            if (!transformation.isCanauxIndependants() && (drapeaux & CANAUX_SEPARES) != 0) {
+                throw new IOException("Décorrélation avec perte incompatible avec des canaux séparés");
+            }
+            entete.setTransformation(transformation);
+        }
+        if ((drapeaux & PALETTE) != 0) {
+            // Les indices forment un unique canal, codé tel quel avec ses propres tables
+            if ((drapeaux & (CANAUX_SEPARES | TRANSFORMATION | PARTITION | DICTIONNAIRE | QUANTIFICATION)) != 0) {
+                throw new IOException("Palette incompatible avec l'organisation des données");
+            }
+            int[] palette = new int[lireOctet(is) + 1];
+            byte[] octets = is.readNBytes(3 * palette.length);
+            if (octets.length < 3 * palette.length) throw new EOFException();
+            for (int k = 0; k < palette.length; k++) {
+                palette[k] = 0xFF000000 | ((octets[3 * k] & 0xFF) << 16) | ((octets[3 * k + 1] & 0xFF) << 8) | (octets[3 * k + 2] & 0xFF);
+            }
+            entete.setPalette(palette);
+        }
+        if ((drapeaux & CORRESPONDANCES) != 0) {
+            // Les jetons ont leurs propres tables de Huffman, toujours compactes, et portent les pixels sans transformation
+            if (entete.codeur != CodeurHuffman.IDENTIFIANT || (drapeaux & TABLES_COMPACTES) == 0
+                    || (drapeaux & (CANAUX_SEPARES | TRANSFORMATION | PARTITION | DICTIONNAIRE | QUANTIFICATION | PALETTE)) != 0) {
+                throw new IOException("Correspondances incompatibles avec l'organisation des données");
+            }
+            int logFenetre = lireOctet(is);
+            if (logFenetre < LOG_FENETRE_MIN || logFenetre > LOG_FENETRE_MAX) {
+                throw new IOException("Fenêtre de correspondances invalide : " + logFenetre);
+            }
+            entete.setCorrespondances(logFenetre);
+        }
+        if ((drapeaux & (DOUBLONS | CONSTANTES)) != 0) {
+            // Les canaux non codés sont reconstruits à partir des composantes : aucun mélange des canaux avant le codage
+            if ((drapeaux & (PARTITION | DICTIONNAIRE | PALETTE | CORRESPONDANCES)) != 0 || entete.getTransformation().isDecorrelation()) {
+                throw new IOException("Canaux redondants incompatibles avec l'organisation des données");
+            }
+        }
+        if ((drapeaux & DOUBLONS) != 0) {
+            int code = lireOctet(is);
+            int[] doublons = { code & 3, (code >> 2) & 3, (code >> 4) & 3 };
+            // Chaque doublon copie un canal précédent qui est lui-même codé
+            for (int c = 0; c < 3; c++) {
+                if (doublons[c] > c || (doublons[c] != c && doublons[doublons[c]] != doublons[c]) || code >= 64) {
+                    throw new IOException("Doublons invalides : " + code);
+                }
+            }
+            entete.setDoublons(doublons);
+        }
+        if ((drapeaux & CONSTANTES) != 0) {
+            int masque = lireOctet(is);
+            if (masque == 0 || masque > 7) {
+                throw new IOException("Canaux constants invalides : " + masque);
+            }
+            int[] constantes = { -1, -1, -1 };
+            for (int c = 0; c < 3; c++) {
+                if ((masque & (1 << c)) != 0) {
+                    // Un canal constant n'est ni un doublon ni la source d'un doublon
+                    for (int d = 0; d < 3; d++) {
+                        if (entete.doublons[d] == c && d != c || entete.doublons[c] != c) {
+                            throw new IOException("Canal constant invalide : " + c);
+                        }
+                    }
+                    constantes[c] = lireOctet(is);
+                }
+            }
+            entete.setConstantes(constantes);
+        }
+        if ((drapeaux & ADAPTATIF) != 0) {
+            // Les tables naissent du flux lui-même : ni tables écrites, ni canaux dont l'analyse demande l'image entière
+            if (entete.codeur != CodeurHuffman.IDENTIFIANT || (drapeaux & (CANAUX_SEPARES | PARTITION | DICTIONNAIRE | TABLES_COMPACTES
+                    | PALETTE | CORRESPONDANCES | DOUBLONS | CONSTANTES)) != 0) {
+                throw new IOException("Tables adaptatives incompatibles avec l'organisation des données");
+            }
+            int periode = lireShort(is);
+            if (periode == 0) {
+                throw new IOException("Période des tables adaptatives invalide : " + periode);
+            }
+            entete.setAdaptatif(periode);
+        }
+        if ((drapeaux & BLOCS) != 0) {
+            // Les blocs ont leurs propres tables de Huffman, toujours compactes ; les pixels des feuilles sont prédits sans perte
+            if (entete.codeur != CodeurHuffman.IDENTIFIANT || (drapeaux & TABLES_COMPACTES) == 0
+                    || (drapeaux & (CANAUX_SEPARES | PARTITION | DICTIONNAIRE | QUANTIFICATION | PALETTE | CORRESPONDANCES
+                    | DOUBLONS | CONSTANTES | ADAPTATIF)) != 0) {
+                throw new IOException("Blocs incompatibles avec l'organisation des données");
+            }
+            int logRacine = lireOctet(is);
+            if (logRacine < LOG_RACINE_MIN || logRacine > LOG_RACINE_MAX) {
+                throw new IOException("Taille des blocs invalide : " + logRacine);
+            }
+            entete.setBlocs(logRacine);
+        }
+        return entete;
+    }
+
+    // Méthodes utilitaires d'I/O
+
+    // Écrit un entier sur 16 bits dans le flux
+    private static void ecrireShort(OutputStream os, int val) throws IOException {
+        os.write((val >> 8) & 0xFF);
+        os.write(val & 0xFF);
+    }
+
+    // Lit un entier sur 16 bits depuis le flux
+    private static int lireShort(InputStream is) throws IOException {
+        int ch1 = is.read();
+        int ch2 = is.read();
+        if ((ch1 | ch2) < 0) throw new EOFException();
+        return (ch1 << 8) + (ch2 << 0);
+    }
+
+    // Écrit un entier sur 32 bits dans le flux
+    private static void ecrireEntier(OutputStream os, int val) throws IOException {
+        ecrireShort(os, val >>> 16);
+        ecrireShort(os, val & 0xFFFF);
+    }
+
+    // Lit un entier sur 32 bits depuis le flux
+    private static int lireEntier(InputStream is) throws IOException {
+        return (lireShort(is) << 16) | lireShort(is);
+    }
+
+    // Lit un octet, en signalant la fin de flux
+    private static int lireOctet(InputStream is) throws IOException {
+        int val = is.read();
+        if (val < 0) throw new EOFException();
+        return val;
+    }
+}
@@ -0,0 +1,208 @@
+package pif;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encode une image PIF en une seule passe, au fil de l'arrivée de ses lignes (numériseur, périphérique de capture),
+ * pendant de {@link DecodeurLignes}. L'en-tête est écrit dès l'ouverture ; chaque ligne reçue est aussitôt transformée,
+ * codée par {@link HuffmanAdaptatif}, et ses octets complets sont transmis au flux : les données PIF sortent au rythme des lignes.
+ * La mémoire utilisée est proportionnelle à la largeur de l'image, et le travail par ligne est borné.
+ * Sans analyse de l'image entière, la transformation est fixée (prédicteur MED et décorrélation) et les tables sont apprises en chemin :
+ * le fichier est en général un peu plus gros qu'avec l'encodage en deux passes de {@link ImagePIF}, mais se lit de la même façon.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class EncodeurLignes implements AutoCloseable {
+
+    // En-tête de l'image
+    private final EnTetePIF entete;
+
+    // Transformation appliquée à chaque ligne
+    private final Transformation transformation;
+
+    // Codeur adaptatif des résidus
+    private final HuffmanAdaptatif.Encodeur encodeur;
+
+    // Flux à fermer avec l'encodeur, ou null s'il appartient à l'appelant
+    private final OutputStream fluxPossede;
+
+    // Vrai si les octets de chaque ligne sont transmis au flux dès qu'elle est codée
+    private final boolean transmission;
+
+    // Largeur de l'image
+    private final int largeur;
+
+    // Résidus de la ligne en cours, puis composantes de la ligne courante et de la précédente
+    private final int[][] residus;
+    private int[][] courante;
+    private int[][] precedente;
+
+    // Indice de la prochaine ligne à coder
+    private int y;
+
+    // Vrai une fois l'encodeur fermé
+    private boolean ferme;
+
+    // Vrai si l'Instrumentation était active à l'ouverture : la durée de la transformation est alors cumulée ligne par ligne
+    private final boolean mesures;
+
+    // Durée cumulée de la transformation des lignes, en nanosecondes, transmise une seule fois par close()
+    private long dureeTransformation;
+
+    /**
+     * Écrit l'en-tête d'une image et prépare le codage de ses lignes dans un flux, qui n'est pas fermé par {@link #close()}.
+     * @param sortie Le flux de destination.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     * @param options Les options d'encodage : la perte et la période des mises à jour des tables ({@link OptionsEncodage#getPeriodeAdaptative()},
+     * {@link HuffmanAdaptatif#PERIODE_DEFAUT} lignes si elle est nulle) ; l'effort et les options d'analyse de l'image entière sont sans objet.
+     * @throws IOException En cas d'erreur d'E/S.
+     * @throws IllegalArgumentException Si les options demandent un autre codeur que Huffman, un dictionnaire ou des canaux séparés.
+     */
+    public EncodeurLignes(OutputStream sortie, int largeur, int hauteur, OptionsEncodage options) throws IOException {
+        this(sortie, null, largeur, hauteur, options, true);
+    }
+
+    /**
+     * Prépare le codage des lignes d'une image dans un flux, en transmettant ou non les octets de chaque ligne dès qu'elle est codée.
+     * @param sortie Le flux de destination.
+     * @param fluxPossede Le flux à fermer avec l'encodeur, ou null.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     * @param options Les options d'encodage.
+     * @param transmission Vrai pour transmettre les octets ligne par ligne, faux pour laisser le tampon du flux de bits se remplir.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    EncodeurLignes(OutputStream sortie, OutputStream fluxPossede, int largeur, int hauteur, OptionsEncodage options, boolean transmission)
+            throws IOException {
+        this.entete = entete(largeur, hauteur, options);
+        this.fluxPossede = fluxPossede;
+        this.transmission = transmission;
+        this.transformation = entete.getTransformation();
+        this.largeur = largeur;
+        this.residus = new int[3][largeur];
+        this.courante = new int[3][largeur];
+        this.precedente = new int[3][largeur];
+        this.mesures = Instrumentation.actif();
+        entete.ecrire(sortie);
+        this.encodeur = HuffmanAdaptatif.ouvrirEncodeur(entete, sortie);
+        if (transmission) {
+            encodeur.transmettre();
+        }
+    }
+
+    /**
+     * Crée un fichier PIF et prépare le codage de ses lignes. Le fichier est fermé par {@link #close()}.
+     * @param chemin Le chemin du fichier .pif.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     * @param options Les options d'encodage.
+     * @return L'encodeur, prêt à recevoir la première ligne.
+     * @throws IOException Si le fichier ne peut être créé.
+     */
+    public static EncodeurLignes creer(String chemin, int largeur, int hauteur, OptionsEncodage options) throws IOException {
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(chemin), 1 << 16);
+        try {
+            return new EncodeurLignes(os, os, largeur, hauteur, options, true);
+        } catch (IOException | RuntimeException e) {
+            os.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Construit l'en-tête d'une image codée en une passe.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     * @param options Les options d'encodage.
+     * @return L'en-tête, avec la transformation et la période des tables.
+     * @throws IllegalArgumentException Si les options demandent un autre codeur que Huffman, un dictionnaire ou des canaux séparés.
+     */
+    static EnTetePIF entete(int largeur, int hauteur, OptionsEncodage options) {
+        if (options.getCodeur().getIdentifiant() != CodeurHuffman.IDENTIFIANT || options.getDictionnaire() != null
+                || options.isCanauxSepares()) {
+            throw new IllegalArgumentException("Le codage en une passe n'admet que le codeur de Huffman, sans dictionnaire ni canaux séparés");
+        }
+        int periode = options.getPeriodeAdaptative() > 0 ? options.getPeriodeAdaptative() : HuffmanAdaptatif.PERIODE_DEFAUT;
+        Transformation transformation = new Transformation(Transformation.MED, true).avecPerte(options.getPerte());
+        return new EnTetePIF(largeur, hauteur).setTransformation(transformation).setAdaptatif(periode);
+    }
+
+    // @return L'en-tête de l'image
+    public EnTetePIF getEntete() {
+        return entete;
+    }
+
+    // @return L'indice de la prochaine ligne à coder
+    public int getLigneSuivante() {
+        return y;
+    }
+
+    /**
+     * Code la ligne suivante et transmet ses octets complets au flux.
+     * @param pixels Les pixels ARGB de la ligne (la composante alpha est ignorée).
+     * @param decalage L'indice du premier pixel de la ligne dans <code>pixels</code>.
+     * @throws IOException En cas d'erreur d'E/S.
+     * @throws IllegalStateException Si toutes les lignes de l'image ont déjà été codées.
+     */
+    public void ecrireLigne(int[] pixels, int decalage) throws IOException {
+        if (y >= entete.getHauteur()) {
+            throw new IllegalStateException("Toutes les lignes de l'image ont été codées");
+        }
+        long debut = mesures ? System.nanoTime() : 0;
+        transformation.appliquerLigne(pixels, decalage, largeur, y, precedente, courante, residus);
+        if (mesures) {
+            dureeTransformation += System.nanoTime() - debut;
+        }
+        encodeur.encoder(residus, largeur);
+        if (transmission) {
+            encodeur.transmettre();
+        }
+        int[][] echange = precedente;
+        precedente = courante;
+        courante = echange;
+        y++;
+    }
+
+    /**
+     * Code plusieurs lignes consécutives rangées dans un même tableau.
+     * @param pixels Les pixels ARGB des lignes, ligne après ligne.
+     * @param decalage L'indice du premier pixel de la première ligne dans <code>pixels</code>.
+     * @param nbLignes Le nombre de lignes à coder.
+     * @throws IOException En cas d'erreur d'E/S.
+     * @throws IllegalStateException Si l'image a moins de lignes restantes.
+     */
+    public void ecrireLignes(int[] pixels, int decalage, int nbLignes) throws IOException {
+        for (int k = 0; k < nbLignes; k++) {
+            ecrireLigne(pixels, decalage + k * largeur);
+        }
+    }
+
+    /**
+     * Termine le flux de bits. Le fichier ouvert par {@link #creer} est fermé.
+     * @throws IOException En cas d'erreur d'E/S, ou si des lignes de l'image n'ont pas été codées (le fichier est alors tronqué).
+     */
+    @Override
+    public void close() throws IOException {
+        if (ferme) {
+            return;
+        }
+        ferme = true;
+        if (mesures) {
+            Instrumentation.enregistrer(Instrumentation.Phase.TRANSFORMATION, dureeTransformation, 0, (long) y * largeur);
+        }
+        try {
+            encodeur.terminer();
+            if (y < entete.getHauteur()) {
+                throw new IOException("Image incomplète : " + y + " lignes codées sur " + entete.getHauteur());
+            }
+        } finally {
+            if (fluxPossede != null) {
+                fluxPossede.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package pif;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prévoit la taille du fichier PIF d'une image pour différentes options d'encodage, sans l'encoder.
+ * Seules les fréquences des symboles sont calculées : pour le codeur de Huffman, la taille est exacte
+ * (en-tête, tables de 256 octets ou compactes, puis la somme des fréquences multipliées par les longueurs des codes canoniques, arrondie à l'octet),
+ * comme avec un {@link DictionnaireHuffman}, qui n'écrit pas de tables ; pour les autres codeurs, c'est l'estimation fournie par {@link CodeurEntropique#estimerBits(int[])}.
+ * Le codage en une passe ({@link EncodeurLignes}), dont les tables dépendent de l'ordre des symboles, fait exception : l'image est codée
+ * vers un flux qui ne fait que compter les octets.
+ * Les fréquences de chaque transformation sont conservées d'une estimation à l'autre : comparer tous les modes
+ * ne parcourt l'image qu'une fois par transformation essayée.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class EstimationTaille {
+
+    /**
+     * Taille prévue pour un jeu d'options.
+     */
+    public static final class Resultat {
+
+        // Options estimées
+        private final OptionsEncodage options;
+
+        // En-tête du plan que l'encodeur retiendrait
+        private final EnTetePIF entete;
+
+        // Taille du fichier en octets
+        private final long octets;
+
+        // Vrai si la taille est exacte, faux si elle est estimée
+        private final boolean exacte;
+
+        private Resultat(OptionsEncodage options, EnTetePIF entete, long octets, boolean exacte) {
+            this.options = options;
+            this.entete = entete;
+            this.octets = octets;
+            this.exacte = exacte;
+        }
+
+        // @return Les options estimées
+        public OptionsEncodage getOptions() {
+            return options;
+        }
+
+        // @return L'en-tête du plan que l'encodeur retiendrait
+        public EnTetePIF getEntete() {
+            return entete;
+        }
+
+        // @return La taille du fichier en octets
+        public long getOctets() {
+            return octets;
+        }
+
+        // @return Vrai si la taille est exacte, faux si elle est estimée
+        public boolean isExacte() {
+            return exacte;
+        }
+
+        // @return Le nombre moyen de bits par pixel du fichier
+        public double getBitsParPixel() {
+            long pixels = (long) entete.getLargeur() * entete.getHauteur();
+            return pixels > 0 ? octets * 8.0 / pixels : 0;
+        }
+
+        // @return Le taux de compression par rapport à l'image brute en RVB 24 bits
+        public double getTaux() {
+            return octets > 0 ? 3.0 * entete.getLargeur() * entete.getHauteur() / octets : 0;
+        }
+    }
+
+    // Pixels de l'image
+    private final IntBuffer pixels;
+
+    // Dimensions de l'image
+    private final int largeur;
+    private final int hauteur;
+
+    // Fréquences des résidus de chaque canal, indexées par clé de transformation
+    private final Map<Integer, int[][]> histogrammes = new HashMap<>();
+
+    // Palette de l'image (null si elle a trop de couleurs), cherchée au premier besoin
+    private Palette palette;
+    private boolean paletteCherchee;
+
+    // Découpage en littéraux et copies pour chaque effort, calculé au premier besoin
+    private final Map<Effort, CodageLZ> correspondances = new EnumMap<>(Effort.class);
+
+    // Canaux redondants de l'image (null s'il n'y en a pas), cherchés au premier besoin
+    private CanauxRedondants redondants;
+    private boolean redondantsCherches;
+
+    // Arbre des blocs uniformes de l'image (null si aucune feuille n'est uniforme), analysé au premier besoin
+    private CodageBlocs blocs;
+    private boolean blocsAnalyses;
+
+    /**
+     * Prépare l'estimation des tailles d'une image.
+     * @param pixels Les pixels ARGB de l'image.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     */
+    public EstimationTaille(int[] pixels, int largeur, int hauteur) {
+        this(IntBuffer.wrap(pixels), largeur, hauteur);
+    }
+
+    /**
+     * Prépare l'estimation des tailles d'une image dont les pixels sont dans un tampon, éventuellement hors du tas.
+     * @param pixels Les pixels ARGB de l'image, de la position 0 à la limite.
+     * @param largeur La largeur de l'image.
+     * @param hauteur La hauteur de l'image.
+     */
+    public EstimationTaille(IntBuffer pixels, int largeur, int hauteur) {
+        this.pixels = pixels;
+        this.largeur = largeur;
+        this.hauteur = hauteur;
+    }
+
+    /**
+     * Calcule l'entropie de Shannon de chaque composante brute (rouge, vert, bleu) de l'image.
+     * @return Trois entropies, en bits par symbole.
+     */
+    public double[] entropies() {
+        int[][] frequences = frequences(Transformation.IDENTITE);
+        double[] entropies = new double[3];
+        for (int c = 0; c < 3; c++) {
+            entropies[c] = entropie(frequences[c]);
+        }
+        return entropies;
+    }
+
+    /**
+     * Prévoit la taille du fichier produit avec des options données.
+     * @param options Les options d'encodage.
+     * @return La taille prévue.
+     */
+    public Resultat estimer(OptionsEncodage options) {
+        if (options.getPeriodeAdaptative() > 0) {
+            return estimerAdaptatif(options);
+        }
+        CodeurEntropique codeur = PlanEncodage.codeur(options);
+        EnTetePIF entete = PlanEncodage.choisirEntete(pixels, largeur, hauteur, options, histogrammes,
+                PlanEncodage.paletteAdmise(options) ? palette() : null,
+                PlanEncodage.correspondancesAdmises(options) ? correspondances(options.getEffort()) : null,
+                PlanEncodage.redondancesAdmises(options) ? redondants() : null,
+                PlanEncodage.blocsAdmis(options) ? blocs() : null);
+        boolean exacte = codeur instanceof CodeurHuffman || options.getDictionnaire() != null;
+        if (entete.isCorrespondances()) {
+            // Les jetons sont toujours codés par Huffman : la taille est exacte
+            long octets = entete.taille() + (correspondances.get(options.getEffort()).estimerBits() + 7) / 8;
+            return new Resultat(options, entete, octets, true);
+        }
+        if (entete.isBlocs()) {
+            // Les blocs sont toujours codés par Huffman : la taille est exacte
+            long octets = entete.taille() + (blocs.estimerBits() + 7) / 8;
+            return new Resultat(options, entete, octets, true);
+        }
+        if (entete.getPalette() != null) {
+            // Un unique canal d'indices, avec sa table
+            long octets = entete.taille() + tailleGroupes(codeur, new int[][] { palette.frequences() });
+            return new Resultat(options, entete, octets, exacte);
+        }
+        int[][] frequences = frequences(entete.getTransformation());
+        // Seuls les canaux codés ont un flux
+        int[] codes = entete.getCanauxCodes();
+
+        long octets;
+        if (options.getDictionnaire() != null) {
+            // Aucune table dans le fichier : l'en-tête puis le flux de bits
+            octets = entete.taille() + (options.getDictionnaire().bits(frequences) + 7) / 8;
+        } else if (codes.length == 0) {
+            // Tous les canaux sont constants : l'en-tête seul, sans longueurs de canaux
+            octets = entete.taille();
+        } else if (options.isCanauxSepares()) {
+            // Un flux indépendant par canal, chacun avec sa table et complété à l'octet
+            entete.setLongueursCanaux(new int[3]);
+            octets = entete.taille();
+            for (int c : codes) {
+                octets += tailleGroupes(codeur, new int[][] { frequences[c] });
+            }
+            entete.setLongueursCanaux(null);
+        } else {
+            // Une table par groupe, puis un flux de bits unique
+            int[] groupes = entete.getGroupesCodes();
+            int[][] cumuls = new int[CodeurEntropique.nombreGroupes(groupes)][256];
+            for (int k = 0; k < codes.length; k++) {
+                for (int s = 0; s < 256; s++) cumuls[groupes[k]][s] += frequences[codes[k]][s];
+            }
+            octets = entete.taille() + tailleGroupes(codeur, cumuls);
+        }
+        return new Resultat(options, entete, octets, exacte);
+    }
+
+    /**
+     * Calcule l'entropie de Shannon d'une distribution.
+     * @param frequences Les fréquences des symboles.
+     * @return L'entropie, en bits par symbole (0 pour une distribution vide).
+     */
+    public static double entropie(int[] frequences) {
+        long total = 0;
+        for (int f : frequences) total += f;
+        double entropie = 0;
+        for (int f : frequences) {
+            if (f > 0) {
+                double p = (double) f / total;
+                entropie -= p * Math.log(p);
+            }
+        }
+        return entropie / Math.log(2);
+    }
+
+    // Palette de l'image, cherchée au premier besoin
+    private Palette palette() {
+        if (!paletteCherchee) {
+            palette = Palette.detecter(pixels, largeur, hauteur);
+            paletteCherchee = true;
+        }
+        return palette;
+    }
+
+    // Taille exacte du codage en une passe : ses tables dépendent de l'ordre des symboles, l'image est donc codée vers un flux qui ne fait que compter
+    private Resultat estimerAdaptatif(OptionsEncodage options) {
+        FluxCompte compte = new FluxCompte();
+        try {
+            EncodeurLignes encodeur = new EncodeurLignes(compte, null, largeur, hauteur, options, false);
+            LignesPixels lignes = new LignesPixels(pixels, largeur);
+            for (int y = 0; y < hauteur; y++) {
+                encodeur.ecrireLigne(lignes.tableau(), lignes.ligne(y));
+            }
+            encodeur.close();
+            return new Resultat(options, encodeur.getEntete(), compte.ecrits, true);
+        } catch (IOException e) {
+            // Le flux de comptage ne produit pas d'erreur d'E/S
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Canaux redondants de l'image, cherchés au premier besoin
+    private CanauxRedondants redondants() {
+        if (!redondantsCherches) {
+            redondants = CanauxRedondants.detecter(pixels, largeur, hauteur);
+            redondantsCherches = true;
+        }
+        return redondants;
+    }
+
+    // Arbre des blocs uniformes de l'image, analysé au premier besoin
+    private CodageBlocs blocs() {
+        if (!blocsAnalyses) {
+            blocs = CodageBlocs.analyser(pixels, largeur, hauteur);
+            blocsAnalyses = true;
+        }
+        return blocs;
+    }
+
+    // Découpage en littéraux et copies pour un effort, calculé au premier besoin
+    private CodageLZ correspondances(Effort effort) {
+        return correspondances.computeIfAbsent(effort, e -> CodageLZ.analyser(pixels, largeur, hauteur, e));
+    }
+
+    // Fréquences des résidus d'une transformation, calculées au premier besoin
+    private int[][] frequences(Transformation t) {
+        return histogrammes.computeIfAbsent(t.getCle(), cle -> t.histogrammes(pixels, largeur, hauteur));
+    }
+
+    /**
+     * Calcule la taille des tables et du flux de bits de groupes de canaux encodés ensemble.
+     * @param codeur Le codeur entropique.
+     * @param frequences Les fréquences cumulées des canaux de chaque groupe.
+     * @return La taille en octets, flux de bits complété à l'octet.
+     */
+    private static long tailleGroupes(CodeurEntropique codeur, int[][] frequences) {
+        if (!(codeur instanceof CodeurHuffman)) {
+            long bits = 0;
+            for (int[] f : frequences) bits += codeur.estimerBits(f);
+            return (bits + 7) / 8;
+        }
+        int[][] tables = new int[frequences.length][];
+        long bits = 0;
+        for (int g = 0; g < frequences.length; g++) {
+            tables[g] = CodeurHuffman.longueurs(frequences[g]);
+            for (int s = 0; s < 256; s++) bits += (long) frequences[g][s] * tables[g][s];
+        }
+        // Les tables occupent des octets entiers : seul le flux de bits est arrondi
+        long table = codeur == CodeurHuffman.TABLES_COMPACTES ? TableCompacte.taille(tables) : 256L * tables.length;
+        return table + (bits + 7) / 8;
+    }
+
+    /**
+     * Flux qui compte les octets écrits sans les conserver.
+     */
+    private static final class FluxCompte extends OutputStream {
+        // Nombre d'octets écrits
+        private long ecrits;
+
+        @Override
+        public void write(int octet) {
+            ecrits++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ecrits += len;
+        }
+    }
+}
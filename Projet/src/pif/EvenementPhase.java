@@ -0,0 +1,50 @@
+package pif;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Événement JDK Flight Recorder couvrant chaque phase d'encodage ou de décodage d'une image PIF : il commence et se termine avec elle.
+ * Une phase entrecoupée ligne par ligne (décodage et assemblage des lignes, encodage par bandes ou en une passe) est enregistrée une seule fois à sa fin,
+ * par un événement sans étendue marqué « cumulée » : seul son champ <code>duree</code> est alors significatif.
+ * Il n'est enregistré que si une session JFR l'active (par exemple <code>java -XX:StartFlightRecording ...</code>) ;
+ * sinon sa création est éliminée par le compilateur.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ * @see Instrumentation
+ */
+@Name("pif.Phase")
+@Label("Phase PIF")
+@Category({ "PIF" })
+@Description("Phase d'encodage ou de décodage d'une image PIF ; pour une phase cumulée, seule la durée est significative")
+@StackTrace(false)
+final class EvenementPhase extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Octets")
+    @Description("Volume de données produit ou consommé par la phase")
+    @DataAmount
+    long octets;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Bits par pixel")
+    double bitsParPixel;
+
+    @Label("Durée")
+    @Description("Temps passé dans la phase ; pour une phase entrecoupée ligne par ligne, la somme de ses tranches")
+    @Timespan(Timespan.NANOSECONDS)
+    long duree;
+
+    @Label("Cumulée")
+    @Description("Vrai pour une phase entrecoupée ligne par ligne, enregistrée à sa fin : l'événement n'a pas d'étendue et seule la durée est significative")
+    boolean cumulee;
+}
@@ -8,6 +8,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Fenêtre principale de l'application de conversion d'images au format PIF.
@@ -32,6 +33,15 @@ public final class FenetreConvertisseur extends JFrame
     	
     	// Chemin de sauvegarde prédéfini lors du lancement.
     	private String cheminSortieDefaut;
+
+    	// Liste de choix du codeur entropique utilisé pour la conversion
+    	private JComboBox<String> choixCodeur;
+
+    	// Case à cocher demandant un flux indépendant par canal
+    	private JCheckBox caseCanauxSepares;
+
+    	// Liste de choix du niveau d'effort de compression
+    	private JComboBox<Effort> choixEffort;
 	
 	 /**
 	 * Initialise la fenêtre, ses composants graphiques et tente de charger une image si un chemin est fourni.
@@ -56,7 +66,22 @@ public final class FenetreConvertisseur extends JFrame
        		JButton boutonConvertir = new JButton("Convertir en PIF");
 	        boutonOuvrir.addActionListener(new ActionOuvrir(this));
 	        boutonConvertir.addActionListener(new ActionConvertir(this));
+	        choixCodeur = new JComboBox<>();
+	        for (CodeurEntropique codeur : CodeurEntropique.tous())
+		{
+			choixCodeur.addItem(codeur.getNom());
+		}
 	        controles.add(boutonOuvrir);
+	        controles.add(new JLabel("Codeur :"));
+	        controles.add(choixCodeur);
+	        caseCanauxSepares = new JCheckBox("Canaux séparés");
+	        caseCanauxSepares.setToolTipText("Un flux par canal : encodage et décodage parallèles");
+	        controles.add(caseCanauxSepares);
+	        choixEffort = new JComboBox<>(Effort.values());
+	        choixEffort.setSelectedItem(Effort.DEFAUT);
+	        choixEffort.setToolTipText("Rapide : une seule table ; Max : recherche des transformations et des tables les plus compactes");
+	        controles.add(new JLabel("Effort :"));
+	        controles.add(choixEffort);
 	        controles.add(boutonConvertir);
 	        add(controles, BorderLayout.SOUTH);
 	        if (cheminEntree != null) 
@@ -144,11 +169,96 @@ public final class FenetreConvertisseur extends JFrame
 	            	v[i] = (c >> 8) & 0xFF;
 	            	b[i] = c & 0xFF;
 	        }
+	        ajouterResume(rgb, l, h);
 	        ajouterStatsCanal("Rouge", r);
 	        ajouterStatsCanal("Vert", v);
 	        ajouterStatsCanal("Bleu", b);
 	}
     	/**
+    	* Crée l'onglet de résumé : entropie de chaque canal, puis taille du fichier PIF, bits par pixel et taux de compression
+    	* prévus pour chaque combinaison de codeur, d'organisation des canaux et de niveau d'effort, calculés sans encoder l'image.
+    	* Les douze estimations prennent plus d'une seconde sur une grande image : elles sont calculées en arrière-plan,
+    	* et l'onglet, créé aussitôt, est rempli à la fin du calcul si l'image est toujours celle affichée.
+    	* @param rgb Les pixels de l'image.
+    	* @param l La largeur de l'image.
+    	* @param h La hauteur de l'image.
+    	*/
+    	private void ajouterResume(int[] rgb, int l, int h)
+	{
+        	JPanel resume = new JPanel(new BorderLayout());
+        	resume.add(new JLabel("Estimation des tailles en cours...", SwingConstants.CENTER), BorderLayout.CENTER);
+        	ongletsStats.addTab("Résumé", resume);
+
+        	BufferedImage image = imageCourante;
+        	new SwingWorker<Object[][], Void>()
+		{
+        		// Entropies des trois canaux, calculées avec le tableau
+        		private double[] entropies;
+
+        		@Override
+        		protected Object[][] doInBackground()
+			{
+        			EstimationTaille estimation = new EstimationTaille(rgb, l, h);
+        			entropies = estimation.entropies();
+        			Object[][] donneesLignes = new Object[CodeurEntropique.tous().length * 2 * Effort.values().length][];
+        			int index = 0;
+        			for (CodeurEntropique codeur : CodeurEntropique.tous())
+				{
+        				for (boolean separes : new boolean[] { false, true })
+					{
+        					for (Effort effort : Effort.values())
+						{
+        						EstimationTaille.Resultat resultat = estimation.estimer(new OptionsEncodage()
+        							.setCodeur(codeur).setCanauxSepares(separes).setEffort(effort));
+        						donneesLignes[index++] = new Object[] {
+        							codeur.getNom(),
+        							separes ? "séparés" : "entrelacés",
+        							effort.getNom(),
+        							resultat.getEntete().getTransformation().toString(),
+        							(resultat.isExacte() ? "" : "≈ ") + resultat.getOctets(),
+        							String.format("%.3f", resultat.getBitsParPixel()),
+        							String.format("%.2f : 1", resultat.getTaux()) };
+        					}
+        				}
+        			}
+        			return donneesLignes;
+        		}
+
+        		@Override
+        		protected void done()
+			{
+        			if (imageCourante != image)
+				{
+        				// Une autre image a été chargée entre-temps : son propre résumé est en cours
+        				return;
+        			}
+        			resume.removeAll();
+        			try
+				{
+        				JLabel etiquetteEntropies = new JLabel(String.format(
+        					"Image brute : %d octets (24 bits/pixel) — Entropie : rouge %.3f, vert %.3f, bleu %.3f bits/symbole, soit %.3f bits/pixel",
+        					3L * rgb.length, entropies[0], entropies[1], entropies[2], entropies[0] + entropies[1] + entropies[2]));
+        				etiquetteEntropies.setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+
+        				String[] colonnes = { "Codeur", "Canaux", "Effort", "Transformation", "Taille (octets)", "Bits/pixel", "Taux" };
+        				JTable table = new JTable(get(), colonnes);
+        				table.setEnabled(false);
+        				table.setToolTipText("Tailles exactes pour Huffman ; « ≈ » signale une estimation");
+
+        				resume.add(etiquetteEntropies, BorderLayout.NORTH);
+        				resume.add(new JScrollPane(table), BorderLayout.CENTER);
+        			}
+				catch (InterruptedException | ExecutionException e)
+				{
+        				Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+        				resume.add(new JLabel("Estimation impossible : " + cause.getMessage(), SwingConstants.CENTER), BorderLayout.CENTER);
+        			}
+        			resume.revalidate();
+        			resume.repaint();
+        		}
+        	}.execute();
+    	}
+    	/**
     	* Analyse un canal de couleur spécifique, génère ses codes de Huffman et crée un tableau récapitulatif dans un nouvel onglet.
     	* @param nom Nom du canal (ex: "Rouge").
     	* @param donnees Tableau des valeurs (0-255) du canal.
@@ -187,7 +297,7 @@ public final class FenetreConvertisseur extends JFrame
         	ongletsStats.addTab(nom, new JScrollPane(table));
     	}
     	/**
-    	* Convertit l'image chargée au format PIF en utilisant le codage de Huffman et enregistre le fichier sur le disque.
+    	* Convertit l'image chargée au format PIF avec le codeur, l'organisation des canaux et le niveau d'effort sélectionnés, puis enregistre le fichier sur le disque.
     	*/
     	void convertirImage() 
 	{
@@ -214,7 +324,11 @@ public final class FenetreConvertisseur extends JFrame
         	try 
 		{
             		ImagePIF pif = ImagePIF.depuisBufferedImage(imageCourante);
-           		pif.sauvegarder(chemin);
+           		OptionsEncodage options = new OptionsEncodage()
+           			.setCodeur(CodeurEntropique.parNom((String) choixCodeur.getSelectedItem()))
+           			.setCanauxSepares(caseCanauxSepares.isSelected())
+           			.setEffort((Effort) choixEffort.getSelectedItem());
+           		pif.sauvegarder(chemin, options);
             		JOptionPane.showMessageDialog(this, " Sauvegardé sous " + chemin);
         	} 
 		catch (IOException e) 
@@ -0,0 +1,99 @@
+package pif;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Fenêtre de navigation affichant les miniatures de tous les fichiers PIF d'un répertoire.
+ * Les miniatures sont produites en arrière-plan et conservées dans le {@link CacheMiniatures} par défaut,
+ * si bien que la réouverture d'un dossier déjà parcouru est immédiate. Un double-clic ouvre l'image dans le visualisateur.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class FenetreMiniatures extends JFrame {
+
+    // Identifiant de version pour la sérialisation
+    private static final long serialVersionUID = 1L;
+
+    // Plus grande dimension des miniatures, en pixels
+    private static final int TAILLE_MINIATURE = 128;
+
+    /**
+     * Construit la fenêtre de miniatures.
+     * Si aucun répertoire n'est fourni, une boîte de dialogue de sélection s'ouvre.
+     * @param cheminDossier Le répertoire à parcourir, ou <code>null</code>.
+     */
+    public FenetreMiniatures(String cheminDossier) {
+        setTitle("Miniatures PIF");
+        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        setSize(900, 700);
+        setLocationRelativeTo(null);
+
+        if (cheminDossier == null) {
+            JFileChooser selecteur = new JFileChooser();
+            selecteur.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (selecteur.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            cheminDossier = selecteur.getSelectedFile().getAbsolutePath();
+        }
+        afficherDossier(Paths.get(cheminDossier));
+    }
+
+    /**
+     * Liste les fichiers .pif du répertoire et installe la grille correspondante.
+     * @param dossier Le répertoire à parcourir.
+     */
+    private void afficherDossier(Path dossier) {
+        List<Path> fichiers;
+        try (Stream<Path> contenu = Files.list(dossier)) {
+            fichiers = contenu
+                    .filter(p -> p.getFileName().toString().toLowerCase().endsWith(".pif"))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Erreur lors de la lecture du dossier : " + e.getMessage(),
+                "Erreur",
+                JOptionPane.ERROR_MESSAGE);
+            e.printStackTrace();
+            return;
+        }
+
+        GrilleMiniatures grille = new GrilleMiniatures(fichiers,
+                new CacheMiniatures(CacheMiniatures.dossierParDefaut(), TAILLE_MINIATURE));
+        grille.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Path fichier = grille.fichierA(e.getX(), e.getY());
+                if (e.getClickCount() == 2 && fichier != null) {
+                    FenetreVisualisateur visualisateur = new FenetreVisualisateur(fichier.toString());
+                    visualisateur.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+                    visualisateur.setVisible(true);
+                }
+            }
+        });
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                grille.arreter();
+            }
+        });
+
+        add(new JScrollPane(grille, ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER), BorderLayout.CENTER);
+        setTitle("Miniatures PIF - " + dossier.getFileName() + " (" + fichiers.size() + " fichiers)");
+    }
+}
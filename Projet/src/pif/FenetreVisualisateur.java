@@ -6,10 +6,15 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Fenêtre principale de l'application Visualisateur pour le format d'image PIF.
  * Cette classe assure le chargement des fichiers compressés, leur conversion en {@link BufferedImage} et la gestion de l'interface utilisateur graphique.
+ * Une séquence ({@link SequencePIF}) s'affiche avec une barre de lecture : un curseur pour se déplacer d'image en image
+ * (seules les images depuis l'image clé précédente sont décodées) et un bouton de lecture (ou la barre d'espace),
+ * les images suivantes étant décodées d'avance en arrière-plan par une {@link LectureSequence}.
  * @author Dimitri SOLAR, Valentin LOISON
  * @version 1.0
  */
@@ -24,6 +29,33 @@ public final class FenetreVisualisateur extends JFrame {
     // Le panneau personnalisé dédié au rendu graphique de l'image
     private PanneauImage panneauImage;
 
+    // Délai avant un nouvel essai lorsque l'image suivante n'est pas encore décodée, en millisecondes
+    private static final int ATTENTE_DECODAGE = 5;
+
+    // La séquence ouverte, ou null pour une image seule
+    private transient SequencePIF sequence;
+
+    // Le décodage anticipé de la séquence pendant la lecture
+    private transient LectureSequence lecture;
+
+    // Barre de lecture d'une séquence : bouton de lecture, curseur et numéro de l'image
+    private JPanel barreLecture;
+    private JButton boutonLecture;
+    private JSlider curseur;
+    private JLabel etiquette;
+
+    // Minuterie affichant chaque image de la lecture après le délai de la précédente
+    private Timer minuterie;
+
+    // Vrai pendant la lecture de la séquence
+    private boolean enLecture;
+
+    // Vrai pendant que le curseur est déplacé par la lecture, et non par l'utilisateur
+    private boolean suiviLecture;
+
+    // Numéro de la dernière image demandée au curseur hors lecture, pour ignorer les décodages dépassés
+    private int imageDemandee;
+
     /**
      * Construit une nouvelle fenêtre de visualisation.
      * Si un chemin est fourni, l'image est chargée immédiatement. Sinon, une boîte de dialogue de sélection de fichier s'ouvre.
@@ -37,6 +69,13 @@ public final class FenetreVisualisateur extends JFrame {
 
         panneauImage = new PanneauImage();
         add(panneauImage, BorderLayout.CENTER);
+        creerBarreLecture();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                fermerSequence();
+            }
+        });
 
         if (cheminInitial != null) {
             chargerFichier(cheminInitial);
@@ -51,7 +90,7 @@ public final class FenetreVisualisateur extends JFrame {
      */
     private void choisirFichier() {
         JFileChooser selecteur = new JFileChooser();
-        selecteur.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Images PIF", "pif"));
+        selecteur.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Images et séquences PIF", "pif", "pifs"));
         if (selecteur.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             chargerFichier(selecteur.getSelectedFile().getAbsolutePath());
         }
@@ -65,11 +104,19 @@ public final class FenetreVisualisateur extends JFrame {
     private void chargerFichier(String chemin) {
         try {
             // Chargement des données compressées
-            ImagePIF pif = ImagePIF.charger(chemin);
-            this.image = pif.versBufferedImage();
+            fermerSequence();
+            ImagePIF pif;
+            if (chemin.endsWith(SequencePIF.EXTENSION)) {
+                ouvrirSequence(chemin);
+                pif = sequence.lireImage(0);
+            } else {
+                pif = ImagePIF.charger(chemin);
+            }
+            this.image = pif.vueBufferedImage();
             
             // Mise à jour du composant d'affichage
             panneauImage.setImage(image);
+            barreLecture.setVisible(sequence != null);
 
             // Calcul de l'adaptation de la taille de la fenêtre à l'écran
             Dimension tailleEcran = Toolkit.getDefaultToolkit().getScreenSize();
@@ -90,4 +137,178 @@ public final class FenetreVisualisateur extends JFrame {
             e.printStackTrace();
         }
     }
+
+    // Crée la barre de lecture des séquences, masquée tant qu'aucune séquence n'est ouverte
+    private void creerBarreLecture() {
+        boutonLecture = new JButton("Lecture");
+        boutonLecture.setFocusable(false);
+        boutonLecture.addActionListener(e -> basculerLecture());
+        curseur = new JSlider(0, 0, 0);
+        curseur.addChangeListener(e -> curseurDeplace());
+        etiquette = new JLabel();
+
+        barreLecture = new JPanel(new BorderLayout(8, 0));
+        barreLecture.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        barreLecture.add(boutonLecture, BorderLayout.WEST);
+        barreLecture.add(curseur, BorderLayout.CENTER);
+        barreLecture.add(etiquette, BorderLayout.EAST);
+        barreLecture.setVisible(false);
+        add(barreLecture, BorderLayout.SOUTH);
+
+        minuterie = new Timer(0, e -> afficherSuivante());
+        minuterie.setRepeats(false);
+
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("SPACE"), "lecture");
+        getRootPane().getActionMap().put("lecture", new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                basculerLecture();
+            }
+        });
+    }
+
+    /**
+     * Ouvre une séquence et prépare la barre de lecture.
+     * @param chemin Le chemin du fichier .pifs.
+     * @throws IOException Si le fichier n'est pas une séquence lisible ou ne contient aucune image.
+     */
+    private void ouvrirSequence(String chemin) throws IOException {
+        SequencePIF ouverte = SequencePIF.ouvrir(chemin);
+        if (ouverte.getNombreImages() == 0 || ouverte.getLargeur() == 0 || ouverte.getHauteur() == 0) {
+            ouverte.close();
+            throw new IOException("séquence vide");
+        }
+        sequence = ouverte;
+        lecture = new LectureSequence(sequence);
+        imageDemandee = 0;
+        suiviLecture = true;
+        curseur.setMaximum(sequence.getNombreImages() - 1);
+        curseur.setValue(0);
+        suiviLecture = false;
+        majEtiquette(0);
+    }
+
+    // Arrête la lecture et ferme la séquence ouverte
+    private void fermerSequence() {
+        if (sequence == null) {
+            return;
+        }
+        arreterLecture();
+        try {
+            sequence.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        sequence = null;
+        lecture = null;
+        barreLecture.setVisible(false);
+    }
+
+    // Démarre ou suspend la lecture de la séquence
+    private void basculerLecture() {
+        if (sequence == null) {
+            return;
+        }
+        if (enLecture) {
+            arreterLecture();
+        } else {
+            enLecture = true;
+            boutonLecture.setText("Pause");
+            lecture.demarrer((curseur.getValue() + 1) % sequence.getNombreImages());
+            minuterie.setInitialDelay(sequence.getDelai(curseur.getValue()));
+            minuterie.restart();
+        }
+    }
+
+    // Suspend la lecture : l'image affichée reste celle du curseur
+    private void arreterLecture() {
+        enLecture = false;
+        minuterie.stop();
+        if (lecture != null) {
+            lecture.arreter();
+        }
+        boutonLecture.setText("Lecture");
+    }
+
+    // Affiche l'image suivante de la lecture si elle est décodée, puis programme la suivante après son délai
+    private void afficherSuivante() {
+        if (!enLecture) {
+            return;
+        }
+        LectureSequence.ImageDecodee suivante;
+        try {
+            suivante = lecture.prochaine();
+        } catch (IOException e) {
+            arreterLecture();
+            signalerErreur(e);
+            return;
+        }
+        if (suivante == null) {
+            // Le décodage a pris du retard : l'image courante reste affichée un peu plus longtemps
+            minuterie.setInitialDelay(ATTENTE_DECODAGE);
+        } else {
+            afficherImage(suivante.image, suivante.numero);
+            minuterie.setInitialDelay(Math.max(1, suivante.delai));
+        }
+        minuterie.restart();
+    }
+
+    // Réagit à un déplacement du curseur par l'utilisateur : la lecture reprend de là, ou l'image est décodée en arrière-plan
+    private void curseurDeplace() {
+        if (suiviLecture || sequence == null) {
+            return;
+        }
+        int numero = curseur.getValue();
+        majEtiquette(numero);
+        if (enLecture) {
+            lecture.demarrer(numero);
+            minuterie.setInitialDelay(0);
+            minuterie.restart();
+            return;
+        }
+        imageDemandee = numero;
+        SequencePIF ouverte = sequence;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return ouverte.lireImage(numero).vueBufferedImage();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((img, erreur) -> SwingUtilities.invokeLater(() -> {
+            if (sequence != ouverte || imageDemandee != numero || enLecture) {
+                return;
+            }
+            if (erreur != null) {
+                signalerErreur(erreur.getCause() != null ? erreur.getCause() : erreur);
+            } else {
+                afficherImage(img, numero);
+            }
+        }));
+    }
+
+    // Affiche une image de la séquence en conservant le zoom et le panoramique, et place le curseur sur son numéro
+    private void afficherImage(BufferedImage img, int numero) {
+        this.image = img;
+        panneauImage.remplacerImage(img);
+        suiviLecture = true;
+        curseur.setValue(numero);
+        suiviLecture = false;
+        majEtiquette(numero);
+    }
+
+    // Affiche le numéro de l'image, en signalant les images clés
+    private void majEtiquette(int numero) {
+        etiquette.setText((numero + 1) + " / " + sequence.getNombreImages() + (sequence.isImageCle(numero) ? " (clé)" : ""));
+    }
+
+    // Signale une erreur de décodage de la séquence
+    private void signalerErreur(Throwable e) {
+        JOptionPane.showMessageDialog(this,
+            "Erreur lors du décodage de la séquence : " + e.getMessage(),
+            "Erreur",
+            JOptionPane.ERROR_MESSAGE);
+        e.printStackTrace();
+    }
 }
@@ -7,12 +7,17 @@ import java.io.OutputStream;
  * @Author Dimitri SOLAR, Valentin LOISON
  * @Version 1.0
  * Écrit des bits dans un flux de sortie sous-jacent (OutputStream).
- * Tamponne les bits jusqu'à ce qu'un octet complet puisse être écrit.
+ * Tamponne les bits jusqu'à ce qu'un octet complet puisse être écrit,
+ * puis les octets complets jusqu'au prochain appel à {@link #vider()}, pour ne pas solliciter le flux sous-jacent octet par octet.
  */
 public class FluxSortieBits implements AutoCloseable {
+    private static final int TAILLE_TAMPON = 8192;
     private final OutputStream sortie;
     private int tampon;
     private int bitsDansTampon;
+    private final byte[] octets = new byte[TAILLE_TAMPON];
+    private int nbOctets;
+    private long octetsEcrits;
 
     /**
      * Crée un nouveau FluxSortieBits.
@@ -33,9 +38,15 @@ public class FluxSortieBits implements AutoCloseable {
      * @throws IOException En cas d'erreur d'E/S.
      */
     public void ecrireBits(int valeur, int nbrBits) throws IOException {
-        for (int i = nbrBits - 1; i >= 0; i--) {
-            int bit = (valeur >> i) & 1;
-            ecrireBit(bit);
+        // Les bits sont versés par paquets complétant l'octet en cours, plutôt qu'un par un
+        while (nbrBits > 0) {
+            int n = Math.min(nbrBits, 8 - bitsDansTampon);
+            nbrBits -= n;
+            tampon = (tampon << n) | ((valeur >>> nbrBits) & ((1 << n) - 1));
+            bitsDansTampon += n;
+            if (bitsDansTampon == 8) {
+                viderTampon();
+            }
         }
     }
 
@@ -72,7 +83,12 @@ public class FluxSortieBits implements AutoCloseable {
 
     private void viderTampon() throws IOException {
         if (bitsDansTampon > 0) {
-            sortie.write(tampon);
+            if (nbOctets == TAILLE_TAMPON) {
+                sortie.write(octets, 0, nbOctets);
+                octetsEcrits += nbOctets;
+                nbOctets = 0;
+            }
+            octets[nbOctets++] = (byte) tampon;
             tampon = 0;
             bitsDansTampon = 0;
         }
@@ -87,13 +103,36 @@ public class FluxSortieBits implements AutoCloseable {
                 tampon = tampon << 1;
                 bitsDansTampon++;
             }
-            sortie.write(tampon);
-            tampon = 0;
-            bitsDansTampon = 0;
+            viderTampon();
         }
+        sortie.write(octets, 0, nbOctets);
+        octetsEcrits += nbOctets;
+        nbOctets = 0;
         sortie.flush();
     }
 
+    /**
+     * Transmet au flux sous-jacent les octets complets déjà tamponnés, sans compléter l'octet en cours,
+     * pour qu'un encodage au fil des lignes ({@link EncodeurLignes}) livre ses données sans attendre la fin de l'image.
+     * 
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    public void transmettre() throws IOException {
+        sortie.write(octets, 0, nbOctets);
+        octetsEcrits += nbOctets;
+        nbOctets = 0;
+        sortie.flush();
+    }
+
+    /**
+     * Retourne le nombre d'octets transmis au flux sous-jacent depuis la création.
+     * 
+     * @return Le nombre d'octets écrits.
+     */
+    public long getOctetsEcrits() {
+        return octetsEcrits;
+    }
+
     @Override
     public void close() throws IOException {
         vider();
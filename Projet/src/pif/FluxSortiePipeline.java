@@ -0,0 +1,191 @@
+package pif;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Flux de sortie qui recouvre l'encodage et l'écriture sur disque.
+ * Le thread appelant (l'encodeur) remplit de grands tampons directs ; chaque tampon plein est confié à un thread d'écriture
+ * qui le vide dans un canal, pendant que l'encodeur remplit le suivant. Au plus {@link #TAMPONS} tampons sont en circulation :
+ * si le canal est plus lent que l'encodeur, celui-ci attend qu'un tampon soit rendu, sans accumuler le fichier en mémoire.
+ * La durée d'une sauvegarde tend ainsi vers le maximum, et non la somme, des temps de calcul et d'écriture.
+ * Une petite sortie ne paie ni thread ni tampon direct : les premiers octets vont dans un petit tampon du tas, et le thread d'écriture
+ * n'est démarré que lorsque ce tampon déborde ; si le flux est fermé avant, le tampon est écrit directement par l'appelant.
+ * Une erreur du thread d'écriture est renvoyée à l'encodeur lors de l'écriture suivante ou de la fermeture.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class FluxSortiePipeline extends OutputStream {
+
+    // Taille de chaque tampon, en octets
+    static final int TAILLE = 1 << 20;
+
+    // Nombre maximal de tampons en circulation (en cours de remplissage, en attente ou en cours d'écriture)
+    static final int TAMPONS = 4;
+
+    // Taille du premier tampon, pris sur le tas : une sortie qui y tient est écrite sans thread d'écriture
+    static final int TAILLE_PREMIER = 64 * 1024;
+
+    // Tampon vide signalant la fin du flux au thread d'écriture
+    private static final ByteBuffer FIN = ByteBuffer.allocate(0);
+
+    // Canal de destination, qui n'est pas fermé par ce flux
+    private final WritableByteChannel canal;
+
+    // Tampons pleins, dans l'ordre, en attente d'écriture
+    private final BlockingQueue<ByteBuffer> pleins = new ArrayBlockingQueue<>(TAMPONS + 1);
+
+    // Tampons rendus par le thread d'écriture, prêts à être remplis
+    private final BlockingQueue<ByteBuffer> libres = new ArrayBlockingQueue<>(TAMPONS);
+
+    // Nombre de tampons directs déjà alloués : ils ne le sont qu'au besoin, une petite image n'en utilise aucun
+    private int alloues;
+
+    // Tampon en cours de remplissage, ou null après la fermeture
+    private ByteBuffer courant;
+
+    // Thread vidant les tampons pleins dans le canal, ou null tant que le premier tampon n'a pas débordé
+    private Thread ecrivain;
+
+    // Première erreur d'écriture, transmise à l'encodeur
+    private volatile IOException erreur;
+
+    /**
+     * Prépare l'écriture vers un canal ; le thread d'écriture ne démarre qu'au premier tampon plein.
+     * @param canal Le canal de destination, qui reste ouvert après la fermeture du flux.
+     */
+    FluxSortiePipeline(WritableByteChannel canal) {
+        this.canal = canal;
+        this.courant = ByteBuffer.allocate(TAILLE_PREMIER);
+    }
+
+    // Boucle du thread d'écriture : vide chaque tampon plein, puis rend à l'encodeur ceux qui sont directs
+    private void ecrire() {
+        try {
+            while (true) {
+                ByteBuffer tampon = pleins.take();
+                if (tampon == FIN) {
+                    return;
+                }
+                if (erreur == null) {
+                    try {
+                        while (tampon.hasRemaining()) {
+                            canal.write(tampon);
+                        }
+                    } catch (IOException e) {
+                        erreur = e;
+                    } catch (RuntimeException e) {
+                        erreur = new IOException(e);
+                    }
+                }
+                if (tampon.isDirect()) {
+                    tampon.clear();
+                    libres.put(tampon);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Alloue un nouveau tampon direct
+    private ByteBuffer allouer() {
+        alloues++;
+        return ByteBuffer.allocateDirect(TAILLE);
+    }
+
+    @Override
+    public void write(int octet) throws IOException {
+        if (!courant.hasRemaining()) {
+            envoyer();
+        }
+        courant.put((byte) octet);
+    }
+
+    @Override
+    public void write(byte[] b, int debut, int n) throws IOException {
+        while (n > 0) {
+            if (!courant.hasRemaining()) {
+                envoyer();
+            }
+            int k = Math.min(n, courant.remaining());
+            courant.put(b, debut, k);
+            debut += k;
+            n -= k;
+        }
+    }
+
+    /**
+     * Sans effet : les tampons ne sont confiés au thread d'écriture qu'une fois pleins, ou à la fermeture,
+     * afin que les nombreux <code>flush</code> des encodeurs ne fractionnent pas les écritures.
+     */
+    @Override
+    public void flush() {
+    }
+
+    // Confie le tampon courant au thread d'écriture, démarré au premier appel, et en prend un libre, en attendant si tous sont en circulation
+    private void envoyer() throws IOException {
+        verifier();
+        if (ecrivain == null) {
+            ecrivain = new Thread(this::ecrire, "pif-ecriture");
+            ecrivain.setDaemon(true);
+            ecrivain.start();
+        }
+        courant.flip();
+        try {
+            pleins.put(courant);
+            ByteBuffer libre = libres.poll();
+            courant = (libre != null) ? libre : (alloues < TAMPONS) ? allouer() : libres.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Écriture interrompue");
+        }
+    }
+
+    // Renvoie l'erreur rencontrée par le thread d'écriture
+    private void verifier() throws IOException {
+        IOException e = erreur;
+        if (e != null) {
+            throw new IOException("Échec de l'écriture : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Écrit les données restantes et attend la fin du thread d'écriture. Le canal n'est pas fermé.
+     * @throws IOException Si une écriture a échoué.
+     */
+    @Override
+    public void close() throws IOException {
+        if (courant == null) {
+            return;
+        }
+        courant.flip();
+        if (ecrivain == null) {
+            // Tout a tenu dans le premier tampon : l'appelant l'écrit lui-même
+            ByteBuffer tampon = courant;
+            courant = null;
+            while (tampon.hasRemaining()) {
+                canal.write(tampon);
+            }
+            return;
+        }
+        try {
+            if (courant.hasRemaining()) {
+                pleins.put(courant);
+            }
+            courant = null;
+            pleins.put(FIN);
+            ecrivain.join();
+        } catch (InterruptedException e) {
+            ecrivain.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Écriture interrompue");
+        }
+        verifier();
+    }
+}
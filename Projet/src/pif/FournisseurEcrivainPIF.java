@@ -0,0 +1,41 @@
+package pif;
+
+import java.util.Locale;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Fournisseur de l'{@link EcrivainPIF}, déclaré dans <code>META-INF/services/javax.imageio.spi.ImageWriterSpi</code>.
+ * Toute image peut être écrite : ses pixels sont convertis en RVB, la composante alpha étant ignorée.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class FournisseurEcrivainPIF extends ImageWriterSpi {
+
+    /**
+     * Construit le fournisseur, comme le fait <code>ImageIO</code> à la découverte des fournisseurs.
+     */
+    public FournisseurEcrivainPIF() {
+        super(FournisseurLecteurPIF.FABRICANT, FournisseurLecteurPIF.VERSION, FournisseurLecteurPIF.NOMS,
+                FournisseurLecteurPIF.SUFFIXES, FournisseurLecteurPIF.TYPES_MIME, EcrivainPIF.class.getName(),
+                new Class<?>[] { ImageOutputStream.class }, new String[] { FournisseurLecteurPIF.class.getName() },
+                false, null, null, null, null, false, null, null, null, null);
+    }
+
+    @Override
+    public boolean canEncodeImage(ImageTypeSpecifier type) {
+        return true;
+    }
+
+    @Override
+    public ImageWriter createWriterInstance(Object extension) {
+        return new EcrivainPIF(this);
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+        return "Écrivain d'images PIF";
+    }
+}
@@ -0,0 +1,93 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Locale;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Fournisseur du {@link LecteurPIF}, déclaré dans <code>META-INF/services/javax.imageio.spi.ImageReaderSpi</code> :
+ * <code>ImageIO</code> le trouve dès que les classes PIF sont dans le chemin des classes.
+ * Le format historique n'ayant pas de signature, un fichier sans signature n'est reconnu que si ses trois tables de Huffman
+ * sont des longueurs de codes valides : un fichier PNG ou JPEG n'est ainsi jamais pris pour un fichier PIF.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class FournisseurLecteurPIF extends ImageReaderSpi {
+
+    // Noms du format, suffixes des fichiers et types MIME, communs au lecteur et à l'écrivain
+    static final String[] NOMS = { "pif", "PIF" };
+    static final String[] SUFFIXES = { "pif" };
+    static final String[] TYPES_MIME = { "image/x-pif" };
+
+    // Fabricant et version annoncés
+    static final String FABRICANT = "Dimitri SOLAR, Valentin LOISON";
+    static final String VERSION = "1.0";
+
+    // Longueur maximale d'un code dans une table du format historique
+    private static final int LONGUEUR_MAX = 32;
+
+    /**
+     * Construit le fournisseur, comme le fait <code>ImageIO</code> à la découverte des fournisseurs.
+     */
+    public FournisseurLecteurPIF() {
+        super(FABRICANT, VERSION, NOMS, SUFFIXES, TYPES_MIME, LecteurPIF.class.getName(),
+                new Class<?>[] { ImageInputStream.class }, new String[] { FournisseurEcrivainPIF.class.getName() },
+                false, null, null, null, null, false, null, null, null, null);
+    }
+
+    @Override
+    public boolean canDecodeInput(Object source) throws IOException {
+        if (!(source instanceof ImageInputStream)) {
+            return false;
+        }
+        ImageInputStream flux = (ImageInputStream) source;
+        flux.mark();
+        try {
+            EnTetePIF entete = EnTetePIF.lire(new LecteurPIF.FluxEntree(flux));
+            if (entete.getVersion() != EnTetePIF.VERSION_HISTORIQUE) {
+                return true;
+            }
+            return entete.getLargeur() > 0 && entete.getHauteur() > 0 && tablesHistoriques(flux);
+        } catch (IOException e) {
+            // En-tête tronqué, version ou drapeaux inconnus : ce n'est pas un fichier PIF lisible
+            return false;
+        } finally {
+            flux.reset();
+        }
+    }
+
+    // @return Vrai si le flux commence par trois tables de 256 longueurs de codes de Huffman valides (inégalité de Kraft)
+    private static boolean tablesHistoriques(ImageInputStream flux) throws IOException {
+        byte[] longueurs = new byte[256];
+        for (int t = 0; t < 3; t++) {
+            try {
+                flux.readFully(longueurs);
+            } catch (EOFException e) {
+                return false;
+            }
+            long somme = 0;
+            for (byte octet : longueurs) {
+                int longueur = octet & 0xFF;
+                if (longueur > LONGUEUR_MAX) return false;
+                if (longueur > 0) somme += 1L << (LONGUEUR_MAX - longueur);
+            }
+            if (somme == 0 || somme > 1L << LONGUEUR_MAX) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ImageReader createReaderInstance(Object extension) {
+        return new LecteurPIF(this);
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+        return "Lecteur d'images PIF";
+    }
+}
@@ -0,0 +1,241 @@
+package pif;
+
+import javax.swing.JPanel;
+import javax.swing.Scrollable;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Grille virtualisée de miniatures d'images PIF.
+ * Seules les cellules visibles sont dessinées, et seules leurs miniatures sont demandées au {@link CacheMiniatures}.
+ * La génération s'effectue sur un groupe de threads en arrière-plan ; une tâche dont la cellule a quitté la zone visible
+ * avant son exécution est abandonnée, de sorte qu'un défilement rapide dans un grand dossier ne bloque pas l'affichage.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class GrilleMiniatures extends JPanel implements Scrollable {
+
+    // Identifiant de sérialisation
+    private static final long serialVersionUID = 1L;
+
+    // Côté d'une cellule de la grille, en pixels (miniature, marge et nom du fichier)
+    private static final int TAILLE_CELLULE = 160;
+
+    // Hauteur réservée au nom du fichier sous la miniature
+    private static final int HAUTEUR_LEGENDE = 18;
+
+    // Nombre maximal de miniatures conservées en mémoire
+    private static final int MINIATURES_EN_MEMOIRE = 1024;
+
+    // Les fichiers affichés, dans l'ordre de la grille
+    private final transient List<Path> fichiers;
+
+    // Le cache disque des miniatures
+    private final transient CacheMiniatures cache;
+
+    // Groupe de threads chargé de générer les miniatures
+    private final transient ExecutorService generateurs;
+
+    // Miniatures récemment affichées (accédé uniquement depuis le thread Swing)
+    private final transient Map<Integer, BufferedImage> memoire = new LinkedHashMap<Integer, BufferedImage>(256, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+            return size() > MINIATURES_EN_MEMOIRE;
+        }
+    };
+
+    // Indices des cellules dont la miniature est en cours de génération (accédé uniquement depuis le thread Swing)
+    private final Set<Integer> enCours = new HashSet<>();
+
+    // Indices des fichiers dont le décodage a échoué (accédé uniquement depuis le thread Swing)
+    private final Set<Integer> enEchec = new HashSet<>();
+
+    // Premier et dernier indices visibles lors du dernier dessin, lus par les threads de génération
+    private volatile int premierVisible = 0;
+    private volatile int dernierVisible = -1;
+
+    /**
+     * Construit la grille pour une liste de fichiers.
+     * @param fichiers Les fichiers .pif à afficher.
+     * @param cache Le cache de miniatures à utiliser.
+     */
+    public GrilleMiniatures(List<Path> fichiers, CacheMiniatures cache) {
+        this.fichiers = fichiers;
+        this.cache = cache;
+        AtomicInteger numero = new AtomicInteger();
+        this.generateurs = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), tache -> {
+            Thread t = new Thread(tache, "miniatures-" + numero.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        setBackground(Color.DARK_GRAY);
+    }
+
+    /**
+     * Arrête les threads de génération. Les tâches en attente sont abandonnées.
+     */
+    public void arreter() {
+        generateurs.shutdownNow();
+    }
+
+    /**
+     * Retourne le fichier affiché à une position donnée du panneau.
+     * @param x Abscisse dans le panneau.
+     * @param y Ordonnée dans le panneau.
+     * @return Le fichier sous ce point, ou <code>null</code> si aucune cellule ne s'y trouve.
+     */
+    public Path fichierA(int x, int y) {
+        int colonne = x / TAILLE_CELLULE;
+        if (colonne >= colonnes()) {
+            return null;
+        }
+        int index = (y / TAILLE_CELLULE) * colonnes() + colonne;
+        return (index >= 0 && index < fichiers.size()) ? fichiers.get(index) : null;
+    }
+
+    // Nombre de colonnes pour la largeur actuelle du panneau
+    private int colonnes() {
+        return Math.max(1, getWidth() / TAILLE_CELLULE);
+    }
+
+    // Rectangle occupé par la cellule d'indice donné
+    private Rectangle rectangleCellule(int index) {
+        int c = colonnes();
+        return new Rectangle((index % c) * TAILLE_CELLULE, (index / c) * TAILLE_CELLULE, TAILLE_CELLULE, TAILLE_CELLULE);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int largeur = (getParent() != null) ? getParent().getWidth() : 4 * TAILLE_CELLULE;
+        int c = Math.max(1, largeur / TAILLE_CELLULE);
+        int lignes = (fichiers.size() + c - 1) / c;
+        return new Dimension(c * TAILLE_CELLULE, lignes * TAILLE_CELLULE);
+    }
+
+    /**
+     * Dessine uniquement les cellules qui intersectent la zone de découpe.
+     * Les miniatures absentes de la mémoire sont remplacées par un cadre vide et demandées en arrière-plan.
+     * @param g L'instance de {@link Graphics} utilisée pour le dessin.
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Rectangle zone = g.getClipBounds();
+        if (zone == null) {
+            zone = getVisibleRect();
+        }
+
+        int c = colonnes();
+        int premiereLigne = Math.max(0, zone.y / TAILLE_CELLULE);
+        int derniereLigne = (zone.y + zone.height - 1) / TAILLE_CELLULE;
+        int premier = premiereLigne * c;
+        int dernier = Math.min(fichiers.size() - 1, (derniereLigne + 1) * c - 1);
+
+        Rectangle visible = getVisibleRect();
+        premierVisible = (visible.y / TAILLE_CELLULE) * c;
+        dernierVisible = ((visible.y + visible.height - 1) / TAILLE_CELLULE + 1) * c - 1;
+
+        FontMetrics fm = g.getFontMetrics();
+        for (int i = premier; i <= dernier; i++) {
+            Rectangle r = rectangleCellule(i);
+            int cote = TAILLE_CELLULE - HAUTEUR_LEGENDE - 8;
+            BufferedImage miniature = memoire.get(i);
+
+            if (miniature != null) {
+                int x = r.x + (TAILLE_CELLULE - miniature.getWidth()) / 2;
+                int y = r.y + 4 + (cote - miniature.getHeight()) / 2;
+                g.drawImage(miniature, x, y, null);
+            } else {
+                g.setColor(enEchec.contains(i) ? Color.RED.darker() : Color.GRAY);
+                g.drawRect(r.x + (TAILLE_CELLULE - cote) / 2, r.y + 4, cote, cote);
+                if (!enEchec.contains(i)) {
+                    demander(i);
+                }
+            }
+
+            // Nom du fichier, tronqué à la largeur de la cellule
+            String nom = fichiers.get(i).getFileName().toString();
+            while (nom.length() > 1 && fm.stringWidth(nom) > TAILLE_CELLULE - 8) {
+                nom = nom.substring(0, nom.length() - 1);
+            }
+            g.setColor(Color.WHITE);
+            g.drawString(nom, r.x + (TAILLE_CELLULE - fm.stringWidth(nom)) / 2, r.y + TAILLE_CELLULE - 6);
+        }
+    }
+
+    /**
+     * Soumet la génération de la miniature d'une cellule si elle n'est pas déjà en cours.
+     * @param index L'indice du fichier dans la grille.
+     */
+    private void demander(int index) {
+        if (!enCours.add(index)) {
+            return;
+        }
+        Path fichier = fichiers.get(index);
+        generateurs.execute(() -> {
+            // La cellule a quitté l'écran depuis la demande : inutile de décoder le fichier
+            if (index < premierVisible || index > dernierVisible) {
+                SwingUtilities.invokeLater(() -> enCours.remove(index));
+                return;
+            }
+            BufferedImage miniature = null;
+            try {
+                miniature = cache.obtenir(fichier);
+            } catch (Exception e) {
+                System.err.println("Miniature impossible pour " + fichier + " : " + e.getMessage());
+            }
+            BufferedImage resultat = miniature;
+            SwingUtilities.invokeLater(() -> {
+                enCours.remove(index);
+                if (resultat != null) {
+                    memoire.put(index, resultat);
+                } else {
+                    enEchec.add(index);
+                }
+                repaint(rectangleCellule(index));
+            });
+        });
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(5 * TAILLE_CELLULE, 4 * TAILLE_CELLULE);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return TAILLE_CELLULE / 4;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return Math.max(TAILLE_CELLULE, visible.height - TAILLE_CELLULE);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,307 @@
+package pif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import pif.CodecHuffman.InfoCode;
+
+/**
+ * Codage de Huffman adaptatif en une passe, pour coder une image au fil de l'arrivée de ses lignes ({@link EncodeurLignes}).
+ * Aucune table n'est écrite : l'encodeur et le décodeur partent d'un modèle uniforme (8 bits par symbole)
+ * et comptent chacun les symboles des trois canaux entrelacés.
+ * Toutes les {@link EnTetePIF#getAdaptatif()} lignes, avant le symbole suivant, un bit du flux indique si les tables sont reconstruites
+ * à partir des comptes cumulés ({@link CodeurHuffman#longueurs}) : l'encodeur le décide lorsque les nouvelles tables auraient mieux codé
+ * la période écoulée, et le décodeur suit ce choix, les comptes étant les mêmes des deux côtés.
+ * Pour quitter vite le modèle uniforme, les premières périodes sont plus courtes : 1 ligne, puis 2, 4... jusqu'à la période de l'en-tête.
+ * Au-delà de {@link #LIMITE_COMPTES}, les comptes d'un canal sont divisés par deux : les tables suivent les changements de contenu
+ * au fil de l'image, et les codes restent plus courts que 32 bits.
+ * Le travail par ligne est borné : ses symboles, plus au plus une reconstruction de trois tables de 256 symboles.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class HuffmanAdaptatif {
+
+    // Période par défaut, en lignes, entre deux mises à jour possibles des tables
+    static final int PERIODE_DEFAUT = 16;
+
+    // Période maximale, inscrite sur 16 bits dans l'en-tête
+    static final int PERIODE_MAX = 0xFFFF;
+
+    // Total des comptes d'un canal au-delà duquel ils sont divisés par deux
+    static final int LIMITE_COMPTES = 1 << 16;
+
+    // Nombre de canaux entrelacés
+    private static final int NB_CANAUX = 3;
+
+    // Comptes cumulés des symboles de chaque canal, jamais nuls : tout symbole garde un code
+    private final int[][] comptes = new int[NB_CANAUX][256];
+
+    // Symboles de chaque canal codés depuis la dernière mise à jour
+    private final long[][] periode = new long[NB_CANAUX][256];
+
+    // Longueurs des codes en vigueur pour chaque canal
+    private int[][] longueurs = new int[NB_CANAUX][];
+
+    // Largeur de l'image
+    private final long largeur;
+
+    // Période de l'en-tête, en lignes, et période en cours, qui double depuis une ligne jusqu'à l'atteindre
+    private final int periodeMax;
+    private int lignesPeriode = 1;
+
+    // Symboles par canal restant à coder avant la prochaine mise à jour
+    private long restants;
+
+    private HuffmanAdaptatif(EnTetePIF entete) {
+        for (int c = 0; c < NB_CANAUX; c++) {
+            Arrays.fill(comptes[c], 1);
+            longueurs[c] = CodeurHuffman.longueurs(comptes[c]);
+        }
+        this.largeur = entete.getLargeur();
+        this.periodeMax = entete.getAdaptatif();
+        this.restants = largeur;
+    }
+
+    /**
+     * Prépare le codage adaptatif des canaux d'une image, l'en-tête étant déjà écrit.
+     * @param entete L'en-tête de l'image, qui donne la période des mises à jour.
+     * @param sortie Le flux de destination, positionné juste après l'en-tête.
+     * @return L'encodeur, dont les tables initiales sont uniformes.
+     */
+    static Encodeur ouvrirEncodeur(EnTetePIF entete, OutputStream sortie) {
+        return new Encodeur(new HuffmanAdaptatif(entete), sortie);
+    }
+
+    /**
+     * Prépare le décodage des canaux d'une image codée de façon adaptative.
+     * @param entete L'en-tête de l'image, qui donne la période des mises à jour.
+     * @param entree Le flux positionné juste après l'en-tête.
+     * @return Un décodeur restituant les trois canaux entrelacés, par paquets de taille quelconque.
+     */
+    static CodeurEntropique.Decodeur ouvrirDecodeur(EnTetePIF entete, InputStream entree) {
+        return new Decodeur(new HuffmanAdaptatif(entete), entree);
+    }
+
+    // Ajoute les symboles de la période écoulée aux comptes, divisés par deux tant que leur total dépasse la limite
+    private void cumuler() {
+        long[] cumul = new long[256];
+        for (int c = 0; c < NB_CANAUX; c++) {
+            long total = 0;
+            for (int s = 0; s < 256; s++) {
+                cumul[s] = comptes[c][s] + periode[c][s];
+                total += cumul[s];
+            }
+            while (total > LIMITE_COMPTES) {
+                total = 0;
+                for (int s = 0; s < 256; s++) {
+                    cumul[s] = (cumul[s] + 1) >> 1;
+                    total += cumul[s];
+                }
+            }
+            for (int s = 0; s < 256; s++) {
+                comptes[c][s] = (int) cumul[s];
+            }
+        }
+    }
+
+    // Ouvre une nouvelle période, deux fois plus longue que la précédente dans la limite de l'en-tête : ses comptes repartent de zéro
+    private void nouvellePeriode() {
+        for (long[] p : periode) {
+            Arrays.fill(p, 0);
+        }
+        lignesPeriode = Math.min(2 * lignesPeriode, periodeMax);
+        restants = largeur * lignesPeriode;
+    }
+
+    // @return Les longueurs des codes de chaque canal calculées sur les comptes cumulés
+    private int[][] longueursCumulees() {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int[][] nouvelles = new int[NB_CANAUX][];
+        for (int c = 0; c < NB_CANAUX; c++) {
+            nouvelles[c] = CodeurHuffman.longueurs(comptes[c]);
+        }
+        Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, 0);
+        return nouvelles;
+    }
+
+    // @return Le nombre de bits qu'aurait coûté la période écoulée avec des longueurs de codes données
+    private long bitsPeriode(int[][] tables) {
+        long bits = 0;
+        for (int c = 0; c < NB_CANAUX; c++) {
+            for (int s = 0; s < 256; s++) {
+                bits += periode[c][s] * tables[c][s];
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Encodeur adaptatif : code les symboles des trois canaux entrelacés et met à jour ses tables à chaque fin de période.
+     */
+    static final class Encodeur {
+        // Modèle partagé avec le décodeur
+        private final HuffmanAdaptatif modele;
+
+        // Flux de bits
+        private final FluxSortieBits fsb;
+
+        // Codes canoniques en vigueur de chaque canal, indexés par symbole
+        private final int[][] codes = new int[NB_CANAUX][256];
+
+        // Vrai si l'Instrumentation était active à l'ouverture : la durée de l'encodage est alors cumulée appel par appel
+        private final boolean mesures;
+
+        // Durée cumulée de l'encodage, en nanosecondes, et nombre de symboles codés par canal, transmis une seule fois par terminer()
+        private long dureeEncodage;
+        private long symbolesCodes;
+
+        private Encodeur(HuffmanAdaptatif modele, OutputStream sortie) {
+            this.modele = modele;
+            this.fsb = new FluxSortieBits(sortie);
+            this.mesures = Instrumentation.actif();
+            construireCodes();
+        }
+
+        /**
+         * Code les <code>n</code> symboles suivants de chaque canal.
+         * @param symboles Un tableau de symboles (0-255) par canal, lus de l'indice 0 à <code>n - 1</code>.
+         * @param n Le nombre de symboles par canal.
+         * @throws IOException En cas d'erreur d'E/S.
+         */
+        void encoder(int[][] symboles, int n) throws IOException {
+            long debut = mesures ? System.nanoTime() : 0;
+            int[][] longueurs = modele.longueurs;
+            for (int i = 0; i < n; ) {
+                if (modele.restants == 0) {
+                    mettreAJour();
+                    longueurs = modele.longueurs;
+                }
+                int fin = (int) Math.min(n, i + modele.restants);
+                modele.restants -= fin - i;
+                for (; i < fin; i++) {
+                    for (int c = 0; c < NB_CANAUX; c++) {
+                        int s = symboles[c][i];
+                        fsb.ecrireBits(codes[c][s], longueurs[c][s]);
+                        modele.periode[c][s]++;
+                    }
+                }
+            }
+            if (mesures) {
+                dureeEncodage += System.nanoTime() - debut;
+                symbolesCodes += n;
+            }
+        }
+
+        /**
+         * Transmet au flux les octets complets déjà codés, sans attendre la fin de l'image.
+         * @throws IOException En cas d'erreur d'E/S.
+         */
+        void transmettre() throws IOException {
+            fsb.transmettre();
+        }
+
+        /**
+         * Termine le flux de bits, complété à l'octet, et le transmet.
+         * @throws IOException En cas d'erreur d'E/S.
+         */
+        void terminer() throws IOException {
+            fsb.vider();
+            if (mesures) {
+                Instrumentation.enregistrer(Instrumentation.Phase.ENCODAGE_FLUX, dureeEncodage, fsb.getOctetsEcrits(), symbolesCodes);
+            }
+        }
+
+        // Fin de période : signale si les tables sont reconstruites, ce qui est fait si elles auraient mieux codé la période écoulée
+        private void mettreAJour() throws IOException {
+            long actuels = modele.bitsPeriode(modele.longueurs);
+            modele.cumuler();
+            int[][] nouvelles = modele.longueursCumulees();
+            boolean reconstruire = modele.bitsPeriode(nouvelles) < actuels;
+            modele.nouvellePeriode();
+            fsb.ecrireBit(reconstruire ? 1 : 0);
+            if (reconstruire) {
+                modele.longueurs = nouvelles;
+                construireCodes();
+            }
+        }
+
+        // Calcule les codes canoniques des longueurs en vigueur
+        private void construireCodes() {
+            for (int c = 0; c < NB_CANAUX; c++) {
+                for (InfoCode info : CodecHuffman.genererCodesCanoniques(modele.longueurs[c]).values()) {
+                    codes[c][info.valeur] = info.codeEntier;
+                }
+            }
+        }
+    }
+
+    /**
+     * Décodeur adaptatif : restitue les symboles et reconstruit ses tables lorsque le flux le signale.
+     */
+    private static final class Decodeur implements CodeurEntropique.Decodeur {
+        // Modèle tenu à jour comme celui de l'encodeur
+        private final HuffmanAdaptatif modele;
+
+        // Flux de bits
+        private final FluxEntreeBits feb;
+
+        // Racines des arbres de Huffman en vigueur de chaque canal
+        private final NoeudHuffman[] racines = new NoeudHuffman[NB_CANAUX];
+
+        private Decodeur(HuffmanAdaptatif modele, InputStream entree) {
+            this.modele = modele;
+            this.feb = new FluxEntreeBits(entree);
+            construireArbres();
+        }
+
+        @Override
+        public void decoder(int[][] destination, int n) throws IOException {
+            for (int i = 0; i < n; ) {
+                if (modele.restants == 0) {
+                    modele.cumuler();
+                    modele.nouvellePeriode();
+                    if (lireBit() == 1) {
+                        modele.longueurs = modele.longueursCumulees();
+                        construireArbres();
+                    }
+                }
+                int fin = (int) Math.min(n, i + modele.restants);
+                modele.restants -= fin - i;
+                for (; i < fin; i++) {
+                    for (int c = 0; c < NB_CANAUX; c++) {
+                        int s = lireSymbole(racines[c]);
+                        destination[c][i] = s;
+                        modele.periode[c][s]++;
+                    }
+                }
+            }
+        }
+
+        // Reconstruit les arbres des longueurs en vigueur
+        private void construireArbres() {
+            Instrumentation.Mesure debut = Instrumentation.debut();
+            for (int c = 0; c < NB_CANAUX; c++) {
+                racines[c] = CodecHuffman.reconstruireArbreCanonique(modele.longueurs[c]);
+            }
+            Instrumentation.fin(Instrumentation.Phase.CODES_CANONIQUES, debut, 0, 0);
+        }
+
+        // Décode un symbole en parcourant l'arbre selon les bits lus
+        private int lireSymbole(NoeudHuffman racine) throws IOException {
+            NoeudHuffman courant = racine;
+            while (!courant.estFeuille()) {
+                courant = (lireBit() == 0) ? courant.gauche : courant.droit;
+            }
+            return courant.valeur;
+        }
+
+        // Lit un bit, en signalant la fin de flux
+        private int lireBit() throws IOException {
+            int bit = feb.lireBit();
+            if (bit < 0) throw new EOFException("Fin de flux inattendue");
+            return bit;
+        }
+    }
+}
@@ -1,17 +1,65 @@
 package pif;
 
 import java.io.*;
-import java.util.Map;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.awt.image.BufferedImage;
-import pif.CodecHuffman.InfoCode;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 
 /**
  * Représente une image au format PIF (Proprietary Image Format).
- * Cette classe gère la structure de données de l'image (pixels, dimensions) ainsi que les mécanismes de persistance (lecture/écriture) incluant la compression et décompression par codage de Huffman canonique.
+ * Cette classe gère la structure de données de l'image (pixels, dimensions) ainsi que les mécanismes de persistance (lecture/écriture) incluant la compression et décompression par un {@link CodeurEntropique} (Huffman canonique par défaut).
+ * Les pixels sont rangés dans un tableau du tas, ou hors du tas dans une mémoire directe ({@link #allouerHorsTas}, {@link #chargerHorsTas(String)}) :
+ * une image hors du tas ne pèse pas sur le ramasse-miettes, est encodée et décodée directement dans cette mémoire,
+ * et se libère par {@link #close()} : immédiatement si aucune vue n'en a été donnée, sinon par le ramasse-miettes une fois les vues abandonnées. La mémoire directe est bornée par l'option <code>-XX:MaxDirectMemorySize</code>
+ * de la JVM (par défaut, la taille maximale du tas).
  * @author Dimitri SOLAR, Valentin LOISON
  * @version 1.0
  */
-public class ImagePIF {
+public class ImagePIF implements AutoCloseable {
+
+    // Taille des tampons intercalés devant les flux et canaux non tamponnés
+    private static final int TAILLE_TAMPON = 64 * 1024;
+
+    // Méthode de libération immédiate d'une mémoire directe (sun.misc.Unsafe.invokeCleaner), ou null si elle est inaccessible
+    private static final Method LIBERATION;
+
+    // Instance de sun.misc.Unsafe portant la méthode de libération
+    private static final Object UNSAFE;
+
+    static {
+        Method liberation = null;
+        Object unsafe = null;
+        try {
+            Class<?> classe = Class.forName("sun.misc.Unsafe");
+            Field instance = classe.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe = instance.get(null);
+            liberation = classe.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // La mémoire sera rendue par le ramasse-miettes
+        }
+        LIBERATION = liberation;
+        UNSAFE = unsafe;
+    }
     
     // Largeur de l'image en pixels 
     private int largeur;
@@ -19,9 +67,19 @@ public class ImagePIF {
     // Hauteur de l'image en pixels
     private int hauteur;
     
-    // Tableau unidimensionnel des pixels au format ARGB
+    // Tableau unidimensionnel des pixels au format ARGB, ou null si les pixels sont hors du tas
     private int[] pixels;
 
+    // Vue sur les pixels (le tableau ci-dessus ou une mémoire directe), de la position 0 à la limite ; null après close()
+    private IntBuffer tampon;
+
+    // Mémoire directe allouée par l'image et libérée par close(), ou null
+    private ByteBuffer memoire;
+
+    // Vrai dès qu'une vue sur les pixels a été donnée à l'appelant (getTampon(), vueBufferedImage()) : la mémoire directe
+    // ne peut plus être libérée immédiatement, la vue pouvant encore y accéder
+    private boolean vuesDonnees;
+
     /**
      * Construit une instance d'ImagePIF avec ses données brutes.
      * @param largeur Largeur de l'image.
@@ -32,6 +90,45 @@ public class ImagePIF {
         this.largeur = largeur;
         this.hauteur = hauteur;
         this.pixels = pixels;
+        this.tampon = IntBuffer.wrap(pixels);
+    }
+
+    /**
+     * Construit une image sur des pixels fournis dans un tampon, sans les copier. Le tampon reste la propriété de l'appelant :
+     * {@link #close()} ne le libère pas.
+     * @param largeur Largeur de l'image.
+     * @param hauteur Hauteur de l'image.
+     * @param pixels Les pixels ARGB, de la position courante à la limite (au moins <code>largeur * hauteur</code>).
+     */
+    public ImagePIF(int largeur, int hauteur, IntBuffer pixels) {
+        int n = largeur * hauteur;
+        if (pixels.remaining() < n) {
+            throw new IllegalArgumentException("Tampon trop petit : " + pixels.remaining() + " pixels pour " + largeur + " x " + hauteur);
+        }
+        this.largeur = largeur;
+        this.hauteur = hauteur;
+        this.tampon = pixels.slice().limit(n);
+        if (tampon.hasArray() && tampon.arrayOffset() == 0 && tampon.array().length == n) {
+            this.pixels = tampon.array();
+        }
+    }
+
+    /**
+     * Alloue une image noire dont les pixels sont hors du tas, à libérer par {@link #close()}.
+     * @param largeur Largeur de l'image.
+     * @param hauteur Hauteur de l'image.
+     * @return L'image allouée.
+     * @throws IllegalArgumentException Si l'image dépasse 2 Go de pixels, la taille maximale d'une mémoire directe.
+     */
+    public static ImagePIF allouerHorsTas(int largeur, int hauteur) {
+        long octets = 4L * largeur * hauteur;
+        if (largeur < 0 || hauteur < 0 || octets > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image trop grande pour une mémoire directe : " + largeur + " x " + hauteur);
+        }
+        ByteBuffer memoire = ByteBuffer.allocateDirect((int) octets).order(ByteOrder.nativeOrder());
+        ImagePIF image = new ImagePIF(largeur, hauteur, memoire.asIntBuffer());
+        image.memoire = memoire;
+        return image;
     }
 
     // @return La largeur de l'image
@@ -44,21 +141,118 @@ public class ImagePIF {
         return hauteur;
     }
 
-    // @return Le tableau des pixels
+    /**
+     * Retourne le tableau des pixels d'une image rangée dans le tas.
+     * @return Le tableau des pixels.
+     * @throws IllegalStateException Si les pixels sont hors du tas (voir {@link #getTampon()}).
+     */
     public int[] getPixels() {
+        if (pixels == null) {
+            throw new IllegalStateException("Pixels hors du tas : utiliser getTampon()");
+        }
         return pixels;
     }
 
+    /**
+     * Retourne une vue sur les pixels, sans copie, quel que soit leur rangement.
+     * La vue reste utilisable après {@link #close()} : la mémoire directe n'est alors rendue qu'une fois la vue abandonnée.
+     * @return Un tampon indépendant (position 0, limite au nombre de pixels) partageant les pixels de l'image.
+     * @throws IllegalStateException Si l'image a été fermée.
+     */
+    public IntBuffer getTampon() {
+        IntBuffer vue = vue();
+        vuesDonnees = true;
+        return vue;
+    }
+
+    /**
+     * Retourne une vue sur les pixels pour un usage limité à l'appel en cours (encodage, analyse) : elle ne doit pas être conservée,
+     * et n'empêche donc pas {@link #close()} de libérer immédiatement la mémoire directe.
+     * @return Un tampon indépendant (position 0, limite au nombre de pixels) partageant les pixels de l'image.
+     * @throws IllegalStateException Si l'image a été fermée.
+     */
+    IntBuffer vue() {
+        if (tampon == null) {
+            throw new IllegalStateException("Image fermée");
+        }
+        return tampon.duplicate();
+    }
+
+    // @return Vrai si les pixels sont hors du tas
+    public boolean isHorsTas() {
+        return pixels == null;
+    }
+
+    /**
+     * Ferme l'image et libère la mémoire directe qu'elle a allouée. Si une vue en a été obtenue ({@link #getTampon()}, {@link #vueBufferedImage()}),
+     * la mémoire n'est pas libérée immédiatement, mais par le ramasse-miettes une fois toutes les vues abandonnées : une vue reste ainsi
+     * toujours utilisable. Sans effet pour une image rangée dans le tas ou construite sur un tampon fourni.
+     */
+    @Override
+    public void close() {
+        if (memoire == null) {
+            return;
+        }
+        ByteBuffer liberee = memoire;
+        memoire = null;
+        tampon = null;
+        if (LIBERATION != null && !vuesDonnees) {
+            try {
+                LIBERATION.invoke(UNSAFE, liberee);
+            } catch (ReflectiveOperationException e) {
+                // La mémoire sera rendue par le ramasse-miettes
+            }
+        }
+    }
+
     /**
      * Convertit l'objet actuel en une image manipulable par Java AWT/Swing.
-     * @return Une instance de {@link BufferedImage} de type <code>TYPE_INT_RGB</code>.
+     * @return Une instance de {@link BufferedImage} de type <code>TYPE_INT_RGB</code>, indépendante de cette image.
      */
     public BufferedImage versBufferedImage() {
         BufferedImage img = new BufferedImage(largeur, hauteur, BufferedImage.TYPE_INT_RGB);
-        img.setRGB(0, 0, largeur, hauteur, pixels, 0, largeur);
+        if (pixels != null) {
+            img.setRGB(0, 0, largeur, hauteur, pixels, 0, largeur);
+        } else {
+            // Hors du tas, chaque ligne est copiée dans le tableau de LignesPixels
+            LignesPixels lignes = new LignesPixels(vue(), largeur);
+            for (int y = 0; y < hauteur; y++) {
+                lignes.ligne(y);
+                img.getRaster().setDataElements(0, y, largeur, 1, lignes.tableau());
+            }
+        }
         return img;
     }
 
+    /**
+     * Présente les pixels sous forme de {@link BufferedImage} RVB, sans les copier : les modifications de l'une se voient dans l'autre.
+     * Pour une image rangée dans le tas, c'est une image <code>TYPE_INT_RGB</code> ordinaire ;
+     * hors du tas, une image dont le raster lit directement la mémoire directe, utilisable par <code>ImageIO</code> ou <code>Graphics2D</code>.
+     * @return La vue sur les pixels.
+     */
+    public BufferedImage vueBufferedImage() {
+        return vueBufferedImage(pixels != null ? null : getTampon());
+    }
+
+    /**
+     * Présente les pixels sous forme de {@link BufferedImage} pour un usage limité à l'appel en cours (export, réponse du serveur) :
+     * la vue ne doit pas survivre à l'image, et n'empêche donc pas {@link #close()} de libérer immédiatement la mémoire directe.
+     * @return La vue sur les pixels.
+     * @see #vueBufferedImage()
+     */
+    BufferedImage vueBufferedImageTemporaire() {
+        return vueBufferedImage(pixels != null ? null : vue());
+    }
+
+    // Construit la vue BufferedImage sur le tableau de pixels, ou sur le tampon hors du tas fourni
+    private BufferedImage vueBufferedImage(IntBuffer horsTas) {
+        DirectColorModel modele = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        DataBuffer donnees = (horsTas == null) ? new DataBufferInt(pixels, pixels.length) : new DonneesHorsTas(horsTas);
+        WritableRaster raster = Raster.createWritableRaster(
+                modele.createCompatibleSampleModel(largeur, hauteur), donnees, null);
+        return new BufferedImage(modele, raster, false, null);
+    }
+
     /**
      * Crée un objet ImagePIF à partir d'une image standard.
      * @param img L'image source à convertir.
@@ -72,147 +266,657 @@ public class ImagePIF {
     }
 
     /**
-     * Sauvegarde l'image sur le disque avec compression de Huffman.
-     * Le processus suit les étapes suivantes :
-     * 1. Écriture des dimensions.
-     * 2. Séparation des canaux R, V, B.
-     * 3. Calcul des fréquences et des codes canoniques par canal.
-     * 4. Écriture des tables de longueurs (768 octets).
-     * 5. Écriture du flux binaire compressé.
+     * Crée un objet ImagePIF à partir d'une image standard, dont les pixels sont copiés dans le tableau d'un brouillon.
+     * L'image obtenue partage ce tableau : elle n'est valable que jusqu'à la prochaine utilisation du brouillon.
+     * @param img L'image source à convertir.
+     * @param brouillon Le brouillon fournissant le tableau des pixels ; une image qu'il ne sert pas a son propre tableau.
+     * @return Une nouvelle instance de {@link ImagePIF}.
+     */
+    static ImagePIF depuisBufferedImage(BufferedImage img, Brouillon brouillon) {
+        int l = img.getWidth();
+        int h = img.getHeight();
+        int[] rgb = brouillon.pixels(l, h);
+        if (rgb == null) {
+            return depuisBufferedImage(img);
+        }
+        img.getRGB(0, 0, l, h, rgb, 0, l);
+        return new ImagePIF(l, h, IntBuffer.wrap(rgb));
+    }
+
+    /**
+     * Sauvegarde l'image sur le disque avec compression de Huffman, au format PIF historique.
      * @param chemin Le chemin de destination du fichier .pif.
      * @throws IOException Si une erreur d'accès au fichier survient.
+     * @see #sauvegarder(String, CodeurEntropique)
      */
     public void sauvegarder(String chemin) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(chemin);
-             FluxSortieBits fsb = new FluxSortieBits(fos)) {
-
-            // En-tête (2 x 16 bits pour les dimensions)
-            ecrireShort(fos, largeur);
-            ecrireShort(fos, hauteur);
-
-            // Séparation des canaux RGB
-            int[] r = new int[pixels.length];
-            int[] v = new int[pixels.length];
-            int[] b = new int[pixels.length];
-
-            for (int i = 0; i < pixels.length; i++) {
-                int c = pixels[i];
-                r[i] = (c >> 16) & 0xFF;
-                v[i] = (c >> 8) & 0xFF;
-                b[i] = c & 0xFF;
-            }
+        sauvegarder(chemin, CodeurEntropique.HUFFMAN);
+    }
+
+    /**
+     * Sauvegarde l'image sur le disque avec le codeur entropique choisi et les autres options par défaut.
+     * @param chemin Le chemin de destination du fichier .pif.
+     * @param codeur Le codeur entropique à utiliser.
+     * @throws IOException Si une erreur d'accès au fichier survient.
+     */
+    public void sauvegarder(String chemin, CodeurEntropique codeur) throws IOException {
+        sauvegarder(chemin, new OptionsEncodage().setCodeur(codeur));
+    }
+
+    /**
+     * Sauvegarde l'image sur le disque selon les options d'encodage fournies.
+     * Le processus suit les étapes suivantes :
+     * 1. Séparation des canaux R, V, B et choix du plan d'encodage selon le niveau d'{@link Effort} (transformation, tables partagées).
+     * 2. Calcul des tables du codeur entropique, par canal ou par groupe de canaux.
+     * 3. Écriture de l'en-tête (dimensions et, hors format historique, codeur et organisation des canaux).
+     * 4. Écriture des tables et du flux compressé, entrelacé ou canal par canal.
+     * L'encodage et l'écriture sur disque se recouvrent : voir {@link #sauvegarder(WritableByteChannel, OptionsEncodage)}.
+     * @param chemin Le chemin de destination du fichier .pif.
+     * @param options Les options d'encodage.
+     * @throws IOException Si une erreur d'accès au fichier survient.
+     */
+    public void sauvegarder(String chemin, OptionsEncodage options) throws IOException {
+        try (FileChannel canal = FileChannel.open(Paths.get(chemin),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            sauvegarder(canal, options);
+        }
+    }
+
+    /**
+     * Écrit l'image compressée au format PIF historique dans un flux, sans le fermer.
+     * @param os Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     * @see #sauvegarder(OutputStream, OptionsEncodage)
+     */
+    public void sauvegarder(OutputStream os) throws IOException {
+        sauvegarder(os, new OptionsEncodage());
+    }
+
+    /**
+     * Écrit l'image compressée dans un flux, sans le fermer.
+     * Un flux non tamponné est précédé d'un tampon interne, afin que l'écriture ne se traduise pas par un appel système par octet ;
+     * le flux est vidé (<code>flush</code>) une fois l'image écrite.
+     * @param os Le flux de destination.
+     * @param options Les options d'encodage.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    public void sauvegarder(OutputStream os, OptionsEncodage options) throws IOException {
+        sauvegarder(os, options, null);
+    }
+
+    /**
+     * Écrit l'image compressée dans un flux, sans le fermer, en calculant ses canaux transformés dans les plans d'un brouillon.
+     * @param os Le flux de destination.
+     * @param options Les options d'encodage.
+     * @param brouillon Le brouillon fournissant les plans des canaux, ou null pour les allouer.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    void sauvegarder(OutputStream os, OptionsEncodage options, Brouillon brouillon) throws IOException {
+        OutputStream tampon = tamponner(os);
+        ecrire(tampon, options, brouillon);
+        tampon.flush();
+    }
+
+    /**
+     * Écrit l'image compressée dans un canal, sans le fermer.
+     * L'encodage remplit des tampons directs qu'un second thread écrit dans le canal pendant que les suivants se remplissent
+     * ({@link FluxSortiePipeline}) : sur un disque ou un système de fichiers réseau lent, la durée tend vers le maximum,
+     * et non la somme, des temps d'encodage et d'écriture. Un fichier de moins de 64 Ko est écrit directement, sans second thread.
+     * @param canal Le canal de destination.
+     * @param options Les options d'encodage.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    public void sauvegarder(WritableByteChannel canal, OptionsEncodage options) throws IOException {
+        try (FluxSortiePipeline flux = new FluxSortiePipeline(canal)) {
+            ecrire(flux, options);
+        }
+    }
+
+    /**
+     * Compresse l'image en mémoire au format PIF historique.
+     * @return Le contenu du fichier PIF.
+     * @see #versOctets(OptionsEncodage)
+     */
+    public byte[] versOctets() {
+        return versOctets(new OptionsEncodage());
+    }
+
+    /**
+     * Compresse l'image en mémoire.
+     * @param options Les options d'encodage.
+     * @return Le contenu du fichier PIF.
+     */
+    public byte[] versOctets(OptionsEncodage options) {
+        ByteArrayOutputStream tampon = new ByteArrayOutputStream(largeur * hauteur + 1024);
+        try {
+            ecrire(tampon, options);
+        } catch (IOException e) {
+            // Un ByteArrayOutputStream ne produit pas d'erreur d'E/S
+            throw new UncheckedIOException(e);
+        }
+        return tampon.toByteArray();
+    }
+
+    /**
+     * Compresse l'image en mémoire, sous forme de tampon prêt à être lu ou écrit dans un canal.
+     * @param options Les options d'encodage.
+     * @return Un tampon dont le contenu, de la position 0 à la limite, est le fichier PIF.
+     */
+    public ByteBuffer versByteBuffer(OptionsEncodage options) {
+        return ByteBuffer.wrap(versOctets(options));
+    }
+
+    /**
+     * Écrit l'image compressée dans un flux, sans le fermer.
+     * @param os Le flux de destination.
+     * @param options Les options d'encodage.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    void ecrire(OutputStream os, OptionsEncodage options) throws IOException {
+        ecrire(os, options, null);
+    }
 
-            // Calcul des fréquences et construction des codes
-            int[] freqR = CodecHuffman.calculerFrequences(r);
-            int[] freqV = CodecHuffman.calculerFrequences(v);
-            int[] freqB = CodecHuffman.calculerFrequences(b);
-
-            Map<Integer, String> initR = CodecHuffman.genererCodesInitiaux(CodecHuffman.construireArbre(freqR));
-            Map<Integer, String> initV = CodecHuffman.genererCodesInitiaux(CodecHuffman.construireArbre(freqV));
-            Map<Integer, String> initB = CodecHuffman.genererCodesInitiaux(CodecHuffman.construireArbre(freqB));
-
-            int[] lenR = CodecHuffman.genererLongueursCanoniques(initR);
-            int[] lenV = CodecHuffman.genererLongueursCanoniques(initV);
-            int[] lenB = CodecHuffman.genererLongueursCanoniques(initB);
-
-            // Stockage des tables de codage (En-tête de décompression)
-            ecrireTable(fos, lenR);
-            ecrireTable(fos, lenV);
-            ecrireTable(fos, lenB);
-
-            Map<Integer, InfoCode> mapR = CodecHuffman.genererCodesCanoniques(lenR);
-            Map<Integer, InfoCode> mapV = CodecHuffman.genererCodesCanoniques(lenV);
-            Map<Integer, InfoCode> mapB = CodecHuffman.genererCodesCanoniques(lenB);
-
-            // Écriture du corps de l'image (flux de bits)
-            for (int i = 0; i < pixels.length; i++) {
-                fsb.ecrireChaineBinaire(mapR.get(r[i]).codeChaine);
-                fsb.ecrireChaineBinaire(mapV.get(v[i]).codeChaine);
-                fsb.ecrireChaineBinaire(mapB.get(b[i]).codeChaine);
+    /**
+     * Écrit l'image compressée dans un flux, sans le fermer.
+     * @param os Le flux de destination.
+     * @param options Les options d'encodage.
+     * @param brouillon Le brouillon fournissant les plans des canaux, ou null pour les allouer.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    private void ecrire(OutputStream os, OptionsEncodage options, Brouillon brouillon) throws IOException {
+        if (options.getPeriodeAdaptative() > 0) {
+            // Une seule passe : chaque ligne est codée dès qu'elle est lue, sans analyse préalable de l'image
+            EncodeurLignes encodeur = new EncodeurLignes(os, null, largeur, hauteur, options, false);
+            LignesPixels lignes = new LignesPixels(vue(), largeur);
+            for (int y = 0; y < hauteur; y++) {
+                encodeur.ecrireLigne(lignes.tableau(), lignes.ligne(y));
             }
-            fsb.vider();
+            encodeur.close();
+            return;
+        }
+        // Séparation des canaux RGB, transformés selon le plan retenu
+        PlanEncodage plan = PlanEncodage.choisir(vue(), largeur, hauteur, options, brouillon);
+        int nbPixels = largeur * hauteur;
+        EnTetePIF entete = plan.getEntete();
+        int[][] canaux = plan.getCanaux();
+
+        CodeurEntropique codeur = PlanEncodage.codeur(options);
+        if (entete.isCorrespondances()) {
+            // Littéraux et copies, avec leurs propres tables
+            entete.ecrire(os);
+            plan.getCorrespondances().ecrire(os);
+            os.flush();
+            return;
+        }
+        if (entete.isBlocs()) {
+            // L'arbre des blocs, avec ses propres tables
+            entete.ecrire(os);
+            plan.getBlocs().ecrire(os);
+            os.flush();
+            return;
+        }
+        if (entete.getPalette() != null) {
+            // Un unique canal : les indices dans la palette
+            entete.ecrire(os);
+            codeur.encoder(canaux, nbPixels, os);
+            os.flush();
+            return;
+        }
+        if (entete.getDictionnaire() != null) {
+            // Enregistré avant d'écrire quoi que ce soit : le fichier se relit dans ce processus, et un homonyme est refusé
+            DictionnaireHuffman.enregistrer(options.getDictionnaire());
+            entete.ecrire(os);
+            options.getDictionnaire().encoder(canaux, nbPixels, os);
+            os.flush();
+            return;
+        }
+        if (canaux.length == 0) {
+            // Tous les canaux sont constants : l'en-tête suffit
+            entete.ecrire(os);
+            os.flush();
+            return;
+        }
+        if (!options.isCanauxSepares()) {
+            entete.ecrire(os);
+            codeur.encoder(canaux, nbPixels, entete.getGroupesCodes(), os);
+            os.flush();
+            return;
+        }
+
+        // Canaux séparés : chaque canal est encodé en mémoire sur son propre thread, puis les longueurs sont inscrites dans l'en-tête
+        List<CompletableFuture<byte[]>> taches = new ArrayList<>();
+        for (int[] canal : canaux) {
+            taches.add(CompletableFuture.supplyAsync(() -> {
+                ByteArrayOutputStream flux = new ByteArrayOutputStream(nbPixels / 2 + 1024);
+                try {
+                    codeur.encoder(new int[][] { canal }, nbPixels, flux);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return flux.toByteArray();
+            }));
+        }
+        // Un canal omis a un flux vide
+        int[] codes = entete.getCanauxCodes();
+        byte[][] blocs = new byte[codes.length][];
+        int[] longueurs = new int[3];
+        for (int k = 0; k < codes.length; k++) {
+            blocs[k] = attendre(taches.get(k));
+            longueurs[codes[k]] = blocs[k].length;
+        }
+
+        entete.setLongueursCanaux(longueurs).ecrire(os);
+        for (byte[] bloc : blocs) {
+            os.write(bloc);
         }
+        os.flush();
     }
 
     /**
      * Charge et décompresse une image PIF depuis un fichier.
+     * Le codeur entropique et l'organisation des canaux sont déterminés par l'en-tête du fichier.
      * @param chemin Le chemin du fichier .pif à lire.
      * @return Une instance d'{@link ImagePIF} prête à l'affichage.
      * @throws IOException Si le fichier est corrompu ou illisible.
      */
     public static ImagePIF charger(String chemin) throws IOException {
-        try (FileInputStream fis = new FileInputStream(chemin);
-             FluxEntreeBits feb = new FluxEntreeBits(fis)) {
-
-            int l = lireShort(fis);
-            int h = lireShort(fis);
-
-            int[] lenR = lireTable(fis);
-            int[] lenV = lireTable(fis);
-            int[] lenB = lireTable(fis);
-
-            NoeudHuffman racineR = CodecHuffman.reconstruireArbreCanonique(lenR);
-            NoeudHuffman racineV = CodecHuffman.reconstruireArbreCanonique(lenV);
-            NoeudHuffman racineB = CodecHuffman.reconstruireArbreCanonique(lenB);
-
-            int[] pixels = new int[l * h];
-            for (int i = 0; i < pixels.length; i++) {
-                int r = lireValeur(feb, racineR);
-                int v = lireValeur(feb, racineV);
-                int b = lireValeur(feb, racineB);
-                pixels[i] = (0xFF << 24) | (r << 16) | (v << 8) | b;
-            }
+        try (InputStream is = new FileInputStream(chemin)) {
+            return charger(is);
+        }
+    }
+
+    /**
+     * Lit et décompresse une image PIF depuis un flux, sans le fermer.
+     * Un flux non tamponné est précédé d'un tampon interne : il peut alors être lu au-delà de la fin de l'image.
+     * @param is Le flux positionné au début de l'en-tête.
+     * @return L'image décodée.
+     * @throws IOException Si le flux est corrompu ou tronqué.
+     */
+    public static ImagePIF charger(InputStream is) throws IOException {
+        return lire(tamponner(is));
+    }
+
+    /**
+     * Lit et décompresse une image PIF depuis un canal, sans le fermer.
+     * Le canal peut être lu au-delà de la fin de l'image.
+     * @param canal Le canal positionné au début de l'en-tête.
+     * @return L'image décodée.
+     * @throws IOException Si le canal est corrompu ou tronqué.
+     */
+    public static ImagePIF charger(ReadableByteChannel canal) throws IOException {
+        return lire(new BufferedInputStream(Channels.newInputStream(canal), TAILLE_TAMPON));
+    }
+
+    /**
+     * Décompresse une image PIF présente en mémoire.
+     * @param octets Le contenu du fichier PIF.
+     * @return L'image décodée.
+     * @throws IOException Si le contenu est corrompu ou tronqué.
+     */
+    public static ImagePIF charger(byte[] octets) throws IOException {
+        return lire(new ByteArrayInputStream(octets));
+    }
 
+    /**
+     * Décompresse une image PIF présente dans un tampon, entre sa position et sa limite.
+     * La position du tampon n'est pas modifiée.
+     * @param tampon Le tampon contenant le fichier PIF.
+     * @return L'image décodée.
+     * @throws IOException Si le contenu est corrompu ou tronqué.
+     */
+    public static ImagePIF charger(ByteBuffer tampon) throws IOException {
+        if (tampon.hasArray()) {
+            return lire(new ByteArrayInputStream(tampon.array(), tampon.arrayOffset() + tampon.position(), tampon.remaining()));
+        }
+        return lire(new FluxTampon(tampon.duplicate()));
+    }
+
+    /**
+     * Lit et décompresse une image PIF depuis un flux, sans le fermer.
+     * @param is Le flux positionné au début de l'en-tête.
+     * @return L'image décodée.
+     * @throws IOException Si le flux est corrompu ou tronqué.
+     */
+    static ImagePIF lire(InputStream is) throws IOException {
+        EnTetePIF entete = EnTetePIF.lire(is);
+        int l = entete.getLargeur();
+        int h = entete.getHauteur();
+
+        int[] pixels = new int[entete.nombrePixels()];
+        if (pixels.length == 0) {
             return new ImagePIF(l, h, pixels);
         }
+        if (entete.isCanauxSepares()) {
+            decoderCanauxEnParallele(entete, is, pixels);
+            return new ImagePIF(l, h, pixels);
+        }
+
+        DecodeurLignes lignes = new DecodeurLignes(entete, is);
+        for (int y = 0; y < h; y++) {
+            lignes.lireLigne(pixels, y * l);
+        }
+
+        return new ImagePIF(l, h, pixels);
+    }
+
+    /**
+     * Charge et décompresse une image PIF depuis un fichier, dans une mémoire hors du tas à libérer par {@link #close()}.
+     * Les lignes sont décodées une à une et rangées directement dans cette mémoire : le tas n'est sollicité
+     * que pour quelques lignes et, pour un fichier à canaux séparés, les flux compressés.
+     * @param chemin Le chemin du fichier .pif à lire.
+     * @return L'image décodée, hors du tas.
+     * @throws IOException Si le fichier est corrompu ou illisible.
+     */
+    public static ImagePIF chargerHorsTas(String chemin) throws IOException {
+        try (InputStream is = new FileInputStream(chemin)) {
+            return chargerHorsTas(is);
+        }
+    }
+
+    /**
+     * Lit et décompresse une image PIF depuis un flux, sans le fermer, dans une mémoire hors du tas à libérer par {@link #close()}.
+     * @param is Le flux positionné au début de l'en-tête.
+     * @return L'image décodée, hors du tas.
+     * @throws IOException Si le flux est corrompu ou tronqué.
+     * @see #chargerHorsTas(String)
+     */
+    public static ImagePIF chargerHorsTas(InputStream is) throws IOException {
+        return chargerHorsTas(is, null);
+    }
+
+    /**
+     * Lit et décompresse une image PIF depuis un flux, sans le fermer, dans la mémoire hors du tas d'un brouillon.
+     * L'image obtenue partage cette mémoire, que {@link #close()} ne libère pas : elle n'est valable que jusqu'à la prochaine utilisation du brouillon.
+     * @param is Le flux positionné au début de l'en-tête.
+     * @param brouillon Le brouillon fournissant la mémoire des pixels, ou null ; une image qu'il ne sert pas a sa propre mémoire, à libérer par {@link #close()}.
+     * @return L'image décodée, hors du tas.
+     * @throws IOException Si le flux est corrompu ou tronqué.
+     */
+    static ImagePIF chargerHorsTas(InputStream is, Brouillon brouillon) throws IOException {
+        try (DecodeurLignes lignes = DecodeurLignes.ouvrir(is)) {
+            int l = lignes.getLargeur();
+            int h = lignes.getHauteur();
+            IntBuffer memoire = (brouillon != null) ? brouillon.horsTas(l, h) : null;
+            ImagePIF image = (memoire != null) ? new ImagePIF(l, h, memoire) : allouerHorsTas(l, h);
+            try {
+                IntBuffer tampon = image.tampon;
+                lignes.lireLignes(h, (y, ligne) -> tampon.put(y * l, ligne, 0, l));
+            } catch (IOException | RuntimeException e) {
+                image.close();
+                throw e;
+            }
+            return image;
+        }
     }
 
     /**
-     * Décode un symbole unique en parcourant l'arbre de Huffman selon les bits lus.
-     * @param feb Le flux d'entrée bit à bit.
-     * @param racine La racine de l'arbre de Huffman pour le canal concerné.
-     * @return La valeur décodée (0-255).
-     * @throws IOException Si la fin du fichier est atteinte prématurément.
+     * Décode les trois flux indépendants d'une image à canaux séparés, chacun sur son propre thread,
+     * en annulant sa prédiction ligne par ligne, puis les fusionne en pixels lors d'une dernière passe sans dépendance entre itérations.
+     * Les canaux omis (doublons et constantes) n'ont pas de flux : un doublon reprend le plan de sa source, une constante remplit le sien.
+     * @param entete L'en-tête de l'image.
+     * @param is Le flux positionné au début du premier canal.
+     * @param pixels Le tableau de pixels à remplir.
+     * @throws IOException Si un flux est corrompu ou tronqué.
      */
-    private static int lireValeur(FluxEntreeBits feb, NoeudHuffman racine) throws IOException {
-        NoeudHuffman courant = racine;
-        while (!courant.estFeuille()) {
-            int bit = feb.lireBit();
-            if (bit == -1) throw new EOFException("Fin de flux inattendue");
-            courant = (bit == 0) ? courant.gauche : courant.droit;
+    private static void decoderCanauxEnParallele(EnTetePIF entete, InputStream is, int[] pixels) throws IOException {
+        CodeurEntropique codeur = CodeurEntropique.pourEntete(entete);
+        Transformation transformation = entete.getTransformation();
+        int l = entete.getLargeur();
+        int h = entete.getHauteur();
+
+        List<CompletableFuture<byte[]>> taches = new ArrayList<>();
+        int[] codes = entete.getCanauxCodes();
+        for (int c = 0, k = 0; c < 3; c++) {
+            byte[] bloc = lireOctets(is, entete.getLongueursCanaux()[c]);
+            if (k == codes.length || codes[k] != c) {
+                continue;
+            }
+            k++;
+            taches.add(CompletableFuture.supplyAsync(() -> {
+                // Décodage et reconstruction d'un canal sont entremêlés ligne par ligne : ils sont mesurés ensemble
+                Instrumentation.Mesure debutCanal = Instrumentation.debut();
+                byte[] plan = new byte[pixels.length];
+                try {
+                    CodeurEntropique.Decodeur decodeur = codeur.ouvrirDecodeur(new ByteArrayInputStream(bloc), 1);
+                    int[][] residus = new int[1][l];
+                    int[] courante = new int[l];
+                    int[] precedente = new int[l];
+                    for (int y = 0; y < h; y++) {
+                        decodeur.decoder(residus, l);
+                        transformation.reconstruireLigne(residus[0], precedente, courante, l, y);
+                        int debut = y * l;
+                        for (int x = 0; x < l; x++) {
+                            plan[debut + x] = (byte) courante[x];
+                        }
+                        int[] echange = precedente;
+                        precedente = courante;
+                        courante = echange;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                Instrumentation.fin(Instrumentation.Phase.DECODAGE_FLUX, debutCanal, bloc.length, pixels.length);
+                return plan;
+            }));
+        }
+
+        byte[][] plans = new byte[3][];
+        for (int k = 0; k < codes.length; k++) {
+            plans[codes[k]] = attendre(taches.get(k));
+        }
+        int[] doublons = entete.getDoublons();
+        int[] constantes = entete.getConstantes();
+        for (int c = 0; c < 3; c++) {
+            if (constantes[c] >= 0) {
+                plans[c] = new byte[pixels.length];
+                Arrays.fill(plans[c], (byte) constantes[c]);
+            } else if (doublons[c] != c) {
+                plans[c] = plans[doublons[c]];
+            }
+        }
+        byte[] r = plans[0];
+        byte[] v = plans[1];
+        byte[] b = plans[2];
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = transformation.assembler(r[i] & 0xFF, v[i] & 0xFF, b[i] & 0xFF);
         }
-        return courant.valeur;
+        Instrumentation.fin(Instrumentation.Phase.ASSEMBLAGE_PIXELS, debut, 0, pixels.length);
     }
 
-    // Méthodes utilitaires d'I/O
+    /**
+     * Prépare le décodage séquentiel des trois canaux d'une image, quelle que soit leur organisation dans le fichier.
+     * Pour des canaux séparés, les trois flux sont lus en mémoire et décodés à tour de rôle dans une même boucle.
+     * @param entete L'en-tête de l'image.
+     * @param is Le flux positionné juste après l'en-tête.
+     * @return Un décodeur restituant les canaux codés ({@link EnTetePIF#getCanauxCodes()}) ligne après ligne.
+     * @throws IOException Si les tables sont illisibles.
+     */
+    static CodeurEntropique.Decodeur ouvrirDecodeurCanaux(EnTetePIF entete, InputStream is) throws IOException {
+        if (entete.getDictionnaire() != null) {
+            return DictionnaireHuffman.trouver(entete.getDictionnaire()).ouvrirDecodeur(is);
+        }
+        if (entete.isAdaptatif()) {
+            return HuffmanAdaptatif.ouvrirDecodeur(entete, is);
+        }
+        CodeurEntropique codeur = CodeurEntropique.pourEntete(entete);
+        if (entete.getPalette() != null) {
+            return codeur.ouvrirDecodeur(is, 1);
+        }
+        int[] codes = entete.getCanauxCodes();
+        if (codes.length == 0) {
+            // Tous les canaux sont constants : il n'y a aucun flux à lire
+            return (destination, n) -> { };
+        }
+        if (!entete.isCanauxSepares()) {
+            return codeur.ouvrirDecodeur(is, entete.getGroupesCodes());
+        }
 
-    // Écrit un entier sur 16 bits dans le flux
-    private static void ecrireShort(OutputStream os, int val) throws IOException {
-        os.write((val >> 8) & 0xFF);
-        os.write(val & 0xFF);
+        CodeurEntropique.Decodeur[] decodeurs = new CodeurEntropique.Decodeur[codes.length];
+        for (int c = 0, k = 0; c < 3; c++) {
+            byte[] bloc = lireOctets(is, entete.getLongueursCanaux()[c]);
+            if (k < codes.length && codes[k] == c) {
+                decodeurs[k++] = codeur.ouvrirDecodeur(new ByteArrayInputStream(bloc), 1);
+            }
+        }
+        int[][][] vues = new int[codes.length][1][];
+        return (destination, n) -> {
+            for (int c = 0; c < codes.length; c++) {
+                vues[c][0] = destination[c];
+                decodeurs[c].decoder(vues[c], n);
+            }
+        };
     }
 
-    // Lit un entier sur 16 bits depuis le flux
-    private static int lireShort(InputStream is) throws IOException {
-        int ch1 = is.read();
-        int ch2 = is.read();
-        if ((ch1 | ch2) < 0) throw new EOFException();
-        return (ch1 << 8) + (ch2 << 0);
+    /**
+     * Décode une image PIF directement sous forme de miniature, sans matérialiser le tableau des pixels en pleine résolution.
+     * Le flux est décodé ligne par ligne par un {@link DecodeurLignes} et chaque bloc de <code>facteur x facteur</code> pixels est moyenné à la volée :
+     * la mémoire utilisée reste proportionnelle à la largeur de l'image et non à sa surface.
+     * @param chemin Le chemin du fichier .pif à lire.
+     * @param tailleMax La plus grande dimension autorisée pour la miniature (en pixels).
+     * @return La miniature au format <code>TYPE_INT_RGB</code>.
+     * @throws IOException Si le fichier est corrompu ou illisible.
+     */
+    public static BufferedImage chargerMiniature(String chemin, int tailleMax) throws IOException {
+        try (DecodeurLignes decodeur = DecodeurLignes.ouvrir(chemin)) {
+            int l = decodeur.getLargeur();
+            int h = decodeur.getHauteur();
+
+            // Facteur de réduction entier : chaque pixel de la miniature couvre un bloc facteur x facteur
+            int facteur = Math.max(1, (Math.max(l, h) + tailleMax - 1) / Math.max(1, tailleMax));
+            int lMini = Math.max(1, (l + facteur - 1) / facteur);
+            int hMini = Math.max(1, (h + facteur - 1) / facteur);
+            BufferedImage miniature = new BufferedImage(lMini, hMini, BufferedImage.TYPE_INT_RGB);
+            if (l == 0 || h == 0) {
+                return miniature;
+            }
+
+            // Sommes des composantes pour la bande de lignes en cours
+            long[] sommes = new long[lMini * 3];
+            int[] ligneMini = new int[lMini];
+            int debutBande = 0;
+
+            for (int y = 0; y < h; y++) {
+                int[] ligne = decodeur.lireLigne();
+                for (int x = 0; x < l; x++) {
+                    int mx = x / facteur;
+                    int c = ligne[x];
+                    sommes[mx * 3] += (c >> 16) & 0xFF;
+                    sommes[mx * 3 + 1] += (c >> 8) & 0xFF;
+                    sommes[mx * 3 + 2] += c & 0xFF;
+                }
+
+                // Fin d'une bande : on calcule la moyenne de chaque bloc et on émet la ligne de la miniature
+                if (y - debutBande + 1 == facteur || y == h - 1) {
+                    int lignes = y - debutBande + 1;
+                    for (int i = 0; i < lMini; i++) {
+                        long n = (long) lignes * Math.min(facteur, l - i * facteur);
+                        int r = (int) (sommes[i * 3] / n);
+                        int v = (int) (sommes[i * 3 + 1] / n);
+                        int b = (int) (sommes[i * 3 + 2] / n);
+                        ligneMini[i] = (r << 16) | (v << 8) | b;
+                    }
+                    miniature.setRGB(0, debutBande / facteur, lMini, 1, ligneMini, 0, lMini);
+                    Arrays.fill(sommes, 0);
+                    debutBande = y + 1;
+                }
+            }
+
+            return miniature;
+        }
     }
 
-    // Écrit les 256 octets d'une table de longueurs de codes
-    private static void ecrireTable(OutputStream os, int[] longueurs) throws IOException {
-        for (int l : longueurs) os.write(l);
+    // Méthodes utilitaires
+
+    // Intercale un tampon devant un flux de sortie qui n'en a pas déjà un
+    private static OutputStream tamponner(OutputStream os) {
+        if (os instanceof BufferedOutputStream || os instanceof ByteArrayOutputStream) {
+            return os;
+        }
+        return new BufferedOutputStream(os, TAILLE_TAMPON);
+    }
+
+    // Intercale un tampon devant un flux d'entrée qui n'en a pas déjà un
+    static InputStream tamponner(InputStream is) {
+        if (is instanceof BufferedInputStream || is instanceof ByteArrayInputStream) {
+            return is;
+        }
+        return new BufferedInputStream(is, TAILLE_TAMPON);
     }
 
-    // Lit les 256 octets d'une table de longueurs de codes
-    private static int[] lireTable(InputStream is) throws IOException {
-        int[] longueurs = new int[256];
-        for (int i = 0; i < 256; i++) {
-            int val = is.read();
-            if (val < 0) throw new EOFException();
-            longueurs[i] = val;
+    // Flux d'entrée lisant un ByteBuffer (direct ou non) entre sa position et sa limite
+    private static final class FluxTampon extends InputStream {
+        private final ByteBuffer tampon;
+
+        FluxTampon(ByteBuffer tampon) {
+            this.tampon = tampon;
+        }
+
+        @Override
+        public int read() {
+            return tampon.hasRemaining() ? tampon.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int debut, int n) {
+            if (n == 0) {
+                return 0;
+            }
+            if (!tampon.hasRemaining()) {
+                return -1;
+            }
+            n = Math.min(n, tampon.remaining());
+            tampon.get(b, debut, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return tampon.remaining();
+        }
+    }
+
+    // Données d'un raster AWT lues et écrites directement dans les pixels d'une image hors du tas
+    private static final class DonneesHorsTas extends DataBuffer {
+        private final IntBuffer pixels;
+
+        DonneesHorsTas(IntBuffer pixels) {
+            super(DataBuffer.TYPE_INT, pixels.limit());
+            this.pixels = pixels;
+        }
+
+        @Override
+        public int getElem(int banque, int i) {
+            return pixels.get(i);
+        }
+
+        @Override
+        public void setElem(int banque, int i, int valeur) {
+            pixels.put(i, valeur);
+        }
+    }
+
+    // Lit exactement n octets depuis le flux
+    private static byte[] lireOctets(InputStream is, int n) throws IOException {
+        byte[] octets = new byte[n];
+        int lus = 0;
+        while (lus < n) {
+            int r = is.read(octets, lus, n - lus);
+            if (r < 0) throw new EOFException();
+            lus += r;
+        }
+        return octets;
+    }
+
+    // Attend le résultat d'une tâche parallèle en restituant l'IOException d'origine
+    private static <T> T attendre(CompletableFuture<T> tache) throws IOException {
+        try {
+            return tache.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
         }
-        return longueurs;
     }
 }
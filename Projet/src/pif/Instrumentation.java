@@ -0,0 +1,221 @@
+package pif;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesure du temps passé dans chaque phase de l'encodage et du décodage.
+ * Chaque phase terminée peut alimenter deux sorties indépendantes :
+ * <li><b>JDK Flight Recorder :</b> un {@link EvenementPhase} par phase, lorsqu'une session JFR active l'événement <code>pif.Phase</code>.
+ * L'événement est commencé par {@link #debut()} et terminé par {@link #fin(Phase, Mesure, long, long)} : il couvre la phase sur la ligne de temps du thread.</li>
+ * <li><b>Compteurs en mémoire :</b> nombre d'appels, durée, octets et pixels cumulés par phase, activés par {@link #activerCompteurs(boolean)}
+ * ou par la propriété système <code>pif.compteurs=true</code>, puis lus par {@link #instantane()} ou {@link #exporter(PrintStream)}.</li>
+ * Les mesures sont prises à la granularité d'une phase (quelques-unes par image), jamais par pixel :
+ * lorsque les deux sorties sont désactivées, il ne reste qu'un test de booléen par phase, sans allocation.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class Instrumentation {
+
+    /**
+     * Phases mesurées.
+     */
+    public enum Phase {
+        // Lecture ou écriture de l'en-tête
+        ENTETE("entete"),
+        // Séparation des canaux et transformation des composantes
+        TRANSFORMATION("transformation"),
+        // Calcul des fréquences des symboles
+        HISTOGRAMME("histogramme"),
+        // Construction de l'arbre de Huffman (CodecHuffman.construireArbre)
+        ARBRE("arbre"),
+        // Codes canoniques (Huffman) ou tables de transitions (rANS), écriture ou lecture des tables comprise
+        CODES_CANONIQUES("codes_canoniques"),
+        // Écriture du flux de bits
+        ENCODAGE_FLUX("encodage_flux"),
+        // Lecture du flux de bits
+        DECODAGE_FLUX("decodage_flux"),
+        // Reconstruction des composantes et assemblage des pixels
+        ASSEMBLAGE_PIXELS("assemblage_pixels");
+
+        // Nom utilisé dans les événements et les exports
+        private final String nom;
+
+        Phase(String nom) {
+            this.nom = nom;
+        }
+
+        // @return Le nom de la phase
+        public String getNom() {
+            return nom;
+        }
+    }
+
+    /**
+     * Phase en cours de mesure : son instant de début et, si une session JFR l'enregistre, son événement commencé.
+     */
+    static final class Mesure {
+        // Instant de début, en nanosecondes
+        final long debut;
+        // Événement commencé, ou null si JFR ne l'enregistre pas
+        final EvenementPhase evenement;
+
+        Mesure(EvenementPhase evenement) {
+            this.evenement = evenement;
+            this.debut = System.nanoTime();
+        }
+    }
+
+    // Vrai si les compteurs en mémoire sont alimentés
+    private static volatile boolean compteursActifs = Boolean.getBoolean("pif.compteurs");
+
+    // Compteurs cumulés, indexés par phase : appels, durée (ns), octets, pixels
+    private static final LongAdder[][] COMPTEURS = new LongAdder[Phase.values().length][4];
+
+    static {
+        for (LongAdder[] compteurs : COMPTEURS) {
+            for (int i = 0; i < compteurs.length; i++) {
+                compteurs[i] = new LongAdder();
+            }
+        }
+    }
+
+    private Instrumentation() {
+    }
+
+    /**
+     * Active ou désactive les compteurs en mémoire.
+     * @param actifs Vrai pour cumuler les mesures de chaque phase.
+     */
+    public static void activerCompteurs(boolean actifs) {
+        compteursActifs = actifs;
+    }
+
+    // @return Vrai si les compteurs en mémoire sont alimentés
+    public static boolean isCompteursActifs() {
+        return compteursActifs;
+    }
+
+    // @return Vrai si au moins une sortie (compteurs ou JFR) attend des mesures
+    static boolean actif() {
+        return compteursActifs || new EvenementPhase().isEnabled();
+    }
+
+    /**
+     * Marque le début d'une phase : l'événement JFR, s'il est enregistré, est commencé ici.
+     * @return La mesure à passer à {@link #fin(Phase, Mesure, long, long)}, ou null si rien n'est mesuré.
+     */
+    static Mesure debut() {
+        EvenementPhase evenement = new EvenementPhase();
+        if (evenement.isEnabled()) {
+            evenement.begin();
+            return new Mesure(evenement);
+        }
+        return compteursActifs ? new Mesure(null) : null;
+    }
+
+    /**
+     * Termine une phase commencée par {@link #debut()}.
+     * @param phase La phase.
+     * @param mesure La mesure renvoyée par {@link #debut()}.
+     * @param octets Le volume de données produit ou consommé par la phase.
+     * @param pixels Le nombre de pixels concernés.
+     */
+    static void fin(Phase phase, Mesure mesure, long octets, long pixels) {
+        if (mesure == null) {
+            return;
+        }
+        long duree = System.nanoTime() - mesure.debut;
+        compter(phase, duree, octets, pixels);
+        EvenementPhase evenement = mesure.evenement;
+        if (evenement != null) {
+            evenement.end();
+            if (evenement.shouldCommit()) {
+                remplir(evenement, phase, duree, octets, pixels);
+                evenement.commit();
+            }
+        }
+    }
+
+    /**
+     * Enregistre une phase dont la durée a été cumulée par l'appelant, tranche par tranche (par exemple ligne par ligne).
+     * L'événement JFR correspondant est émis à l'instant de l'appel, sans étendue, et marqué comme cumulé : seule sa durée est significative.
+     * @param phase La phase.
+     * @param duree La durée en nanosecondes.
+     * @param octets Le volume de données produit ou consommé par la phase.
+     * @param pixels Le nombre de pixels concernés.
+     */
+    static void enregistrer(Phase phase, long duree, long octets, long pixels) {
+        compter(phase, duree, octets, pixels);
+        EvenementPhase evenement = new EvenementPhase();
+        if (evenement.shouldCommit()) {
+            remplir(evenement, phase, duree, octets, pixels);
+            evenement.cumulee = true;
+            evenement.commit();
+        }
+    }
+
+    // Cumule une phase dans les compteurs en mémoire, s'ils sont actifs
+    private static void compter(Phase phase, long duree, long octets, long pixels) {
+        if (compteursActifs) {
+            LongAdder[] compteurs = COMPTEURS[phase.ordinal()];
+            compteurs[0].increment();
+            compteurs[1].add(duree);
+            compteurs[2].add(octets);
+            compteurs[3].add(pixels);
+        }
+    }
+
+    // Remplit les champs d'un événement
+    private static void remplir(EvenementPhase evenement, Phase phase, long duree, long octets, long pixels) {
+        evenement.phase = phase.getNom();
+        evenement.octets = octets;
+        evenement.pixels = pixels;
+        evenement.bitsParPixel = pixels > 0 ? octets * 8.0 / pixels : 0;
+        evenement.duree = duree;
+    }
+
+    /**
+     * Retourne la valeur courante de tous les compteurs.
+     * Les clés sont de la forme <code>phase.appels</code>, <code>phase.duree_ns</code>, <code>phase.octets</code> et <code>phase.pixels</code>.
+     * @return Les compteurs, dans l'ordre des phases.
+     */
+    public static Map<String, Long> instantane() {
+        Map<String, Long> valeurs = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            LongAdder[] compteurs = COMPTEURS[phase.ordinal()];
+            valeurs.put(phase.getNom() + ".appels", compteurs[0].sum());
+            valeurs.put(phase.getNom() + ".duree_ns", compteurs[1].sum());
+            valeurs.put(phase.getNom() + ".octets", compteurs[2].sum());
+            valeurs.put(phase.getNom() + ".pixels", compteurs[3].sum());
+        }
+        return valeurs;
+    }
+
+    /**
+     * Écrit les compteurs au format texte de Prometheus, une ligne par compteur et par phase.
+     * @param sortie Le flux de destination.
+     */
+    public static void exporter(PrintStream sortie) {
+        String[] noms = { "appels_total", "duree_ns_total", "octets_total", "pixels_total" };
+        for (int i = 0; i < noms.length; i++) {
+            sortie.println("# TYPE pif_phase_" + noms[i] + " counter");
+            for (Phase phase : Phase.values()) {
+                sortie.println("pif_phase_" + noms[i] + "{phase=\"" + phase.getNom() + "\"} " + COMPTEURS[phase.ordinal()][i].sum());
+            }
+        }
+    }
+
+    /**
+     * Remet tous les compteurs à zéro.
+     */
+    public static void remettreAZero() {
+        for (LongAdder[] compteurs : COMPTEURS) {
+            for (LongAdder compteur : compteurs) {
+                compteur.reset();
+            }
+        }
+    }
+}
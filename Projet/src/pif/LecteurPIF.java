@@ -0,0 +1,179 @@
+package pif;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Lecteur <code>javax.imageio</code> des fichiers PIF, déclaré par {@link FournisseurLecteurPIF} :
+ * <code>ImageIO.read</code>, et tout service qui passe par <code>ImageIO</code>, lisent alors les images PIF.
+ * Les dimensions ({@link #getWidth(int)}, {@link #getHeight(int)}) sont lues dans l'en-tête seul, sans décoder de pixel.
+ * Une lecture est faite ligne par ligne par un {@link DecodeurLignes}, en tenant compte de la région source et du sous-échantillonnage
+ * de l'{@link ImageReadParam} : les lignes situées après la région ne sont jamais décodées ; celles qui la précèdent ou que le
+ * sous-échantillonnage écarte sont décodées, chaque ligne étant prédite à partir de la précédente, mais leurs pixels ne sont pas assemblés ;
+ * seules les colonnes retenues des autres lignes le sont. La mémoire utilisée est celle de l'image produite, plus quelques lignes.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class LecteurPIF extends ImageReader {
+
+    // Flux source, ou null tant qu'aucune source n'est choisie
+    private ImageInputStream entree;
+
+    // Position du début de l'image dans le flux source
+    private long debut;
+
+    // En-tête de l'image, ou null tant qu'il n'a pas été lu
+    private EnTetePIF entete;
+
+    /**
+     * Construit un lecteur sans source.
+     * @param fournisseur Le fournisseur qui crée ce lecteur, ou null.
+     */
+    public LecteurPIF(ImageReaderSpi fournisseur) {
+        super(fournisseur);
+    }
+
+    @Override
+    public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
+        super.setInput(input, seekForwardOnly, ignoreMetadata);
+        this.entree = (ImageInputStream) input;
+        this.entete = null;
+    }
+
+    @Override
+    public int getNumImages(boolean allowSearch) throws IOException {
+        source();
+        return 1;
+    }
+
+    @Override
+    public int getWidth(int imageIndex) throws IOException {
+        return entete(imageIndex).getLargeur();
+    }
+
+    @Override
+    public int getHeight(int imageIndex) throws IOException {
+        return entete(imageIndex).getHauteur();
+    }
+
+    @Override
+    public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IOException {
+        entete(imageIndex);
+        return Collections.singletonList(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB)).iterator();
+    }
+
+    @Override
+    public IIOMetadata getStreamMetadata() {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata getImageMetadata(int imageIndex) throws IOException {
+        entete(imageIndex);
+        return null;
+    }
+
+    /**
+     * Décode l'image, ou la partie demandée par les paramètres de lecture.
+     * @param imageIndex L'indice de l'image (0, un fichier PIF n'en contenant qu'une).
+     * @param param Les paramètres de lecture (région source, sous-échantillonnage, destination), ou null pour l'image entière.
+     * @return L'image décodée, de type <code>TYPE_INT_RGB</code> sauf destination imposée par les paramètres.
+     * @throws IOException Si le flux est corrompu ou tronqué.
+     */
+    @Override
+    public BufferedImage read(int imageIndex, ImageReadParam param) throws IOException {
+        EnTetePIF e = entete(imageIndex);
+        int l = e.getLargeur();
+        int h = e.getHauteur();
+        if (param == null) {
+            param = getDefaultReadParam();
+        }
+        BufferedImage image = getDestination(param, getImageTypes(imageIndex), l, h);
+        Rectangle region = new Rectangle();
+        Rectangle destination = new Rectangle();
+        computeRegions(param, l, h, image, region, destination);
+        int pasX = param.getSourceXSubsampling();
+        int pasY = param.getSourceYSubsampling();
+
+        processImageStarted(imageIndex);
+        entree.seek(debut);
+        // Le décodeur lit l'en-tête à nouveau et peut lire au-delà de l'image : le flux est repositionné à chaque lecture
+        try (DecodeurLignes decodeur = DecodeurLignes.ouvrir(new FluxEntree(entree))) {
+            int[] ligne = new int[destination.width];
+            boolean directe = image.getType() == BufferedImage.TYPE_INT_RGB;
+            int derniere = region.y + (destination.height - 1) * pasY;
+            for (int y = 0; y <= derniere; y++) {
+                if (abortRequested()) {
+                    processReadAborted();
+                    return image;
+                }
+                if (y < region.y || (y - region.y) % pasY != 0) {
+                    decodeur.sauterLigne();
+                    continue;
+                }
+                decodeur.lireLigne(ligne, 0, region.x, pasX, destination.width);
+                int yDestination = destination.y + (y - region.y) / pasY;
+                if (directe) {
+                    image.getRaster().setDataElements(destination.x, yDestination, destination.width, 1, ligne);
+                } else {
+                    image.setRGB(destination.x, yDestination, destination.width, 1, ligne, 0, destination.width);
+                }
+                processImageProgress(100f * (y + 1) / (derniere + 1));
+            }
+        }
+        processImageComplete();
+        return image;
+    }
+
+    // @return Le flux source, s'il a été choisi
+    private ImageInputStream source() {
+        if (entree == null) {
+            throw new IllegalStateException("Aucune source n'a été choisie");
+        }
+        return entree;
+    }
+
+    // @return L'en-tête de l'image, lu à la première demande
+    private EnTetePIF entete(int imageIndex) throws IOException {
+        source();
+        if (imageIndex != 0) {
+            throw new IndexOutOfBoundsException("Un fichier PIF ne contient qu'une image : " + imageIndex);
+        }
+        if (entete == null) {
+            debut = entree.getStreamPosition();
+            entete = EnTetePIF.lire(new FluxEntree(entree));
+        }
+        return entete;
+    }
+
+    /**
+     * Flux d'entrée lisant un flux <code>javax.imageio</code>, pour les lectures de {@link EnTetePIF} et {@link DecodeurLignes}.
+     */
+    static final class FluxEntree extends InputStream {
+        private final ImageInputStream source;
+
+        FluxEntree(ImageInputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return source.read();
+        }
+
+        @Override
+        public int read(byte[] b, int debut, int n) throws IOException {
+            return source.read(b, debut, n);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package pif;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecture d'une {@link SequencePIF} avec décodage anticipé : un thread d'arrière-plan décode les images suivantes dans l'ordre
+ * et en garde jusqu'à {@link #AVANCE} d'avance, que l'affichage prélève au rythme de leurs délais.
+ * Un déplacement dans la séquence abandonne le décodage en cours et en démarre un nouveau, avec sa propre file :
+ * aucune image de l'ancienne position ne peut donc être affichée après le déplacement.
+ * Le décodeur n'est jamais interrompu (un canal de fichier interrompu se fermerait) : il s'arrête après l'image en cours.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class LectureSequence implements AutoCloseable {
+
+    // Nombre maximal d'images décodées d'avance
+    static final int AVANCE = 8;
+
+    /**
+     * Image décodée, avec son numéro et son délai d'affichage.
+     */
+    static final class ImageDecodee {
+        // Numéro de l'image dans la séquence
+        final int numero;
+
+        // Pixels de l'image
+        final BufferedImage image;
+
+        // Délai avant l'image suivante, en millisecondes
+        final int delai;
+
+        ImageDecodee(int numero, BufferedImage image, int delai) {
+            this.numero = numero;
+            this.image = image;
+            this.delai = delai;
+        }
+    }
+
+    // Séquence lue
+    private final SequencePIF sequence;
+
+    // Décodage en cours, ou null
+    private Decodage decodage;
+
+    /**
+     * Prépare la lecture d'une séquence, sans rien décoder.
+     * @param sequence La séquence, qui reste la propriété de l'appelant.
+     */
+    LectureSequence(SequencePIF sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Démarre le décodage anticipé à partir d'une image ; après la dernière image, la lecture reprend à la première.
+     * Le décodage précédent est abandonné.
+     * @param depuis Le numéro de la première image à décoder.
+     */
+    void demarrer(int depuis) {
+        arreter();
+        decodage = new Decodage(depuis);
+        Thread thread = new Thread(decodage, "pif-lecture");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Prélève l'image suivante si elle est déjà décodée.
+     * @return L'image suivante, ou null si elle n'est pas prête ou si aucune lecture n'est en cours.
+     * @throws IOException Si le décodage a échoué.
+     */
+    ImageDecodee prochaine() throws IOException {
+        if (decodage == null) {
+            return null;
+        }
+        ImageDecodee image = decodage.file.poll();
+        if (image == null && decodage.erreur != null) {
+            throw decodage.erreur;
+        }
+        return image;
+    }
+
+    /**
+     * Abandonne le décodage en cours ; les images déjà décodées sont perdues.
+     */
+    void arreter() {
+        if (decodage != null) {
+            decodage.actif = false;
+            decodage = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        arreter();
+    }
+
+    /**
+     * Un décodage anticipé, avec sa file d'images décodées.
+     */
+    private final class Decodage implements Runnable {
+        // Images décodées, dans l'ordre
+        final BlockingQueue<ImageDecodee> file = new ArrayBlockingQueue<>(AVANCE);
+
+        // Faux une fois le décodage abandonné
+        volatile boolean actif = true;
+
+        // Erreur ayant arrêté le décodage
+        volatile IOException erreur;
+
+        // Numéro de la première image à décoder
+        private final int depuis;
+
+        Decodage(int depuis) {
+            this.depuis = depuis;
+        }
+
+        @Override
+        public void run() {
+            int n = sequence.getNombreImages();
+            try {
+                for (int k = depuis; actif; k = (k + 1) % n) {
+                    ImagePIF image = sequence.lireImage(k);
+                    ImageDecodee decodee = new ImageDecodee(k, image.vueBufferedImage(), sequence.getDelai(k));
+                    while (actif && !file.offer(decodee, 50, TimeUnit.MILLISECONDS)) {
+                        // File pleine : l'affichage a de l'avance à prélever
+                    }
+                }
+            } catch (IOException e) {
+                erreur = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package pif;
+
+import java.nio.IntBuffer;
+
+/**
+ * Lecture ligne par ligne des pixels d'une image, qu'ils soient rangés dans un tableau ou hors du tas.
+ * Pour un tableau, les lignes sont lues en place, sans copie ; pour une mémoire hors du tas,
+ * chaque ligne est copiée dans un tableau de la largeur de l'image, réutilisé d'une ligne à l'autre.
+ * Les parcours de l'encodeur s'écrivent ainsi une seule fois, avec un accès indexé à un tableau dans leurs boucles internes.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class LignesPixels {
+
+    // Pixels de l'image
+    private final IntBuffer pixels;
+
+    // Largeur de l'image
+    private final int largeur;
+
+    // Tableau portant les pixels, ou copie de la dernière ligne lue
+    private final int[] tableau;
+
+    // Vrai si les lignes sont lues en place dans le tableau portant les pixels
+    private final boolean enPlace;
+
+    /**
+     * Prépare la lecture des lignes d'une image.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite.
+     * @param largeur La largeur de l'image.
+     */
+    LignesPixels(IntBuffer pixels, int largeur) {
+        this.pixels = pixels;
+        this.largeur = largeur;
+        this.enPlace = pixels.hasArray();
+        this.tableau = enPlace ? pixels.array() : new int[largeur];
+    }
+
+    // @return Le tableau dans lequel lire les lignes rendues par ligne(int)
+    int[] tableau() {
+        return tableau;
+    }
+
+    /**
+     * Rend une ligne lisible dans {@link #tableau()}.
+     * @param y L'indice de la ligne.
+     * @return L'indice, dans le tableau, du premier pixel de la ligne.
+     */
+    int ligne(int y) {
+        if (enPlace) {
+            return pixels.arrayOffset() + y * largeur;
+        }
+        pixels.get(y * largeur, tableau, 0, largeur);
+        return 0;
+    }
+}
@@ -1,6 +1,21 @@
 package pif;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * Classe d'entrée principale de l'application PIF (Proprietary Image Format).
@@ -14,9 +29,22 @@ public class Main {
      * Point d'entrée de l'application.
      * La syntaxe attendue est la suivante :
      * <li><code>java pif.Main convertisseur [entrée] [sortie]</code></li>
-     * <li><code>java pif.Main visualisateur [entrée]</code></li>
+     * <li><code>java pif.Main convertir entrée sortie [--effort=rapide|defaut|max] [--codeur=huffman|rans] [--canaux-separes] [--tables-compactes] [--palette] [--correspondances] [--blocs] [--canaux-redondants] [--adaptatif[=N]] [--qualite=0-100|--perte=N] [--dictionnaire=fichier.pifd] [--bandes[=N]]</code></li>
+     * <li><code>java pif.Main exporter entrée.pif sortie [--format=png]</code></li>
+     * <li><code>java pif.Main sequence sortie.pifs image... [--delai=ms] [--images-cles=N] [options d'encodage]</code></li>
+     * <li><code>java pif.Main empreinte entrée.pif [--lignes=N]</code></li>
+     * <li><code>java pif.Main acquerir largeur hauteur sortie.pif [--adaptatif=N] [--qualite=0-100|--perte=N]</code></li>
+     * <li><code>java pif.Main dictionnaire dossier-sortie image...</code></li>
+     * <li><code>java pif.Main serveur [port] [--adresse=hôte] [--concurrence=N] [--taille-max=octets] [--pixels-max=N]</code></li>
+     * Pour <code>convertir</code> et <code>exporter</code>, le chemin <code>-</code> désigne l'entrée ou la sortie standard.
+     * <li><code>java pif.Main visualisateur [entrée]</code> (image .pif ou séquence .pifs)</li>
+     * <li><code>java pif.Main miniatures [dossier]</code></li>
+     * <li><code>java pif.Main bench [effort] [taille]</code> ou <code>java pif.Main bench fichiers [--format=csv|json] [--taille=N] [--iterations=N] [--chauffe=N] [--effort=...] [--codeur=...]</code>
+     * ou <code>java pif.Main bench serveur [--clients=N] [--requetes=N] [--taille=N] [--concurrence=N]</code></li>
+     * Toute commande accepte l'option <code>--mesures</code>, qui affiche sur la sortie d'erreur les compteurs de l'{@link Instrumentation}
+     * (durée, octets et pixels de chaque phase) une fois la commande terminée.
      * @param args Les arguments de la ligne de commande. 
-     * Le premier argument spécifie le mode (<code>convertisseur</code> ou <code>visualisateur</code>).
+     * Le premier argument spécifie le mode (<code>convertisseur</code>, <code>visualisateur</code> ou <code>miniatures</code>).
      */
     public static void main(String[] args) {
         if (args.length == 0) {
@@ -26,19 +54,59 @@ public class Main {
 
         String command = args[0];
         String[] appArgs = Arrays.copyOfRange(args, 1, args.length);
+        boolean mesures = Arrays.asList(appArgs).contains("--mesures");
+        if (mesures) {
+            appArgs = Arrays.stream(appArgs).filter(arg -> !arg.equals("--mesures")).toArray(String[]::new);
+            Instrumentation.activerCompteurs(true);
+        }
 
         switch (command) {
             case "convertisseur":
                 lancerConvertisseur(appArgs);
                 break;
+            case "convertir":
+                lancerConversion(appArgs);
+                break;
+            case "exporter":
+                lancerExport(appArgs);
+                break;
+            case "sequence":
+                lancerSequence(appArgs);
+                break;
+            case "empreinte":
+                lancerEmpreinte(appArgs);
+                break;
+            case "acquerir":
+                lancerAcquisition(appArgs);
+                break;
+            case "dictionnaire":
+                lancerDictionnaire(appArgs);
+                break;
+            case "serveur":
+                lancerServeur(appArgs);
+                break;
             case "visualisateur":
                 lancerVisualisateur(appArgs);
                 break;
+            case "miniatures":
+                lancerMiniatures(appArgs);
+                break;
+            case "bench":
+                lancerBanc(appArgs);
+                break;
             default:
                 System.err.println("Commande inconnue: " + command);
                 printUsage();
                 break;
         }
+        if (mesures) {
+            if (command.equals("serveur")) {
+                // Le serveur répond jusqu'à l'arrêt du processus : les compteurs sont affichés à ce moment-là
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> Instrumentation.exporter(System.err)));
+            } else {
+                Instrumentation.exporter(System.err);
+            }
+        }
     }
 
     /**
@@ -52,6 +120,443 @@ public class Main {
         new FenetreConvertisseur(cheminEntree, cheminSortie).setVisible(true);
     }
 
+    /**
+     * Convertit une image en PIF sans interface graphique.
+     * @param args Le fichier source et le fichier de destination (<code>-</code> pour l'entrée ou la sortie standard), suivis des options
+     * <code>--effort=</code>, <code>--codeur=</code>, <code>--canaux-separes</code>, <code>--tables-compactes</code>, <code>--palette</code>, <code>--correspondances</code>, <code>--blocs</code>, <code>--canaux-redondants</code>, <code>--adaptatif</code> ou <code>--adaptatif=</code> (codage en une passe), <code>--qualite=</code> ou <code>--perte=</code> (mode quasi sans perte)
+     * et <code>--dictionnaire=</code>, ainsi que <code>--bandes</code> ou <code>--bandes=</code> (hauteur des bandes en lignes) pour convertir
+     * une grande image sans la charger entière ({@link ConversionBandes}).
+     */
+    private static void lancerConversion(String[] args) {
+        OptionsEncodage options = new OptionsEncodage();
+        List<String> chemins = new ArrayList<>();
+        // Hauteur des bandes (0 : hauteur par défaut), ou -1 pour charger l'image entière
+        int hauteurBande = -1;
+        try {
+            for (String arg : args) {
+                if (lireOptionEncodage(options, arg)) {
+                    continue;
+                }
+                if (arg.equals("--bandes")) {
+                    hauteurBande = 0;
+                } else if (arg.startsWith("--bandes=")) {
+                    hauteurBande = Integer.parseInt(arg.substring("--bandes=".length()));
+                    if (hauteurBande < 1) {
+                        throw new IllegalArgumentException("Hauteur de bande invalide : " + hauteurBande);
+                    }
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Option inconnue : " + arg);
+                } else {
+                    chemins.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        if (chemins.size() != 2) {
+            printUsage();
+            System.exit(2);
+        }
+
+        if (hauteurBande >= 0) {
+            convertirParBandes(chemins.get(0), chemins.get(1), options, hauteurBande);
+            return;
+        }
+        try {
+            BufferedImage img = chemins.get(0).equals("-")
+                    ? ImageIO.read(new FileInputStream(FileDescriptor.in))
+                    : ImageIO.read(new File(chemins.get(0)));
+            if (img == null) {
+                throw new IOException("format non supporté");
+            }
+            ImagePIF pif = ImagePIF.depuisBufferedImage(img);
+            if (chemins.get(1).equals("-")) {
+                pif.sauvegarder(new FileOutputStream(FileDescriptor.out), options);
+            } else {
+                pif.sauvegarder(chemins.get(1), options);
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur pendant la conversion : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Convertit une image par bandes, sans la charger entière.
+     * @param entree Le chemin de l'image source, ou <code>-</code> pour l'entrée standard (mise en cache pour être relue).
+     * @param sortie Le chemin du fichier .pif, ou <code>-</code> pour la sortie standard.
+     * @param options Les options d'encodage.
+     * @param hauteurBande La hauteur des bandes, ou 0 pour la hauteur par défaut.
+     */
+    private static void convertirParBandes(String entree, String sortie, OptionsEncodage options, int hauteurBande) {
+        try (ImageInputStream source = ImageIO.createImageInputStream(
+                entree.equals("-") ? new FileInputStream(FileDescriptor.in) : new File(entree));
+                OutputStream os = new BufferedOutputStream(
+                        sortie.equals("-") ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(sortie), 1 << 16)) {
+            if (source == null) {
+                throw new IOException("fichier illisible");
+            }
+            ConversionBandes.convertir(source, os, options, hauteurBande);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Erreur pendant la conversion : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Interprète une option d'encodage commune à <code>convertir</code> et <code>sequence</code>.
+     * @param options Les options à compléter.
+     * @param arg L'argument de la ligne de commande.
+     * @return Vrai si l'argument est une option d'encodage.
+     * @throws IOException Si le dictionnaire désigné est illisible.
+     * @throws IllegalArgumentException Si la valeur de l'option est invalide.
+     */
+    private static boolean lireOptionEncodage(OptionsEncodage options, String arg) throws IOException {
+        if (arg.startsWith("--effort=")) {
+            options.setEffort(Effort.parNom(arg.substring("--effort=".length())));
+        } else if (arg.startsWith("--codeur=")) {
+            options.setCodeur(CodeurEntropique.parNom(arg.substring("--codeur=".length())));
+        } else if (arg.equals("--canaux-separes")) {
+            options.setCanauxSepares(true);
+        } else if (arg.equals("--tables-compactes")) {
+            options.setTablesCompactes(true);
+        } else if (arg.equals("--palette")) {
+            options.setPalette(true);
+        } else if (arg.equals("--correspondances")) {
+            options.setCorrespondances(true);
+        } else if (arg.equals("--blocs")) {
+            options.setBlocs(true);
+        } else if (arg.equals("--canaux-redondants")) {
+            options.setCanauxRedondants(true);
+        } else if (arg.equals("--adaptatif")) {
+            options.setPeriodeAdaptative(HuffmanAdaptatif.PERIODE_DEFAUT);
+        } else if (arg.startsWith("--adaptatif=")) {
+            options.setPeriodeAdaptative(Integer.parseInt(arg.substring("--adaptatif=".length())));
+        } else if (arg.startsWith("--qualite=")) {
+            options.setQualite(Integer.parseInt(arg.substring("--qualite=".length())));
+        } else if (arg.startsWith("--perte=")) {
+            options.setPerte(Integer.parseInt(arg.substring("--perte=".length())));
+        } else if (arg.startsWith("--dictionnaire=")) {
+            options.setDictionnaire(DictionnaireHuffman.charger(arg.substring("--dictionnaire=".length())));
+        } else {
+            return false;
+        }
+        if (options.getDictionnaire() != null && options.isCanauxSepares()) {
+            throw new IllegalArgumentException("Un dictionnaire ne s'applique qu'à des canaux entrelacés");
+        }
+        return true;
+    }
+
+    /**
+     * Convertit une suite d'images de mêmes dimensions en une séquence PIF ({@link SequencePIF}), chaque image n'étant codée
+     * que par ses blocs modifiés depuis la précédente, hormis les images clés.
+     * @param args Le fichier .pifs de destination, suivi des images dans l'ordre (fichiers PIF ou images standard, ou dossiers les contenant,
+     * parcourus par ordre alphabétique), et des options <code>--delai=</code> (millisecondes par image, 100 par défaut),
+     * <code>--images-cles=</code> (intervalle maximal entre deux images clés) et des options d'encodage sans perte de <code>convertir</code>.
+     */
+    private static void lancerSequence(String[] args) {
+        OptionsEncodage options = new OptionsEncodage();
+        int delai = 100;
+        int intervalleCles = EcrivainSequence.INTERVALLE_CLES_DEFAUT;
+        List<String> chemins = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (lireOptionEncodage(options, arg)) {
+                    continue;
+                }
+                if (arg.startsWith("--delai=")) {
+                    delai = Integer.parseInt(arg.substring("--delai=".length()));
+                } else if (arg.startsWith("--images-cles=")) {
+                    intervalleCles = Integer.parseInt(arg.substring("--images-cles=".length()));
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Option inconnue : " + arg);
+                } else {
+                    chemins.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        if (chemins.size() < 2) {
+            printUsage();
+            System.exit(2);
+        }
+        List<File> fichiers = new ArrayList<>();
+        for (String chemin : chemins.subList(1, chemins.size())) {
+            File f = new File(chemin);
+            File[] contenu = f.listFiles(File::isFile);
+            if (contenu != null) {
+                Arrays.sort(contenu);
+                fichiers.addAll(Arrays.asList(contenu));
+            } else {
+                fichiers.add(f);
+            }
+        }
+
+        EcrivainSequence ecrivain = null;
+        try {
+            for (File f : fichiers) {
+                ImagePIF image;
+                if (f.getName().endsWith(".pif")) {
+                    image = ImagePIF.charger(f.getPath());
+                } else {
+                    BufferedImage img = ImageIO.read(f);
+                    if (img == null) {
+                        System.err.println("Ignoré (format non supporté) : " + f);
+                        continue;
+                    }
+                    image = ImagePIF.depuisBufferedImage(img);
+                }
+                if (ecrivain == null) {
+                    ecrivain = EcrivainSequence.creer(chemins.get(0), image.getLargeur(), image.getHauteur(), options, intervalleCles);
+                }
+                ecrivain.ajouter(image, delai);
+            }
+            if (ecrivain == null) {
+                throw new IOException("aucune image lisible");
+            }
+            ecrivain.close();
+            System.out.printf("%s  %d images (%d clés), %d octets%n", chemins.get(0),
+                    ecrivain.getNombreImages(), ecrivain.getNombreImagesCles(), ecrivain.getTaille());
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Erreur pendant la création de la séquence : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Décode un fichier PIF vers un format d'image standard, sans interface graphique.
+     * @param args Le fichier PIF et le fichier de destination (<code>-</code> pour l'entrée ou la sortie standard),
+     * suivis de l'option <code>--format=</code> (par défaut, l'extension de la destination, ou <code>png</code>).
+     */
+    private static void lancerExport(String[] args) {
+        String format = null;
+        List<String> chemins = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else {
+                chemins.add(arg);
+            }
+        }
+        if (chemins.size() != 2) {
+            printUsage();
+            System.exit(2);
+        }
+        String sortie = chemins.get(1);
+        if (format == null) {
+            int point = sortie.lastIndexOf('.');
+            format = (!sortie.equals("-") && point > 0) ? sortie.substring(point + 1) : "png";
+        }
+
+        try {
+            // Les pixels restent hors du tas, et l'encodeur d'images les lit sans copie
+            try (ImagePIF pif = chemins.get(0).equals("-")
+                    ? ImagePIF.chargerHorsTas(new FileInputStream(FileDescriptor.in))
+                    : ImagePIF.chargerHorsTas(chemins.get(0));
+                 OutputStream os = new BufferedOutputStream(sortie.equals("-")
+                    ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(sortie), 64 * 1024)) {
+                if (!ImageIO.write(pif.vueBufferedImageTemporaire(), format, os)) {
+                    throw new IOException("format d'image inconnu : " + format);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur pendant l'export : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Code en une passe ({@link EncodeurLignes}) des pixels bruts lus sur l'entrée standard, 3 octets RVB par pixel, ligne après ligne :
+     * chaque ligne est codée et transmise dès qu'elle est reçue, à la manière d'un numériseur ou d'un périphérique de capture.
+     * @param args La largeur, la hauteur et le fichier PIF de destination (<code>-</code> pour la sortie standard), suivis des options
+     * <code>--adaptatif=</code> (période des mises à jour des tables, en lignes), <code>--qualite=</code> ou <code>--perte=</code>.
+     */
+    private static void lancerAcquisition(String[] args) {
+        OptionsEncodage options = new OptionsEncodage().setPeriodeAdaptative(HuffmanAdaptatif.PERIODE_DEFAUT);
+        List<String> positionnels = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--adaptatif=") || arg.startsWith("--qualite=") || arg.startsWith("--perte=")) {
+                    lireOptionEncodage(options, arg);
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Option inconnue : " + arg);
+                } else {
+                    positionnels.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        if (positionnels.size() != 3 || options.getPeriodeAdaptative() == 0) {
+            printUsage();
+            System.exit(2);
+        }
+
+        int largeur = Integer.parseInt(positionnels.get(0));
+        int hauteur = Integer.parseInt(positionnels.get(1));
+        String chemin = positionnels.get(2);
+        InputStream entree = new FileInputStream(FileDescriptor.in);
+        try (EncodeurLignes encodeur = chemin.equals("-")
+                ? new EncodeurLignes(new FileOutputStream(FileDescriptor.out), largeur, hauteur, options)
+                : EncodeurLignes.creer(chemin, largeur, hauteur, options)) {
+            byte[] octets = new byte[largeur * 3];
+            int[] ligne = new int[largeur];
+            for (int y = 0; y < hauteur; y++) {
+                if (entree.readNBytes(octets, 0, octets.length) < octets.length) {
+                    throw new IOException("Entrée interrompue à la ligne " + y);
+                }
+                for (int x = 0; x < largeur; x++) {
+                    ligne[x] = 0xFF000000 | (octets[x * 3] & 0xFF) << 16 | (octets[x * 3 + 1] & 0xFF) << 8 | (octets[x * 3 + 2] & 0xFF);
+                }
+                encodeur.ecrireLigne(ligne, 0);
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur pendant l'acquisition : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Affiche la somme de contrôle CRC-32 des composantes RVB d'une image PIF, décodée ligne par ligne sans charger l'image entière.
+     * @param args Le fichier PIF (<code>-</code> pour l'entrée standard), suivi de l'option <code>--lignes=N</code>
+     * pour ne décoder que les N premières lignes.
+     */
+    private static void lancerEmpreinte(String[] args) {
+        int nbLignes = Integer.MAX_VALUE;
+        String chemin = null;
+        for (String arg : args) {
+            if (arg.startsWith("--lignes=")) {
+                nbLignes = Integer.parseInt(arg.substring("--lignes=".length()));
+            } else {
+                chemin = arg;
+            }
+        }
+        if (chemin == null) {
+            printUsage();
+            System.exit(2);
+        }
+
+        try (DecodeurLignes decodeur = chemin.equals("-")
+                ? DecodeurLignes.ouvrir(new FileInputStream(FileDescriptor.in)) : DecodeurLignes.ouvrir(chemin)) {
+            CRC32 crc = new CRC32();
+            byte[] octets = new byte[decodeur.getLargeur() * 3];
+            int lues = decodeur.lireLignes(nbLignes, (y, ligne) -> {
+                for (int x = 0; x < ligne.length; x++) {
+                    octets[x * 3] = (byte) (ligne[x] >> 16);
+                    octets[x * 3 + 1] = (byte) (ligne[x] >> 8);
+                    octets[x * 3 + 2] = (byte) ligne[x];
+                }
+                crc.update(octets);
+            });
+            System.out.printf("%08x  %d x %d (%d lignes)%n", crc.getValue(), decodeur.getLargeur(), decodeur.getHauteur(), lues);
+        } catch (IOException e) {
+            System.err.println("Erreur pendant le décodage : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Entraîne un dictionnaire de tables de Huffman sur un corpus d'images et l'enregistre sous le nom <code>identifiant.pifd</code>,
+     * afin que le même dossier puisse servir au décodage par la propriété <code>pif.dictionnaires</code>.
+     * @param args Le dossier de destination, suivi des images du corpus (fichiers PIF ou images standard, ou dossiers les contenant).
+     */
+    private static void lancerDictionnaire(String[] args) {
+        if (args.length < 2) {
+            printUsage();
+            System.exit(2);
+        }
+        List<File> fichiers = new ArrayList<>();
+        for (String arg : Arrays.copyOfRange(args, 1, args.length)) {
+            File f = new File(arg);
+            File[] contenu = f.listFiles(File::isFile);
+            if (contenu != null) {
+                Arrays.sort(contenu);
+                fichiers.addAll(Arrays.asList(contenu));
+            } else {
+                fichiers.add(f);
+            }
+        }
+
+        try {
+            List<ImagePIF> images = new ArrayList<>();
+            for (File f : fichiers) {
+                if (f.getName().endsWith(".pif")) {
+                    images.add(ImagePIF.charger(f.getPath()));
+                    continue;
+                }
+                BufferedImage img = ImageIO.read(f);
+                if (img == null) {
+                    System.err.println("Ignoré (format non supporté) : " + f);
+                    continue;
+                }
+                images.add(ImagePIF.depuisBufferedImage(img));
+            }
+            if (images.isEmpty()) {
+                throw new IOException("aucune image lisible");
+            }
+            DictionnaireHuffman dictionnaire = DictionnaireHuffman.entrainer(images);
+            File sortie = new File(args[0], dictionnaire + DictionnaireHuffman.EXTENSION);
+            sortie.getAbsoluteFile().getParentFile().mkdirs();
+            dictionnaire.sauvegarder(sortie.getPath());
+            System.out.printf("%s  %d images, transformation %s%n", sortie.getPath(), images.size(), dictionnaire.getTransformation());
+        } catch (IOException e) {
+            System.err.println("Erreur pendant l'entraînement : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Démarre le service HTTP de conversion ({@link ServeurConversion}), qui répond jusqu'à l'arrêt du processus.
+     * @param args Argument optionnel : le port (8080 par défaut), puis les options <code>--adresse=</code> (boucle locale par défaut),
+     * <code>--concurrence=</code> (nombre de processeurs par défaut), <code>--taille-max=</code> (taille maximale d'une requête)
+     * et <code>--pixels-max=</code> (nombre maximal de pixels d'une image décodée, un par octet de la taille maximale par défaut).
+     */
+    private static void lancerServeur(String[] args) {
+        int port = 8080;
+        String adresse = "127.0.0.1";
+        int concurrence = Runtime.getRuntime().availableProcessors();
+        int tailleMax = ServeurConversion.TAILLE_MAX_DEFAUT;
+        long pixelsMax = -1;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--adresse=")) {
+                    adresse = arg.substring("--adresse=".length());
+                } else if (arg.startsWith("--concurrence=")) {
+                    concurrence = Integer.parseInt(arg.substring("--concurrence=".length()));
+                } else if (arg.startsWith("--taille-max=")) {
+                    tailleMax = Integer.parseInt(arg.substring("--taille-max=".length()));
+                } else if (arg.startsWith("--pixels-max=")) {
+                    pixelsMax = Long.parseLong(arg.substring("--pixels-max=".length()));
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Option inconnue : " + arg);
+                } else {
+                    port = Integer.parseInt(arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+
+        try {
+            ServeurConversion serveur = new ServeurConversion(new InetSocketAddress(adresse, port), concurrence, tailleMax,
+                    (pixelsMax >= 0) ? pixelsMax : (long) tailleMax * ServeurConversion.PIXELS_PAR_OCTET_DEFAUT);
+            serveur.demarrer();
+            System.err.printf("Serveur PIF à l'écoute sur http://%s:%d (%s, %d conversions simultanées)%n", adresse, serveur.getPort(),
+                    serveur.isThreadsVirtuels() ? "threads virtuels" : "groupe fixe de threads", concurrence);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Erreur au démarrage du serveur : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
     /**
      * Initialise et affiche l'interface du visualisateur de fichiers PIF.
      * @param args Argument optionnel : args[0] pour le chemin du fichier .pif à ouvrir.
@@ -61,6 +566,33 @@ public class Main {
         new FenetreVisualisateur(chemin).setVisible(true);
     }
 
+    /**
+     * Initialise et affiche la grille de miniatures d'un répertoire de fichiers PIF.
+     * @param args Argument optionnel : args[0] pour le répertoire à parcourir.
+     */
+    private static void lancerMiniatures(String[] args) {
+        String dossier = (args.length > 0) ? args[0] : null;
+        new FenetreMiniatures(dossier).setVisible(true);
+    }
+
+    /**
+     * Exécute le banc de mesure des performances sur le corpus synthétique et affiche les résultats.
+     * @param args Arguments optionnels : <code>effort</code> pour vérifier les objectifs des niveaux d'effort, puis la taille des images du corpus,
+     * <code>fichiers</code> suivi de ses options pour la mesure de bout en bout sur disque,
+     * ou <code>serveur</code> suivi de ses options pour le test de charge du service HTTP en boucle locale.
+     */
+    private static void lancerBanc(String[] args) {
+        try {
+            Banc.executer(args, System.out);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Erreur pendant le banc : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
     /**
      * Affiche l'aide utilisateur dans le flux d'erreur standard en cas 
      * d'arguments invalides ou manquants.
@@ -69,6 +601,18 @@ public class Main {
         System.err.println("Usage: java pif.Main <commande> [options]");
         System.err.println("Commandes:");
         System.err.println("  convertisseur [fichier-entree] [fichier-sortie]");
+        System.err.println("  convertir <fichier-entree|-> <fichier-sortie|-> [--effort=rapide|defaut|max] [--codeur=huffman|rans] [--canaux-separes] [--tables-compactes] [--palette] [--correspondances] [--blocs] [--canaux-redondants] [--adaptatif[=N]] [--qualite=0-100|--perte=N] [--dictionnaire=fichier.pifd] [--bandes[=N]]");
+        System.err.println("  exporter <fichier-pif|-> <fichier-sortie|-> [--format=png]");
+        System.err.println("  sequence <fichier-sortie.pifs> <image|dossier>... [--delai=ms] [--images-cles=N] [options de convertir, sans perte]");
+        System.err.println("  empreinte <fichier-pif|-> [--lignes=N]");
+        System.err.println("  acquerir <largeur> <hauteur> <fichier-sortie|-> [--adaptatif=N] [--qualite=0-100|--perte=N]");
+        System.err.println("  dictionnaire <dossier-sortie> <image|dossier>...");
+        System.err.println("  serveur [port] [--adresse=hote] [--concurrence=N] [--taille-max=octets] [--pixels-max=N]");
         System.err.println("  visualisateur [fichier-entree]");
+        System.err.println("  miniatures [dossier]");
+        System.err.println("  bench [effort] [taille]");
+        System.err.println("  bench fichiers [--format=csv|json] [--taille=N] [--iterations=N] [--chauffe=N] [--effort=...] [--codeur=...]");
+        System.err.println("  bench serveur [--clients=N] [--requetes=N] [--taille=N] [--concurrence=N]");
+        System.err.println("Option commune : --mesures (compteurs de chaque phase sur la sortie d'erreur)");
     }
 }
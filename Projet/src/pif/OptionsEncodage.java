@@ -0,0 +1,254 @@
+package pif;
+
+/**
+ * Ensemble des paramètres d'encodage d'une image PIF.
+ * Les valeurs par défaut produisent le format historique (Huffman canonique, canaux entrelacés, effort par défaut).
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class OptionsEncodage {
+
+    // Codeur entropique utilisé pour les canaux
+    private CodeurEntropique codeur = CodeurEntropique.HUFFMAN;
+
+    // Vrai si chaque canal est écrit dans un flux indépendant
+    private boolean canauxSepares = false;
+
+    // Niveau d'effort de compression
+    private Effort effort = Effort.DEFAUT;
+
+    // Dictionnaire de tables partagées, ou null pour écrire les tables dans le fichier
+    private DictionnaireHuffman dictionnaire;
+
+    // Vrai pour coder les tables de Huffman de façon compacte même à l'effort par défaut
+    private boolean tablesCompactes = false;
+
+    // Écart maximal admis entre une composante décodée et l'originale (0 sans perte)
+    private int perte = 0;
+
+    // Vrai pour chercher une palette même à l'effort par défaut
+    private boolean palette = false;
+
+    // Vrai pour coder les pixels par correspondances même hors de l'effort maximal
+    private boolean correspondances = false;
+
+    // Vrai pour omettre les canaux redondants même à l'effort par défaut
+    private boolean canauxRedondants = false;
+
+    // Vrai pour coder les pixels par blocs uniformes même hors de l'effort maximal
+    private boolean blocs = false;
+
+    // Période, en lignes, des mises à jour des tables du codage en une passe, ou 0 pour l'encodage en deux passes
+    private int periodeAdaptative = 0;
+
+    // @return Le codeur entropique
+    public CodeurEntropique getCodeur() {
+        return codeur;
+    }
+
+    /**
+     * Choisit le codeur entropique.
+     * @param codeur Le codeur à utiliser.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setCodeur(CodeurEntropique codeur) {
+        this.codeur = codeur;
+        return this;
+    }
+
+    // @return Vrai si les canaux sont écrits dans des flux indépendants
+    public boolean isCanauxSepares() {
+        return canauxSepares;
+    }
+
+    /**
+     * Choisit la disposition des canaux dans le fichier.
+     * Avec des canaux séparés, les trois flux R, V et B sont indépendants et leur longueur figure dans l'en-tête :
+     * ils peuvent alors être encodés et décodés simultanément sur plusieurs cœurs.
+     * @param canauxSepares Vrai pour des flux indépendants, faux pour un flux unique entrelacé.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setCanauxSepares(boolean canauxSepares) {
+        this.canauxSepares = canauxSepares;
+        return this;
+    }
+
+    // @return Le niveau d'effort de compression
+    public Effort getEffort() {
+        return effort;
+    }
+
+    /**
+     * Choisit le niveau d'effort de compression.
+     * @param effort Le niveau d'effort (voir {@link Effort} pour les objectifs de chaque niveau).
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setEffort(Effort effort) {
+        this.effort = effort;
+        return this;
+    }
+
+    // @return Vrai si les tables de Huffman sont codées de façon compacte même à l'effort par défaut
+    public boolean isTablesCompactes() {
+        return tablesCompactes;
+    }
+
+    /**
+     * Demande le codage compact des tables de Huffman ({@link TableCompacte}), qui est toujours utilisé aux efforts
+     * {@link Effort#RAPIDE} et {@link Effort#MAX}. À l'effort par défaut, il fait quitter le format version 1.
+     * @param tablesCompactes Vrai pour coder les tables de façon compacte.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setTablesCompactes(boolean tablesCompactes) {
+        this.tablesCompactes = tablesCompactes;
+        return this;
+    }
+
+    // @return L'écart maximal admis entre une composante décodée et l'originale (0 sans perte)
+    public int getPerte() {
+        return perte;
+    }
+
+    /**
+     * Choisit le mode quasi sans perte : chaque composante décodée diffère d'au plus <code>perte</code> de l'originale
+     * (voir {@link Transformation}). Une perte nulle, par défaut, garde l'encodage sans perte.
+     * @param perte L'écart maximal admis, de 0 à {@link Transformation#PERTE_MAX}.
+     * @return Ces options, pour chaîner les appels.
+     * @throws IllegalArgumentException Si la perte est hors de cet intervalle.
+     */
+    public OptionsEncodage setPerte(int perte) {
+        if (perte < 0 || perte > Transformation.PERTE_MAX) {
+            throw new IllegalArgumentException("Perte invalide : " + perte);
+        }
+        this.perte = perte;
+        return this;
+    }
+
+    /**
+     * Choisit la perte à partir d'une qualité, de 0 à 100 : 100 est sans perte, puis la perte maximale augmente d'une unité
+     * tous les 10 points (qualité 90 : perte 1, qualité 80 : perte 2... qualité 0 : perte 10).
+     * Jusqu'à une perte de 2 ou 3, les différences sont en général invisibles à l'œil.
+     * @param qualite La qualité, de 0 à 100.
+     * @return Ces options, pour chaîner les appels.
+     * @throws IllegalArgumentException Si la qualité est hors de [0, 100].
+     */
+    public OptionsEncodage setQualite(int qualite) {
+        if (qualite < 0 || qualite > 100) {
+            throw new IllegalArgumentException("Qualité invalide : " + qualite);
+        }
+        return setPerte((100 - qualite + 9) / 10);
+    }
+
+    // @return Vrai si une palette est cherchée même à l'effort par défaut
+    public boolean isPalette() {
+        return palette;
+    }
+
+    /**
+     * Demande le codage par palette des images d'au plus 256 couleurs ({@link Palette}), qui est toujours essayé aux efforts
+     * {@link Effort#RAPIDE} et {@link Effort#MAX}. Il ne s'applique ni avec un dictionnaire ni avec des canaux séparés.
+     * À l'effort par défaut, il fait quitter le format version 1 lorsque l'image a une palette.
+     * @param palette Vrai pour chercher une palette.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setPalette(boolean palette) {
+        this.palette = palette;
+        return this;
+    }
+
+    // @return Vrai si les pixels sont codés par correspondances même hors de l'effort maximal
+    public boolean isCorrespondances() {
+        return correspondances;
+    }
+
+    /**
+     * Demande le codage des pixels par correspondances ({@link CodageLZ}) : des suites de littéraux et des copies de pixels déjà vus,
+     * efficace sur les captures d'écran, le texte et les textures répétées. Il est toujours essayé à l'effort {@link Effort#MAX} ;
+     * aux autres efforts, il est retenu sans comparaison lorsqu'il est demandé, avec une recherche bornée à l'effort {@link Effort#RAPIDE}.
+     * Il utilise des tables de Huffman compactes quel que soit le codeur choisi, et ne s'applique ni avec un dictionnaire ni avec des canaux séparés.
+     * @param correspondances Vrai pour coder les pixels par correspondances.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setCorrespondances(boolean correspondances) {
+        this.correspondances = correspondances;
+        return this;
+    }
+
+    // @return Vrai si les pixels sont codés par blocs uniformes même hors de l'effort maximal
+    public boolean isBlocs() {
+        return blocs;
+    }
+
+    /**
+     * Demande le codage des pixels par blocs ({@link CodageBlocs}) : un arbre quaternaire dont les blocs d'une seule couleur
+     * sont décrits par cette seule couleur, efficace sur les documents, les cartes et les schémas aux grands aplats.
+     * Il est toujours essayé à l'effort {@link Effort#MAX} ; aux autres efforts, il est retenu sans comparaison lorsqu'il est demandé
+     * et que l'image a des blocs uniformes (face aux correspondances également demandées, le plus petit des deux l'emporte).
+     * Il est sans perte, utilise des tables de Huffman compactes quel que soit le codeur choisi, et ne s'applique ni avec un dictionnaire
+     * ni avec des canaux séparés.
+     * @param blocs Vrai pour coder les pixels par blocs.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setBlocs(boolean blocs) {
+        this.blocs = blocs;
+        return this;
+    }
+
+    // @return Vrai si les canaux redondants sont omis même à l'effort par défaut
+    public boolean isCanauxRedondants() {
+        return canauxRedondants;
+    }
+
+    /**
+     * Demande l'omission des canaux redondants ({@link CanauxRedondants}) : les canaux identiques à un autre (images en niveaux de gris)
+     * ou constants ne sont pas codés, ce qui divise par trois les temps d'encodage et de décodage d'une image en niveaux de gris.
+     * Elle est toujours appliquée aux efforts {@link Effort#RAPIDE} et {@link Effort#MAX}, et ne s'applique pas avec un dictionnaire.
+     * À l'effort par défaut, elle fait quitter le format version 1 lorsque l'image a des canaux redondants.
+     * @param canauxRedondants Vrai pour omettre les canaux redondants.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setCanauxRedondants(boolean canauxRedondants) {
+        this.canauxRedondants = canauxRedondants;
+        return this;
+    }
+
+    // @return La période, en lignes, des mises à jour des tables du codage en une passe, ou 0 pour l'encodage en deux passes
+    public int getPeriodeAdaptative() {
+        return periodeAdaptative;
+    }
+
+    /**
+     * Demande le codage en une passe ({@link EncodeurLignes}) : chaque ligne est codée dès qu'elle est lue, par des tables de Huffman
+     * reconstruites toutes les <code>periode</code> lignes à partir des symboles déjà codés ({@link HuffmanAdaptatif}).
+     * L'image n'est pas analysée : l'effort et les options qui en dépendent (palette, correspondances, canaux redondants) sont sans objet.
+     * Il n'admet que le codeur de Huffman, sans dictionnaire ni canaux séparés.
+     * @param periode La période des mises à jour, de 1 à {@link HuffmanAdaptatif#PERIODE_MAX}, ou 0 pour l'encodage en deux passes.
+     * @return Ces options, pour chaîner les appels.
+     * @throws IllegalArgumentException Si la période est hors de cet intervalle.
+     */
+    public OptionsEncodage setPeriodeAdaptative(int periode) {
+        if (periode < 0 || periode > HuffmanAdaptatif.PERIODE_MAX) {
+            throw new IllegalArgumentException("Période invalide : " + periode);
+        }
+        this.periodeAdaptative = periode;
+        return this;
+    }
+
+    // @return Le dictionnaire de tables partagées, ou null si les tables sont écrites dans le fichier
+    public DictionnaireHuffman getDictionnaire() {
+        return dictionnaire;
+    }
+
+    /**
+     * Remplace les tables du fichier par celles d'un dictionnaire partagé, désigné dans l'en-tête par son identifiant.
+     * Le codeur de Huffman et la transformation du dictionnaire sont alors imposés, quels que soient le codeur et l'effort choisis ;
+     * les canaux doivent être entrelacés. Le dictionnaire est {@link DictionnaireHuffman#enregistrer(DictionnaireHuffman) enregistré}
+     * au premier encodage qui l'utilise, afin que les fichiers produits se relisent dans le même processus.
+     * @param dictionnaire Le dictionnaire, ou <code>null</code> pour écrire les tables dans le fichier.
+     * @return Ces options, pour chaîner les appels.
+     */
+    public OptionsEncodage setDictionnaire(DictionnaireHuffman dictionnaire) {
+        this.dictionnaire = dictionnaire;
+        return this;
+    }
+}
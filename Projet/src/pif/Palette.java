@@ -0,0 +1,121 @@
+package pif;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Palette d'une image d'au plus 256 couleurs distinctes (logos, captures d'écran, pixel art).
+ * Une telle image est codée comme un unique canal d'indices dans la palette, au lieu de trois canaux de composantes :
+ * trois fois moins de symboles à coder et à décoder, et un pixel décodé par une seule lecture de table.
+ * La détection parcourt l'image une fois, avec une table de hachage à adressage ouvert de taille fixe sur les couleurs RVB,
+ * et s'arrête dès la 257e couleur : elle ne coûte presque rien sur les photographies.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class Palette {
+
+    // Nombre maximal de couleurs d'une palette
+    static final int TAILLE_MAX = 256;
+
+    // Capacité de la table de hachage (puissance de 2, remplie au plus au quart)
+    private static final int CAPACITE = 1024;
+
+    // Couleurs de la palette, au format ARGB opaque, dans l'ordre de leur première apparition
+    private final int[] couleurs;
+
+    // Indice dans la palette de chaque pixel de l'image
+    private final int[] indices;
+
+    private Palette(int[] couleurs, int[] indices) {
+        this.couleurs = couleurs;
+        this.indices = indices;
+    }
+
+    /**
+     * Construit la palette d'une image si elle compte au plus {@link #TAILLE_MAX} couleurs distinctes (la composante alpha est ignorée).
+     * @param pixels Les pixels de l'image, de la position 0 à la limite.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return La palette et les indices des pixels, ou <code>null</code> si l'image compte trop de couleurs ou n'a aucun pixel.
+     */
+    static Palette detecter(IntBuffer pixels, int l, int h) {
+        if (l == 0 || h == 0) {
+            return null;
+        }
+        // Table de hachage : couleur RVB marquée d'un bit de présence (0 pour une case libre), et indice de cette couleur
+        int[] cles = new int[CAPACITE];
+        int[] valeurs = new int[CAPACITE];
+        int[] couleurs = new int[TAILLE_MAX];
+        int[] indices = new int[l * h];
+        int nbCouleurs = 0;
+        int precedente = -1;
+        int indicePrecedent = 0;
+        LignesPixels lignes = new LignesPixels(pixels, l);
+        int[] source = lignes.tableau();
+        for (int y = 0, i = 0; y < h; y++) {
+            for (int x = 0, j = lignes.ligne(y); x < l; x++, j++, i++) {
+                int rvb = source[j] & 0xFFFFFF;
+                // Les aplats répètent la même couleur : le hachage n'est consulté qu'aux changements
+                if (rvb == precedente) {
+                    indices[i] = indicePrecedent;
+                    continue;
+                }
+                int cle = rvb | 0x1000000;
+                int position = (rvb * 0x9E3779B1) >>> 22;
+                while (cles[position] != cle && cles[position] != 0) {
+                    position = (position + 1) & (CAPACITE - 1);
+                }
+                int indice;
+                if (cles[position] == cle) {
+                    indice = valeurs[position];
+                } else {
+                    if (nbCouleurs == TAILLE_MAX) {
+                        return null;
+                    }
+                    indice = nbCouleurs++;
+                    couleurs[indice] = 0xFF000000 | rvb;
+                    cles[position] = cle;
+                    valeurs[position] = indice;
+                }
+                indices[i] = indice;
+                precedente = rvb;
+                indicePrecedent = indice;
+            }
+        }
+        int[] palette = new int[nbCouleurs];
+        System.arraycopy(couleurs, 0, palette, 0, nbCouleurs);
+        return new Palette(palette, indices);
+    }
+
+    // @return Les couleurs de la palette, au format ARGB opaque
+    int[] getCouleurs() {
+        return couleurs;
+    }
+
+    // @return L'indice dans la palette de chaque pixel
+    int[] getIndices() {
+        return indices;
+    }
+
+    // @return Les fréquences des indices
+    int[] frequences() {
+        int[] frequences = new int[256];
+        for (int indice : indices) {
+            frequences[indice]++;
+        }
+        return frequences;
+    }
+
+    /**
+     * Prépare la table de décodage d'une palette : 256 entrées, les indices absents de la palette
+     * (qui ne figurent que dans un fichier corrompu) donnant du noir, afin que chaque pixel se décode par une lecture sans test.
+     * @param couleurs Les couleurs de la palette.
+     * @return La table des 256 couleurs ARGB.
+     */
+    static int[] tableDecodage(int[] couleurs) {
+        int[] table = new int[256];
+        Arrays.fill(table, 0xFF000000);
+        System.arraycopy(couleurs, 0, table, 0, couleurs.length);
+        return table;
+    }
+}
@@ -1,50 +1,134 @@
 package pif;
 
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 
 /**
  * Composant graphique personnalisé permettant d'afficher et de manipuler une image.
  * Ce panneau gère deux modes d'affichage :
  * <li><b>Centrage automatique :</b> Si l'image est plus petite que le panneau.</li>
- * <li><b>Mode panoramique :</b> Si l'image dépasse les dimensions du panneau, 
+ * <li><b>Mode panoramique :</b> Si l'image dépasse les dimensions du panneau,
  * l'utilisateur peut la faire glisser via l'{@link EcouteurSouris}.</li>
+ * L'image peut être agrandie ou réduite à la molette (autour du pointeur) ou au clavier (touches <code>+</code>, <code>-</code>,
+ * et <code>0</code> pour revenir à la taille réelle), par pas d'un quart d'octave.
+ * En réduction, l'image est dessinée depuis le niveau le plus proche de sa {@link PyramideImage}, et seule la partie visible est dessinée :
+ * le coût d'un rendu dépend de la taille de l'écran, et non de celle de l'image. Lors d'un déplacement, seules les bandes découvertes sont dessinées.
  * @author Dimitri SOLAR, Valentin LOISON
  * @version 1.0
  */
 public final class PanneauImage extends JPanel {
-    
+
     // Identifiant de sérialisation
     private static final long serialVersionUID = 1L;
-    
+
+    // Nombre de pas de zoom pour doubler l'échelle
+    private static final int PAS_PAR_OCTAVE = 4;
+
+    // Pas de zoom maximal (agrandissement de 32 fois)
+    private static final int PAS_MAX = 5 * PAS_PAR_OCTAVE;
+
+    // Plus grand côté, en pixels, de l'image la plus réduite
+    private static final int COTE_MIN = 16;
+
     // L'image source à dessiner dans le composant
     private transient BufferedImage img;
 
+    // Les réductions de l'image, construites à la première réduction de l'affichage
+    private transient PyramideImage pyramide;
+
     // Décalage horizontal actuel de l'image (utilisé pour le panoramique)
     private int decalageX = 0;
-    
+
     // Décalage vertical actuel de l'image (utilisé pour le panoramique)
     private int decalageY = 0;
 
+    // Échelle d'affichage, en pas de zoom : l'image est affichée à 2^(pas / PAS_PAR_OCTAVE) fois sa taille
+    private int pas = 0;
+
+    // Tampon de rendu de la taille du panneau, réutilisé d'un rendu à l'autre
+    private transient Image tampon;
+
+    // Vrai si le contenu du tampon ne peut pas être réutilisé (nouvelle image, tampon recréé ou perdu)
+    private boolean tamponPerime = true;
+
+    // Position de l'image, pas de zoom et niveau de la pyramide du contenu actuel du tampon
+    private int xRendu;
+    private int yRendu;
+    private int pasRendu;
+    private int niveauRendu;
+
     /**
-     * Initialise le panneau et enregistre les écouteurs de souris pour 
-     * permettre l'interaction avec l'image.
+     * Initialise le panneau et enregistre les écouteurs de souris et les raccourcis clavier
+     * pour permettre l'interaction avec l'image.
      */
     public PanneauImage() {
         EcouteurSouris es = new EcouteurSouris(this);
         addMouseListener(es);
         addMouseMotionListener(es);
+        addMouseWheelListener(es);
+
+        raccourci("zoomAvant", 1, "PLUS", "ADD", "EQUALS", "shift EQUALS");
+        raccourci("zoomArriere", -1, "MINUS", "SUBTRACT");
+        raccourci("tailleReelle", 0, "0", "NUMPAD0");
+    }
+
+    // Associe des touches à un changement de zoom centré sur le panneau (0 revient à la taille réelle)
+    private void raccourci(String nom, int sens, String... touches) {
+        for (String touche : touches) {
+            getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(touche), nom);
+        }
+        getActionMap().put(nom, new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                zoomer(sens == 0 ? -pas : sens, getWidth() / 2, getHeight() / 2);
+            }
+        });
     }
 
     /**
-     * Définit l'image à afficher et réinitialise les décalages à zéro.
+     * Définit l'image à afficher et réinitialise les décalages et le zoom.
      * @param img La nouvelle {@link BufferedImage} à afficher.
      */
     public void setImage(BufferedImage img) {
+        if (pyramide != null) {
+            pyramide.abandonner();
+        }
         this.img = img;
+        this.pyramide = (img != null) ? new PyramideImage(img) : null;
         this.decalageX = 0;
         this.decalageY = 0;
+        this.pas = 0;
+        this.tamponPerime = true;
+        repaint();
+    }
+
+    /**
+     * Remplace l'image affichée par une image de mêmes dimensions (l'image suivante d'une séquence), en conservant le zoom et le panoramique.
+     * Une image de dimensions différentes est affichée comme par {@link #setImage(BufferedImage)}.
+     * @param img La nouvelle {@link BufferedImage} à afficher.
+     */
+    public void remplacerImage(BufferedImage img) {
+        if (this.img == null || img == null || img.getWidth() != this.img.getWidth() || img.getHeight() != this.img.getHeight()) {
+            setImage(img);
+            return;
+        }
+        pyramide.abandonner();
+        this.img = img;
+        this.pyramide = new PyramideImage(img);
+        this.tamponPerime = true;
         repaint();
     }
 
@@ -53,10 +137,38 @@ public final class PanneauImage extends JPanel {
         return img;
     }
 
+    // @return Le facteur d'échelle de l'affichage (1 pour la taille réelle)
+    public double getZoom() {
+        return Math.pow(2, (double) pas / PAS_PAR_OCTAVE);
+    }
+
+    // Largeur de l'image à l'échelle d'affichage
+    private int largeurAffichee() {
+        return (int) Math.round(img.getWidth() * getZoom());
+    }
+
+    // Hauteur de l'image à l'échelle d'affichage
+    private int hauteurAffichee() {
+        return (int) Math.round(img.getHeight() * getZoom());
+    }
+
+    // Abscisse du coin de l'image dans le panneau : centrée si elle y tient, décalée selon le panoramique sinon
+    private int origineX() {
+        int l = largeurAffichee();
+        return (l <= getWidth()) ? (getWidth() - l) / 2 : decalageX;
+    }
+
+    // Ordonnée du coin de l'image dans le panneau : centrée si elle y tient, décalée selon le panoramique sinon
+    private int origineY() {
+        int h = hauteurAffichee();
+        return (h <= getHeight()) ? (getHeight() - h) / 2 : decalageY;
+    }
+
     /**
      * Met à jour les coordonnées de l'image en fonction d'un déplacement relatif.
-     * La méthode applique des contraintes de bordures pour empêcher l'utilisateur 
+     * La méthode applique des contraintes de bordures pour empêcher l'utilisateur
      * de faire sortir l'image des limites visibles du panneau si elle est plus grande.
+     * Le rendu n'est que demandé : les déplacements reçus d'ici au prochain rendu y sont appliqués en une fois.
      * @param dx Déplacement horizontal en pixels (delta X).
      * @param dy Déplacement vertical en pixels (delta Y).
      */
@@ -64,69 +176,169 @@ public final class PanneauImage extends JPanel {
         if (img == null)
             return;
 
-        boolean peutBougerX = img.getWidth() > getWidth();
-        boolean peutBougerY = img.getHeight() > getHeight();
+        boolean peutBougerX = largeurAffichee() > getWidth();
+        boolean peutBougerY = hauteurAffichee() > getHeight();
 
         if (peutBougerX) {
             decalageX += dx;
-            int minX = getWidth() - img.getWidth();
-            if (decalageX > 0)
-                decalageX = 0;
-            if (decalageX < minX)
-                decalageX = minX;
         }
 
         if (peutBougerY) {
             decalageY += dy;
-            int minY = getHeight() - img.getHeight();
-            if (decalageY > 0)
-                decalageY = 0;
-            if (decalageY < minY)
-                decalageY = minY;
         }
 
         if (peutBougerX || peutBougerY) {
+            contraindre();
             repaint();
         }
     }
 
+    // Ramène les décalages dans les bornes permises par la taille affichée de l'image
+    private void contraindre() {
+        decalageX = Math.max(getWidth() - largeurAffichee(), Math.min(0, decalageX));
+        decalageY = Math.max(getHeight() - hauteurAffichee(), Math.min(0, decalageY));
+    }
+
+    /**
+     * Change l'échelle d'affichage en gardant immobile le point de l'image situé sous un point du panneau.
+     * Le zoom est borné entre une image de {@value #COTE_MIN} pixels de côté et un agrandissement de 32 fois.
+     * @param nbPas Le nombre de pas de zoom (positif pour agrandir, négatif pour réduire).
+     * @param x L'abscisse du point fixe dans le panneau.
+     * @param y L'ordonnée du point fixe dans le panneau.
+     */
+    void zoomer(int nbPas, int x, int y) {
+        if (img == null)
+            return;
+
+        int cote = Math.max(img.getWidth(), img.getHeight());
+        int pasMin = Math.min(0, (int) Math.ceil(PAS_PAR_OCTAVE * Math.log((double) COTE_MIN / cote) / Math.log(2)));
+        int nouveau = Math.max(pasMin, Math.min(PAS_MAX, pas + nbPas));
+        if (nouveau == pas)
+            return;
+
+        // Coordonnées, dans l'image, du point fixe
+        double zoom = getZoom();
+        double u = (x - origineX()) / zoom;
+        double v = (y - origineY()) / zoom;
+
+        pas = nouveau;
+        zoom = getZoom();
+        decalageX = (int) Math.round(x - u * zoom);
+        decalageY = (int) Math.round(y - v * zoom);
+        contraindre();
+        repaint();
+    }
+
     /**
      * Assure le rendu graphique du composant.
      * Calcule la position (x, y) de l'image : centrée si l'image tient dans le panneau,
      * ou décalée selon les variables de panoramique si elle est plus grande.
+     * Le rendu passe par un tampon de la taille du panneau, une {@link VolatileImage} lorsque l'affichage le permet
+     * (sinon une image au format de l'écran) : après un simple déplacement, son contenu est décalé par <code>copyArea</code>
+     * et seules les bandes découvertes sont redessinées, puis le tampon est copié à l'écran.
+     * Les déplacements survenus entre deux rendus sont ainsi regroupés en un seul décalage.
      * @param g L'instance de {@link Graphics} utilisée pour le dessin.
      */
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        if (img == null)
+        if (img == null || getWidth() <= 0 || getHeight() <= 0) {
+            super.paintComponent(g);
             return;
+        }
+        do {
+            int etat = (tampon instanceof VolatileImage)
+                    ? ((VolatileImage) tampon).validate(getGraphicsConfiguration())
+                    : VolatileImage.IMAGE_OK;
+            if (tampon == null || etat == VolatileImage.IMAGE_INCOMPATIBLE
+                    || tampon.getWidth(null) != getWidth() || tampon.getHeight(null) != getHeight()) {
+                tampon = creerTampon();
+                tamponPerime = true;
+            } else if (etat == VolatileImage.IMAGE_RESTORED) {
+                tamponPerime = true;
+            }
+            mettreAJourTampon();
+            g.drawImage(tampon, 0, 0, null);
+        } while (tampon instanceof VolatileImage && ((VolatileImage) tampon).contentsLost());
+    }
 
+    // Crée le tampon de rendu : accéléré si possible, sinon au format de l'écran, sinon RVB sur des entiers (affichage absent)
+    private Image creerTampon() {
+        if (tampon != null) {
+            tampon.flush();
+        }
+        VolatileImage acceleree = createVolatileImage(getWidth(), getHeight());
+        if (acceleree != null) {
+            return acceleree;
+        }
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        return (configuration != null)
+                ? configuration.createCompatibleImage(getWidth(), getHeight())
+                : new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    // Met le tampon en accord avec l'affichage demandé, en réutilisant si possible son contenu
+    private void mettreAJourTampon() {
         int l = getWidth();
         int h = getHeight();
-        int imgL = img.getWidth();
-        int imgH = img.getHeight();
-
-        int x, y;
-
-        // Logique de positionnement horizontal
-        if (imgL <= l) {
-	    // Centrage
-            x = (l - imgL) / 2; 
-        } else {
-	    // Utilisation du panoramique
-            x = decalageX; 
+        int x = origineX();
+        int y = origineY();
+
+        // Niveau de la pyramide dont l'échelle est la plus proche : chaque niveau divise l'échelle par deux
+        int souhaite = (pas < 0) ? (-pas + PAS_PAR_OCTAVE / 2) / PAS_PAR_OCTAVE : 0;
+        if (souhaite > 0) {
+            pyramide.construire(this::repaint);
         }
+        int niveau = pyramide.niveauDisponible(souhaite);
 
-        // Logique de positionnement vertical
-        if (imgH <= h) {
-	    // Centrage
-            y = (h - imgH) / 2; 
-        } else {
-	    // Utilisation du panoramique
-            y = decalageY; 
+        int dx = x - xRendu;
+        int dy = y - yRendu;
+        Graphics2D g = (Graphics2D) tampon.getGraphics();
+        if (tamponPerime || pas != pasRendu || niveau != niveauRendu || Math.abs(dx) >= l || Math.abs(dy) >= h) {
+            dessiner(g, new Rectangle(0, 0, l, h), x, y, niveau);
+        } else if (dx != 0 || dy != 0) {
+            // Les pixels encore visibles sont décalés, puis les bandes découvertes dessinées
+            g.copyArea(0, 0, l, h, dx, dy);
+            if (dx != 0) {
+                dessiner(g, new Rectangle(dx > 0 ? 0 : l + dx, 0, Math.abs(dx), h), x, y, niveau);
+            }
+            if (dy != 0) {
+                dessiner(g, new Rectangle(0, dy > 0 ? 0 : h + dy, l, Math.abs(dy)), x, y, niveau);
+            }
         }
+        g.dispose();
+
+        tamponPerime = false;
+        xRendu = x;
+        yRendu = y;
+        pasRendu = pas;
+        niveauRendu = niveau;
+    }
+
+    /**
+     * Dessine une zone du panneau : le fond, puis le niveau de la pyramide, limité à la zone.
+     * Le niveau entier est placé par une translation et une mise à l'échelle et seul le découpage restreint le travail à la zone :
+     * chaque pixel du panneau reçoit ainsi le même pixel du niveau quelle que soit la zone dessinée
+     * (dessiner un sous-rectangle du niveau déplacerait l'échantillonnage selon son origine).
+     * Le niveau, déjà moyenné, est à moins d'une demi-octave de l'échelle affichée : le plus proche voisin suffit,
+     * et garde les pixels nets à l'agrandissement (un filtrage bilinéaire coûterait plusieurs fois plus cher en rendu logiciel).
+     * @param g Le contexte graphique du tampon.
+     * @param zone La zone à dessiner, en coordonnées du panneau.
+     * @param x L'abscisse du coin de l'image dans le panneau.
+     * @param y L'ordonnée du coin de l'image dans le panneau.
+     * @param niveau L'indice du niveau de la pyramide à dessiner.
+     */
+    private void dessiner(Graphics2D g, Rectangle zone, int x, int y, int niveau) {
+        g.setColor(getBackground());
+        g.fillRect(zone.x, zone.y, zone.width, zone.height);
 
-        g.drawImage(img, x, y, null);
+        // Taille à l'écran d'un pixel du niveau
+        double echelle = getZoom() * (1 << niveau);
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.clipRect(zone.x, zone.y, zone.width, zone.height);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.translate(x, y);
+        g2.scale(echelle, echelle);
+        g2.drawImage(pyramide.getNiveau(niveau), 0, 0, null);
+        g2.dispose();
     }
 }
@@ -0,0 +1,340 @@
+package pif;
+
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plan d'encodage d'une image : la transformation des composantes et la répartition des canaux entre les tables du codeur,
+ * choisies selon le niveau d'{@link Effort} demandé, ainsi que les canaux transformés prêts à être codés.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class PlanEncodage {
+
+    // Répartitions des trois canaux entre les tables essayées par l'effort maximal (la première est celle par défaut)
+    private static final int[][] PARTITIONS = { { 0, 1, 2 }, { 0, 0, 0 }, { 0, 1, 1 }, { 0, 0, 1 }, { 0, 1, 0 } };
+
+    // Partition où les trois canaux partagent une même table
+    private static final int[] TABLE_UNIQUE = { 0, 0, 0 };
+
+    // En-tête décrivant le plan (sans les longueurs des canaux séparés)
+    private final EnTetePIF entete;
+
+    // Canaux transformés, un tableau de symboles (0-255) par canal, ou null pour un codage par correspondances
+    private final int[][] canaux;
+
+    // Découpage en littéraux et copies, ou null si les pixels sont codés autrement
+    private final CodageLZ correspondances;
+
+    // Arbre des blocs uniformes, ou null si les pixels sont codés autrement
+    private final CodageBlocs blocs;
+
+    private PlanEncodage(EnTetePIF entete, int[][] canaux, CodageLZ correspondances, CodageBlocs blocs) {
+        this.entete = entete;
+        this.canaux = canaux;
+        this.correspondances = correspondances;
+        this.blocs = blocs;
+    }
+
+    // @return L'en-tête décrivant le plan
+    EnTetePIF getEntete() {
+        return entete;
+    }
+
+    // @return Les canaux transformés, prêts à être codés
+    int[][] getCanaux() {
+        return canaux;
+    }
+
+    // @return Le découpage en littéraux et copies, ou null si les pixels sont codés autrement
+    CodageLZ getCorrespondances() {
+        return correspondances;
+    }
+
+    // @return L'arbre des blocs uniformes, ou null si les pixels sont codés autrement
+    CodageBlocs getBlocs() {
+        return blocs;
+    }
+
+    /**
+     * Choisit le plan d'encodage d'une image.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite (dans le tas ou non).
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @param options Les options d'encodage.
+     * @return Le plan retenu.
+     */
+    static PlanEncodage choisir(IntBuffer pixels, int l, int h, OptionsEncodage options) {
+        return choisir(pixels, l, h, options, null);
+    }
+
+    /**
+     * Choisit le plan d'encodage d'une image, en calculant les canaux transformés dans les plans d'un brouillon.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite (dans le tas ou non).
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @param options Les options d'encodage.
+     * @param brouillon Le brouillon fournissant les plans des canaux, ou null pour les allouer.
+     * @return Le plan retenu ; ses canaux peuvent être plus longs que l'image.
+     */
+    static PlanEncodage choisir(IntBuffer pixels, int l, int h, OptionsEncodage options, Brouillon brouillon) {
+        Palette palette = paletteAdmise(options) ? Palette.detecter(pixels, l, h) : null;
+        CodageLZ correspondances = correspondancesAdmises(options) ? CodageLZ.analyser(pixels, l, h, options.getEffort()) : null;
+        CanauxRedondants redondants = redondancesAdmises(options) ? CanauxRedondants.detecter(pixels, l, h) : null;
+        CodageBlocs blocs = blocsAdmis(options) ? CodageBlocs.analyser(pixels, l, h) : null;
+        EnTetePIF entete = choisirEntete(pixels, l, h, options, new HashMap<>(), palette, correspondances, redondants, blocs);
+        if (entete.isCorrespondances()) {
+            return new PlanEncodage(entete, null, correspondances, null);
+        }
+        if (entete.isBlocs()) {
+            return new PlanEncodage(entete, null, null, blocs);
+        }
+        if (entete.getPalette() != null) {
+            return new PlanEncodage(entete, new int[][] { palette.getIndices() }, null, null);
+        }
+        // Seuls les canaux codés sont calculés
+        int[][] plans = (brouillon != null) ? brouillon.plans(l * h) : null;
+        return new PlanEncodage(entete, entete.getTransformation().appliquer(pixels, l, h, entete.getCanauxCodes(), plans), null, null);
+    }
+
+    /**
+     * Indique si les options permettent de coder l'image par une palette : pas de dictionnaire ni de canaux séparés,
+     * et un effort autre que celui par défaut (qui garde le format historique), sauf si la palette est demandée.
+     * @param options Les options d'encodage.
+     * @return Vrai si la palette de l'image doit être cherchée.
+     */
+    static boolean paletteAdmise(OptionsEncodage options) {
+        return options.getDictionnaire() == null && !options.isCanauxSepares()
+                && (options.isPalette() || options.getEffort() != Effort.DEFAUT);
+    }
+
+    /**
+     * Indique si les options permettent de coder l'image par correspondances : pas de dictionnaire ni de canaux séparés,
+     * et un codage demandé, ou essayé à l'effort maximal. La recherche des copies coûte plus qu'un histogramme :
+     * l'effort rapide ne l'entreprend que sur demande, avec une recherche bornée.
+     * @param options Les options d'encodage.
+     * @return Vrai si les correspondances de l'image doivent être cherchées.
+     */
+    static boolean correspondancesAdmises(OptionsEncodage options) {
+        return options.getDictionnaire() == null && !options.isCanauxSepares()
+                && (options.isCorrespondances() || options.getEffort() == Effort.MAX);
+    }
+
+    /**
+     * Indique si les options permettent de coder l'image par blocs uniformes : pas de dictionnaire ni de canaux séparés,
+     * aucune perte (le codage est exact, mais une perte admise profite davantage aux autres codages),
+     * et un codage demandé, ou essayé à l'effort maximal.
+     * @param options Les options d'encodage.
+     * @return Vrai si les blocs uniformes de l'image doivent être cherchés.
+     */
+    static boolean blocsAdmis(OptionsEncodage options) {
+        return options.getDictionnaire() == null && !options.isCanauxSepares() && options.getPerte() == 0
+                && (options.isBlocs() || options.getEffort() == Effort.MAX);
+    }
+
+    /**
+     * Indique si les options permettent d'omettre les canaux redondants de l'image ({@link CanauxRedondants}) : pas de dictionnaire,
+     * et un effort autre que celui par défaut (qui garde le format historique), sauf si l'omission est demandée.
+     * @param options Les options d'encodage.
+     * @return Vrai si les canaux redondants de l'image doivent être cherchés.
+     */
+    static boolean redondancesAdmises(OptionsEncodage options) {
+        return options.getDictionnaire() == null && (options.isCanauxRedondants() || options.getEffort() != Effort.DEFAUT);
+    }
+
+    /**
+     * Choisit la transformation et la partition des canaux d'une image, sans calculer les canaux transformés.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite (dans le tas ou non).
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @param options Les options d'encodage.
+     * @param histogrammes Les fréquences des résidus déjà calculées, indexées par {@link Transformation#getCle()} ;
+     * celles calculées par la recherche y sont ajoutées, pour être réutilisées d'un appel à l'autre sur la même image.
+     * @param palette La palette de l'image si elle est admise et que l'image en a une (voir {@link #paletteAdmise}), sinon null.
+     * @param correspondances Le découpage de l'image en littéraux et copies s'il est admis (voir {@link #correspondancesAdmises}), sinon null.
+     * @param redondants Les canaux redondants de l'image s'ils sont admis (voir {@link #redondancesAdmises}) et que l'image en a, sinon null.
+     * @param blocs L'arbre des blocs uniformes de l'image s'il est admis (voir {@link #blocsAdmis}) et que l'image en a, sinon null.
+     * @return L'en-tête décrivant le plan retenu (sans les longueurs des canaux séparés).
+     */
+    static EnTetePIF choisirEntete(IntBuffer pixels, int l, int h, OptionsEncodage options, Map<Integer, int[][]> histogrammes,
+            Palette palette, CodageLZ correspondances, CanauxRedondants redondants, CodageBlocs blocs) {
+        DictionnaireHuffman dictionnaire = options.getDictionnaire();
+        if (dictionnaire != null) {
+            // Les tables et la transformation sont celles du dictionnaire : il n'y a rien à chercher
+            if (options.isCanauxSepares()) {
+                throw new IllegalArgumentException("Un dictionnaire ne s'applique qu'à des canaux entrelacés");
+            }
+            return new EnTetePIF(l, h).setCodeur(CodeurHuffman.IDENTIFIANT)
+                    .setTransformation(dictionnaire.getTransformation().avecPerte(options.getPerte()))
+                    .setDictionnaire(dictionnaire.getIdentifiant());
+        }
+        if (blocs != null && options.getEffort() != Effort.MAX) {
+            // Demandés hors de l'effort maximal, les blocs sont retenus sans autre comparaison que celle des correspondances,
+            // si elles sont demandées aussi : les deux tailles sont exactes
+            EnTetePIF entete = enteteBlocs(l, h);
+            if (correspondances != null && 8L * enteteCorrespondances(l, h).taille() + correspondances.estimerBits()
+                    < 8L * entete.taille() + blocs.estimerBits()) {
+                return enteteCorrespondances(l, h);
+            }
+            return entete;
+        }
+        if (correspondances != null && options.getEffort() != Effort.MAX) {
+            // Demandées hors de l'effort maximal, les correspondances sont retenues sans comparaison ; elles sont exactes,
+            // et respectent donc aussi toute perte demandée
+            return enteteCorrespondances(l, h);
+        }
+        EnTetePIF entete = new EnTetePIF(l, h).setCodeur(options.getCodeur().getIdentifiant())
+                .setTablesCompactes(codeur(options) == CodeurHuffman.TABLES_COMPACTES);
+        if (options.getEffort() != Effort.MAX && palette != null && (redondants == null || redondants.nombreCanauxCodes() > 1)) {
+            // Une palette est exacte : elle respecte aussi toute perte demandée. Un canal unique, en niveaux de gris par exemple,
+            // se passe en revanche de la palette et de sa table de correspondance
+            return entete.setPalette(palette.getCouleurs());
+        }
+        if (redondants != null) {
+            entete.setDoublons(redondants.getDoublons()).setConstantes(redondants.getConstantes());
+        }
+        if (options.getPerte() > 0) {
+            // Quantifier les composantes brutes serait peu efficace : la perte s'accompagne toujours d'une prédiction,
+            // et de la décorrélation tant qu'elle ne lie pas des canaux qui doivent rester séparés ou être omis
+            boolean decorrelation = !options.isCanauxSepares() && redondants == null;
+            entete.setTransformation(new Transformation(Transformation.MED, decorrelation).avecPerte(options.getPerte()));
+        }
+
+        switch (options.getEffort()) {
+            case RAPIDE:
+                // Des canaux séparés ont de toute façon chacun leur table, de même que les canaux restants après omission des redondants
+                if (!options.isCanauxSepares() && redondants == null) {
+                    entete.setGroupes(TABLE_UNIQUE);
+                }
+                return entete;
+            case MAX:
+                return chercher(pixels, l, h, options, histogrammes, palette, correspondances, redondants, blocs);
+            default:
+                return entete;
+        }
+    }
+
+    /**
+     * Construit l'en-tête d'un codage par correspondances, qui utilise toujours des tables de Huffman compactes, quel que soit le codeur choisi.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return L'en-tête.
+     */
+    private static EnTetePIF enteteCorrespondances(int l, int h) {
+        return new EnTetePIF(l, h).setCodeur(CodeurHuffman.IDENTIFIANT).setTablesCompactes(true).setCorrespondances(CodageLZ.LOG_FENETRE);
+    }
+
+    /**
+     * Construit l'en-tête d'un codage par blocs, qui utilise toujours des tables de Huffman compactes et la transformation des blocs.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return L'en-tête.
+     */
+    private static EnTetePIF enteteBlocs(int l, int h) {
+        return new EnTetePIF(l, h).setCodeur(CodeurHuffman.IDENTIFIANT).setTablesCompactes(true)
+                .setTransformation(CodageBlocs.TRANSFORMATION).setBlocs(CodageBlocs.LOG_RACINE);
+    }
+
+    /**
+     * Retourne le codeur qui encodera l'image : le codeur choisi, ou pour Huffman, sa variante aux tables compactes
+     * lorsqu'elle est demandée ou que l'effort n'est pas celui par défaut (qui garde le format historique).
+     * @param options Les options d'encodage.
+     * @return Le codeur effectif.
+     */
+    static CodeurEntropique codeur(OptionsEncodage options) {
+        boolean compactes = options.isTablesCompactes() || options.getEffort() != Effort.DEFAUT;
+        return (compactes && options.getCodeur() instanceof CodeurHuffman) ? CodeurHuffman.TABLES_COMPACTES : options.getCodeur();
+    }
+
+    /**
+     * Essaie chaque transformation et chaque partition des canaux, et retient la combinaison dont la taille estimée
+     * (en-tête compris) est la plus petite, puis la compare au codage par palette, au codage par correspondances et au codage par blocs.
+     * À taille égale, la combinaison la plus simple l'emporte.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite (dans le tas ou non).
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @param options Les options d'encodage.
+     * @param histogrammes Les fréquences des résidus déjà calculées, complétées au fil de la recherche.
+     * @param palette La palette de l'image, ou null.
+     * @param correspondances Le découpage de l'image en littéraux et copies, ou null.
+     * @param redondants Les canaux redondants de l'image, qui ne sont alors ni décorrélés ni partagés entre les tables, ou null.
+     * @param blocs L'arbre des blocs uniformes de l'image, ou null.
+     * @return L'en-tête du meilleur plan trouvé.
+     */
+    private static EnTetePIF chercher(IntBuffer pixels, int l, int h, OptionsEncodage options, Map<Integer, int[][]> histogrammes,
+            Palette palette, CodageLZ correspondances, CanauxRedondants redondants, CodageBlocs blocs) {
+        CodeurEntropique codeur = codeur(options);
+        int[][] partitions = (options.isCanauxSepares() || redondants != null) ? new int[][] { PARTITIONS[0] } : PARTITIONS;
+
+        EnTetePIF meilleur = null;
+        long meilleureTaille = Long.MAX_VALUE;
+        for (Transformation sansPerte : Transformation.toutes()) {
+            if (options.getPerte() > 0 && options.isCanauxSepares() && sansPerte.isDecorrelation()) {
+                // Avec perte, la décorrélation lie les canaux
+                continue;
+            }
+            if (redondants != null && sansPerte.isDecorrelation()) {
+                // Les canaux omis sont restitués à partir des composantes, et non de leurs écarts au vert
+                continue;
+            }
+            Transformation t = sansPerte.avecPerte(options.getPerte());
+            // Seules les fréquences des résidus sont calculées ici ; les canaux ne sont matérialisés que pour le plan retenu
+            int[][] frequences = histogrammes.computeIfAbsent(t.getCle(), cle -> t.histogrammes(pixels, l, h));
+
+            for (int[] groupes : partitions) {
+                EnTetePIF entete = new EnTetePIF(l, h).setCodeur(codeur.getIdentifiant())
+                        .setTablesCompactes(codeur == CodeurHuffman.TABLES_COMPACTES).setTransformation(t).setGroupes(groupes);
+                if (redondants != null) {
+                    entete.setDoublons(redondants.getDoublons()).setConstantes(redondants.getConstantes());
+                }
+                if (options.isCanauxSepares()) {
+                    entete.setLongueursCanaux(new int[3]);
+                }
+
+                long bits = 8L * entete.taille();
+                int[] codes = entete.getCanauxCodes();
+                int[] groupesCodes = entete.getGroupesCodes();
+                for (int g = 0; g < CodeurEntropique.nombreGroupes(groupesCodes); g++) {
+                    int[] cumul = new int[256];
+                    for (int k = 0; k < codes.length; k++) {
+                        if (groupesCodes[k] == g) {
+                            for (int s = 0; s < 256; s++) cumul[s] += frequences[codes[k]][s];
+                        }
+                    }
+                    bits += codeur.estimerBits(cumul);
+                }
+
+                if (bits < meilleureTaille) {
+                    meilleureTaille = bits;
+                    meilleur = entete.setLongueursCanaux(null);
+                }
+            }
+        }
+
+        if (palette != null) {
+            EnTetePIF entete = new EnTetePIF(l, h).setCodeur(codeur.getIdentifiant())
+                    .setTablesCompactes(codeur == CodeurHuffman.TABLES_COMPACTES).setPalette(palette.getCouleurs());
+            long bits = 8L * entete.taille() + codeur.estimerBits(palette.frequences());
+            if (bits < meilleureTaille) {
+                meilleureTaille = bits;
+                meilleur = entete;
+            }
+        }
+        if (correspondances != null) {
+            EnTetePIF entete = enteteCorrespondances(l, h);
+            long bits = 8L * entete.taille() + correspondances.estimerBits();
+            if (bits < meilleureTaille) {
+                meilleureTaille = bits;
+                meilleur = entete;
+            }
+        }
+        if (blocs != null) {
+            EnTetePIF entete = enteteBlocs(l, h);
+            if (8L * entete.taille() + blocs.estimerBits() < meilleureTaille) {
+                meilleur = entete;
+            }
+        }
+        return meilleur;
+    }
+}
@@ -0,0 +1,151 @@
+package pif;
+
+import javax.swing.SwingUtilities;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Pyramide de réductions (mipmaps) d'une image, pour l'afficher à toute échelle en un temps proportionnel à l'écran et non à l'image.
+ * Le niveau 0 est l'image elle-même ; chaque niveau suivant est deux fois plus petit dans chaque dimension,
+ * chacun de ses pixels étant la moyenne d'un bloc de 2 x 2 pixels du niveau précédent, jusqu'à une image de {@link #TAILLE_MIN} pixels de côté au plus.
+ * Les niveaux ne sont construits qu'à la première demande, en arrière-plan : chaque niveau est découpé en bandes de lignes réduites en parallèle,
+ * et transmis au thread Swing dès qu'il est prêt. L'ensemble des réductions occupe un tiers de la mémoire de l'image.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class PyramideImage {
+
+    // Côté maximal du plus petit niveau, en pixels
+    static final int TAILLE_MIN = 64;
+
+    // Nombre de lignes du niveau réduit traitées par une même tâche
+    private static final int LIGNES_PAR_BANDE = 64;
+
+    // Niveaux déjà construits, le niveau 0 étant l'image source (accédé uniquement depuis le thread Swing)
+    private final BufferedImage[] niveaux;
+
+    // Vrai une fois la construction lancée (accédé uniquement depuis le thread Swing)
+    private boolean lancee;
+
+    // Vrai si la pyramide n'est plus affichée : la construction en cours s'interrompt
+    private volatile boolean abandonnee;
+
+    /**
+     * Prépare la pyramide d'une image, sans construire aucun niveau.
+     * @param source L'image source, qui forme le niveau 0.
+     */
+    PyramideImage(BufferedImage source) {
+        int n = 1;
+        for (int l = source.getWidth(), h = source.getHeight(); Math.max(l, h) > TAILLE_MIN; n++) {
+            l = (l + 1) / 2;
+            h = (h + 1) / 2;
+        }
+        this.niveaux = new BufferedImage[n];
+        this.niveaux[0] = source;
+    }
+
+    // @return Le nombre de niveaux de la pyramide complète, image source comprise
+    int getNombreNiveaux() {
+        return niveaux.length;
+    }
+
+    /**
+     * Retourne le niveau demandé s'il est construit, sinon le plus proche des niveaux plus fins déjà disponibles.
+     * @param niveau L'indice du niveau souhaité.
+     * @return L'indice du niveau disponible le plus proche, au plus <code>niveau</code>.
+     */
+    int niveauDisponible(int niveau) {
+        int k = Math.min(niveau, niveaux.length - 1);
+        while (niveaux[k] == null) {
+            k--;
+        }
+        return k;
+    }
+
+    /**
+     * Retourne un niveau construit.
+     * @param niveau L'indice du niveau, tel que renvoyé par {@link #niveauDisponible(int)}.
+     * @return L'image de ce niveau.
+     */
+    BufferedImage getNiveau(int niveau) {
+        return niveaux[niveau];
+    }
+
+    /**
+     * Lance en arrière-plan la construction des niveaux, si elle n'a pas déjà eu lieu.
+     * À appeler depuis le thread Swing.
+     * @param rappel Exécuté sur le thread Swing après la publication de chaque niveau.
+     */
+    void construire(Runnable rappel) {
+        if (lancee || niveaux.length == 1) {
+            return;
+        }
+        lancee = true;
+        CompletableFuture.runAsync(() -> {
+            BufferedImage precedent = niveaux[0];
+            for (int k = 1; k < niveaux.length && !abandonnee; k++) {
+                BufferedImage niveau = reduire(precedent);
+                int indice = k;
+                SwingUtilities.invokeLater(() -> {
+                    niveaux[indice] = niveau;
+                    rappel.run();
+                });
+                precedent = niveau;
+            }
+        });
+    }
+
+    /**
+     * Interrompt la construction en cours ; les niveaux restants ne seront jamais produits.
+     */
+    void abandonner() {
+        abandonnee = true;
+    }
+
+    /**
+     * Réduit une image de moitié dans chaque dimension, chaque pixel étant la moyenne d'un bloc de 2 x 2 pixels
+     * (la dernière ligne ou colonne d'une dimension impaire est répétée). Les bandes de lignes sont réduites en parallèle.
+     * @param source L'image à réduire.
+     * @return L'image réduite, au format RVB sur des entiers.
+     */
+    static BufferedImage reduire(BufferedImage source) {
+        int l = source.getWidth();
+        int h = source.getHeight();
+        int lr = (l + 1) / 2;
+        int hr = (h + 1) / 2;
+        BufferedImage reduite = new BufferedImage(lr, hr, BufferedImage.TYPE_INT_RGB);
+        int bandes = (hr + LIGNES_PAR_BANDE - 1) / LIGNES_PAR_BANDE;
+        IntStream.range(0, bandes).parallel().forEach(bande -> {
+            int[] haut = new int[l];
+            int[] bas = new int[l];
+            int[] ligne = new int[lr];
+            int fin = Math.min(hr, (bande + 1) * LIGNES_PAR_BANDE);
+            for (int y = bande * LIGNES_PAR_BANDE; y < fin; y++) {
+                lireLigne(source, 2 * y, haut);
+                lireLigne(source, Math.min(2 * y + 1, h - 1), bas);
+                for (int x = 0; x < lr; x++) {
+                    int x0 = 2 * x;
+                    int x1 = Math.min(x0 + 1, l - 1);
+                    int a = haut[x0], b = haut[x1], c = bas[x0], d = bas[x1];
+                    // Rouge et bleu sont moyennés ensemble, le vert à part : les sommes de quatre composantes ne débordent pas
+                    int rb = ((a & 0xFF00FF) + (b & 0xFF00FF) + (c & 0xFF00FF) + (d & 0xFF00FF) + 0x20002) >>> 2;
+                    int v = ((a & 0xFF00) + (b & 0xFF00) + (c & 0xFF00) + (d & 0xFF00) + 0x200) >>> 2;
+                    ligne[x] = (rb & 0xFF00FF) | (v & 0xFF00);
+                }
+                reduite.getRaster().setDataElements(0, y, lr, 1, ligne);
+            }
+        });
+        return reduite;
+    }
+
+    // Lit une ligne de pixels RVB, directement dans le raster pour les images stockées sur des entiers
+    private static void lireLigne(BufferedImage image, int y, int[] ligne) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, y, ligne.length, 1, ligne);
+        } else {
+            image.getRGB(0, y, ligne.length, 1, ligne, 0, ligne.length);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package pif;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Séquence d'images PIF de mêmes dimensions (animation, prise de vue à intervalles, enregistrement d'écran), lue depuis un fichier <code>.pifs</code>.
+ * Les images clés sont des fichiers PIF complets ; chacune des images suivantes n'est codée que par sa différence avec la précédente.
+ * L'image est découpée en blocs de {@link #COTE_BLOC} x {@link #COTE_BLOC} pixels : une carte d'un bit par bloc désigne les blocs modifiés,
+ * dont seuls les pixels sont codés, par l'écart de chaque composante à la même composante de l'image précédente
+ * (écarts du rouge et du bleu pris par rapport à celui du vert), avec les tables canoniques du {@link CodeurEntropique}.
+ * Le fichier est organisé ainsi (entiers gros-boutistes) :
+ * <li><b>En-tête :</b> la signature <code>PIFS</code>, la version, la largeur et la hauteur sur 32 bits, le côté des blocs sur 8 bits.</li>
+ * <li><b>Images :</b> pour chacune, son type ({@link #CLE} ou {@link #DIFFERENCE}), son délai d'affichage en millisecondes sur 16 bits,
+ * la longueur de son contenu sur 32 bits, puis le contenu. Une différence contient le nombre de blocs modifiés (32 bits), la carte des blocs
+ * (bit de poids fort en premier), l'identifiant du codeur, puis ses tables et ses symboles.</li>
+ * <li><b>Index :</b> le marqueur {@link #FIN}, le nombre d'images (32 bits), puis pour chaque image sa position (64 bits), son type et son délai ;
+ * le fichier se termine par la position du marqueur (64 bits).</li>
+ * Grâce à l'index, l'accès à une image ne décode que les images depuis l'image clé qui la précède.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class SequencePIF implements AutoCloseable {
+
+    // Extension des fichiers de séquence
+    public static final String EXTENSION = ".pifs";
+
+    // Signature des fichiers de séquence
+    static final byte[] SIGNATURE = { 'P', 'I', 'F', 'S' };
+
+    // Version du format de séquence
+    static final int VERSION = 1;
+
+    // Côté des blocs de la carte des modifications, en pixels
+    static final int COTE_BLOC = 16;
+
+    // Type d'image : fichier PIF complet
+    static final int CLE = 0;
+
+    // Type d'image : différence avec l'image précédente
+    static final int DIFFERENCE = 1;
+
+    // Marqueur de début de l'index, à la place du type d'une image
+    static final int FIN = 0xFF;
+
+    // Taille de l'en-tête, et de l'en-tête de chaque image, en octets
+    static final int TAILLE_ENTETE = 14;
+    static final int TAILLE_ENTETE_IMAGE = 7;
+
+    // Taille d'une entrée de l'index, en octets
+    static final int TAILLE_ENTREE = 11;
+
+    // Canal du fichier
+    private final SeekableByteChannel canal;
+
+    // Dimensions des images
+    private final int largeur;
+    private final int hauteur;
+
+    // Côté des blocs
+    private final int coteBloc;
+
+    // Position de l'index, qui suit la dernière image
+    private final long finImages;
+
+    // Position, type et délai de chaque image
+    private final long[] positions;
+    private final int[] types;
+    private final int[] delais;
+
+    // Numéros des images clés, croissants
+    private final int[] cles;
+
+    // Pixels de la dernière image décodée, et son numéro (-1 si aucune)
+    private int[] courante;
+    private int numeroCourant = -1;
+
+    // Écarts d'une ligne de bloc, réutilisés
+    private final int[][] residus;
+
+    /**
+     * Ouvre une séquence en lisant son en-tête et son index.
+     * @param canal Le canal du fichier, fermé par {@link #close()}.
+     * @throws IOException Si le fichier n'est pas une séquence PIF ou si son index est corrompu.
+     */
+    public SequencePIF(SeekableByteChannel canal) throws IOException {
+        this.canal = canal;
+        ByteBuffer entete = lire(0, TAILLE_ENTETE);
+        byte[] signature = new byte[SIGNATURE.length];
+        entete.get(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("Ce n'est pas une séquence PIF");
+        }
+        int version = entete.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IOException("Version de séquence non supportée : " + version);
+        }
+        this.largeur = entete.getInt();
+        this.hauteur = entete.getInt();
+        this.coteBloc = entete.get() & 0xFF;
+        if (largeur < 0 || hauteur < 0 || coteBloc == 0 || (long) largeur * hauteur > Integer.MAX_VALUE) {
+            throw new IOException("En-tête de séquence corrompu");
+        }
+
+        long taille = canal.size();
+        if (taille < TAILLE_ENTETE + 8) {
+            throw new EOFException("Séquence tronquée : index absent");
+        }
+        long debutIndex = lire(taille - 8, 8).getLong();
+        if (debutIndex < TAILLE_ENTETE || debutIndex > taille - 13) {
+            throw new IOException("Séquence corrompue : position de l'index invalide");
+        }
+        ByteBuffer marque = lire(debutIndex, 5);
+        int nombre = marque.getInt(1);
+        if ((marque.get(0) & 0xFF) != FIN || nombre < 0 || debutIndex + 5 + (long) nombre * TAILLE_ENTREE != taille - 8) {
+            throw new IOException("Séquence corrompue : index invalide");
+        }
+        ByteBuffer index = lire(debutIndex + 5, nombre * TAILLE_ENTREE);
+        this.finImages = debutIndex;
+        this.positions = new long[nombre];
+        this.types = new int[nombre];
+        this.delais = new int[nombre];
+        int nbCles = 0;
+        for (int k = 0; k < nombre; k++) {
+            positions[k] = index.getLong();
+            types[k] = index.get() & 0xFF;
+            delais[k] = index.getShort() & 0xFFFF;
+            if (positions[k] < TAILLE_ENTETE || positions[k] >= debutIndex || (types[k] != CLE && types[k] != DIFFERENCE)) {
+                throw new IOException("Séquence corrompue : entrée " + k + " de l'index invalide");
+            }
+            if (types[k] == CLE) nbCles++;
+        }
+        if (nombre > 0 && types[0] != CLE) {
+            throw new IOException("Séquence corrompue : la première image n'est pas une image clé");
+        }
+        this.cles = new int[nbCles];
+        for (int k = 0, c = 0; k < nombre; k++) {
+            if (types[k] == CLE) cles[c++] = k;
+        }
+        this.residus = new int[3][coteBloc];
+    }
+
+    /**
+     * Ouvre une séquence enregistrée dans un fichier.
+     * @param chemin Le chemin du fichier .pifs.
+     * @return La séquence, à fermer après usage.
+     * @throws IOException Si le fichier est illisible ou n'est pas une séquence PIF.
+     */
+    public static SequencePIF ouvrir(String chemin) throws IOException {
+        FileChannel canal = FileChannel.open(Paths.get(chemin), StandardOpenOption.READ);
+        try {
+            return new SequencePIF(canal);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    // @return La largeur des images
+    public int getLargeur() {
+        return largeur;
+    }
+
+    // @return La hauteur des images
+    public int getHauteur() {
+        return hauteur;
+    }
+
+    // @return Le nombre d'images de la séquence
+    public int getNombreImages() {
+        return positions.length;
+    }
+
+    // @return Le nombre d'images clés de la séquence
+    public int getNombreImagesCles() {
+        return cles.length;
+    }
+
+    /**
+     * Retourne le délai d'affichage d'une image.
+     * @param numero Le numéro de l'image, à partir de 0.
+     * @return Le délai avant l'image suivante, en millisecondes.
+     */
+    public int getDelai(int numero) {
+        return delais[numero];
+    }
+
+    /**
+     * Indique si une image est une image clé, décodable sans les précédentes.
+     * @param numero Le numéro de l'image, à partir de 0.
+     * @return Vrai pour une image clé.
+     */
+    public boolean isImageCle(int numero) {
+        return types[numero] == CLE;
+    }
+
+    /**
+     * Retrouve dans l'index l'image clé à partir de laquelle une image se décode.
+     * @param numero Le numéro de l'image, à partir de 0.
+     * @return Le numéro de la dernière image clé qui ne la suit pas.
+     */
+    public int imageClePrecedente(int numero) {
+        int i = Arrays.binarySearch(cles, numero);
+        return (i >= 0) ? cles[i] : cles[-i - 2];
+    }
+
+    /**
+     * Décode une image de la séquence. Seules les images depuis l'image clé précédente sont décodées,
+     * et aucune si l'image demandée suit la dernière image décodée sans image clé entre elles : la lecture dans l'ordre ne décode chaque image qu'une fois.
+     * @param numero Le numéro de l'image, à partir de 0.
+     * @return L'image décodée, indépendante de la séquence.
+     * @throws IOException Si le fichier est corrompu ou tronqué.
+     * @throws IndexOutOfBoundsException Si le numéro est hors de la séquence.
+     */
+    public synchronized ImagePIF lireImage(int numero) throws IOException {
+        if (numero < 0 || numero >= positions.length) {
+            throw new IndexOutOfBoundsException("Image " + numero + " hors de la séquence (" + positions.length + " images)");
+        }
+        int cle = imageClePrecedente(numero);
+        int debut = (numeroCourant >= cle && numeroCourant <= numero) ? numeroCourant + 1 : cle;
+        for (int k = debut; k <= numero; k++) {
+            decoderImage(k);
+        }
+        return new ImagePIF(largeur, hauteur, courante.clone());
+    }
+
+    // Décode une image à partir de la précédente, déjà décodée s'il s'agit d'une différence
+    private void decoderImage(int numero) throws IOException {
+        numeroCourant = -1;
+        ByteBuffer entete = lire(positions[numero], TAILLE_ENTETE_IMAGE);
+        int type = entete.get() & 0xFF;
+        int longueur = entete.getInt(3);
+        if (type != types[numero] || longueur < 0 || positions[numero] + TAILLE_ENTETE_IMAGE + longueur > finImages) {
+            throw new IOException("Séquence corrompue : image " + numero + " différente de l'index");
+        }
+        ByteBuffer contenu = lire(positions[numero] + TAILLE_ENTETE_IMAGE, longueur);
+        if (type == CLE) {
+            ImagePIF image = ImagePIF.charger(contenu);
+            if (image.getLargeur() != largeur || image.getHauteur() != hauteur) {
+                throw new IOException("Séquence corrompue : image clé " + numero + " de dimensions " + image.getLargeur() + " x " + image.getHauteur());
+            }
+            courante = image.getPixels();
+        } else {
+            appliquerDifference(contenu);
+        }
+        numeroCourant = numero;
+    }
+
+    // Ajoute aux pixels de l'image courante les écarts codés des blocs modifiés
+    private void appliquerDifference(ByteBuffer contenu) throws IOException {
+        int blocsX = (largeur + coteBloc - 1) / coteBloc;
+        int blocsY = (hauteur + coteBloc - 1) / coteBloc;
+        int modifies = contenu.getInt();
+        byte[] carte = new byte[(blocsX * blocsY + 7) / 8];
+        contenu.get(carte);
+        int identifiant = contenu.get() & 0xFF;
+        if (modifies == 0) {
+            return;
+        }
+        CodeurEntropique.Decodeur decodeur = codeurDifferences(identifiant).ouvrirDecodeur(
+                new ByteArrayInputStream(contenu.array(), contenu.arrayOffset() + contenu.position(), contenu.remaining()), 3);
+        int[] r = residus[0];
+        int[] v = residus[1];
+        int[] b = residus[2];
+        for (int bloc = 0; bloc < blocsX * blocsY; bloc++) {
+            if ((carte[bloc >> 3] & (0x80 >>> (bloc & 7))) == 0) {
+                continue;
+            }
+            int x0 = (bloc % blocsX) * coteBloc;
+            int y0 = (bloc / blocsX) * coteBloc;
+            int n = Math.min(coteBloc, largeur - x0);
+            for (int y = y0; y < Math.min(y0 + coteBloc, hauteur); y++) {
+                decodeur.decoder(residus, n);
+                for (int x = 0, i = y * largeur + x0; x < n; x++, i++) {
+                    int p = courante[i];
+                    int dv = v[x];
+                    courante[i] = 0xFF000000
+                            | (((p >> 16) + r[x] + dv) & 0xFF) << 16
+                            | (((p >> 8) + dv) & 0xFF) << 8
+                            | ((p + b[x] + dv) & 0xFF);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrouve le codeur des différences : les tables de Huffman y sont toujours codées de façon compacte, faute de quoi elles coûteraient
+     * plus que les quelques blocs modifiés d'une image.
+     * @param identifiant L'identifiant du codeur.
+     * @return Le codeur correspondant.
+     * @throws IOException Si l'identifiant est inconnu.
+     */
+    static CodeurEntropique codeurDifferences(int identifiant) throws IOException {
+        return (identifiant == CodeurHuffman.IDENTIFIANT) ? CodeurHuffman.TABLES_COMPACTES : CodeurEntropique.parIdentifiant(identifiant);
+    }
+
+    // Lit une zone du fichier dans un tampon du tas
+    private ByteBuffer lire(long position, int longueur) throws IOException {
+        ByteBuffer tampon = ByteBuffer.allocate(longueur);
+        canal.position(position);
+        while (tampon.hasRemaining()) {
+            if (canal.read(tampon) < 0) {
+                throw new EOFException("Séquence tronquée");
+            }
+        }
+        tampon.flip();
+        return tampon;
+    }
+
+    /**
+     * Ferme le fichier de la séquence.
+     * @throws IOException En cas d'erreur à la fermeture.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        canal.close();
+    }
+}
@@ -0,0 +1,512 @@
+package pif;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Service HTTP de conversion, construit sur le serveur HTTP du JDK (<code>com.sun.net.httpserver</code>).
+ * <li><b>POST /pif :</b> reçoit une image dans un format standard (PNG, JPEG...) et renvoie le fichier PIF.
+ * Les paramètres de requête <code>effort</code>, <code>codeur</code>, <code>canaux-separes</code>, <code>tables-compactes</code>, <code>palette</code>, <code>correspondances</code>, <code>blocs</code>, <code>canaux-redondants</code>, <code>adaptatif</code> (période en lignes), <code>qualite</code> et <code>perte</code>
+ * ont le sens des options de <code>java pif.Main convertir</code>.</li>
+ * <li><b>POST /png :</b> reçoit un fichier PIF et renvoie l'image au format PNG.</li>
+ * <li><b>POST /entete :</b> reçoit un fichier PIF (l'en-tête suffit) et renvoie la description de son en-tête en JSON.</li>
+ * Les dimensions annoncées par l'image reçue sont vérifiées avant tout décodage : au-delà du nombre maximal de pixels, la requête reçoit la réponse 413
+ * sans qu'aucune mémoire ne soit réservée pour ses pixels. Un fichier corrompu reçoit la réponse 400.
+ * Chaque requête est traitée par un thread virtuel lorsque la JVM en dispose (Java 21 et au-delà), sinon par un groupe fixe de threads.
+ * Le nombre de conversions simultanées est borné : chacune emprunte un {@link Atelier} à une réserve de taille fixe, dont les tampons
+ * d'entrée-sortie sont réutilisés d'une requête à l'autre. Avec les threads virtuels, une requête qui n'obtient pas d'atelier à temps reçoit la réponse 503 ;
+ * avec le groupe fixe, qui a autant de threads que d'ateliers, c'est la file d'attente des requêtes qui est bornée, et une requête qui n'y trouve pas de place reçoit la réponse 503.
+ * Une réponse 503 ferme la connexion ; au-delà de ce que peut absorber le thread des refus, la connexion est fermée sans réponse.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class ServeurConversion {
+
+    // Taille maximale par défaut du corps d'une requête
+    public static final int TAILLE_MAX_DEFAUT = 64 * 1024 * 1024;
+
+    // Nombre maximal de pixels d'une image décodée, par octet de la taille maximale du corps d'une requête lorsqu'il n'est pas précisé
+    public static final int PIXELS_PAR_OCTET_DEFAUT = 1;
+
+    // Attente maximale d'un atelier libre avant de refuser la requête, en millisecondes
+    private static final long ATTENTE_MAX = 2000;
+
+    // Longueur de la file d'attente du groupe fixe de threads, par conversion simultanée
+    private static final int FILE_PAR_CONVERSION = 4;
+
+    // Longueur de la file d'attente du thread des refus ; au-delà, la connexion d'une requête refusée est fermée sans réponse
+    private static final int FILE_REFUS = 64;
+
+    // Nombre maximal d'octets du corps d'une requête refusée lus avant la réponse 503
+    private static final int LECTURE_REFUS_MAX = 1024 * 1024;
+
+    // Durée maximale de la lecture du corps d'une requête refusée avant la réponse 503, en millisecondes
+    private static final long DUREE_REFUS_MAX = 500;
+
+    // Vrai sur le thread qui répond aux requêtes refusées par le groupe fixe de threads
+    private static final ThreadLocal<Boolean> REFUS = ThreadLocal.withInitial(() -> false);
+
+    // Taille au-delà de laquelle un tampon n'est pas conservé par son atelier, pour ne pas garder en mémoire le pic d'une grande image
+    private static final int TAMPON_CONSERVE_MAX = 8 * 1024 * 1024;
+
+    // Nombre de pixels au-delà duquel une image est convertie avec ses propres tableaux de travail plutôt qu'avec le brouillon de son atelier
+    private static final int PIXELS_CONSERVES_MAX = 4 * 1024 * 1024;
+
+    static {
+        // Sans TCP_NODELAY, l'en-tête et le corps d'une réponse partent en deux segments et l'algorithme de Nagle,
+        // combiné à l'acquittement différé du client, ajoute environ 40 ms à chaque requête.
+        // La propriété est lue une seule fois, à la création du premier serveur HTTP de la JVM.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        // Sans limite, un client qui cesse d'envoyer son corps retient indéfiniment le thread qui le lit (conversion ou refus) :
+        // le serveur HTTP ferme la connexion d'une requête dont le corps n'est pas reçu en entier dans ce délai, en secondes
+        if (System.getProperty("sun.net.httpserver.maxReqTime") == null) {
+            System.setProperty("sun.net.httpserver.maxReqTime", "60");
+        }
+    }
+
+    /**
+     * Tampons d'entrée-sortie et tableaux de travail d'une conversion, réutilisés par les requêtes successives qui empruntent l'atelier.
+     * Les tableaux de travail (pixels de l'image, plans des canaux) sont ceux d'un {@link Brouillon} : ils ont la taille de la plus grande image
+     * convertie par l'atelier, dans la limite du nombre maximal de pixels et de {@link #PIXELS_CONSERVES_MAX}.
+     */
+    private static final class Atelier {
+        // Corps de la requête
+        final Tampon entree = new Tampon();
+        // Corps de la réponse
+        final Tampon sortie = new Tampon();
+        // Tampon de copie du flux de la requête
+        final byte[] copie = new byte[64 * 1024];
+        // Tableaux de travail du codec
+        final Brouillon brouillon;
+
+        Atelier(int pixelsConserves) {
+            this.brouillon = new Brouillon(pixelsConserves);
+        }
+
+        // Vide les tampons, en abandonnant ceux qui ont trop grandi
+        void liberer() {
+            entree.vider();
+            sortie.vider();
+        }
+    }
+
+    /**
+     * Tampon d'octets extensible dont le contenu est lu sans copie.
+     */
+    private static final class Tampon extends ByteArrayOutputStream {
+
+        Tampon() {
+            super(64 * 1024);
+        }
+
+        // @return Le contenu du tampon, sans copie
+        ByteBuffer contenu() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        // @return Un flux lisant le contenu du tampon, sans copie
+        InputStream lecture() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        void vider() {
+            reset();
+            if (buf.length > TAMPON_CONSERVE_MAX) {
+                buf = new byte[64 * 1024];
+            }
+        }
+    }
+
+    // Serveur HTTP sous-jacent
+    private final HttpServer serveur;
+
+    // Exécuteur des requêtes
+    private final ExecutorService executeur;
+
+    // Thread des refus du groupe fixe de threads, ou null avec les threads virtuels
+    private ExecutorService refus;
+
+    // Réserve d'ateliers, qui borne le nombre de conversions simultanées
+    private final BlockingQueue<Atelier> ateliers;
+
+    // Taille maximale du corps d'une requête
+    private final int tailleMax;
+
+    // Nombre maximal de pixels d'une image décodée
+    private final long pixelsMax;
+
+    /**
+     * Crée le service, sans le démarrer, en bornant le nombre de pixels d'une image décodée à
+     * {@link #PIXELS_PAR_OCTET_DEFAUT} par octet de la taille maximale du corps d'une requête.
+     * @param adresse L'adresse d'écoute (port 0 pour un port libre choisi par le système).
+     * @param concurrence Le nombre maximal de conversions simultanées.
+     * @param tailleMax La taille maximale du corps d'une requête, en octets.
+     * @throws IOException Si l'adresse ne peut pas être ouverte.
+     */
+    public ServeurConversion(InetSocketAddress adresse, int concurrence, int tailleMax) throws IOException {
+        this(adresse, concurrence, tailleMax, (long) tailleMax * PIXELS_PAR_OCTET_DEFAUT);
+    }
+
+    /**
+     * Crée le service, sans le démarrer.
+     * @param adresse L'adresse d'écoute (port 0 pour un port libre choisi par le système).
+     * @param concurrence Le nombre maximal de conversions simultanées.
+     * @param tailleMax La taille maximale du corps d'une requête, en octets.
+     * @param pixelsMax Le nombre maximal de pixels d'une image décodée : chaque conversion simultanée peut en réserver quatre octets par pixel.
+     * @throws IOException Si l'adresse ne peut pas être ouverte.
+     */
+    public ServeurConversion(InetSocketAddress adresse, int concurrence, int tailleMax, long pixelsMax) throws IOException {
+        if (concurrence < 1) {
+            throw new IllegalArgumentException("Concurrence invalide : " + concurrence);
+        }
+        if (pixelsMax < 1) {
+            throw new IllegalArgumentException("Nombre maximal de pixels invalide : " + pixelsMax);
+        }
+        this.tailleMax = tailleMax;
+        this.pixelsMax = pixelsMax;
+        this.ateliers = new ArrayBlockingQueue<>(concurrence);
+        for (int i = 0; i < concurrence; i++) {
+            ateliers.add(new Atelier((int) Math.min(pixelsMax, PIXELS_CONSERVES_MAX)));
+        }
+        this.executeur = creerExecuteur(concurrence);
+        this.serveur = HttpServer.create(adresse, 0);
+        serveur.setExecutor(executeur);
+        serveur.createContext("/pif", echange -> traiter(echange, this::convertirVersPIF));
+        serveur.createContext("/png", echange -> traiter(echange, this::convertirVersPNG));
+        serveur.createContext("/entete", echange -> traiter(echange, this::decrireEntete));
+    }
+
+    /**
+     * Démarre l'écoute des requêtes.
+     */
+    public void demarrer() {
+        serveur.start();
+    }
+
+    /**
+     * Arrête le service : les requêtes en cours disposent d'une seconde pour se terminer.
+     */
+    public void arreter() {
+        serveur.stop(1);
+        executeur.shutdown();
+        if (refus != null) {
+            refus.shutdown();
+        }
+    }
+
+    // @return Le port d'écoute effectif
+    public int getPort() {
+        return serveur.getAddress().getPort();
+    }
+
+    /**
+     * Crée l'exécuteur des requêtes : un thread virtuel par requête si la JVM le permet,
+     * sinon un groupe fixe d'autant de threads que de conversions simultanées, dont la file d'attente est bornée.
+     * Une requête qui ne trouve pas de place dans cette file est confiée au thread des refus, qui répond 503 sans la convertir ;
+     * la file de ce thread est elle aussi bornée, et une requête qui n'y trouve pas de place est rejetée : le serveur HTTP ferme alors sa connexion.
+     * @param concurrence Le nombre maximal de conversions simultanées.
+     * @return L'exécuteur.
+     */
+    private ExecutorService creerExecuteur(int concurrence) {
+        try {
+            // Appel par réflexion : l'application reste compilable et exécutable avec Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            refus = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(FILE_REFUS));
+            return new ThreadPoolExecutor(concurrence, concurrence, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(concurrence * FILE_PAR_CONVERSION),
+                    (tache, groupe) -> refus.execute(() -> {
+                        REFUS.set(true);
+                        try {
+                            tache.run();
+                        } finally {
+                            REFUS.remove();
+                        }
+                    }));
+        }
+    }
+
+    // @return Vrai si les requêtes sont traitées par des threads virtuels
+    public boolean isThreadsVirtuels() {
+        return !(executeur instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * Refus d'une image dont les dimensions annoncées dépassent le nombre maximal de pixels, avant son décodage.
+     */
+    private static final class ImageTropGrande extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ImageTropGrande(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Traitement d'une requête par un atelier, qui remplit le tampon de sortie et renvoie le type de contenu de la réponse.
+     */
+    @FunctionalInterface
+    private interface Conversion {
+        String convertir(HttpExchange echange, Atelier atelier) throws IOException;
+    }
+
+    /**
+     * Traite une requête : vérifie la méthode, emprunte un atelier, lit le corps, convertit puis envoie la réponse.
+     * Les erreurs de l'appelant (corps illisible, corrompu ou trop gros, image trop grande) reçoivent une réponse 4xx avec un message en texte brut,
+     * et une conversion à court de mémoire la réponse 503.
+     * @param echange L'échange HTTP.
+     * @param conversion La conversion à appliquer.
+     * @throws IOException Si la réponse ne peut pas être envoyée.
+     */
+    private void traiter(HttpExchange echange, Conversion conversion) throws IOException {
+        try (echange) {
+            if (!echange.getRequestMethod().equals("POST")) {
+                echange.getResponseHeaders().set("Allow", "POST");
+                repondre(echange, 405, "Méthode non autorisée");
+                return;
+            }
+            if (REFUS.get()) {
+                refuser(echange);
+                return;
+            }
+            Atelier atelier;
+            try {
+                atelier = ateliers.poll(ATTENTE_MAX, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (atelier == null) {
+                refuser(echange);
+                return;
+            }
+            try {
+                if (!lireCorps(echange.getRequestBody(), atelier)) {
+                    // Le reste du corps n'est pas lu : la connexion est fermée après la réponse plutôt que réutilisée
+                    echange.getResponseHeaders().set("Connection", "close");
+                    repondre(echange, 413, "Corps de requête trop volumineux (max " + tailleMax + " octets)");
+                    return;
+                }
+                String type;
+                try {
+                    type = conversion.convertir(echange, atelier);
+                } catch (ImageTropGrande e) {
+                    repondre(echange, 413, e.getMessage());
+                    return;
+                } catch (IOException | IllegalArgumentException e) {
+                    atelier.sortie.reset();
+                    repondre(echange, 400, e.getMessage() != null ? e.getMessage() : e.toString());
+                    return;
+                } catch (RuntimeException e) {
+                    // Un fichier corrompu peut aussi bien lever une exception d'exécution (indice hors bornes, arbre incomplet...) qu'une IOException
+                    atelier.sortie.reset();
+                    repondre(echange, 400, "Fichier corrompu : " + e);
+                    return;
+                } catch (OutOfMemoryError e) {
+                    atelier.sortie.reset();
+                    echange.getResponseHeaders().set("Retry-After", "1");
+                    repondre(echange, 503, "Mémoire insuffisante");
+                    return;
+                }
+                echange.getResponseHeaders().set("Content-Type", type);
+                echange.sendResponseHeaders(200, atelier.sortie.size());
+                atelier.sortie.writeTo(echange.getResponseBody());
+            } finally {
+                atelier.liberer();
+                ateliers.add(atelier);
+            }
+        }
+    }
+
+    /**
+     * Répond 503 à une requête refusée faute de place, puis ferme la connexion.
+     * Le début du corps est lu et ignoré, dans la limite de {@link #LECTURE_REFUS_MAX} octets et de {@link #DUREE_REFUS_MAX} millisecondes :
+     * un petit corps déjà envoyé ne provoque pas la réinitialisation de la connexion avant que le client ait lu la réponse,
+     * et un client lent ou un gros corps ne retiennent pas le thread des refus (une lecture bloquée est interrompue par la fermeture
+     * de la connexion au bout du délai <code>sun.net.httpserver.maxReqTime</code>).
+     * @param echange L'échange HTTP.
+     * @throws IOException Si la réponse ne peut pas être envoyée.
+     */
+    private void refuser(HttpExchange echange) throws IOException {
+        InputStream is = echange.getRequestBody();
+        byte[] tampon = new byte[8 * 1024];
+        long restant = Math.min(tailleMax, LECTURE_REFUS_MAX);
+        long fin = System.currentTimeMillis() + DUREE_REFUS_MAX;
+        int lus;
+        while (restant > 0 && System.currentTimeMillis() < fin
+                && (lus = is.read(tampon, 0, (int) Math.min(tampon.length, restant))) > 0) {
+            restant -= lus;
+        }
+        echange.getResponseHeaders().set("Retry-After", "1");
+        echange.getResponseHeaders().set("Connection", "close");
+        repondre(echange, 503, "Serveur occupé");
+    }
+
+    /**
+     * Lit le corps d'une requête dans le tampon d'entrée d'un atelier.
+     * @param is Le corps de la requête.
+     * @param atelier L'atelier.
+     * @return Faux si le corps dépasse la taille maximale.
+     * @throws IOException Si la lecture échoue.
+     */
+    private boolean lireCorps(InputStream is, Atelier atelier) throws IOException {
+        int lus;
+        while ((lus = is.read(atelier.copie)) > 0) {
+            if (atelier.entree.size() + lus > tailleMax) {
+                return false;
+            }
+            atelier.entree.write(atelier.copie, 0, lus);
+        }
+        return true;
+    }
+
+    /**
+     * Vérifie les dimensions annoncées d'une image avant de réserver la mémoire de ses pixels.
+     * @param largeur La largeur annoncée.
+     * @param hauteur La hauteur annoncée.
+     * @throws ImageTropGrande Si l'image dépasse le nombre maximal de pixels.
+     */
+    private void verifierDimensions(int largeur, int hauteur) throws ImageTropGrande {
+        if ((long) largeur * hauteur > pixelsMax) {
+            throw new ImageTropGrande("Image trop grande : " + largeur + " x " + hauteur + " (max " + pixelsMax + " pixels)");
+        }
+    }
+
+    // Image standard vers PIF, selon les options passées en paramètres de requête
+    private String convertirVersPIF(HttpExchange echange, Atelier atelier) throws IOException {
+        OptionsEncodage options = options(echange.getRequestURI().getRawQuery());
+        BufferedImage image;
+        // Le lecteur du format donne les dimensions à la lecture de l'en-tête, avant que ImageIO.read n'alloue l'image entière
+        try (ImageInputStream source = ImageIO.createImageInputStream(atelier.entree.lecture())) {
+            Iterator<ImageReader> lecteurs = ImageIO.getImageReaders(source);
+            if (!lecteurs.hasNext()) {
+                throw new IOException("Format d'image non supporté");
+            }
+            ImageReader lecteur = lecteurs.next();
+            try {
+                lecteur.setInput(source, true, true);
+                verifierDimensions(lecteur.getWidth(0), lecteur.getHeight(0));
+                image = lecteur.read(0);
+            } finally {
+                lecteur.dispose();
+            }
+        }
+        ImagePIF.depuisBufferedImage(image, atelier.brouillon).sauvegarder(atelier.sortie, options, atelier.brouillon);
+        return "application/octet-stream";
+    }
+
+    // PIF vers PNG
+    private String convertirVersPNG(HttpExchange echange, Atelier atelier) throws IOException {
+        EnTetePIF entete = EnTetePIF.lire(atelier.entree.lecture());
+        verifierDimensions(entete.getLargeur(), entete.getHauteur());
+        // Les pixels restent hors du tas, et l'encodeur PNG les lit sans copie
+        try (ImagePIF image = ImagePIF.chargerHorsTas(atelier.entree.lecture(), atelier.brouillon)) {
+            ImageIO.write(image.vueBufferedImageTemporaire(), "png", atelier.sortie);
+        }
+        return "image/png";
+    }
+
+    // Description JSON de l'en-tête d'un fichier PIF
+    private String decrireEntete(HttpExchange echange, Atelier atelier) throws IOException {
+        EnTetePIF entete = EnTetePIF.lire(atelier.entree.lecture());
+        Integer dictionnaire = entete.getDictionnaire();
+        String json = String.format("{\"version\": %d, \"largeur\": %d, \"hauteur\": %d, \"codeur\": \"%s\", \"drapeaux\": %d, "
+                + "\"transformation\": \"%s\", \"canaux_separes\": %b, \"tables_compactes\": %b, \"couleurs_palette\": %d, \"fenetre_correspondances\": %d, \"racine_blocs\": %d, \"canaux_codes\": %d, \"periode_adaptative\": %d, \"perte\": %d, \"dictionnaire\": %s, \"taille_entete\": %d}",
+                entete.getVersion(), entete.getLargeur(), entete.getHauteur(), CodeurEntropique.parIdentifiant(entete.getCodeur()).getNom(),
+                entete.getDrapeaux(), entete.getTransformation(), entete.isCanauxSepares(), entete.isTablesCompactes(),
+                entete.getPalette() != null ? entete.getPalette().length : 0,
+                entete.isCorrespondances() ? 1 << entete.getCorrespondances() : 0, entete.isBlocs() ? 1 << entete.getBlocs() : 0,
+                entete.getCanauxCodes().length, entete.getAdaptatif(),
+                entete.getTransformation().getPerte(), dictionnaire != null ? String.format("\"%08x\"", dictionnaire) : "null", entete.taille());
+        atelier.sortie.write(json.getBytes(StandardCharsets.UTF_8));
+        return "application/json";
+    }
+
+    /**
+     * Interprète les paramètres de requête d'une conversion vers PIF.
+     * @param requete La chaîne de requête brute, ou null : les noms et valeurs y sont encore encodés pour l'URL (UTF-8).
+     * @return Les options d'encodage.
+     * @throws IllegalArgumentException Si un paramètre est inconnu, invalide ou mal encodé.
+     */
+    static OptionsEncodage options(String requete) {
+        OptionsEncodage options = new OptionsEncodage();
+        if (requete == null || requete.isEmpty()) {
+            return options;
+        }
+        for (String parametre : requete.split("&")) {
+            int egal = parametre.indexOf('=');
+            String nom = URLDecoder.decode(egal < 0 ? parametre : parametre.substring(0, egal), StandardCharsets.UTF_8);
+            String valeur = egal < 0 ? "true" : URLDecoder.decode(parametre.substring(egal + 1), StandardCharsets.UTF_8);
+            switch (nom) {
+                case "effort":
+                    options.setEffort(Effort.parNom(valeur));
+                    break;
+                case "codeur":
+                    options.setCodeur(CodeurEntropique.parNom(valeur));
+                    break;
+                case "canaux-separes":
+                    options.setCanauxSepares(Boolean.parseBoolean(valeur));
+                    break;
+                case "tables-compactes":
+                    options.setTablesCompactes(Boolean.parseBoolean(valeur));
+                    break;
+                case "palette":
+                    options.setPalette(Boolean.parseBoolean(valeur));
+                    break;
+                case "correspondances":
+                    options.setCorrespondances(Boolean.parseBoolean(valeur));
+                    break;
+                case "blocs":
+                    options.setBlocs(Boolean.parseBoolean(valeur));
+                    break;
+                case "canaux-redondants":
+                    options.setCanauxRedondants(Boolean.parseBoolean(valeur));
+                    break;
+                case "adaptatif":
+                    options.setPeriodeAdaptative(valeur.equals("true") ? HuffmanAdaptatif.PERIODE_DEFAUT : Integer.parseInt(valeur));
+                    break;
+                case "qualite":
+                    options.setQualite(Integer.parseInt(valeur));
+                    break;
+                case "perte":
+                    options.setPerte(Integer.parseInt(valeur));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Paramètre inconnu : " + nom);
+            }
+        }
+        return options;
+    }
+
+    // Envoie une réponse d'erreur en texte brut
+    private static void repondre(HttpExchange echange, int statut, String message) throws IOException {
+        byte[] corps = message.getBytes(StandardCharsets.UTF_8);
+        echange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        echange.sendResponseHeaders(statut, corps.length);
+        try (OutputStream os = echange.getResponseBody()) {
+            os.write(corps);
+        }
+    }
+}
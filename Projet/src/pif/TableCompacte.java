@@ -0,0 +1,359 @@
+package pif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import pif.CodecHuffman.InfoCode;
+
+/**
+ * Codage compact des tables de longueurs de codes de Huffman, sur le modèle du « code des longueurs » de DEFLATE.
+ * Les longueurs d'une table sont surtout des zéros et des valeurs répétées : elles sont réduites en une suite de symboles
+ * (longueur littérale, répétition de la précédente, plage de zéros), elle-même codée par un petit code de Huffman canonique
+ * commun à toutes les tables du bloc. Une table creuse peut aussi être décrite par le bitmap de ses symboles présents,
+ * suivi des seules longueurs non nulles : l'encodeur retient la description la plus courte.
+ * <p>
+ * Format du bloc : sa longueur en octets (16 bits), puis les bits, de poids fort en premier :
+ * le nombre de longueurs du code des longueurs (6 bits) suivies de ces longueurs (4 bits chacune, dans l'ordre {@link #ORDRE}),
+ * puis pour chaque table un bit de mode (1 : bitmap de 256 bits puis longueurs non nulles ; 0 : les 256 longueurs),
+ * et enfin la suite de symboles de la table. Le bloc est complété par des zéros jusqu'à l'octet.
+ * Sa longueur en tête permet au lecteur de l'obtenir d'un seul appel à {@link InputStream#read(byte[], int, int)}.
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+final class TableCompacte {
+
+    // Plus grande longueur codée littéralement
+    private static final int MAX_LITTERAL = 31;
+
+    // Répète la longueur précédente 3 à 6 fois (2 bits supplémentaires)
+    private static final int REPETER = 32;
+
+    // Plage de 3 à 10 zéros (3 bits supplémentaires)
+    private static final int ZEROS_COURTS = 33;
+
+    // Plage de 11 à 138 zéros (7 bits supplémentaires)
+    private static final int ZEROS_LONGS = 34;
+
+    // Longueur supérieure à MAX_LITTERAL, donnée sur 8 bits supplémentaires
+    private static final int ECHAPPEMENT = 35;
+
+    // Taille de l'alphabet des longueurs
+    private static final int NB_SYMBOLES = 36;
+
+    // Ordre d'écriture des longueurs du code des longueurs : les plus rares à la fin, pour que les zéros finaux soient omis
+    private static final int[] ORDRE = { ZEROS_LONGS, ZEROS_COURTS, REPETER, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1,
+            15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, ECHAPPEMENT };
+
+    // Longueur maximale d'un code du code des longueurs (4 bits)
+    private static final int LONGUEUR_MAX = 15;
+
+    private TableCompacte() {
+    }
+
+    /**
+     * Écrit un bloc de tables.
+     * @param tables Les tables de 256 longueurs.
+     * @param os Le flux de destination.
+     * @throws IOException En cas d'erreur d'E/S.
+     */
+    static void ecrire(int[][] tables, OutputStream os) throws IOException {
+        byte[] bloc = coder(tables);
+        os.write(bloc.length >> 8);
+        os.write(bloc.length & 0xFF);
+        os.write(bloc);
+    }
+
+    /**
+     * Calcule la taille du bloc qu'écrirait {@link #ecrire(int[][], OutputStream)}.
+     * @param tables Les tables de 256 longueurs.
+     * @return La taille en octets, longueur du bloc comprise.
+     */
+    static int taille(int[][] tables) {
+        return 2 + coder(tables).length;
+    }
+
+    /**
+     * Lit un bloc de tables.
+     * @param is Le flux positionné au début du bloc.
+     * @param nbTables Le nombre de tables du bloc.
+     * @return Les tables de 256 longueurs.
+     * @throws IOException Si le bloc est tronqué ou invalide.
+     */
+    static int[][] lire(InputStream is, int nbTables) throws IOException {
+        byte[] taille = lireOctets(is, 2);
+        LecteurBits lecteur = new LecteurBits(lireOctets(is, ((taille[0] & 0xFF) << 8) | (taille[1] & 0xFF)));
+
+        int[] longueursCode = new int[NB_SYMBOLES];
+        int nbLongueurs = lecteur.lire(6);
+        if (nbLongueurs > NB_SYMBOLES) throw new IOException("Table compacte invalide");
+        for (int i = 0; i < nbLongueurs; i++) {
+            longueursCode[ORDRE[i]] = lecteur.lire(4);
+        }
+        DecodeurCanonique code = new DecodeurCanonique(longueursCode);
+
+        int[][] tables = new int[nbTables][];
+        for (int t = 0; t < nbTables; t++) {
+            int[] longueurs = new int[256];
+            if (lecteur.lire(1) == 1) {
+                // Bitmap des symboles présents, puis leurs longueurs
+                int[] presents = new int[256];
+                int nbPresents = 0;
+                for (int s = 0; s < 256; s++) {
+                    if (lecteur.lire(1) == 1) presents[nbPresents++] = s;
+                }
+                int[] valeurs = lireSuite(lecteur, code, nbPresents);
+                for (int i = 0; i < nbPresents; i++) {
+                    if (valeurs[i] == 0) throw new IOException("Table compacte invalide");
+                    longueurs[presents[i]] = valeurs[i];
+                }
+            } else {
+                longueurs = lireSuite(lecteur, code, 256);
+            }
+            tables[t] = longueurs;
+        }
+        return tables;
+    }
+
+    // Code les tables, en retenant pour chacune la description (complète ou creuse) qui donne le bloc le plus court
+    private static byte[] coder(int[][] tables) {
+        byte[] meilleur = null;
+        for (int modes = 0; modes < (1 << tables.length); modes++) {
+            byte[] bloc = coder(tables, modes);
+            if (meilleur == null || bloc.length < meilleur.length) {
+                meilleur = bloc;
+            }
+        }
+        return meilleur;
+    }
+
+    // Code les tables, la table t étant décrite par son bitmap si le bit t de modes vaut 1
+    private static byte[] coder(int[][] tables, int modes) {
+        int[][] suites = new int[tables.length][];
+        int[] frequences = new int[NB_SYMBOLES];
+        for (int t = 0; t < tables.length; t++) {
+            suites[t] = reduire(tables[t], ((modes >> t) & 1) == 1);
+            for (int element : suites[t]) frequences[element & 0xFF]++;
+        }
+        int[] longueursCode = longueursCode(frequences);
+        InfoCode[] codes = new InfoCode[NB_SYMBOLES];
+        for (Map.Entry<Integer, InfoCode> e : CodecHuffman.genererCodesCanoniques(longueursCode).entrySet()) {
+            codes[e.getKey()] = e.getValue();
+        }
+
+        ByteArrayOutputStream octets = new ByteArrayOutputStream();
+        FluxSortieBits fsb = new FluxSortieBits(octets);
+        try {
+            int nbLongueurs = NB_SYMBOLES;
+            while (nbLongueurs > 0 && longueursCode[ORDRE[nbLongueurs - 1]] == 0) nbLongueurs--;
+            fsb.ecrireBits(nbLongueurs, 6);
+            for (int i = 0; i < nbLongueurs; i++) {
+                fsb.ecrireBits(longueursCode[ORDRE[i]], 4);
+            }
+            for (int t = 0; t < tables.length; t++) {
+                boolean creuse = ((modes >> t) & 1) == 1;
+                fsb.ecrireBit(creuse ? 1 : 0);
+                if (creuse) {
+                    for (int s = 0; s < 256; s++) fsb.ecrireBit(tables[t][s] > 0 ? 1 : 0);
+                }
+                for (int element : suites[t]) {
+                    int symbole = element & 0xFF;
+                    InfoCode info = codes[symbole];
+                    fsb.ecrireBits(info.codeEntier, info.longueur);
+                    int nbBits = bitsSupplementaires(symbole);
+                    if (nbBits > 0) fsb.ecrireBits(element >>> 8, nbBits);
+                }
+            }
+            fsb.vider();
+        } catch (IOException e) {
+            // Impossible : l'écriture se fait en mémoire
+            throw new IllegalStateException(e);
+        }
+        return octets.toByteArray();
+    }
+
+    /**
+     * Réduit une table en suite de symboles de l'alphabet des longueurs.
+     * @param longueurs La table de 256 longueurs.
+     * @param creuse Vrai pour ne réduire que les longueurs non nulles (description par bitmap).
+     * @return La suite ; chaque élément porte le symbole dans son octet de poids faible et la valeur de ses bits supplémentaires au-dessus.
+     */
+    private static int[] reduire(int[] longueurs, boolean creuse) {
+        int[] valeurs = new int[256];
+        int n = 0;
+        for (int l : longueurs) {
+            if (!creuse || l > 0) valeurs[n++] = l;
+        }
+
+        int[] suite = new int[n];
+        int taille = 0;
+        int i = 0;
+        while (i < n) {
+            int l = valeurs[i];
+            int fin = i + 1;
+            while (fin < n && valeurs[fin] == l) fin++;
+            int nb = fin - i;
+            if (l == 0 && nb >= 3) {
+                int plage = Math.min(nb, 138);
+                suite[taille++] = (plage >= 11) ? ZEROS_LONGS | ((plage - 11) << 8) : ZEROS_COURTS | ((plage - 3) << 8);
+                i += plage;
+                continue;
+            }
+            suite[taille++] = (l > MAX_LITTERAL) ? ECHAPPEMENT | (l << 8) : l;
+            i++;
+            nb--;
+            // Les répétitions de la même longueur non nulle suivent le littéral
+            while (l != 0 && nb >= 3) {
+                int plage = Math.min(nb, 6);
+                suite[taille++] = REPETER | ((plage - 3) << 8);
+                i += plage;
+                nb -= plage;
+            }
+        }
+        return Arrays.copyOf(suite, taille);
+    }
+
+    // Lit une suite de symboles jusqu'à obtenir n longueurs
+    private static int[] lireSuite(LecteurBits lecteur, DecodeurCanonique code, int n) throws IOException {
+        int[] valeurs = new int[n];
+        int i = 0;
+        while (i < n) {
+            int symbole = code.decoder(lecteur);
+            int plage;
+            int valeur;
+            switch (symbole) {
+                case REPETER:
+                    if (i == 0) throw new IOException("Table compacte invalide : répétition initiale");
+                    valeur = valeurs[i - 1];
+                    plage = 3 + lecteur.lire(2);
+                    break;
+                case ZEROS_COURTS:
+                    valeur = 0;
+                    plage = 3 + lecteur.lire(3);
+                    break;
+                case ZEROS_LONGS:
+                    valeur = 0;
+                    plage = 11 + lecteur.lire(7);
+                    break;
+                case ECHAPPEMENT:
+                    valeur = lecteur.lire(8);
+                    plage = 1;
+                    break;
+                default:
+                    valeur = symbole;
+                    plage = 1;
+                    break;
+            }
+            if (i + plage > n) throw new IOException("Table compacte invalide : dépassement");
+            for (int k = 0; k < plage; k++) valeurs[i++] = valeur;
+        }
+        return valeurs;
+    }
+
+    // Nombre de bits supplémentaires suivant un symbole
+    private static int bitsSupplementaires(int symbole) {
+        switch (symbole) {
+            case REPETER: return 2;
+            case ZEROS_COURTS: return 3;
+            case ZEROS_LONGS: return 7;
+            case ECHAPPEMENT: return 8;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Calcule les longueurs du code des longueurs. Au plus 3 x 256 symboles sont codés :
+     * un arbre de Huffman sur si peu d'occurrences ne dépasse pas 14 niveaux, ce qui tient sur 4 bits.
+     * @param frequences Les fréquences des symboles de l'alphabet des longueurs.
+     * @return Les longueurs des codes.
+     */
+    private static int[] longueursCode(int[] frequences) {
+        int[] longueurs = Arrays.copyOf(CodeurHuffman.longueurs(Arrays.copyOf(frequences, 256)), NB_SYMBOLES);
+        for (int l : longueurs) {
+            if (l > LONGUEUR_MAX) throw new IllegalStateException("Code des longueurs trop profond");
+        }
+        return longueurs;
+    }
+
+    // Lit exactement n octets d'un seul tenant
+    private static byte[] lireOctets(InputStream is, int n) throws IOException {
+        byte[] octets = new byte[n];
+        int lus = 0;
+        while (lus < n) {
+            int r = is.read(octets, lus, n - lus);
+            if (r < 0) throw new EOFException();
+            lus += r;
+        }
+        return octets;
+    }
+
+    /**
+     * Lecture bit à bit, de poids fort en premier, d'un tableau d'octets.
+     */
+    private static final class LecteurBits {
+        private final byte[] octets;
+        private int position;
+
+        LecteurBits(byte[] octets) {
+            this.octets = octets;
+        }
+
+        // Lit n bits (n <= 8 par appel utile ici) et les renvoie comme un entier
+        int lire(int n) throws IOException {
+            if (position + n > octets.length * 8) throw new EOFException("Table compacte tronquée");
+            int valeur = 0;
+            for (int k = 0; k < n; k++, position++) {
+                valeur = (valeur << 1) | ((octets[position >> 3] >> (7 - (position & 7))) & 1);
+            }
+            return valeur;
+        }
+    }
+
+    /**
+     * Décodage d'un code de Huffman canonique par comptage des codes de chaque longueur, sans arbre.
+     */
+    private static final class DecodeurCanonique {
+        // Nombre de codes de chaque longueur
+        private final int[] nombres = new int[LONGUEUR_MAX + 1];
+
+        // Symboles triés par longueur de code, puis par valeur
+        private final int[] symboles;
+
+        DecodeurCanonique(int[] longueurs) {
+            int total = 0;
+            for (int l : longueurs) {
+                if (l > 0) {
+                    nombres[l]++;
+                    total++;
+                }
+            }
+            symboles = new int[total];
+            int k = 0;
+            for (int l = 1; l <= LONGUEUR_MAX; l++) {
+                for (int s = 0; s < longueurs.length; s++) {
+                    if (longueurs[s] == l) symboles[k++] = s;
+                }
+            }
+        }
+
+        int decoder(LecteurBits lecteur) throws IOException {
+            int code = 0;
+            int premier = 0;
+            int indice = 0;
+            for (int l = 1; l <= LONGUEUR_MAX; l++) {
+                code |= lecteur.lire(1);
+                int nombre = nombres[l];
+                if (code - premier < nombre) {
+                    return symboles[indice + code - premier];
+                }
+                indice += nombre;
+                premier = (premier + nombre) << 1;
+                code <<= 1;
+            }
+            throw new IOException("Table compacte invalide : code inconnu");
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package pif;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * Transformation réversible appliquée aux pixels avant le codage entropique.
+ * Elle combine deux étapes facultatives :
+ * <li><b>Décorrélation :</b> le vert est soustrait du rouge et du bleu, ce qui concentre les valeurs autour de 0 pour les images peu saturées.</li>
+ * <li><b>Prédiction :</b> chaque composante est remplacée par son écart (modulo 256) à une prédiction tirée de ses voisins déjà décodés
+ * (gauche, haut, ou le prédicteur médian MED de LOCO-I).</li>
+ * Les résidus restent dans [0, 255] et sont codés par les mêmes tables que les composantes brutes.
+ * La reconstruction se fait ligne par ligne et ne nécessite que la ligne précédente de chaque canal.
+ * <p>Avec une perte maximale N non nulle (mode quasi sans perte, comme le paramètre NEAR de JPEG-LS), chaque écart à la prédiction
+ * est quantifié uniformément par pas de 2N + 1 : chaque composante reconstruite diffère d'au plus N de l'originale.
+ * La prédiction se fait alors sur les composantes reconstruites, comme au décodage, et la décorrélation devient inter-canaux :
+ * l'écart du vert reconstruit à sa prédiction corrige la prédiction du rouge et du bleu, qui restent ainsi bornés dans [0, 255].
+ * Le rouge et le bleu dépendent alors du vert du même pixel : ils ne peuvent plus être reconstruits canal par canal.</p>
+ * @author Dimitri SOLAR, Valentin LOISON
+ * @version 1.0
+ */
+public final class Transformation {
+
+    // Prédicteurs disponibles
+    public static final int AUCUN = 0;
+    public static final int GAUCHE = 1;
+    public static final int HAUT = 2;
+    public static final int MED = 3;
+
+    // Noms lisibles des prédicteurs, indexés par leur code
+    private static final String[] NOMS = { "aucun", "gauche", "haut", "med" };
+
+    // Transformation neutre : les composantes sont codées telles quelles
+    public static final Transformation IDENTITE = new Transformation(AUCUN, false);
+
+    // Plus grande perte admise sur une composante
+    public static final int PERTE_MAX = 127;
+
+    // Prédicteur appliqué à chaque canal
+    private final int predicteur;
+
+    // Vrai si le vert est soustrait du rouge et du bleu
+    private final boolean decorrelation;
+
+    // Écart maximal entre une composante reconstruite et l'originale (0 sans perte)
+    private final int perte;
+
+    // Pas de quantification des écarts (2 x perte + 1)
+    private final int pas;
+
+    // Nombre de valeurs quantifiées distinctes, qui sont aussi les symboles codés
+    private final int plage;
+
+    // Symbole de chaque écart à la prédiction (indice : écart + 255), et écart reconstruit de chaque symbole, calculés une fois pour toutes
+    private final int[] symboles;
+    private final int[] ecarts;
+
+    /**
+     * Construit une transformation sans perte.
+     * @param predicteur Le prédicteur ({@link #AUCUN}, {@link #GAUCHE}, {@link #HAUT} ou {@link #MED}).
+     * @param decorrelation Vrai pour soustraire le vert du rouge et du bleu.
+     */
+    public Transformation(int predicteur, boolean decorrelation) {
+        this(predicteur, decorrelation, 0);
+    }
+
+    private Transformation(int predicteur, boolean decorrelation, int perte) {
+        this.predicteur = predicteur;
+        this.decorrelation = decorrelation;
+        this.perte = perte;
+        this.pas = 2 * perte + 1;
+        this.plage = (255 + 2 * perte) / pas + 1;
+        if (perte > 0) {
+            symboles = new int[511];
+            for (int ecart = -255; ecart <= 255; ecart++) {
+                int q = (ecart > 0) ? (ecart + perte) / pas : -((perte - ecart) / pas);
+                symboles[ecart + 255] = (q < 0) ? q + plage : q;
+            }
+            ecarts = new int[256];
+            for (int symbole = 0; symbole < 256; symbole++) {
+                ecarts[symbole] = ((symbole >= (plage + 1) / 2) ? symbole - plage : symbole) * pas;
+            }
+        } else {
+            symboles = null;
+            ecarts = null;
+        }
+    }
+
+    /**
+     * Retourne la même transformation avec une perte maximale donnée.
+     * @param perte L'écart maximal admis entre une composante reconstruite et l'originale (0 pour rester sans perte).
+     * @return La transformation quasi sans perte.
+     * @throws IllegalArgumentException Si la perte est hors de [0, {@link #PERTE_MAX}].
+     */
+    public Transformation avecPerte(int perte) {
+        if (perte < 0 || perte > PERTE_MAX) {
+            throw new IllegalArgumentException("Perte invalide : " + perte);
+        }
+        return perte == this.perte ? this : new Transformation(predicteur, decorrelation, perte);
+    }
+
+    /**
+     * Retourne toutes les transformations possibles, de la plus simple à la plus coûteuse.
+     * @return Le tableau des transformations.
+     */
+    public static Transformation[] toutes() {
+        Transformation[] toutes = new Transformation[NOMS.length * 2];
+        for (int p = 0; p < NOMS.length; p++) {
+            toutes[p * 2] = new Transformation(p, false);
+            toutes[p * 2 + 1] = new Transformation(p, true);
+        }
+        return toutes;
+    }
+
+    /**
+     * Retrouve une transformation depuis son code d'en-tête.
+     * @param code Le code lu dans l'en-tête.
+     * @return La transformation correspondante.
+     * @throws IOException Si le code est invalide.
+     */
+    public static Transformation depuisCode(int code) throws IOException {
+        int p = code & 0x0F;
+        if (p >= NOMS.length || (code & ~0x1F) != 0) {
+            throw new IOException("Transformation inconnue : " + code);
+        }
+        return new Transformation(p, (code & 0x10) != 0);
+    }
+
+    // @return Le code de la transformation, tel qu'écrit dans l'en-tête
+    public int getCode() {
+        return predicteur | (decorrelation ? 0x10 : 0);
+    }
+
+    // @return Le prédicteur appliqué à chaque canal
+    public int getPredicteur() {
+        return predicteur;
+    }
+
+    // @return Vrai si le vert est soustrait du rouge et du bleu
+    public boolean isDecorrelation() {
+        return decorrelation;
+    }
+
+    // @return L'écart maximal entre une composante reconstruite et l'originale (0 sans perte)
+    public int getPerte() {
+        return perte;
+    }
+
+    // @return Vrai si la transformation n'a ni prédicteur ni décorrélation (elle peut être avec perte)
+    public boolean estIdentite() {
+        return predicteur == AUCUN && !decorrelation;
+    }
+
+    // @return Une clé distinguant aussi les pertes, pour indexer les fréquences des résidus
+    int getCle() {
+        return getCode() | (perte << 8);
+    }
+
+    @Override
+    public String toString() {
+        return NOMS[predicteur] + (decorrelation ? "+decorrelation" : "") + (perte > 0 ? "+perte" + perte : "");
+    }
+
+    /**
+     * Calcule les résidus des trois canaux d'une image.
+     * @param pixels Les pixels de l'image.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return Trois tableaux de résidus (0-255), un par canal.
+     */
+    public int[][] appliquer(int[] pixels, int l, int h) {
+        return appliquer(IntBuffer.wrap(pixels), l, h);
+    }
+
+    /**
+     * Calcule les résidus des trois canaux d'une image dont les pixels sont dans un tampon, éventuellement hors du tas.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return Trois tableaux de résidus (0-255), un par canal.
+     */
+    public int[][] appliquer(IntBuffer pixels, int l, int h) {
+        return appliquer(pixels, l, h, CodeurEntropique.partitionIdentite(3));
+    }
+
+    /**
+     * Calcule les résidus de certains canaux seulement, les autres n'étant pas codés (voir {@link CanauxRedondants}).
+     * @param pixels Les pixels de l'image, de la position 0 à la limite.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @param codes Les indices des canaux à calculer, dans l'ordre.
+     * @return Un tableau de résidus (0-255) par canal demandé.
+     */
+    int[][] appliquer(IntBuffer pixels, int l, int h, int[] codes) {
+        return appliquer(pixels, l, h, codes, null);
+    }
+
+    /**
+     * Calcule les résidus de certains canaux dans des plans fournis par l'appelant.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @param codes Les indices des canaux à calculer, dans l'ordre.
+     * @param plans Trois plans d'au moins <code>l * h</code> éléments, un par canal (voir {@link Brouillon#plans}), ou null pour les allouer.
+     * @return Un tableau de résidus (0-255) par canal demandé : les plans de ces canaux, dont seuls les <code>l * h</code> premiers éléments sont significatifs.
+     */
+    int[][] appliquer(IntBuffer pixels, int l, int h, int[] codes, int[][] plans) {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        // Les canaux non demandés restent à null et ne sont pas écrits
+        int[][] canaux = new int[3][];
+        int[][] resultat = new int[codes.length][];
+        for (int k = 0; k < codes.length; k++) {
+            resultat[k] = canaux[codes[k]] = (plans != null) ? plans[codes[k]] : new int[l * h];
+        }
+        if (perte > 0) {
+            parcourirAvecPerte(pixels, l, h, canaux, null);
+        } else if (predicteur != AUCUN) {
+            parcourir(pixels, l, h, canaux, null);
+        } else {
+            separer(pixels, l, h, canaux);
+        }
+        Instrumentation.fin(Instrumentation.Phase.TRANSFORMATION, debut, 0, (long) l * h);
+        return resultat;
+    }
+
+    // Sépare les canaux d'une image sans prédiction
+    private void separer(IntBuffer pixels, int l, int h, int[][] canaux) {
+        // Sans prédiction, chaque pixel est traité indépendamment de ses voisins
+        LignesPixels lignes = new LignesPixels(pixels, l);
+        int[] source = lignes.tableau();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0, j = lignes.ligne(y), i = y * l; x < l; x++, j++, i++) {
+                int c = source[j];
+                int r = (c >> 16) & 0xFF;
+                int v = (c >> 8) & 0xFF;
+                int b = c & 0xFF;
+                if (decorrelation) {
+                    r = (r - v) & 0xFF;
+                    b = (b - v) & 0xFF;
+                }
+                if (canaux[0] != null) canaux[0][i] = r;
+                if (canaux[1] != null) canaux[1][i] = v;
+                if (canaux[2] != null) canaux[2][i] = b;
+            }
+        }
+    }
+
+    /**
+     * Compte les fréquences des résidus de chaque canal sans les conserver,
+     * afin d'estimer le coût de la transformation pour un coût mémoire proportionnel à la largeur de l'image.
+     * @param pixels Les pixels de l'image.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return Les 256 fréquences de chacun des trois canaux.
+     */
+    public int[][] histogrammes(int[] pixels, int l, int h) {
+        return histogrammes(IntBuffer.wrap(pixels), l, h);
+    }
+
+    /**
+     * Compte les fréquences des résidus de chaque canal d'une image dont les pixels sont dans un tampon, éventuellement hors du tas.
+     * @param pixels Les pixels de l'image, de la position 0 à la limite.
+     * @param l La largeur de l'image.
+     * @param h La hauteur de l'image.
+     * @return Les 256 fréquences de chacun des trois canaux.
+     */
+    public int[][] histogrammes(IntBuffer pixels, int l, int h) {
+        Instrumentation.Mesure debut = Instrumentation.debut();
+        int[][] frequences = new int[3][256];
+        if (perte > 0) {
+            parcourirAvecPerte(pixels, l, h, null, frequences);
+        } else {
+            parcourir(pixels, l, h, null, frequences);
+        }
+        Instrumentation.fin(Instrumentation.Phase.HISTOGRAMME, debut, 0, (long) l * h);
+        return frequences;
+    }
+
+    // Calcule les résidus ligne par ligne, pour les ranger dans canaux et/ou les compter dans frequences
+    private void parcourir(IntBuffer pixels, int l, int h, int[][] canaux, int[][] frequences) {
+        int[][] courante = new int[3][l];
+        int[][] precedente = new int[3][l];
+        LignesPixels lignes = new LignesPixels(pixels, l);
+        int[] source = lignes.tableau();
+        for (int y = 0; y < h; y++) {
+            residusLigne(source, lignes.ligne(y), l, y, precedente, courante, canaux, y * l, frequences);
+            int[][] echange = precedente;
+            precedente = courante;
+            courante = echange;
+        }
+    }
+
+    // Calcule les résidus de la ligne commençant à source[j], pour les ranger dans canaux à partir de l'indice i et/ou les compter dans frequences
+    private void residusLigne(int[] source, int j, int l, int y, int[][] precedente, int[][] courante, int[][] canaux, int i,
+            int[][] frequences) {
+        for (int x = 0; x < l; x++, j++, i++) {
+            int c = source[j];
+            int r = (c >> 16) & 0xFF;
+            int v = (c >> 8) & 0xFF;
+            int b = c & 0xFF;
+            if (decorrelation) {
+                r = (r - v) & 0xFF;
+                b = (b - v) & 0xFF;
+            }
+            courante[0][x] = r;
+            courante[1][x] = v;
+            courante[2][x] = b;
+            for (int k = 0; k < 3; k++) {
+                if (canaux != null && canaux[k] == null) {
+                    continue;
+                }
+                int residu = (courante[k][x] - predire(courante[k], precedente[k], x, y)) & 0xFF;
+                if (canaux != null) canaux[k][i] = residu;
+                if (frequences != null) frequences[k][residu]++;
+            }
+        }
+    }
+
+    // Calcule les écarts quantifiés ligne par ligne, en prédisant à partir des composantes reconstruites comme le fera le décodeur
+    private void parcourirAvecPerte(IntBuffer pixels, int l, int h, int[][] canaux, int[][] frequences) {
+        int[][] courante = new int[3][l];
+        int[][] precedente = new int[3][l];
+        LignesPixels lignes = new LignesPixels(pixels, l);
+        int[] source = lignes.tableau();
+        for (int y = 0; y < h; y++) {
+            ecartsLigne(source, lignes.ligne(y), l, y, precedente, courante, canaux, y * l, frequences);
+            int[][] echange = precedente;
+            precedente = courante;
+            courante = echange;
+        }
+    }
+
+    // Calcule les écarts quantifiés de la ligne commençant à source[j] ; courante reçoit les composantes reconstruites
+    private void ecartsLigne(int[] source, int j, int l, int y, int[][] precedente, int[][] courante, int[][] canaux, int i,
+            int[][] frequences) {
+        int[] composantes = new int[3];
+        for (int x = 0; x < l; x++, j++, i++) {
+            int c = source[j];
+            composantes[0] = (c >> 16) & 0xFF;
+            composantes[1] = (c >> 8) & 0xFF;
+            composantes[2] = c & 0xFF;
+            // Le vert d'abord : son écart à la prédiction sert à la décorrélation des deux autres canaux
+            int predictionVert = predire(courante[1], precedente[1], x, y);
+            int symbole = quantifier(composantes[1], predictionVert);
+            courante[1][x] = dequantifier(symbole, predictionVert);
+            if (canaux != null && canaux[1] != null) canaux[1][i] = symbole;
+            if (frequences != null) frequences[1][symbole]++;
+            for (int k = 0; k < 3; k += 2) {
+                if (canaux != null && canaux[k] == null) {
+                    continue;
+                }
+                int prediction = predire(courante[k], precedente[k], x, y);
+                if (decorrelation) {
+                    prediction = borner(prediction + courante[1][x] - predictionVert);
+                }
+                symbole = quantifier(composantes[k], prediction);
+                courante[k][x] = dequantifier(symbole, prediction);
+                if (canaux != null) canaux[k][i] = symbole;
+                if (frequences != null) frequences[k][symbole]++;
+            }
+        }
+    }
+
+    /**
+     * Calcule les résidus des trois canaux d'une seule ligne, pour un encodage au fil des lignes ({@link EncodeurLignes}) :
+     * la prédiction ne dépend que de la ligne et de la précédente.
+     * @param source Les pixels ARGB de la ligne.
+     * @param decalage L'indice du premier pixel de la ligne dans <code>source</code>.
+     * @param l La largeur de l'image.
+     * @param y L'indice de la ligne.
+     * @param precedente Les composantes de la ligne précédente, telles que calculées à l'appel précédent (ignorées pour la première ligne).
+     * @param courante Les tableaux recevant les composantes de la ligne, à passer en <code>precedente</code> pour la ligne suivante.
+     * @param residus Les tableaux recevant les résidus (0-255) des trois canaux.
+     */
+    void appliquerLigne(int[] source, int decalage, int l, int y, int[][] precedente, int[][] courante, int[][] residus) {
+        if (perte > 0) {
+            ecartsLigne(source, decalage, l, y, precedente, courante, residus, 0, null);
+        } else {
+            residusLigne(source, decalage, l, y, precedente, courante, residus, 0, null);
+        }
+    }
+
+    /**
+     * Reconstruit une ligne de chacun des canaux codés à partir de leurs résidus.
+     * @param residus Les résidus de la ligne, un tableau par canal (les trois canaux, ou seulement les canaux codés lorsque les canaux sont indépendants).
+     * @param precedente Les lignes reconstruites précédentes (ignorées pour la première ligne).
+     * @param sortie Les tableaux recevant les lignes reconstruites (distincts de ceux de <code>precedente</code>).
+     * @param l La largeur de l'image.
+     * @param y L'indice de la ligne.
+     */
+    public void reconstruireLignes(int[][] residus, int[][] precedente, int[][] sortie, int l, int y) {
+        if (perte == 0 || !decorrelation) {
+            for (int c = 0; c < residus.length; c++) {
+                reconstruireLigne(residus[c], precedente[c], sortie[c], l, y);
+            }
+            return;
+        }
+        for (int x = 0; x < l; x++) {
+            int predictionVert = predire(sortie[1], precedente[1], x, y);
+            int vert = dequantifier(residus[1][x], predictionVert);
+            sortie[1][x] = vert;
+            for (int k = 0; k < 3; k += 2) {
+                int prediction = borner(predire(sortie[k], precedente[k], x, y) + vert - predictionVert);
+                sortie[k][x] = dequantifier(residus[k][x], prediction);
+            }
+        }
+    }
+
+    // @return Vrai si chaque canal peut être reconstruit indépendamment des autres par reconstruireLigne
+    public boolean isCanauxIndependants() {
+        return perte == 0 || !decorrelation;
+    }
+
+    /**
+     * Reconstruit une ligne d'un canal à partir de ses résidus.
+     * Avec perte et décorrélation, les canaux ne sont pas indépendants : il faut utiliser {@link #reconstruireLignes}.
+     * @param residus Les résidus de la ligne.
+     * @param precedente La ligne reconstruite précédente du même canal (ignorée pour la première ligne).
+     * @param sortie Le tableau recevant la ligne reconstruite (distinct de <code>precedente</code>).
+     * @param l La largeur de l'image.
+     * @param y L'indice de la ligne.
+     */
+    public void reconstruireLigne(int[] residus, int[] precedente, int[] sortie, int l, int y) {
+        if (perte > 0) {
+            if (decorrelation) {
+                throw new IllegalStateException("Canaux dépendants : reconstruction canal par canal impossible");
+            }
+            for (int x = 0; x < l; x++) {
+                sortie[x] = dequantifier(residus[x], predire(sortie, precedente, x, y));
+            }
+            return;
+        }
+        switch (predicteur) {
+            case AUCUN:
+                System.arraycopy(residus, 0, sortie, 0, l);
+                break;
+            case GAUCHE:
+                for (int x = 0; x < l; x++) {
+                    int p = (x > 0) ? sortie[x - 1] : (y > 0 ? precedente[0] : 0);
+                    sortie[x] = (residus[x] + p) & 0xFF;
+                }
+                break;
+            case HAUT:
+                for (int x = 0; x < l; x++) {
+                    int p = (y > 0) ? precedente[x] : (x > 0 ? sortie[x - 1] : 0);
+                    sortie[x] = (residus[x] + p) & 0xFF;
+                }
+                break;
+            default:
+                for (int x = 0; x < l; x++) {
+                    int p;
+                    if (y == 0) {
+                        p = (x > 0) ? sortie[x - 1] : 0;
+                    } else if (x == 0) {
+                        p = precedente[0];
+                    } else {
+                        p = med(sortie[x - 1], precedente[x], precedente[x - 1]);
+                    }
+                    sortie[x] = (residus[x] + p) & 0xFF;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Assemble un pixel à partir de ses trois composantes reconstruites, en annulant la décorrélation
+     * (avec perte, les composantes reconstruites sont déjà celles du pixel).
+     * @param r La composante rouge (éventuellement décorrélée).
+     * @param v La composante verte.
+     * @param b La composante bleue (éventuellement décorrélée).
+     * @return Le pixel au format ARGB, opaque.
+     */
+    public int assembler(int r, int v, int b) {
+        if (decorrelation && perte == 0) {
+            r = (r + v) & 0xFF;
+            b = (b + v) & 0xFF;
+        }
+        return 0xFF000000 | (r << 16) | (v << 8) | b;
+    }
+
+    // Prédiction de la composante x d'une ligne à partir de ses voisins gauche, haut et haut-gauche déjà connus
+    int predire(int[] ligne, int[] precedente, int x, int y) {
+        switch (predicteur) {
+            case GAUCHE:
+                return (x > 0) ? ligne[x - 1] : (y > 0 ? precedente[0] : 0);
+            case HAUT:
+                return (y > 0) ? precedente[x] : (x > 0 ? ligne[x - 1] : 0);
+            case MED:
+                if (y == 0) return (x > 0) ? ligne[x - 1] : 0;
+                if (x == 0) return precedente[0];
+                return med(ligne[x - 1], precedente[x], precedente[x - 1]);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Quantifie l'écart d'une composante à sa prédiction, comme JPEG-LS : l'écart est divisé par le pas en arrondissant au plus proche,
+     * puis ramené modulo la plage des valeurs quantifiées afin que le symbole tienne dans [0, plage[.
+     * @param valeur La composante originale.
+     * @param prediction La prédiction, dans [0, 255].
+     * @return Le symbole codé.
+     */
+    private int quantifier(int valeur, int prediction) {
+        return symboles[valeur - prediction + 255];
+    }
+
+    // Composante reconstruite à partir d'un symbole et de la prédiction : l'inverse de quantifier, à la perte près
+    private int dequantifier(int symbole, int prediction) {
+        int valeur = prediction + ecarts[symbole];
+        if (valeur < -perte) {
+            valeur += plage * pas;
+        } else if (valeur > 255 + perte) {
+            valeur -= plage * pas;
+        }
+        return borner(valeur);
+    }
+
+    // Ramène une composante dans [0, 255]
+    private static int borner(int v) {
+        return (v < 0) ? 0 : ((v > 255) ? 255 : v);
+    }
+
+    // Prédicteur médian de LOCO-I : détecte un contour horizontal ou vertical, sinon prédit un plan
+    private static int med(int a, int b, int c) {
+        int min = Math.min(a, b);
+        int max = Math.max(a, b);
+        if (c >= max) return min;
+        if (c <= min) return max;
+        return a + b - c;
+    }
+}